@@ -16,6 +16,9 @@
 
 package org.cometd.annotation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -145,6 +148,40 @@ class AnnotationProcessor
         }
     }
 
+    /**
+     * <p>Resolves the given method into a {@link MethodHandle} bound to the given bean,
+     * whose parameters are all {@code Object} and whose return type is the given one,
+     * so that it can be invoked via {@link MethodHandle#invokeExact(Object...)} for
+     * every message without reflection.</p>
+     * <p>When the return type is {@code Object}, {@code void} methods return {@code null}
+     * and primitive return values are boxed; when it is {@code void}, return values are discarded.</p>
+     *
+     * @param bean the bean to bind the method to
+     * @param method the method to resolve
+     * @param returnType the return type of the method handle, either {@code Object.class} or {@code void.class}
+     * @return a method handle bound to the bean
+     */
+    protected static MethodHandle bindMethod(Object bean, Method method, Class<?> returnType)
+    {
+        // Access is checked only when the method handle is created
+        boolean accessible = method.isAccessible();
+        try
+        {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(bean);
+            MethodType type = MethodType.genericMethodType(method.getParameterTypes().length).changeReturnType(returnType);
+            return handle.asType(type);
+        }
+        catch (IllegalAccessException x)
+        {
+            throw new RuntimeException(x);
+        }
+        finally
+        {
+            method.setAccessible(accessible);
+        }
+    }
+
     protected Method findGetterMethod(Class<?> klass, Method setter)
     {
         try
@@ -16,8 +16,8 @@
 
 package org.cometd.annotation;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.List;
@@ -318,8 +318,7 @@ public class ClientAnnotationProcessor extends AnnotationProcessor
     private static class ListenerCallback implements ClientSessionChannel.MessageListener
     {
         private static final Class<?>[] signature = new Class<?>[]{Message.class};
-        private final Object target;
-        private final Method method;
+        private final MethodHandle handle;
         private final String channel;
 
         private ListenerCallback(Object target, Method method, String channel)
@@ -329,31 +328,20 @@ public class ClientAnnotationProcessor extends AnnotationProcessor
                 throw new IllegalArgumentException("Wrong method signature for method " + method);
             if (!ChannelId.isMeta(channel))
                 throw new IllegalArgumentException("Annotation @Listener on method " + method + " must specify a meta channel");
-            this.target = target;
-            this.method = method;
+            this.handle = bindMethod(target, method, void.class);
             this.channel = channel;
         }
 
         public void onMessage(ClientSessionChannel channel, Message message)
         {
-            boolean accessible = method.isAccessible();
             try
             {
-                method.setAccessible(true);
-                method.invoke(target, message);
+                handle.invokeExact((Object)message);
             }
-            catch (InvocationTargetException x)
-            {
-                throw new RuntimeException(x.getCause());
-            }
-            catch (IllegalAccessException x)
+            catch (Throwable x)
             {
                 throw new RuntimeException(x);
             }
-            finally
-            {
-                method.setAccessible(accessible);
-            }
         }
     }
 
@@ -361,8 +349,7 @@ public class ClientAnnotationProcessor extends AnnotationProcessor
     {
         private static final Class<?>[] signature = new Class<?>[]{Message.class};
         private final ClientSession clientSession;
-        private final Object target;
-        private final Method method;
+        private final MethodHandle handle;
         private final String channel;
 
         public SubscriptionCallback(ClientSession clientSession, Object target, Method method, String channel)
@@ -373,8 +360,7 @@ public class ClientAnnotationProcessor extends AnnotationProcessor
             if (ChannelId.isMeta(channel))
                 throw new IllegalArgumentException("Annotation @Subscription on method " + method + " must specify a non meta channel");
             this.clientSession = clientSession;
-            this.target = target;
-            this.method = method;
+            this.handle = bindMethod(target, method, void.class);
             this.channel = channel;
         }
 
@@ -399,24 +385,14 @@ public class ClientAnnotationProcessor extends AnnotationProcessor
 
         private void forward(Message message)
         {
-            boolean accessible = method.isAccessible();
             try
             {
-                method.setAccessible(true);
-                method.invoke(target, message);
+                handle.invokeExact((Object)message);
             }
-            catch (InvocationTargetException x)
-            {
-                throw new RuntimeException(x.getCause());
-            }
-            catch (IllegalAccessException x)
+            catch (Throwable x)
             {
                 throw new RuntimeException(x);
             }
-            finally
-            {
-                method.setAccessible(accessible);
-            }
         }
     }
 }
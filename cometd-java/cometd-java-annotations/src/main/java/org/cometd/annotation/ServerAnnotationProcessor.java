@@ -16,8 +16,8 @@
 
 package org.cometd.annotation;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -476,8 +476,7 @@ public class ServerAnnotationProcessor extends AnnotationProcessor
     {
         private static final Class<?>[] signature = new Class<?>[]{ServerSession.class, ServerMessage.Mutable.class};
         private final LocalSession localSession;
-        private final Object target;
-        private final Method method;
+        private final MethodHandle handle;
         private final String channel;
         private final boolean receiveOwnPublishes;
 
@@ -487,8 +486,7 @@ public class ServerAnnotationProcessor extends AnnotationProcessor
             if (!signaturesMatch(parameters, signature))
                 throw new IllegalArgumentException("Wrong method signature for method " + method);
             this.localSession = localSession;
-            this.target = target;
-            this.method = method;
+            this.handle = bindMethod(target, method, Object.class);
             this.channel = channel;
             this.receiveOwnPublishes = receiveOwnPublishes;
         }
@@ -498,25 +496,15 @@ public class ServerAnnotationProcessor extends AnnotationProcessor
             if (from == localSession.getServerSession() && !receiveOwnPublishes)
                 return true;
 
-            boolean accessible = method.isAccessible();
             try
             {
-                method.setAccessible(true);
-                Object result = method.invoke(target, from, message);
+                Object result = handle.invokeExact((Object)from, (Object)message);
                 return !Boolean.FALSE.equals(result);
             }
-            catch (InvocationTargetException x)
-            {
-                throw new RuntimeException(x.getCause());
-            }
-            catch (IllegalAccessException x)
+            catch (Throwable x)
             {
                 throw new RuntimeException(x);
             }
-            finally
-            {
-                method.setAccessible(accessible);
-            }
         }
     }
 
@@ -524,8 +512,7 @@ public class ServerAnnotationProcessor extends AnnotationProcessor
     {
         private static final Class<?>[] signature = new Class<?>[]{Message.class};
         private final LocalSession localSession;
-        private final Object target;
-        private final Method method;
+        private final MethodHandle handle;
         private final String channel;
 
         public SubscriptionCallback(LocalSession localSession, Object target, Method method, String channel)
@@ -534,31 +521,20 @@ public class ServerAnnotationProcessor extends AnnotationProcessor
             if (!signaturesMatch(parameters, signature))
                 throw new IllegalArgumentException("Wrong method signature for method " + method);
             this.localSession = localSession;
-            this.target = target;
-            this.method = method;
+            this.handle = bindMethod(target, method, void.class);
             this.channel = channel;
         }
 
         public void onMessage(ClientSessionChannel channel, Message message)
         {
-            boolean accessible = method.isAccessible();
             try
             {
-                method.setAccessible(true);
-                method.invoke(target, message);
+                handle.invokeExact((Object)message);
             }
-            catch (InvocationTargetException x)
-            {
-                throw new RuntimeException(x.getCause());
-            }
-            catch (IllegalAccessException x)
+            catch (Throwable x)
             {
                 throw new RuntimeException(x);
             }
-            finally
-            {
-                method.setAccessible(accessible);
-            }
         }
     }
 }
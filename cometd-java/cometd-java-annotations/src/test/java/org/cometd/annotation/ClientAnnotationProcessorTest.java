@@ -28,6 +28,7 @@ import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.client.ClientSession;
 import org.cometd.bayeux.client.ClientSessionChannel;
+import org.cometd.common.HashMapMessage;
 import org.cometd.client.BayeuxClient;
 import org.cometd.client.transport.LongPollingTransport;
 import org.cometd.server.CometDServlet;
@@ -47,6 +48,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ClientAnnotationProcessorTest
 {
@@ -227,6 +229,95 @@ public class ClientAnnotationProcessorTest
         bayeuxClient.disconnect(1000);
     }
 
+    @Test
+    public void testListenerMethodReturningValue() throws Exception
+    {
+        final CountDownLatch handshakeLatch = new CountDownLatch(1);
+
+        @Service
+        class S
+        {
+            @Listener(Channel.META_HANDSHAKE)
+            private Object metaHandshake(Message handshake)
+            {
+                // The return value is ignored
+                handshakeLatch.countDown();
+                return "value";
+            }
+        }
+
+        S s = new S();
+        boolean processed = processor.process(s);
+        assertTrue(processed);
+
+        bayeuxClient.handshake();
+        assertTrue(handshakeLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testListenerAndSubscriptionMethodsThrowing() throws Exception
+    {
+        @Service
+        class S
+        {
+            @Listener(Channel.META_PUBLISH)
+            private void metaPublish(Message message)
+            {
+                throw new IllegalStateException();
+            }
+
+            @Subscription("/foo")
+            private void foo(Message message)
+            {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        S s = new S();
+        boolean processed = processor.process(s);
+        assertTrue(processed);
+
+        HashMapMessage message = new HashMapMessage();
+        message.setChannel("/foo");
+
+        // Invoke the callbacks directly, since BayeuxClient catches their exceptions
+        ClientSessionChannel metaChannel = bayeuxClient.getChannel(Channel.META_PUBLISH);
+        ClientSessionChannel.MessageListener listener = (ClientSessionChannel.MessageListener)metaChannel.getListeners().get(0);
+        try
+        {
+            listener.onMessage(metaChannel, message);
+            fail();
+        }
+        catch (RuntimeException x)
+        {
+            assertTrue(x.getCause() instanceof IllegalStateException);
+        }
+
+        // Subscriptions are performed when the handshake succeeds
+        final CountDownLatch subscribeLatch = new CountDownLatch(1);
+        bayeuxClient.getChannel(Channel.META_SUBSCRIBE).addListener(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                subscribeLatch.countDown();
+            }
+        });
+        bayeuxClient.handshake();
+        assertTrue(subscribeLatch.await(5, TimeUnit.SECONDS));
+
+        ClientSessionChannel channel = bayeuxClient.getChannel("/foo");
+        ClientSessionChannel.MessageListener subscriber = channel.getSubscribers().get(0);
+        try
+        {
+            subscriber.onMessage(channel, message);
+            fail();
+        }
+        catch (RuntimeException x)
+        {
+            assertTrue(x.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
     @Test
     public void testSubscribeUnsubscribe() throws Exception
     {
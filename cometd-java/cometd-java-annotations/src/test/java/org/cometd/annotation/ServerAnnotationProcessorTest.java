@@ -30,6 +30,7 @@ import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import org.cometd.bayeux.Message;
+import org.cometd.bayeux.client.ClientSessionChannel;
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ConfigurableServerChannel;
 import org.cometd.bayeux.server.LocalSession;
@@ -507,6 +508,117 @@ public class ServerAnnotationProcessorTest
         assertFalse(messageLatch.await(1, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testListenerMethodReturningVoidOrNonBoolean() throws Exception
+    {
+        final CountDownLatch voidLatch = new CountDownLatch(1);
+        final CountDownLatch valueLatch = new CountDownLatch(1);
+
+        @Service
+        class S
+        {
+            @Listener("/void")
+            private void onVoid(ServerSession remote, ServerMessage.Mutable message)
+            {
+            }
+
+            @Listener("/value")
+            private Object onValue(ServerSession remote, ServerMessage.Mutable message)
+            {
+                return "value";
+            }
+
+            @Subscription("/void")
+            public void subscribeVoid(Message message)
+            {
+                voidLatch.countDown();
+            }
+
+            @Subscription("/value")
+            public void subscribeValue(Message message)
+            {
+                valueLatch.countDown();
+            }
+        }
+
+        S s = new S();
+        boolean processed = processor.process(s);
+        assertTrue(processed);
+
+        // Fake the publishes, that must not be stopped by the listeners
+        LocalSession remote = bayeuxServer.newLocalSession("remote");
+        remote.handshake();
+        ServerMessage.Mutable message = bayeuxServer.newMessage();
+        message.setChannel("/void");
+        message.setData(new HashMap());
+        bayeuxServer.handle((ServerSessionImpl)remote.getServerSession(), message);
+        message = bayeuxServer.newMessage();
+        message.setChannel("/value");
+        message.setData(new HashMap());
+        bayeuxServer.handle((ServerSessionImpl)remote.getServerSession(), message);
+
+        assertTrue(voidLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(valueLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testListenerAndSubscriptionMethodsThrowing() throws Exception
+    {
+        @Service
+        class S
+        {
+            @Session
+            private LocalSession localSession;
+
+            @Listener("/foo")
+            private void listen(ServerSession remote, ServerMessage.Mutable message)
+            {
+                throw new IllegalStateException();
+            }
+
+            @Subscription("/foo")
+            private void subscribe(Message message)
+            {
+                throw new IllegalArgumentException();
+            }
+        }
+
+        S s = new S();
+        boolean processed = processor.process(s);
+        assertTrue(processed);
+
+        LocalSession remote = bayeuxServer.newLocalSession("remote");
+        remote.handshake();
+        ServerMessage.Mutable message = bayeuxServer.newMessage();
+        message.setChannel("/foo");
+        message.setData(new HashMap());
+
+        // Invoke the callbacks directly, since BayeuxServer catches their exceptions
+        ServerChannel channel = bayeuxServer.getChannel("/foo");
+        ServerChannel.MessageListener listener = (ServerChannel.MessageListener)channel.getListeners().get(0);
+        try
+        {
+            listener.onMessage(remote.getServerSession(), channel, message);
+            fail();
+        }
+        catch (RuntimeException x)
+        {
+            assertTrue(x.getCause() instanceof IllegalStateException);
+        }
+
+        ClientSessionChannel clientChannel = s.localSession.getChannel("/foo");
+        ClientSessionChannel.MessageListener subscriber = clientChannel.getSubscribers().get(0);
+        try
+        {
+            subscriber.onMessage(clientChannel, message);
+            fail();
+        }
+        catch (RuntimeException x)
+        {
+            assertTrue(x.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
     @Test
     public void testLifecycleMethodsWithWrongReturnType() throws Exception
     {
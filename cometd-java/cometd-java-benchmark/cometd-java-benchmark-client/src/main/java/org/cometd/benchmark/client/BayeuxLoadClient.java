@@ -80,6 +80,7 @@ public class BayeuxLoadClient
     private MonitoringQueuedThreadPool threadPool;
     private HttpClient httpClient;
     private WebSocketClient webSocketClient;
+    private boolean perMessageDeflate;
 
     public static void main(String[] args) throws Exception
     {
@@ -131,6 +132,15 @@ public class BayeuxLoadClient
             value = String.valueOf(clientTransportType.ordinal());
         clientTransportType = ClientTransportType.values()[Integer.parseInt(value)];
 
+        if (clientTransportType == ClientTransportType.WEBSOCKET)
+        {
+            System.err.printf("permessage-deflate [%b]: ", perMessageDeflate);
+            value = console.readLine().trim();
+            if (value.length() == 0)
+                value = String.valueOf(perMessageDeflate);
+            perMessageDeflate = Boolean.parseBoolean(value);
+        }
+
         boolean ssl = false;
         System.err.printf("use ssl [%b]: ", ssl);
         value = console.readLine().trim();
@@ -438,6 +448,7 @@ public class BayeuxLoadClient
                 Map<String, Object> options = new HashMap<>();
                 options.put(ClientTransport.JSON_CONTEXT, new Jackson1JSONContextClient());
                 options.put(WebSocketTransport.IDLE_TIMEOUT_OPTION, 35000);
+                options.put(WebSocketTransport.PER_MESSAGE_DEFLATE_OPTION, perMessageDeflate);
                 return new WebSocketTransport(options, webSocketClient, scheduler);
             }
             default:
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.benchmark.client;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.cometd.common.DeflaterPool;
+import org.cometd.common.PerMessageDeflate;
+
+/**
+ * <p>Measures the bandwidth saved by the {@code permessage-deflate} WebSocket extension
+ * against the CPU time it costs, for WebSocket frames shaped like the ones produced by
+ * the {@link BayeuxLoadClient} chat load.</p>
+ * <p>Each run compresses and decompresses the same frames with and without compression
+ * context takeover, and reports the compression ratio and the CPU time per frame.</p>
+ */
+public class PerMessageDeflateBenchmark
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws Exception
+    {
+        PerMessageDeflateBenchmark benchmark = new PerMessageDeflateBenchmark();
+        benchmark.run();
+    }
+
+    public void run() throws Exception
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+
+        int frames = 100000;
+        System.err.printf("frames [%d]: ", frames);
+        String value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(frames);
+        frames = Integer.parseInt(value);
+
+        int messagesPerFrame = 1;
+        System.err.printf("messages per frame [%d]: ", messagesPerFrame);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(messagesPerFrame);
+        messagesPerFrame = Integer.parseInt(value);
+
+        int messageSize = 50;
+        System.err.printf("message size [%d]: ", messageSize);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(messageSize);
+        messageSize = Integer.parseInt(value);
+
+        int iterations = 5;
+        System.err.printf("iterations [%d]: ", iterations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(iterations);
+        iterations = Integer.parseInt(value);
+
+        ByteBuffer[] payloads = new ByteBuffer[64];
+        for (int i = 0; i < payloads.length; ++i)
+            payloads[i] = frame(i * messagesPerFrame, messagesPerFrame, messageSize);
+
+        run(true, payloads, frames, iterations);
+        run(false, payloads, frames, iterations);
+    }
+
+    private void run(boolean contextTakeover, ByteBuffer[] payloads, int frames, int iterations) throws Exception
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        PerMessageDeflate sender = new PerMessageDeflate(pool, contextTakeover, contextTakeover);
+        PerMessageDeflate receiver = new PerMessageDeflate(pool, contextTakeover, contextTakeover);
+        try
+        {
+            // The first iteration warms up the JIT
+            for (int i = 0; i <= iterations; ++i)
+            {
+                long bytes = 0;
+                long compressedBytes = 0;
+                long deflateNanos = 0;
+                long inflateNanos = 0;
+                for (int j = 0; j < frames; ++j)
+                {
+                    ByteBuffer payload = payloads[j % payloads.length];
+                    bytes += payload.remaining();
+
+                    long begin = threads.getCurrentThreadCpuTime();
+                    ByteBuffer compressed = sender.deflate(payload, true);
+                    long middle = threads.getCurrentThreadCpuTime();
+                    receiver.inflate(compressed, true, 0);
+                    long end = threads.getCurrentThreadCpuTime();
+
+                    compressedBytes += compressed.remaining();
+                    deflateNanos += middle - begin;
+                    inflateNanos += end - middle;
+                }
+                if (i > 0)
+                {
+                    System.err.printf("context takeover = %b, frames = %d, bytes = %d -> %d (%.1f%%), deflate = %d ns/frame, inflate = %d ns/frame, deflate = %d ms/MiB%n",
+                            contextTakeover, frames, bytes, compressedBytes, 100F * compressedBytes / bytes,
+                            deflateNanos / frames, inflateNanos / frames,
+                            TimeUnit.NANOSECONDS.toMillis(deflateNanos * 1024 * 1024 / bytes));
+                }
+            }
+        }
+        finally
+        {
+            sender.close();
+            receiver.close();
+            pool.clear();
+        }
+    }
+
+    private ByteBuffer frame(int id, int messages, int messageSize)
+    {
+        StringBuilder chat = new StringBuilder(messageSize);
+        for (int i = 0; i < messageSize; ++i)
+            chat.append('x');
+
+        // Same shape of the messages sent by the load client
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < messages; ++i)
+        {
+            if (i > 0)
+                builder.append(",");
+            builder.append("{\"channel\":\"/chat/demo/").append((id + i) % 100).append("\",")
+                    .append("\"id\":\"").append(id + i).append("\",")
+                    .append("\"data\":{\"room\":").append((id + i) % 100).append(",")
+                    .append("\"user\":").append(id % 1000).append(",")
+                    .append("\"chat\":\"").append(chat).append("\",")
+                    .append("\"start\":").append(System.nanoTime()).append(",")
+                    .append("\"ID\":\"").append(id + i).append("\"}}");
+        }
+        builder.append("]");
+        return ByteBuffer.wrap(builder.toString().getBytes(UTF_8));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.benchmark.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.cometd.server.ext.ArrayIdQueue;
+
+/**
+ * <p>Measures the operations performed by the acknowledgement extension on the queue
+ * of unacknowledged messages: enqueueing messages in batches, trimming the queue when
+ * a batch is acknowledged, and copying the queue to send the messages again.</p>
+ * <p>Trimming is measured both element by element, as it used to be done, and in bulk
+ * with {@link ArrayIdQueue#removeUpTo(int)}.</p>
+ */
+public class ArrayIdQueueBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        ArrayIdQueueBenchmark benchmark = new ArrayIdQueueBenchmark();
+        benchmark.run();
+    }
+
+    public void run() throws Exception
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+
+        int messages = 50000;
+        System.err.printf("unacknowledged messages [%d]: ", messages);
+        String value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(messages);
+        messages = Integer.parseInt(value);
+
+        int batchSize = 10;
+        System.err.printf("messages per batch [%d]: ", batchSize);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(batchSize);
+        batchSize = Integer.parseInt(value);
+
+        int iterations = 10;
+        System.err.printf("iterations [%d]: ", iterations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(iterations);
+        iterations = Integer.parseInt(value);
+
+        Object message = new Object();
+        int batches = (messages + batchSize - 1) / batchSize;
+        // The first iteration warms up the JIT
+        for (int i = 0; i <= iterations; ++i)
+        {
+            long enqueue = 0;
+            long trimLoop = 0;
+            long trimBulk = 0;
+            long resend = 0;
+            for (int j = 0; j < 2; ++j)
+            {
+                ArrayIdQueue<Object> queue = new ArrayIdQueue<>(16, 32);
+                long begin = System.nanoTime();
+                enqueue(queue, message, messages, batchSize);
+                enqueue += System.nanoTime() - begin;
+
+                begin = System.nanoTime();
+                List<Object> copy = new ArrayList<>(queue);
+                resend += System.nanoTime() - begin;
+                if (copy.size() != messages)
+                    throw new IllegalStateException();
+
+                // Acknowledge half of the batches, then all of them
+                begin = System.nanoTime();
+                if (j == 0)
+                {
+                    trimLoop(queue, batches / 2);
+                    trimLoop(queue, batches);
+                }
+                else
+                {
+                    queue.removeUpTo(batches / 2);
+                    queue.removeUpTo(batches);
+                }
+                long elapsed = System.nanoTime() - begin;
+                if (j == 0)
+                    trimLoop = elapsed;
+                else
+                    trimBulk = elapsed;
+                if (!queue.isEmpty())
+                    throw new IllegalStateException();
+            }
+            if (i > 0)
+            {
+                System.err.printf("messages = %d, enqueue = %d ns/message, resend = %d ns/message, trim loop = %d us, trim bulk = %d us%n",
+                        messages, enqueue / 2 / messages, resend / 2 / messages,
+                        TimeUnit.NANOSECONDS.toMicros(trimLoop), TimeUnit.NANOSECONDS.toMicros(trimBulk));
+            }
+        }
+    }
+
+    private void enqueue(ArrayIdQueue<Object> queue, Object message, int messages, int batchSize)
+    {
+        queue.setCurrentId(1);
+        for (int i = 0; i < messages; ++i)
+        {
+            queue.add(message);
+            if ((i + 1) % batchSize == 0)
+                queue.incrementCurrentId();
+        }
+    }
+
+    private void trimLoop(ArrayIdQueue<Object> queue, int batch)
+    {
+        while (!queue.isEmpty() && queue.getAssociatedIdUnsafe(0) <= batch)
+            queue.remove();
+    }
+}
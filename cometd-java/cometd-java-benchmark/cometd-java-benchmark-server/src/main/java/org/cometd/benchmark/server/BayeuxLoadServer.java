@@ -131,6 +131,13 @@ public class BayeuxLoadServer
             value = String.valueOf(qos);
         qos = Boolean.parseBoolean(value);
 
+        boolean perMessageDeflate = false;
+        System.err.printf("permessage-deflate [%b]: ", perMessageDeflate);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(perMessageDeflate);
+        perMessageDeflate = Boolean.parseBoolean(value);
+
         MonitoringQueuedThreadPool jettyThreadPool = new MonitoringQueuedThreadPool(maxThreads);
 //        ExecutorThreadPool jettyThreadPool = new ExecutorThreadPool(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
         Server server = new Server(jettyThreadPool);
@@ -216,6 +223,7 @@ public class BayeuxLoadServer
         MonitoringThreadPoolExecutor websocketThreadPool = new MonitoringThreadPoolExecutor(maxThreads, jettyThreadPool.getIdleTimeout(), TimeUnit.MILLISECONDS, new ThreadPoolExecutor.AbortPolicy());
 
         LoadWebSocketTransport webSocketTransport = new LoadWebSocketTransport(bayeux, websocketThreadPool);
+        webSocketTransport.setOption(WebSocketTransport.PER_MESSAGE_DEFLATE_OPTION, perMessageDeflate);
         webSocketTransport.init();
         bayeux.addTransport(webSocketTransport);
         bayeux.setAllowedTransports("websocket", "long-polling");
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.benchmark.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ServerMessageImpl;
+import org.cometd.server.ServerSessionImpl;
+
+/**
+ * <p>Measures the memory allocated by the server for each {@code /meta/connect} cycle,
+ * with and without the recycling of meta replies.</p>
+ * <p>A cycle handles a {@code /meta/connect} message, extends and freezes the reply,
+ * writes the reply bytes like a transport does, and then recycles the reply.</p>
+ * <p>The allocated memory is measured with the HotSpot specific per-thread allocation counter.</p>
+ */
+public class MetaReplyBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        MetaReplyBenchmark benchmark = new MetaReplyBenchmark();
+        benchmark.run();
+    }
+
+    public void run() throws Exception
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+
+        int cycles = 1000000;
+        System.err.printf("connect cycles [%d]: ", cycles);
+        String value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(cycles);
+        cycles = Integer.parseInt(value);
+
+        int iterations = 5;
+        System.err.printf("iterations [%d]: ", iterations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(iterations);
+        iterations = Integer.parseInt(value);
+
+        run(0, cycles, iterations);
+        run(1024, cycles, iterations);
+    }
+
+    private void run(int poolSize, int cycles, int iterations) throws Exception
+    {
+        BayeuxServerImpl bayeux = new BayeuxServerImpl();
+        bayeux.setOption(BayeuxServerImpl.META_REPLY_POOL_SIZE, poolSize);
+        bayeux.start();
+        try
+        {
+            ServerSessionImpl session = bayeux.newServerSession();
+            bayeux.addServerSession(session);
+            session.handshake();
+            session.connected();
+
+            // The first iteration warms up the JIT
+            for (int i = 0; i <= iterations; ++i)
+            {
+                long allocated = allocatedBytes();
+                long begin = System.nanoTime();
+                for (int j = 0; j < cycles; ++j)
+                    cycle(bayeux, session, j);
+                long elapsed = System.nanoTime() - begin;
+                allocated = allocatedBytes() - allocated;
+                if (i > 0)
+                {
+                    System.err.printf("pool = %d, cycles = %d, elapsed = %d ms, allocated = %d bytes/cycle%n",
+                            poolSize, cycles, TimeUnit.NANOSECONDS.toMillis(elapsed), allocated / cycles);
+                }
+            }
+        }
+        finally
+        {
+            bayeux.stop();
+        }
+    }
+
+    private void cycle(BayeuxServerImpl bayeux, ServerSessionImpl session, int id)
+    {
+        ServerMessage.Mutable message = bayeux.newMessage();
+        message.setChannel(Channel.META_CONNECT);
+        message.setClientId(session.getId());
+        message.setId(String.valueOf(id));
+
+        ServerMessage.Mutable reply = bayeux.handle(session, message);
+        reply = bayeux.extendReply(session, session, reply);
+        if (reply != null)
+        {
+            bayeux.freeze(reply);
+            ((ServerMessageImpl)reply).writeJSONBytes(NullOutputStream.INSTANCE);
+            message.setAssociated(null);
+            bayeux.recycle(reply);
+        }
+    }
+
+    private static long allocatedBytes()
+    {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class NullOutputStream extends OutputStream
+    {
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.benchmark.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ServerSessionImpl;
+
+/**
+ * <p>Measures the contention on the message queue of a single session, when many
+ * publisher threads deliver messages to the session while one consumer thread,
+ * like a transport does, takes the queue.</p>
+ */
+public class SessionQueueBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        SessionQueueBenchmark benchmark = new SessionQueueBenchmark();
+        benchmark.run();
+    }
+
+    public void run() throws Exception
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+
+        int publishers = Runtime.getRuntime().availableProcessors();
+        System.err.printf("max publisher threads [%d]: ", publishers);
+        String value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(publishers);
+        publishers = Integer.parseInt(value);
+
+        int messages = 1000000;
+        System.err.printf("messages per publisher [%d]: ", messages);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(messages);
+        messages = Integer.parseInt(value);
+
+        int iterations = 5;
+        System.err.printf("iterations [%d]: ", iterations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(iterations);
+        iterations = Integer.parseInt(value);
+
+        BayeuxServerImpl bayeux = new BayeuxServerImpl();
+        bayeux.start();
+        try
+        {
+            for (int threads = 1; threads <= publishers; threads *= 2)
+            {
+                // The first iteration warms up the JIT
+                for (int i = 0; i <= iterations; ++i)
+                {
+                    long elapsed = run(bayeux, threads, messages);
+                    if (i > 0)
+                    {
+                        long total = (long)threads * messages;
+                        System.err.printf("publishers = %d, messages = %d, elapsed = %d ms, throughput = %d messages/s%n",
+                                threads, total, TimeUnit.NANOSECONDS.toMillis(elapsed), total * TimeUnit.SECONDS.toNanos(1) / elapsed);
+                    }
+                }
+            }
+        }
+        finally
+        {
+            bayeux.stop();
+        }
+    }
+
+    private long run(BayeuxServerImpl bayeux, int threads, final int messages) throws Exception
+    {
+        final BenchmarkSession session = new BenchmarkSession(bayeux);
+        final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final AtomicBoolean done = new AtomicBoolean();
+
+        for (int i = 0; i < threads; ++i)
+        {
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        for (int j = 0; j < messages; ++j)
+                            session.deliver(null, "/benchmark", j, null);
+                    }
+                    catch (Exception x)
+                    {
+                        x.printStackTrace();
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        Thread consumer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                while (!done.get())
+                {
+                    if (session.takeQueue().isEmpty())
+                        Thread.yield();
+                }
+            }
+        };
+        consumer.start();
+
+        barrier.await();
+        long begin = System.nanoTime();
+        latch.await();
+        long elapsed = System.nanoTime() - begin;
+        done.set(true);
+        consumer.join();
+        session.takeQueue();
+        return elapsed;
+    }
+
+    private static class BenchmarkSession extends ServerSessionImpl
+    {
+        private BenchmarkSession(BayeuxServerImpl bayeux)
+        {
+            super(bayeux);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.benchmark.server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cometd.oort.Oort;
+import org.cometd.oort.Seti;
+import org.cometd.server.BayeuxServerImpl;
+
+/**
+ * <p>Measures the throughput of {@link Seti} when many threads concurrently associate
+ * and disassociate users, look up their presence and send messages to them.</p>
+ * <p>Every user is always associated with one location, and threads randomly add and
+ * remove a second one, so that lookups and sends run concurrently with changes of the
+ * userId index.</p>
+ */
+public class SetiBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        SetiBenchmark benchmark = new SetiBenchmark();
+        benchmark.run();
+    }
+
+    public void run() throws Exception
+    {
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.err.printf("threads [%d]: ", threads);
+        String value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(threads);
+        threads = Integer.parseInt(value);
+
+        int users = 100000;
+        System.err.printf("users [%d]: ", users);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(users);
+        users = Integer.parseInt(value);
+
+        int operations = 1000000;
+        System.err.printf("operations per thread [%d]: ", operations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(operations);
+        operations = Integer.parseInt(value);
+
+        int batchSize = 10;
+        System.err.printf("users per send [%d]: ", batchSize);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(batchSize);
+        batchSize = Integer.parseInt(value);
+
+        int iterations = 5;
+        System.err.printf("iterations [%d]: ", iterations);
+        value = console.readLine().trim();
+        if (value.length() == 0)
+            value = String.valueOf(iterations);
+        iterations = Integer.parseInt(value);
+
+        BayeuxServerImpl bayeux = new BayeuxServerImpl();
+        Oort oort = new Oort(bayeux, "http://localhost/cometd");
+        BenchmarkSeti seti = new BenchmarkSeti(oort);
+
+        String[] userIds = new String[users];
+        for (int i = 0; i < users; ++i)
+        {
+            userIds[i] = "user" + i;
+            seti.addLocation(userIds[i], false);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            // The first iteration warms up the JIT
+            for (int i = 0; i <= iterations; ++i)
+            {
+                seti.sends.set(0);
+                List<Future<Void>> futures = new ArrayList<>();
+                long begin = System.nanoTime();
+                for (int j = 0; j < threads; ++j)
+                    futures.add(executor.submit(new Worker(seti, userIds, operations, batchSize)));
+                for (Future<Void> future : futures)
+                    future.get();
+                long elapsed = System.nanoTime() - begin;
+                if (i > 0)
+                {
+                    long total = (long)threads * operations;
+                    System.err.printf("threads = %d, operations = %d, elapsed = %d ms, throughput = %d ops/s, sends = %d%n",
+                            threads, total, TimeUnit.NANOSECONDS.toMillis(elapsed),
+                            total * TimeUnit.SECONDS.toNanos(1) / elapsed, seti.sends.get());
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private static class Worker implements Callable<Void>
+    {
+        private final BenchmarkSeti seti;
+        private final String[] userIds;
+        private final int operations;
+        private final int batchSize;
+
+        private Worker(BenchmarkSeti seti, String[] userIds, int operations, int batchSize)
+        {
+            this.seti = seti;
+            this.userIds = userIds;
+            this.operations = operations;
+            this.batchSize = batchSize;
+        }
+
+        public Void call() throws Exception
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            List<String> batch = new ArrayList<>(batchSize);
+            int present = 0;
+            for (int i = 0; i < operations; ++i)
+            {
+                String userId = userIds[random.nextInt(userIds.length)];
+                int operation = random.nextInt(100);
+                if (operation < 10)
+                {
+                    // Churn the second location of the user
+                    if (!seti.addLocation(userId, true))
+                        seti.removeLocation(userId);
+                }
+                else if (operation < 90)
+                {
+                    if (seti.isPresent(userId))
+                        ++present;
+                }
+                else
+                {
+                    batch.clear();
+                    for (int j = 0; j < batchSize; ++j)
+                        batch.add(userIds[random.nextInt(userIds.length)]);
+                    seti.sendMessage(batch, "/benchmark", "data");
+                }
+            }
+            // Every user is always present
+            if (present == 0 && operations > 100)
+                throw new IllegalStateException("Users not present");
+            return null;
+        }
+    }
+
+    private static class BenchmarkSeti extends Seti
+    {
+        private final AtomicLong sends = new AtomicLong();
+
+        private BenchmarkSeti(Oort oort)
+        {
+            super(oort);
+        }
+
+        private boolean addLocation(String userId, boolean churn)
+        {
+            return associate(userId, new BenchmarkLocation(userId, churn));
+        }
+
+        private boolean removeLocation(String userId)
+        {
+            return disassociate(userId, new BenchmarkLocation(userId, true));
+        }
+
+        private class BenchmarkLocation implements Location
+        {
+            private final String userId;
+            private final boolean churn;
+
+            private BenchmarkLocation(String userId, boolean churn)
+            {
+                this.userId = userId;
+                this.churn = churn;
+            }
+
+            public void send(String toUser, String toChannel, Object data)
+            {
+                sends.incrementAndGet();
+            }
+
+            public void receive(String toUser, String toChannel, Object data)
+            {
+                send(toUser, toChannel, data);
+            }
+
+            @Override
+            public boolean equals(Object obj)
+            {
+                if (this == obj)
+                    return true;
+                if (!(obj instanceof BenchmarkLocation))
+                    return false;
+                BenchmarkLocation that = (BenchmarkLocation)obj;
+                return userId.equals(that.userId) && churn == that.churn;
+            }
+
+            @Override
+            public int hashCode()
+            {
+                return 31 * userId.hashCode() + (churn ? 1 : 0);
+            }
+        }
+    }
+}
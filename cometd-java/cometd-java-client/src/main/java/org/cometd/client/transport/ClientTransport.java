@@ -16,6 +16,7 @@
 
 package org.cometd.client.transport;
 
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -85,6 +86,14 @@ public abstract class ClientTransport extends AbstractTransport
         setOption(JSON_CONTEXT, jsonContext);
     }
 
+    /**
+     * @return the JSON context configured with the {@link #JSON_CONTEXT} option, available after {@link #init()}
+     */
+    protected JSONContext.Client getJSONContextClient()
+    {
+        return jsonContext;
+    }
+
     public boolean isDebugEnabled()
     {
         return debug;
@@ -126,4 +135,15 @@ public abstract class ClientTransport extends AbstractTransport
     {
         return jsonContext.generate(messages);
     }
+
+    /**
+     * @param messages the messages to generate
+     * @param buffer the buffer, typically pooled, to generate the messages into
+     * @return the buffer containing the UTF-8 JSON bytes, ready to be read
+     * @see JSONContext.Client#generate(Message.Mutable[], ByteBuffer)
+     */
+    protected ByteBuffer generateJSON(Message.Mutable[] messages, ByteBuffer buffer)
+    {
+        return jsonContext.generate(messages, buffer);
+    }
 }
@@ -21,6 +21,7 @@ import java.net.CookieManager;
 import java.net.CookiePolicy;
 import java.net.HttpCookie;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -39,11 +40,12 @@ import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
-import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.ByteBufferPool;
 
 public class LongPollingTransport extends HttpClientTransport
 {
@@ -154,14 +156,26 @@ public class LongPollingTransport extends HttpClientTransport
             request.header(HttpHeader.COOKIE.asString(), builder.toString());
         }
 
-        request.content(new StringContentProvider(generateJSON(messages)));
+        final ByteBufferPool bufferPool = _httpClient.getByteBufferPool();
+        ByteBuffer buffer = bufferPool.acquire(_httpClient.getRequestBufferSize(), false);
+        final ByteBuffer content = generateJSON(messages, buffer);
+        // If the pooled buffer was too small, a larger buffer that
+        // does not belong to the pool was allocated in its place
+        final boolean pooled = content == buffer;
+        if (!pooled)
+            bufferPool.release(buffer);
+        request.content(new ByteBufferContentProvider(content));
 
         customize(request);
 
         synchronized (this)
         {
             if (_aborted)
+            {
+                if (pooled)
+                    bufferPool.release(content);
                 throw new IllegalStateException("Aborted");
+            }
             _requests.add(request);
         }
 
@@ -234,6 +248,10 @@ public class LongPollingTransport extends HttpClientTransport
                     _requests.remove(result.getRequest());
                 }
 
+                // The request content has been sent, the buffer can be reused
+                if (pooled)
+                    bufferPool.release(content);
+
                 if (result.isFailed())
                 {
                     listener.onFailure(result.getFailure(), messages);
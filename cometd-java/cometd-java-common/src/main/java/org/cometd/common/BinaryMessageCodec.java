@@ -0,0 +1,465 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.common;
+
+import java.io.StringReader;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.Message;
+
+/**
+ * <p>A compact binary encoding of Bayeux messages, used as an alternative to JSON
+ * on WebSocket connections that negotiate the {@link #PROTOCOL} sub-protocol.</p>
+ * <p>A frame holds a batch of messages, each prefixed by its length in bytes.
+ * Values are tagged; integers are encoded as variable length zig-zag numbers.
+ * Field names and the values of the {@code channel} and {@code subscription}
+ * fields are interned: the first time a string is sent it is assigned an id
+ * that is then sent in its place for the rest of the connection.
+ * The table of interned strings starts with the Bayeux field and meta channel
+ * names, and it is bounded: when it is full, new strings are sent literally.</p>
+ * <p>Values that are not maps, lists, arrays, strings, numbers or booleans are
+ * encoded as JSON text, using the {@link JSONContext} of the transport. Decoded objects are {@link HashMap}s, lists and arrays are
+ * decoded as {@code Object[]}, integers as {@link Long} and decimals as {@link Double},
+ * like the default JSON context does.</p>
+ * <p>This class is not thread safe: a connection must encode one frame at a time and
+ * decode one frame at a time, in the order the frames are written to the network.</p>
+ */
+public class BinaryMessageCodec
+{
+    public static final String PROTOCOL = "cometd-binary-1";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int VERSION = 1;
+    private static final int MAX_SYMBOLS = 4096;
+    private static final String[] WELL_KNOWN_SYMBOLS = new String[]{
+            Message.CHANNEL_FIELD, Message.ID_FIELD, Message.CLIENT_ID_FIELD, Message.DATA_FIELD,
+            Message.EXT_FIELD, Message.SUCCESSFUL_FIELD, Message.ADVICE_FIELD, Message.SUBSCRIPTION_FIELD,
+            Message.CONNECTION_TYPE_FIELD, Message.ERROR_FIELD, Message.TIMESTAMP_FIELD, Message.TRANSPORT_FIELD,
+            Message.VERSION_FIELD, Message.MIN_VERSION_FIELD, Message.SUPPORTED_CONNECTION_TYPES_FIELD,
+            Message.RECONNECT_FIELD, Message.INTERVAL_FIELD, Message.TIMEOUT_FIELD,
+            Channel.META_HANDSHAKE, Channel.META_CONNECT, Channel.META_SUBSCRIBE,
+            Channel.META_UNSUBSCRIBE, Channel.META_DISCONNECT
+    };
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int SYMBOL = 6;
+    private static final int LIST = 7;
+    private static final int MAP = 8;
+    private static final int JSON_TEXT = 9;
+    // Symbol references are offset by the two markers for literal and new strings
+    private static final int LITERAL = 0;
+    private static final int DEFINE = 1;
+
+    private final Map<String, Integer> _encodeSymbols = new HashMap<>();
+    private final List<String> _decodeSymbols = new ArrayList<>();
+    private final JSONContext.Parser _jsonParser;
+    private final JSONContext.Generator _jsonGenerator;
+    private byte[] _bytes = new byte[1024];
+    private int _length;
+
+    public BinaryMessageCodec()
+    {
+        this(new JettyJSONContextClient());
+    }
+
+    /**
+     * @param jsonContext the JSON context used to encode and decode values as JSON text
+     */
+    public BinaryMessageCodec(JSONContext.Client jsonContext)
+    {
+        this(jsonContext.getParser(), jsonContext.getGenerator());
+    }
+
+    /**
+     * @param jsonContext the JSON context used to encode and decode values as JSON text
+     */
+    public BinaryMessageCodec(JSONContext.Server jsonContext)
+    {
+        this(jsonContext.getParser(), jsonContext.getGenerator());
+    }
+
+    private BinaryMessageCodec(JSONContext.Parser jsonParser, JSONContext.Generator jsonGenerator)
+    {
+        _jsonParser = jsonParser;
+        _jsonGenerator = jsonGenerator;
+        for (String symbol : WELL_KNOWN_SYMBOLS)
+        {
+            _encodeSymbols.put(symbol, _encodeSymbols.size());
+            _decodeSymbols.add(symbol);
+        }
+    }
+
+    /**
+     * @param messages the messages to encode
+     * @return a buffer containing the encoded frame, ready to be read
+     */
+    public ByteBuffer encode(List<? extends Message> messages)
+    {
+        _length = 0;
+        writeByte(VERSION);
+        writeVarLong(messages.size());
+        for (Message message : messages)
+        {
+            // Reserve room for the length of the message, written once it is known
+            int start = _length;
+            ensureCapacity(4);
+            _length += 4;
+            writeMap(message, true);
+            int length = _length - start - 4;
+            _bytes[start] = (byte)(length >>> 24);
+            _bytes[start + 1] = (byte)(length >>> 16);
+            _bytes[start + 2] = (byte)(length >>> 8);
+            _bytes[start + 3] = (byte)length;
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(_bytes, _length));
+    }
+
+    /**
+     * @param frame the buffer containing the frame to decode
+     * @param factory the factory of the decoded messages
+     * @param <T> the type of the decoded messages
+     * @return the decoded messages
+     * @throws ParseException if the frame is malformed
+     */
+    public <T extends Message.Mutable> List<T> decode(ByteBuffer frame, Factory<T> factory) throws ParseException
+    {
+        int start = frame.position();
+        try
+        {
+            int version = frame.get() & 0xFF;
+            if (version != VERSION)
+                throw new ParseException("Unsupported version " + version, start);
+            int count = readLength(frame);
+            List<T> result = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i)
+            {
+                int length = frame.getInt();
+                int end = frame.position() + length;
+                T message = factory.newMessage();
+                readMap(frame, message);
+                if (frame.position() != end)
+                    throw new ParseException("Invalid message length " + length, frame.position() - start);
+                result.add(message);
+            }
+            return result;
+        }
+        catch (ParseException x)
+        {
+            throw x;
+        }
+        catch (RuntimeException x)
+        {
+            ParseException failure = new ParseException("Malformed frame", frame.position() - start);
+            failure.initCause(x);
+            throw failure;
+        }
+    }
+
+    private void writeMap(Map<?, ?> map, boolean message)
+    {
+        writeVarLong(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            String key = String.valueOf(entry.getKey());
+            writeSymbol(key);
+            Object value = entry.getValue();
+            if (message && value instanceof String &&
+                    (Message.CHANNEL_FIELD.equals(key) || Message.SUBSCRIPTION_FIELD.equals(key)))
+            {
+                writeByte(SYMBOL);
+                writeSymbol((String)value);
+            }
+            else
+            {
+                writeValue(value);
+            }
+        }
+    }
+
+    private void writeValue(Object value)
+    {
+        if (value == null)
+        {
+            writeByte(NULL);
+        }
+        else if (value instanceof String)
+        {
+            writeByte(STRING);
+            writeString((String)value);
+        }
+        else if (value instanceof Boolean)
+        {
+            writeByte((Boolean)value ? TRUE : FALSE);
+        }
+        else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+        {
+            writeByte(LONG);
+            long number = ((Number)value).longValue();
+            writeVarLong((number << 1) ^ (number >> 63));
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            writeByte(DOUBLE);
+            long bits = Double.doubleToLongBits(((Number)value).doubleValue());
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                _bytes[_length++] = (byte)(bits >>> shift);
+        }
+        else if (value instanceof Map)
+        {
+            writeByte(MAP);
+            writeMap((Map<?, ?>)value, false);
+        }
+        else if (value instanceof Collection)
+        {
+            Collection<?> collection = (Collection<?>)value;
+            writeByte(LIST);
+            writeVarLong(collection.size());
+            for (Object element : collection)
+                writeValue(element);
+        }
+        else if (value instanceof Object[])
+        {
+            Object[] array = (Object[])value;
+            writeByte(LIST);
+            writeVarLong(array.length);
+            for (Object element : array)
+                writeValue(element);
+        }
+        else if (value.getClass().isArray())
+        {
+            int length = Array.getLength(value);
+            writeByte(LIST);
+            writeVarLong(length);
+            for (int i = 0; i < length; ++i)
+                writeValue(Array.get(value, i));
+        }
+        else if (value instanceof Character)
+        {
+            writeByte(STRING);
+            writeString(value.toString());
+        }
+        else
+        {
+            writeByte(JSON_TEXT);
+            writeString(_jsonGenerator.generate(value));
+        }
+    }
+
+    private void writeSymbol(String symbol)
+    {
+        Integer id = _encodeSymbols.get(symbol);
+        if (id != null)
+        {
+            writeVarLong(id + 2);
+        }
+        else if (_encodeSymbols.size() < MAX_SYMBOLS)
+        {
+            _encodeSymbols.put(symbol, _encodeSymbols.size());
+            writeVarLong(DEFINE);
+            writeString(symbol);
+        }
+        else
+        {
+            writeVarLong(LITERAL);
+            writeString(symbol);
+        }
+    }
+
+    private void writeString(String value)
+    {
+        int length = value.length();
+        for (int i = 0; i < length; ++i)
+        {
+            if (value.charAt(i) >= 0x80)
+            {
+                byte[] bytes = value.getBytes(UTF_8);
+                writeVarLong(bytes.length);
+                ensureCapacity(bytes.length);
+                System.arraycopy(bytes, 0, _bytes, _length, bytes.length);
+                _length += bytes.length;
+                return;
+            }
+        }
+        // ASCII strings are copied without intermediate arrays
+        writeVarLong(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; ++i)
+            _bytes[_length++] = (byte)value.charAt(i);
+    }
+
+    private void writeVarLong(long value)
+    {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0)
+        {
+            _bytes[_length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        _bytes[_length++] = (byte)value;
+    }
+
+    private void writeByte(int value)
+    {
+        ensureCapacity(1);
+        _bytes[_length++] = (byte)value;
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (_bytes.length - _length < length)
+            _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _length + length));
+    }
+
+    private void readMap(ByteBuffer frame, Map<String, Object> map) throws ParseException
+    {
+        int size = readLength(frame);
+        for (int i = 0; i < size; ++i)
+        {
+            String key = readSymbol(frame);
+            map.put(key, readValue(frame));
+        }
+    }
+
+    private Object readValue(ByteBuffer frame) throws ParseException
+    {
+        int tag = frame.get() & 0xFF;
+        switch (tag)
+        {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case LONG:
+            {
+                long value = readVarLong(frame);
+                return (value >>> 1) ^ -(value & 1);
+            }
+            case DOUBLE:
+                return Double.longBitsToDouble(frame.getLong());
+            case STRING:
+                return readString(frame);
+            case SYMBOL:
+                return readSymbol(frame);
+            case LIST:
+            {
+                Object[] result = new Object[readLength(frame)];
+                for (int i = 0; i < result.length; ++i)
+                    result[i] = readValue(frame);
+                return result;
+            }
+            case MAP:
+            {
+                Map<String, Object> result = new HashMap<>();
+                readMap(frame, result);
+                return result;
+            }
+            case JSON_TEXT:
+                return _jsonParser.parse(new StringReader(readString(frame)), Object.class);
+            default:
+                throw new ParseException("Unknown tag " + tag, frame.position());
+        }
+    }
+
+    private String readSymbol(ByteBuffer frame) throws ParseException
+    {
+        long marker = readVarLong(frame);
+        if (marker == LITERAL)
+            return readString(frame);
+        if (marker == DEFINE)
+        {
+            if (_decodeSymbols.size() >= MAX_SYMBOLS)
+                throw new ParseException("Too many symbols", frame.position());
+            String symbol = readString(frame);
+            _decodeSymbols.add(symbol);
+            return symbol;
+        }
+        long id = marker - 2;
+        if (id >= _decodeSymbols.size())
+            throw new ParseException("Unknown symbol " + id, frame.position());
+        return _decodeSymbols.get((int)id);
+    }
+
+    private String readString(ByteBuffer frame) throws ParseException
+    {
+        int length = readLength(frame);
+        String result;
+        if (frame.hasArray())
+        {
+            result = new String(frame.array(), frame.arrayOffset() + frame.position(), length, UTF_8);
+            frame.position(frame.position() + length);
+        }
+        else
+        {
+            byte[] bytes = new byte[length];
+            frame.get(bytes);
+            result = new String(bytes, UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Reads the length of a string or the number of elements of a list, a map or a frame;
+     * each byte or element takes at least one byte, so the length cannot exceed the bytes left.</p>
+     */
+    private int readLength(ByteBuffer frame) throws ParseException
+    {
+        long length = readVarLong(frame);
+        if (length < 0 || length > frame.remaining())
+            throw new ParseException("Invalid length " + length, frame.position());
+        return (int)length;
+    }
+
+    private long readVarLong(ByteBuffer frame)
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = frame.get();
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+        throw new IllegalArgumentException("Invalid variable length number");
+    }
+
+    /**
+     * <p>Creates the messages decoded by {@link #decode(ByteBuffer, Factory)}.</p>
+     *
+     * @param <T> the type of the messages
+     */
+    public interface Factory<T extends Message.Mutable>
+    {
+        public T newMessage();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.common;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>An {@link OutputStream} that writes into a {@link ByteBuffer}, starting at the buffer position.</p>
+ * <p>When the buffer is full, a new buffer of double capacity is allocated, and the bytes
+ * written so far are copied into it.</p>
+ */
+class ByteBufferOutputStream extends OutputStream
+{
+    private ByteBuffer _buffer;
+
+    ByteBufferOutputStream(ByteBuffer buffer)
+    {
+        buffer.limit(buffer.capacity());
+        _buffer = buffer;
+    }
+
+    @Override
+    public void write(int b)
+    {
+        ensureCapacity(1);
+        _buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length)
+    {
+        ensureCapacity(length);
+        _buffer.put(bytes, offset, length);
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (_buffer.remaining() >= length)
+            return;
+        int capacity = Math.max(_buffer.capacity(), 64);
+        while (capacity - _buffer.position() < length)
+            capacity <<= 1;
+        ByteBuffer buffer = _buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        _buffer.flip();
+        buffer.put(_buffer);
+        _buffer = buffer;
+    }
+
+    /**
+     * @return the buffer containing the bytes written, flipped so that it is ready to be read
+     */
+    ByteBuffer flip()
+    {
+        _buffer.flip();
+        return _buffer;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.common;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * <p>A bounded pool of raw (no zlib header) {@link Deflater}s.</p>
+ * <p>Each deflater holds a sizable amount of native memory, so connections that do not
+ * keep a compression context between messages borrow a deflater for each message
+ * from a shared pool rather than owning one.</p>
+ */
+public class DeflaterPool
+{
+    private final Queue<Deflater> _deflaters;
+    private final int _level;
+    private volatile boolean _closed;
+
+    /**
+     * @param capacity the max number of idle deflaters kept in the pool, or zero to disable pooling
+     * @param level the compression level of the deflaters
+     */
+    public DeflaterPool(int capacity, int level)
+    {
+        _deflaters = capacity > 0 ? new ArrayBlockingQueue<Deflater>(capacity) : null;
+        _level = level;
+    }
+
+    /**
+     * @return an idle deflater, or a new one if the pool is empty
+     */
+    public Deflater acquire()
+    {
+        Deflater deflater = _deflaters == null ? null : _deflaters.poll();
+        return deflater == null ? new Deflater(_level, true) : deflater;
+    }
+
+    /**
+     * <p>Resets the given deflater and returns it to the pool, or ends it if the pool is full or closed.</p>
+     *
+     * @param deflater the deflater to release
+     */
+    public void release(Deflater deflater)
+    {
+        deflater.reset();
+        if (!_closed && _deflaters != null && _deflaters.offer(deflater))
+        {
+            // The pool may have been closed concurrently
+            if (_closed)
+                clear();
+            return;
+        }
+        deflater.end();
+    }
+
+    /**
+     * @return the number of idle deflaters in the pool
+     */
+    public int getSize()
+    {
+        return _deflaters == null ? 0 : _deflaters.size();
+    }
+
+    /**
+     * <p>Ends all the idle deflaters in the pool.</p>
+     */
+    public void clear()
+    {
+        if (_deflaters == null)
+            return;
+        Deflater deflater;
+        while ((deflater = _deflaters.poll()) != null)
+            deflater.end();
+    }
+
+    /**
+     * <p>Ends all the idle deflaters in the pool, and the deflaters released from now on,
+     * so that the native memory of deflaters still in use is freed when they are released.</p>
+     */
+    public void close()
+    {
+        _closed = true;
+        clear();
+    }
+}
@@ -16,8 +16,11 @@
 
 package org.cometd.common;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 import org.cometd.bayeux.Message;
@@ -42,6 +45,41 @@ public interface JSONContext
     {
         public String generate(Object object);
     }
+
+    /**
+     * <p>Receives the messages of a batch one by one, as soon as each one has been parsed.</p>
+     *
+     * @param <T> the type of the messages
+     * @see StreamingParser#parse(Reader, MessageListener)
+     */
+    public interface MessageListener<T extends Message.Mutable>
+    {
+        public void onMessage(T message) throws IOException;
+    }
+
+    /**
+     * <p>Optional interface implemented by {@link Client} and {@link Server} JSON contexts
+     * that are able to parse a batch of messages in streaming mode.</p>
+     * <p>Users of JSON contexts should check whether this interface is implemented, and
+     * otherwise fall back to {@link JSONParserGenerator#parse(Reader)}.</p>
+     *
+     * @param <T> the type of the messages
+     */
+    public interface StreamingParser<T extends Message.Mutable>
+    {
+        /**
+         * <p>Parses a batch of messages in streaming mode, notifying the given listener
+         * with each message as soon as it has been parsed, without building the whole batch first.</p>
+         * <p>Messages that precede a malformed message have already been notified when
+         * the {@link ParseException} is thrown.</p>
+         *
+         * @param reader the reader to parse the batch from
+         * @param listener the listener notified of each message
+         * @throws ParseException if the batch cannot be parsed
+         * @throws IOException if the listener throws it
+         */
+        public void parse(Reader reader, MessageListener<T> listener) throws ParseException, IOException;
+    }
 }
 
 interface JSONParserGenerator<T extends Message.Mutable>
@@ -56,6 +94,41 @@ interface JSONParserGenerator<T extends Message.Mutable>
 
     public String generate(T[] messages);
 
+    /**
+     * <p>Writes the UTF-8 bytes of the JSON representation of the given message
+     * to the given stream, without creating an intermediate string.</p>
+     * <p>The stream is flushed but not closed.</p>
+     *
+     * @param message the message to generate
+     * @param output the stream to write to
+     * @throws IOException if the write fails
+     */
+    public void generate(T message, OutputStream output) throws IOException;
+
+    /**
+     * <p>Writes the UTF-8 bytes of the JSON representation of the given messages
+     * to the given stream, without creating an intermediate string.</p>
+     * <p>The stream is flushed but not closed.</p>
+     *
+     * @param messages the messages to generate
+     * @param output the stream to write to
+     * @throws IOException if the write fails
+     */
+    public void generate(T[] messages, OutputStream output) throws IOException;
+
+    /**
+     * <p>Writes the UTF-8 bytes of the JSON representation of the given messages
+     * to the given buffer, starting at its position.</p>
+     * <p>The buffer is typically taken from a pool; if it is not large enough,
+     * a larger buffer is allocated and returned instead.</p>
+     *
+     * @param messages the messages to generate
+     * @param buffer the buffer to write to
+     * @return the buffer containing the JSON bytes, flipped so that it is ready to be read;
+     * it may be a different buffer than the given one
+     */
+    public ByteBuffer generate(T[] messages, ByteBuffer buffer);
+
     public JSONContext.Parser getParser();
 
     public JSONContext.Generator getGenerator();
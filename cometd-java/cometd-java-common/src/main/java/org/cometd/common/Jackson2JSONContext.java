@@ -18,14 +18,20 @@ package org.cometd.common;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.cometd.bayeux.Message;
 
-public abstract class Jackson2JSONContext<T extends Message.Mutable, I extends T>
+public abstract class Jackson2JSONContext<T extends Message.Mutable, I extends T> implements JSONContext.StreamingParser<T>
 {
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final JavaType rootArrayType;
@@ -78,6 +84,66 @@ public abstract class Jackson2JSONContext<T extends Message.Mutable, I extends T
         }
     }
 
+    public void parse(Reader reader, JSONContext.MessageListener<T> listener) throws ParseException, IOException
+    {
+        JsonParser parser = newParser(reader);
+        JsonToken token = nextToken(parser);
+        if (token == JsonToken.START_ARRAY)
+        {
+            while (true)
+            {
+                token = nextToken(parser);
+                if (token == JsonToken.END_ARRAY)
+                    break;
+                listener.onMessage(readMessage(parser));
+            }
+        }
+        else if (token == JsonToken.START_OBJECT)
+        {
+            listener.onMessage(readMessage(parser));
+        }
+        else if (token != null)
+        {
+            throw new ParseException("Unexpected token " + token, -1);
+        }
+    }
+
+    private JsonParser newParser(Reader reader) throws ParseException
+    {
+        try
+        {
+            return getObjectMapper().getFactory().createParser(reader);
+        }
+        catch (IOException x)
+        {
+            throw (ParseException)new ParseException("", -1).initCause(x);
+        }
+    }
+
+    private JsonToken nextToken(JsonParser parser) throws ParseException
+    {
+        try
+        {
+            return parser.nextToken();
+        }
+        catch (IOException x)
+        {
+            throw (ParseException)new ParseException("", -1).initCause(x);
+        }
+    }
+
+    private T readMessage(JsonParser parser) throws ParseException
+    {
+        try
+        {
+            return getObjectMapper().readValue(parser, rootArrayType.getContentType());
+        }
+        catch (IOException x)
+        {
+            throw (ParseException)new ParseException("", -1).initCause(x);
+        }
+    }
+
     public String generate(T message)
     {
         try
@@ -102,6 +168,40 @@ public abstract class Jackson2JSONContext<T extends Message.Mutable, I extends T
         }
     }
 
+    public void generate(T message, OutputStream output) throws IOException
+    {
+        writeValue(message, output);
+    }
+
+    public void generate(T[] messages, OutputStream output) throws IOException
+    {
+        writeValue(messages, output);
+    }
+
+    public ByteBuffer generate(T[] messages, ByteBuffer buffer)
+    {
+        ByteBufferOutputStream output = new ByteBufferOutputStream(buffer);
+        try
+        {
+            writeValue(messages, output);
+            return output.flip();
+        }
+        catch (IOException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private void writeValue(Object value, OutputStream output) throws IOException
+    {
+        // The generator encodes directly to UTF-8 bytes, without an intermediate string
+        JsonGenerator generator = getObjectMapper().getFactory().createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        getObjectMapper().writeValue(generator, value);
+        // Flushes to the stream without closing it
+        generator.close();
+    }
+
     public JSONContext.Parser getParser()
     {
         return new ObjectMapperParser();
@@ -16,9 +16,14 @@
 
 package org.cometd.common;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.Map;
@@ -26,8 +31,9 @@ import java.util.Map;
 import org.cometd.bayeux.Message;
 import org.eclipse.jetty.util.ajax.JSON;
 
-public abstract class JettyJSONContext<T extends Message.Mutable>
+public abstract class JettyJSONContext<T extends Message.Mutable> implements JSONContext.StreamingParser<T>
 {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private final FieldJSON _jsonParser = new FieldJSON();
     private final FieldJSON _messageParser = new MessageJSON();
     private final FieldJSON _messagesParser = new MessagesJSON();
@@ -47,7 +53,7 @@ public abstract class JettyJSONContext<T extends Message.Mutable>
 
     public T[] parse(InputStream stream) throws ParseException
     {
-        return parse(new InputStreamReader(stream, Charset.forName("UTF-8")));
+        return parse(new InputStreamReader(stream, UTF_8));
     }
 
     public T[] parse(Reader reader) throws ParseException
@@ -76,6 +82,75 @@ public abstract class JettyJSONContext<T extends Message.Mutable>
         }
     }
 
+    public void parse(Reader reader, JSONContext.MessageListener<T> listener) throws ParseException, IOException
+    {
+        JSON.Source source = new JSON.ReaderSource(reader);
+        char c = nextChar(source);
+        if (c == '[')
+        {
+            source.next();
+            while (true)
+            {
+                c = nextChar(source);
+                if (c == ']')
+                    break;
+                listener.onMessage(parseMessage(source));
+                c = nextChar(source);
+                if (c == ',')
+                    source.next();
+                else if (c != ']')
+                    throw new ParseException("Unexpected character '" + c + "'", -1);
+            }
+        }
+        else if (c == '{')
+        {
+            listener.onMessage(parseMessage(source));
+        }
+        else if (c != 0)
+        {
+            throw new ParseException("Unexpected character '" + c + "'", -1);
+        }
+    }
+
+    /**
+     * @return the next non whitespace character, without consuming it, or 0 at the end of the input
+     */
+    private char nextChar(JSON.Source source) throws ParseException
+    {
+        try
+        {
+            while (source.hasNext())
+            {
+                char c = source.peek();
+                if (!Character.isWhitespace(c))
+                    return c;
+                source.next();
+            }
+            return 0;
+        }
+        catch (Exception x)
+        {
+            throw (ParseException)new ParseException("", -1).initCause(x);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T parseMessage(JSON.Source source) throws ParseException
+    {
+        Object object;
+        try
+        {
+            object = _messageParser.parse(source);
+        }
+        catch (Exception x)
+        {
+            throw (ParseException)new ParseException("", -1).initCause(x);
+        }
+        if (!(object instanceof Message.Mutable))
+            throw new ParseException("Invalid message " + object, -1);
+        return (T)object;
+    }
+
     @SuppressWarnings("unchecked")
     private T[] adapt(Object object)
     {
@@ -98,6 +173,38 @@ public abstract class JettyJSONContext<T extends Message.Mutable>
         return _messagesParser.toJSON(messages);
     }
 
+    public void generate(T message, OutputStream output) throws IOException
+    {
+        append(_messageParser, message, output);
+    }
+
+    public void generate(T[] messages, OutputStream output) throws IOException
+    {
+        append(_messagesParser, messages, output);
+    }
+
+    public ByteBuffer generate(T[] messages, ByteBuffer buffer)
+    {
+        ByteBufferOutputStream output = new ByteBufferOutputStream(buffer);
+        try
+        {
+            append(_messagesParser, messages, output);
+            return output.flip();
+        }
+        catch (IOException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private void append(JSON json, Object value, OutputStream output) throws IOException
+    {
+        // Characters are encoded as they are appended, without an intermediate string
+        Writer writer = new OutputStreamWriter(output, UTF_8);
+        json.append(writer, value);
+        writer.flush();
+    }
+
     public JSONContext.Parser getParser()
     {
         return new JSONParser();
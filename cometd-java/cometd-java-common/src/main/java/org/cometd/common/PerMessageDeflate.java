@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>The compression codec of the {@code permessage-deflate} WebSocket extension (RFC 7692),
+ * independent of the WebSocket implementation.</p>
+ * <p>Each message is compressed with a {@link Deflater#SYNC_FLUSH sync flush}, and the
+ * trailing {@code 0x00 0x00 0xFF 0xFF} bytes are removed from its last frame; they are
+ * appended back to the last frame of a message before decompressing it.</p>
+ * <p>When the compression context is not taken over between messages, the deflater is
+ * borrowed from a {@link DeflaterPool} for each message and returned at the end of the
+ * message; otherwise it is borrowed when the first message is compressed and returned
+ * when this object is {@link #close() closed}.</p>
+ * <p>This class is not thread safe: a connection must compress one message at a time
+ * and decompress one message at a time.</p>
+ */
+public class PerMessageDeflate
+{
+    public static final String NAME = "permessage-deflate";
+    public static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    public static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final byte[] TAIL = new byte[]{0x00, 0x00, (byte)0xFF, (byte)0xFF};
+
+    private final DeflaterPool _pool;
+    private final boolean _deflateContextTakeover;
+    private final boolean _inflateContextTakeover;
+    private Deflater _deflater;
+    private Inflater _inflater;
+
+    /**
+     * @param pool the pool deflaters are borrowed from
+     * @param deflateContextTakeover whether the compression context is kept between outgoing messages
+     * @param inflateContextTakeover whether the peer keeps its compression context between incoming messages
+     */
+    public PerMessageDeflate(DeflaterPool pool, boolean deflateContextTakeover, boolean inflateContextTakeover)
+    {
+        _pool = pool;
+        _deflateContextTakeover = deflateContextTakeover;
+        _inflateContextTakeover = inflateContextTakeover;
+    }
+
+    public boolean isDeflateContextTakeover()
+    {
+        return _deflateContextTakeover;
+    }
+
+    public boolean isInflateContextTakeover()
+    {
+        return _inflateContextTakeover;
+    }
+
+    /**
+     * @param payload the payload of an outgoing frame, left untouched
+     * @param fin whether the frame is the last of its message
+     * @return the compressed payload
+     */
+    public ByteBuffer deflate(ByteBuffer payload, boolean fin)
+    {
+        Deflater deflater = _deflater;
+        if (deflater == null)
+            deflater = _deflater = _pool.acquire();
+
+        byte[] input = toArray(payload);
+        deflater.setInput(input);
+        byte[] output = new byte[Math.max(64, input.length / 2 + 16)];
+        int length = 0;
+        while (true)
+        {
+            int space = output.length - length;
+            length += deflater.deflate(output, length, space, Deflater.SYNC_FLUSH);
+            // A sync flush that fills the output may have more bytes to flush
+            if (output.length - length > 0)
+                break;
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+
+        if (fin)
+        {
+            if (endsWithTail(output, length))
+                length -= TAIL.length;
+            if (!_deflateContextTakeover)
+            {
+                _deflater = null;
+                _pool.release(deflater);
+            }
+        }
+
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * @param payload the payload of an incoming compressed frame, left untouched
+     * @param fin whether the frame is the last of its message
+     * @param maxSize the max size of the decompressed payload, or a non positive value for no limit
+     * @return the decompressed payload
+     * @throws DataFormatException if the payload is not valid deflate data, or if it decompresses to more than {@code maxSize} bytes
+     */
+    public ByteBuffer inflate(ByteBuffer payload, boolean fin, long maxSize) throws DataFormatException
+    {
+        Inflater inflater = _inflater;
+        if (inflater == null)
+            inflater = _inflater = new Inflater(true);
+
+        byte[] input = toArray(payload);
+        if (fin)
+        {
+            input = Arrays.copyOf(input, input.length + TAIL.length);
+            System.arraycopy(TAIL, 0, input, input.length - TAIL.length, TAIL.length);
+        }
+        inflater.setInput(input);
+
+        byte[] output = new byte[Math.max(64, input.length * 4)];
+        int length = 0;
+        while (true)
+        {
+            if (length == output.length)
+            {
+                if (maxSize > 0 && length >= maxSize)
+                    throw new DataFormatException("Inflated payload exceeds " + maxSize + " bytes");
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            int inflated = inflater.inflate(output, length, output.length - length);
+            length += inflated;
+            if (inflated == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary()))
+                break;
+        }
+        if (maxSize > 0 && length > maxSize)
+            throw new DataFormatException("Inflated payload exceeds " + maxSize + " bytes");
+
+        if (fin && (!_inflateContextTakeover || inflater.finished()))
+            inflater.reset();
+
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * <p>Returns the deflater to the pool and releases the inflater.</p>
+     */
+    public void close()
+    {
+        Deflater deflater = _deflater;
+        _deflater = null;
+        if (deflater != null)
+            _pool.release(deflater);
+        Inflater inflater = _inflater;
+        _inflater = null;
+        if (inflater != null)
+            inflater.end();
+    }
+
+    private static byte[] toArray(ByteBuffer payload)
+    {
+        if (payload == null)
+            return new byte[0];
+        byte[] result = new byte[payload.remaining()];
+        payload.duplicate().get(result);
+        return result;
+    }
+
+    private static boolean endsWithTail(byte[] bytes, int length)
+    {
+        if (length < TAIL.length)
+            return false;
+        for (int i = 0; i < TAIL.length; ++i)
+        {
+            if (bytes[length - TAIL.length + i] != TAIL[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[deflate=%b,inflate=%b]", NAME, _deflateContextTakeover, _inflateContextTakeover);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.common;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cometd.bayeux.Message;
+import org.eclipse.jetty.util.ajax.JSON;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryMessageCodecTest
+{
+    private static final BinaryMessageCodec.Factory<Message.Mutable> FACTORY = new BinaryMessageCodec.Factory<Message.Mutable>()
+    {
+        public Message.Mutable newMessage()
+        {
+            return new HashMapMessage();
+        }
+    };
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Message.Mutable message = new HashMapMessage();
+        message.setChannel("/foo/bar");
+        message.setId("1");
+        message.setClientId("abc123");
+        Map<String, Object> data = new HashMap<>();
+        data.put("string", "caf\u00E9");
+        data.put("long", -1234567890123L);
+        data.put("int", 42);
+        data.put("double", 3.5);
+        data.put("true", true);
+        data.put("null", null);
+        data.put("list", Arrays.asList(1, "two", Collections.singletonMap("three", 3)));
+        data.put("array", new int[]{4, 5});
+        message.setData(data);
+
+        BinaryMessageCodec encoder = new BinaryMessageCodec();
+        BinaryMessageCodec decoder = new BinaryMessageCodec();
+        List<Message.Mutable> messages = decoder.decode(encoder.encode(Collections.singletonList(message)), FACTORY);
+
+        Assert.assertEquals(1, messages.size());
+        Message.Mutable result = messages.get(0);
+        Assert.assertEquals("/foo/bar", result.getChannel());
+        Assert.assertEquals("1", result.getId());
+        Assert.assertEquals("abc123", result.getClientId());
+        Map<String, Object> resultData = result.getDataAsMap();
+        Assert.assertEquals("caf\u00E9", resultData.get("string"));
+        Assert.assertEquals(-1234567890123L, resultData.get("long"));
+        Assert.assertEquals(42L, resultData.get("int"));
+        Assert.assertEquals(3.5, resultData.get("double"));
+        Assert.assertEquals(Boolean.TRUE, resultData.get("true"));
+        Assert.assertTrue(resultData.containsKey("null"));
+        Assert.assertNull(resultData.get("null"));
+        Object[] list = (Object[])resultData.get("list");
+        Assert.assertEquals(1L, list[0]);
+        Assert.assertEquals("two", list[1]);
+        Assert.assertEquals(Collections.singletonMap("three", 3L), list[2]);
+        Assert.assertArrayEquals(new Object[]{4L, 5L}, (Object[])resultData.get("array"));
+    }
+
+    @Test
+    public void testValuesAreEncodedWithJSONContext() throws Exception
+    {
+        JettyJSONContextClient jsonContext = new JettyJSONContextClient();
+        jsonContext.getJSON().addConvertor(Custom.class, new JSON.Convertor()
+        {
+            public void toJSON(Object obj, JSON.Output out)
+            {
+                out.add("value", ((Custom)obj).value);
+            }
+
+            public Object fromJSON(Map object)
+            {
+                throw new UnsupportedOperationException();
+            }
+        });
+
+        Message.Mutable message = new HashMapMessage();
+        message.setChannel("/foo");
+        message.setData(Collections.singletonMap("custom", new Custom("bar")));
+
+        BinaryMessageCodec encoder = new BinaryMessageCodec(jsonContext);
+        BinaryMessageCodec decoder = new BinaryMessageCodec(new JettyJSONContextClient());
+        List<Message.Mutable> messages = decoder.decode(encoder.encode(Collections.singletonList(message)), FACTORY);
+
+        Map<String, Object> data = messages.get(0).getDataAsMap();
+        Assert.assertEquals(Collections.singletonMap("value", "bar"), data.get("custom"));
+    }
+
+    @Test
+    public void testChannelsAreInterned() throws Exception
+    {
+        BinaryMessageCodec encoder = new BinaryMessageCodec();
+        BinaryMessageCodec decoder = new BinaryMessageCodec();
+
+        Message.Mutable message = new HashMapMessage();
+        message.setChannel("/a/rather/long/channel/name");
+        message.put("customField", "value");
+        List<Message.Mutable> batch = Collections.singletonList(message);
+
+        ByteBuffer first = encoder.encode(batch);
+        ByteBuffer second = encoder.encode(batch);
+        // The second frame refers to the channel and field names by id
+        Assert.assertTrue(second.remaining() < first.remaining());
+
+        Assert.assertEquals(message, decoder.decode(first, FACTORY).get(0));
+        Assert.assertEquals(message, decoder.decode(second, FACTORY).get(0));
+    }
+
+    @Test
+    public void testManyChannels() throws Exception
+    {
+        BinaryMessageCodec encoder = new BinaryMessageCodec();
+        BinaryMessageCodec decoder = new BinaryMessageCodec();
+
+        // More channels than interned strings: the exceeding ones are sent literally
+        for (int i = 0; i < 10; ++i)
+        {
+            List<Message.Mutable> batch = new ArrayList<>();
+            for (int j = 0; j < 1000; ++j)
+            {
+                Message.Mutable message = new HashMapMessage();
+                message.setChannel("/channel/" + (i * 1000 + j));
+                message.setData("data");
+                batch.add(message);
+            }
+            List<Message.Mutable> result = decoder.decode(encoder.encode(batch), FACTORY);
+            Assert.assertEquals(batch, result);
+        }
+    }
+
+    @Test
+    public void testMalformedFrame() throws Exception
+    {
+        Message.Mutable message = new HashMapMessage();
+        message.setChannel("/foo");
+        ByteBuffer frame = new BinaryMessageCodec().encode(Collections.singletonList(message));
+        frame.limit(frame.limit() - 1);
+        try
+        {
+            new BinaryMessageCodec().decode(frame, FACTORY);
+            Assert.fail();
+        }
+        catch (ParseException expected)
+        {
+        }
+    }
+
+    private static class Custom
+    {
+        private final String value;
+
+        private Custom(String value)
+        {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cometd.bayeux.Message;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class JSONContextGenerateTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Parameters
+    public static Iterable<Object[]> data()
+    {
+        return Arrays.asList(new Object[][]
+                {
+                        {new JettyJSONContextClient()},
+                        {new Jackson1JSONContextClient()},
+                        {new Jackson2JSONContextClient()}
+                }
+        );
+    }
+
+    private final JSONContext.Client _jsonContext;
+
+    public JSONContextGenerateTest(JSONContext.Client jsonContext)
+    {
+        _jsonContext = jsonContext;
+    }
+
+    private Message.Mutable[] newMessages()
+    {
+        Message.Mutable message1 = new HashMapMessage();
+        message1.setChannel("/foo");
+        message1.setId("1");
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", "caf\u00e9 \u20ac \ud83d\ude00");
+        data.put("list", Arrays.asList(1, 2, 3));
+        message1.setData(data);
+        Message.Mutable message2 = new HashMapMessage();
+        message2.setChannel("/bar");
+        message2.setData("\"quoted\"");
+        return new Message.Mutable[]{message1, message2};
+    }
+
+    @Test
+    public void testGenerateToStream() throws Exception
+    {
+        Message.Mutable[] messages = newMessages();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        _jsonContext.generate(messages, output);
+        Assert.assertEquals(_jsonContext.generate(messages), new String(output.toByteArray(), UTF_8));
+
+        output.reset();
+        _jsonContext.generate(messages[0], output);
+        Assert.assertEquals(_jsonContext.generate(messages[0]), new String(output.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void testGenerateToBuffer() throws Exception
+    {
+        Message.Mutable[] messages = newMessages();
+        String json = _jsonContext.generate(messages);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        ByteBuffer result = _jsonContext.generate(messages, buffer);
+        Assert.assertSame(buffer, result);
+        Assert.assertEquals(json, UTF_8.decode(result).toString());
+    }
+
+    @Test
+    public void testGenerateToSmallBuffer() throws Exception
+    {
+        Message.Mutable[] messages = newMessages();
+        String json = _jsonContext.generate(messages);
+
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        ByteBuffer result = _jsonContext.generate(messages, buffer);
+        Assert.assertNotSame(buffer, result);
+        Assert.assertEquals(json, UTF_8.decode(result).toString());
+    }
+}
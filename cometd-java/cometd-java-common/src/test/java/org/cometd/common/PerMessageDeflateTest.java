@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerMessageDeflateTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testRoundTripWithContextTakeover() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(1, 6);
+        PerMessageDeflate deflate = new PerMessageDeflate(pool, true, true);
+        int previous = Integer.MAX_VALUE;
+        for (int i = 0; i < 3; ++i)
+        {
+            String json = batch(20);
+            ByteBuffer compressed = deflate.deflate(utf8(json), true);
+            // Later messages reuse the context of the previous ones
+            Assert.assertTrue(compressed.remaining() <= previous);
+            previous = compressed.remaining();
+            Assert.assertEquals(json, string(deflate.inflate(compressed, true, 0)));
+        }
+        // The deflater is owned by the connection until it is closed
+        Assert.assertEquals(0, pool.getSize());
+        deflate.close();
+        Assert.assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void testRoundTripWithoutContextTakeover() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(1, 6);
+        PerMessageDeflate deflate = new PerMessageDeflate(pool, false, false);
+        String json = batch(20);
+        ByteBuffer first = deflate.deflate(utf8(json), true);
+        Assert.assertEquals(1, pool.getSize());
+        ByteBuffer second = deflate.deflate(utf8(json), true);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(json, string(deflate.inflate(first, true, 0)));
+        Assert.assertEquals(json, string(deflate.inflate(second, true, 0)));
+        deflate.close();
+    }
+
+    @Test
+    public void testTailIsRemovedFromLastFrame() throws Exception
+    {
+        PerMessageDeflate deflate = new PerMessageDeflate(new DeflaterPool(0, 6), false, false);
+        ByteBuffer compressed = deflate.deflate(utf8(""), true);
+        // RFC 7692, section 7.2.3.6: an empty message compresses to a single 0x00 byte
+        Assert.assertEquals(1, compressed.remaining());
+        Assert.assertEquals(0, compressed.get(0));
+        deflate.close();
+    }
+
+    @Test
+    public void testFragmentedMessage() throws Exception
+    {
+        PerMessageDeflate deflate = new PerMessageDeflate(new DeflaterPool(1, 6), true, true);
+        String json = batch(10);
+        int half = json.length() / 2;
+        ByteBuffer first = deflate.deflate(utf8(json.substring(0, half)), false);
+        ByteBuffer second = deflate.deflate(utf8(json.substring(half)), true);
+        String result = string(deflate.inflate(first, false, 0)) + string(deflate.inflate(second, true, 0));
+        Assert.assertEquals(json, result);
+        deflate.close();
+    }
+
+    @Test
+    public void testDeflatersReleasedAfterCloseAreNotPooled() throws Exception
+    {
+        DeflaterPool pool = new DeflaterPool(2, 6);
+        Deflater idle = pool.acquire();
+        Deflater busy = pool.acquire();
+        pool.release(idle);
+        Assert.assertEquals(1, pool.getSize());
+
+        pool.close();
+        Assert.assertEquals(0, pool.getSize());
+
+        pool.release(busy);
+        Assert.assertEquals(0, pool.getSize());
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void testInflatedSizeIsLimited() throws Exception
+    {
+        PerMessageDeflate deflate = new PerMessageDeflate(new DeflaterPool(1, 6), true, true);
+        ByteBuffer compressed = deflate.deflate(ByteBuffer.wrap(new byte[64 * 1024]), true);
+        deflate.inflate(compressed, true, 1024);
+    }
+
+    private String batch(int messages)
+    {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < messages; ++i)
+        {
+            if (i > 0)
+                builder.append(",");
+            builder.append("{\"channel\":\"/chat/demo\",\"id\":\"").append(i).append("\",\"data\":{\"user\":\"foo\",\"chat\":\"bar\"}}");
+        }
+        return builder.append("]").toString();
+    }
+
+    private ByteBuffer utf8(String string)
+    {
+        return ByteBuffer.wrap(string.getBytes(UTF_8));
+    }
+
+    private String string(ByteBuffer buffer)
+    {
+        return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), UTF_8);
+    }
+}
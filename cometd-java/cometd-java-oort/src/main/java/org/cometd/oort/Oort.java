@@ -54,6 +54,7 @@ import org.cometd.common.JSONContext;
 import org.cometd.server.BayeuxServerImpl;
 import org.cometd.server.authorizer.GrantAuthorizer;
 import org.cometd.server.ext.AcknowledgedMessagesExtension;
+import org.cometd.websocket.client.WebSocketTransport;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.util.B64Code;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
@@ -118,6 +119,7 @@ public class Oort extends ContainerLifeCycle
     private boolean _debug;
     private boolean _clientDebug;
     private boolean _ackExtensionEnabled;
+    private boolean _binaryEnabled;
     private JSONContext.Client _jsonContext;
 
     public Oort(BayeuxServer bayeux, String url)
@@ -298,6 +300,26 @@ public class Oort extends ContainerLifeCycle
         _ackExtensionEnabled = value;
     }
 
+    @ManagedAttribute("Whether messages to other comets are encoded in binary over WebSocket")
+    public boolean isBinaryEnabled()
+    {
+        return _binaryEnabled;
+    }
+
+    /**
+     * <p>Enables the binary encoding of the messages exchanged with other comets.</p>
+     * <p>The binary encoding is used only over WebSocket, and only if the other comet
+     * accepts it when the WebSocket connection is opened; otherwise messages are
+     * encoded in JSON.</p>
+     *
+     * @param value whether to offer the binary encoding to other comets
+     * @see org.cometd.common.BinaryMessageCodec
+     */
+    public void setBinaryEnabled(boolean value)
+    {
+        _binaryEnabled = value;
+    }
+
     public JSONContext.Client getJSONContextClient()
     {
         return _jsonContext;
@@ -376,10 +398,12 @@ public class Oort extends ContainerLifeCycle
 
     protected OortComet newOortComet(String cometURL)
     {
-        Map<String, Object> options = new HashMap<>(1);
+        Map<String, Object> options = new HashMap<>(2);
         JSONContext.Client jsonContext = getJSONContextClient();
         if (jsonContext != null)
             options.put(ClientTransport.JSON_CONTEXT, jsonContext);
+        if (isBinaryEnabled())
+            options.put(WebSocketTransport.BINARY_OPTION, true);
         return new OortComet(this, cometURL, options);
     }
 
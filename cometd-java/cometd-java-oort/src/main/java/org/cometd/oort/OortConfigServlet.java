@@ -40,6 +40,8 @@ import org.cometd.common.JSONContext;
  * will be passed to {@link Oort#observeChannel(String)}</li>
  * <li><code>clientDebug</code>, a boolean that enables debugging of the
  * clients connected to other oort cluster managers</li>
+ * <li><code>enableBinary</code>, a boolean that enables the binary encoding of messages
+ * on the WebSocket connections to other oort cluster managers</li>
  * </ul>
  * <p>Override method {@link #newOort(BayeuxServer, String)} to return a customized
  * instance of {@link Oort}.</p>
@@ -54,6 +56,7 @@ public abstract class OortConfigServlet implements Servlet
     public static final String OORT_CLIENT_DEBUG_PARAM = "clientDebug";
     public static final String OORT_ENABLE_ACK_EXTENSION_PARAM = "enableAckExtension";
     public static final String OORT_JSON_CONTEXT_PARAM = "jsonContext";
+    public static final String OORT_ENABLE_BINARY_PARAM = "enableBinary";
 
     private ServletConfig _config;
 
@@ -93,6 +96,9 @@ public abstract class OortConfigServlet implements Servlet
             boolean enableAckExtension = Boolean.parseBoolean(_config.getInitParameter(OORT_ENABLE_ACK_EXTENSION_PARAM));
             oort.setAckExtensionEnabled(enableAckExtension);
 
+            boolean enableBinary = Boolean.parseBoolean(_config.getInitParameter(OORT_ENABLE_BINARY_PARAM));
+            oort.setBinaryEnabled(enableBinary);
+
             String jsonContext = config.getInitParameter(OORT_JSON_CONTEXT_PARAM);
             if (jsonContext != null)
                 oort.setJSONContextClient((JSONContext.Client)getClass().getClassLoader().loadClass(jsonContext).newInstance());
@@ -74,6 +74,7 @@ public class OortList<E> extends OortObject<List<E>>
      *
      * @param element the element to test for presence
      * @return true if the {@code element} is contained in the local entity list, false otherwise
+     * @see OortObjectFactories#forConcurrentIndexedList()
      */
     public boolean contains(E element)
     {
@@ -83,6 +84,9 @@ public class OortList<E> extends OortObject<List<E>>
     /**
      * Returns whether the given {@code element} is present in one of the entity lists of all nodes.
      * Differently from {@link #contains(Object)} entity lists of all nodes are scanned.
+     * <p />
+     * Entity lists created by {@link OortObjectFactories#forConcurrentIndexedList()} perform
+     * this lookup in constant time per node, rather than scanning each entity list.
      *
      * @param element the element to test for presence
      * @return true if the {@code element} is contained in one of the entity lists of all nodes, false otherwise
@@ -116,6 +120,7 @@ public class OortList<E> extends OortObject<List<E>>
         data.put(Info.TYPE_FIELD, TYPE_FIELD_ELEMENT_VALUE);
         data.put(Info.ACTION_FIELD, ACTION_FIELD_ADD_VALUE);
 
+        flush();
         logger.debug("Sharing list add {}", data);
         BayeuxServer bayeuxServer = getOort().getBayeuxServer();
         bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
@@ -142,6 +147,7 @@ public class OortList<E> extends OortObject<List<E>>
         data.put(Info.TYPE_FIELD, TYPE_FIELD_ELEMENT_VALUE);
         data.put(Info.ACTION_FIELD, ACTION_FIELD_REMOVE_VALUE);
 
+        flush();
         logger.debug("Sharing list remove {}", data);
         BayeuxServer bayeuxServer = getOort().getBayeuxServer();
         bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
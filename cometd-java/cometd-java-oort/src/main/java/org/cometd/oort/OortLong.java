@@ -45,6 +45,10 @@ import org.eclipse.jetty.util.component.AbstractLifeCycle;
  * larger latencies (every operation on non-master nodes requires sending a message to the
  * master node), this class trades more memory (N {@code long}s per node - where N is the
  * number of nodes) for smaller latencies (operations do not require messaging).
+ * <p />
+ * Frequently updated instances may set a {@link #setShareDelay(long) share delay} to bound
+ * the number of messages broadcast to other nodes, at the cost of other nodes seeing the
+ * local value with a delay.
  *
  * @see OortMasterLong
  */
@@ -80,6 +84,29 @@ public class OortLong extends AbstractLifeCycle
         value.stop();
     }
 
+    /**
+     * @return the max time, in milliseconds, that updates of the local value are held
+     * before being broadcast, or 0 if updates are broadcast immediately
+     * @see OortObject#getShareDelay()
+     */
+    public long getShareDelay()
+    {
+        return value.getShareDelay();
+    }
+
+    /**
+     * Sets the max time, in milliseconds, that updates of the local value are held before
+     * being broadcast to other nodes, so that a frequently updated value only broadcasts
+     * its last update within the share delay.
+     *
+     * @param shareDelay the share delay in milliseconds, or 0 to broadcast updates immediately
+     * @see OortObject#setShareDelay(long)
+     */
+    public void setShareDelay(long shareDelay)
+    {
+        value.setShareDelay(shareDelay);
+    }
+
     /**
      * @return the local value
      */
@@ -16,17 +16,27 @@
 
 package org.cometd.oort;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EventListener;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.common.MarkedReference;
+import org.cometd.server.BayeuxServerImpl;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * A specialized oort object whose entity is a {@link ConcurrentMap}.
@@ -43,6 +53,21 @@ import org.cometd.common.MarkedReference;
  * {@link DeltaListener} converts whole map updates triggered by {@link #setAndShare(Object)}
  * into events for {@link EntryListener}s, giving applications a single listener type to implement
  * their business logic.
+ * <p/>
+ * When a node joins or reconnects, the entity map of each node is not pushed as a whole to the other nodes.
+ * Each entry of the local entity map is stamped with the version of the change that last modified it, and
+ * removed entries are remembered as tombstones (up to {@link #getMaxTombstones()}).
+ * A node offers its entity map to the other nodes, that then pull the entries they are missing, in version
+ * order, in chunks of at most {@link #getChunkSize()} entries.
+ * Nodes remember how far they have synchronized the entity map of another node, also when that node leaves,
+ * so that when it reconnects only the entries changed in the meantime are transferred, and an interrupted
+ * transfer resumes where it stopped.
+ * Entity maps of nodes that left are kept until the nodes come back, but at most for the
+ * {@link #getRetentionTime() retention time}, after which the nodes will synchronize from scratch.
+ * <p/>
+ * Each oort map maintains an index from keys to the nodes whose entity maps contain them, updated together
+ * with the entity maps by puts, removes and whole map updates, so that {@link #find(String)} and
+ * {@link #findInfo(String)} do not need to scan the entity maps of all nodes.
  *
  * @param <V> the value type
  */
@@ -53,14 +78,92 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
     private static final String ACTION_FIELD_REMOVE_VALUE = "oort.map.remove";
     private static final String KEY_FIELD = "oort.map.key";
     private static final String VALUE_FIELD = "oort.map.value";
+    private static final String TYPE_FIELD_OFFER_VALUE = "oort.map.offer";
+    private static final String TYPE_FIELD_REQUEST_VALUE = "oort.map.request";
+    private static final String TYPE_FIELD_CHUNK_VALUE = "oort.map.chunk";
+    private static final String EPOCH_FIELD = "oort.map.epoch";
+    private static final String SINCE_FIELD = "oort.map.since";
+    private static final String CURSOR_VERSION_FIELD = "oort.map.cursor.version";
+    private static final String CURSOR_KEY_FIELD = "oort.map.cursor.key";
+    private static final String ENTRIES_FIELD = "oort.map.entries";
+    private static final String ENTRY_VERSION_FIELD = "oort.map.version";
+    private static final String RESET_FIELD = "oort.map.reset";
+    private static final String LAST_FIELD = "oort.map.last";
 
     private final List<EntryListener<V>> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Part<V>> parts = new ConcurrentHashMap<>();
+    private final Versions versions = new Versions();
+    private final ConcurrentMap<String, String[]> owners = new ConcurrentHashMap<>();
+    private final DeltaListener<V> indexer = new KeyIndexer();
+    private volatile int chunkSize = 1024;
+    private volatile int maxTombstones = 16 * 1024;
+    private volatile long retentionTime = TimeUnit.MINUTES.toMillis(5);
 
     public OortMap(Oort oort, String name, Factory<ConcurrentMap<String, V>> factory)
     {
         super(oort, name, factory);
     }
 
+    @Override
+    protected void doStart() throws Exception
+    {
+        super.doStart();
+        // The initial local map may not be empty
+        indexer.onUpdated(null, getInfo(getOort().getURL()));
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        for (Part<V> part : parts.values())
+            part.cancelExpiration();
+        parts.clear();
+        versions.clear();
+        owners.clear();
+    }
+
+    /**
+     * @return the max number of entries sent in each chunk when another node synchronizes the local entity map
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize)
+    {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the max number of removed keys remembered to synchronize other nodes incrementally;
+     *         nodes that have missed older removals receive the whole local entity map again
+     */
+    public int getMaxTombstones()
+    {
+        return maxTombstones;
+    }
+
+    public void setMaxTombstones(int maxTombstones)
+    {
+        this.maxTombstones = maxTombstones;
+    }
+
+    /**
+     * @return the time, in milliseconds, the synchronization state and the entity map of a node that left
+     *         are retained, waiting for the node to come back, or a negative value to retain them forever
+     */
+    public long getRetentionTime()
+    {
+        return retentionTime;
+    }
+
+    public void setRetentionTime(long retentionTime)
+    {
+        this.retentionTime = retentionTime;
+    }
+
     public void addEntryListener(EntryListener<V> listener)
     {
         listeners.add(listener);
@@ -96,6 +199,7 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
         data.put(Info.TYPE_FIELD, TYPE_FIELD_ENTRY_VALUE);
         data.put(Info.ACTION_FIELD, ACTION_FIELD_PUT_VALUE);
 
+        flush();
         logger.debug("Sharing map put {}", data);
         BayeuxServer bayeuxServer = getOort().getBayeuxServer();
         bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
@@ -126,6 +230,7 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
         data.put(Info.TYPE_FIELD, TYPE_FIELD_ENTRY_VALUE);
         data.put(Info.ACTION_FIELD, ACTION_FIELD_REMOVE_VALUE);
 
+        flush();
         logger.debug("Sharing map remove {}", data);
         BayeuxServer bayeuxServer = getOort().getBayeuxServer();
         bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
@@ -149,7 +254,8 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
 
     /**
      * Returns the first non-null value mapped to the given key from the entity maps of all nodes.
-     * Differently from {@link #get(String)}, entity maps of all nodes are scanned.
+     * Differently from {@link #get(String)}, entity maps of all nodes are searched, but only
+     * the entity maps of the nodes that the key index reports as containing the key are looked up.
      *
      * @param key the key mapped to the value to return
      * @return the value mapped to the given key, or
@@ -157,13 +263,8 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
      */
     public V find(String key)
     {
-        for (Info<ConcurrentMap<String, V>> info : this)
-        {
-            V result = info.getObject().get(key);
-            if (result != null)
-                return result;
-        }
-        return null;
+        Info<ConcurrentMap<String, V>> info = findInfo(key);
+        return info == null ? null : info.getObject().get(key);
     }
 
     /**
@@ -172,48 +273,171 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
      */
     public Info<ConcurrentMap<String, V>> findInfo(String key)
     {
-        for (Info<ConcurrentMap<String, V>> info : this)
+        String[] oortURLs = owners.get(key);
+        if (oortURLs == null)
+            return null;
+        for (String oortURL : oortURLs)
         {
-            if (info.getObject().get(key) != null)
+            Info<ConcurrentMap<String, V>> info = getInfo(oortURL);
+            if (info != null && info.getObject().get(key) != null)
                 return info;
         }
         return null;
     }
 
+    @Override
+    protected Info<ConcurrentMap<String, V>> newInfo(ConcurrentMap<String, V> local)
+    {
+        Info<ConcurrentMap<String, V>> info = super.newInfo(local);
+        // Other nodes use the epoch to recognize this node when it reconnects
+        info.put(EPOCH_FIELD, getOort().getId());
+        return info;
+    }
+
+    @Override
+    protected MarkedReference<Info<ConcurrentMap<String, V>>> setInfo(final Info<ConcurrentMap<String, V>> newInfo, Runnable action)
+    {
+        if (action == null && newInfo.isLocal())
+        {
+            // The whole local map is replaced, all its entries are stamped with the new version
+            action = new Runnable()
+            {
+                public void run()
+                {
+                    versions.reset(newInfo.getObject().keySet(), newInfo.getId());
+                }
+            };
+        }
+        return super.setInfo(newInfo, action);
+    }
+
+    /**
+     * Offers the local entity map to the given node, instead of pushing it as a whole:
+     * the node will then request the entries it is missing.
+     *
+     * @param oortURL the node to offer the local entity map to
+     * @param info the local {@link Info}
+     */
+    @Override
+    protected void pushInfo(String oortURL, Map<String, Object> info)
+    {
+        Info<ConcurrentMap<String, V>> local = getInfo(getOort().getURL());
+        if (local == null)
+            return;
+
+        Map<String, Object> offer = new HashMap<>(5);
+        offer.put(Info.VERSION_FIELD, local.getId());
+        offer.put(Info.OORT_URL_FIELD, getOort().getURL());
+        offer.put(Info.NAME_FIELD, getName());
+        offer.put(Info.TYPE_FIELD, TYPE_FIELD_OFFER_VALUE);
+        offer.put(EPOCH_FIELD, getOort().getId());
+        logger.debug("Offering (to {}) local map {}", oortURL, local);
+        publish(oortURL, offer);
+    }
+
+    @Override
+    public void cometLeft(Event event)
+    {
+        String oortURL = event.getCometURL();
+        Info<ConcurrentMap<String, V>> info = getInfo(oortURL);
+        super.cometLeft(event);
+        // Remember how far the map of that node was synchronized, in case it reconnects
+        Part<V> part = parts.get(oortURL);
+        if (part != null)
+        {
+            part.disconnect(info);
+            expire(oortURL, part);
+        }
+    }
+
+    private void expire(final String oortURL, final Part<V> part)
+    {
+        long retention = getRetentionTime();
+        if (retention < 0)
+            return;
+
+        Runnable expiration = new Runnable()
+        {
+            public void run()
+            {
+                // The node may have come back in the meantime
+                synchronized (parts)
+                {
+                    if (part.isExpired() && parts.remove(oortURL, part))
+                        logger.debug("Discarded map of {}, expired after {} ms", oortURL, getRetentionTime());
+                }
+            }
+        };
+
+        BayeuxServer bayeuxServer = getOort().getBayeuxServer();
+        if (retention > 0 && bayeuxServer instanceof BayeuxServerImpl)
+            part.expireAfter(((BayeuxServerImpl)bayeuxServer).getScheduler().schedule(expiration, retention, TimeUnit.MILLISECONDS));
+        else
+            expiration.run();
+    }
+
     @Override
     protected void onObject(Map<String, Object> data)
     {
-        if (TYPE_FIELD_ENTRY_VALUE.equals(data.get(Info.TYPE_FIELD)))
+        Object type = data.get(Info.TYPE_FIELD);
+        if (TYPE_FIELD_ENTRY_VALUE.equals(type))
         {
             String action = (String)data.get(Info.ACTION_FIELD);
             final boolean remove = ACTION_FIELD_REMOVE_VALUE.equals(action);
             if (!ACTION_FIELD_PUT_VALUE.equals(action) && !remove)
                 throw new IllegalArgumentException(action);
 
-            String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+            final String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+            final boolean local = getOort().getURL().equals(oortURL);
+            final long version = ((Number)data.get(Info.VERSION_FIELD)).longValue();
+
+            // Retrieve entry
+            @SuppressWarnings("unchecked")
+            Map<String, Object> object = (Map<String, Object>)data.get(Info.OBJECT_FIELD);
+            final String key = (String)object.get(KEY_FIELD);
+            @SuppressWarnings("unchecked")
+            final V value = (V)object.get(VALUE_FIELD);
+
+            if (!local)
+            {
+                // Changes that happen while the map of that node is synchronized must not be lost
+                Part<V> part = parts.get(oortURL);
+                if (part != null)
+                    part.live(key, remove ? null : value, version);
+            }
+
             Info<ConcurrentMap<String, V>> info = getInfo(oortURL);
             if (info != null)
             {
-                // Retrieve entry
-                @SuppressWarnings("unchecked")
-                Map<String, Object> object = (Map<String, Object>)data.get(Info.OBJECT_FIELD);
-                final String key = (String)object.get(KEY_FIELD);
-                @SuppressWarnings("unchecked")
-                final V value = (V)object.get(VALUE_FIELD);
-
                 // Set the new Info
                 Info<ConcurrentMap<String, V>> newInfo = new Info<>(getOort().getURL(), data);
                 final ConcurrentMap<String, V> map = info.getObject();
                 newInfo.put(Info.OBJECT_FIELD, map);
                 final AtomicReference<V> result = new AtomicReference<>();
+                // The index is updated together with the map, so that concurrent
+                // changes of the same key cannot leave the index out of sync
                 MarkedReference<Info<ConcurrentMap<String, V>>> old = setInfo(newInfo, new Runnable()
                 {
                     public void run()
                     {
                         if (remove)
-                            result.set(map.remove(key));
+                        {
+                            V removed = map.remove(key);
+                            result.set(removed);
+                            if (removed != null)
+                            {
+                                unindex(key, oortURL);
+                                if (local)
+                                    versions.remove(key, version, getMaxTombstones());
+                            }
+                        }
                         else
+                        {
                             result.set(map.put(key, value));
+                            index(key, oortURL);
+                            if (local)
+                                versions.put(key, version);
+                        }
                     }
                 });
 
@@ -241,12 +465,219 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
                 logger.debug("No info for {}", oortURL);
             }
         }
+        else if (TYPE_FIELD_OFFER_VALUE.equals(type))
+        {
+            onOffer(data);
+        }
+        else if (TYPE_FIELD_REQUEST_VALUE.equals(type))
+        {
+            onRequest(data);
+        }
+        else if (TYPE_FIELD_CHUNK_VALUE.equals(type))
+        {
+            onChunk(data);
+        }
         else
         {
             super.onObject(data);
+
+            String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+            String epoch = (String)data.get(EPOCH_FIELD);
+            if (epoch != null && !getOort().getURL().equals(oortURL))
+            {
+                // The whole map of that node is as good as a completed synchronization
+                Part<V> existing = parts.put(oortURL, new Part<V>(epoch, true));
+                if (existing != null)
+                    existing.cancelExpiration();
+            }
+        }
+    }
+
+    private void onOffer(Map<String, Object> data)
+    {
+        String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+        String epoch = (String)data.get(EPOCH_FIELD);
+        Part<V> part;
+        boolean request;
+        // Connect while holding the lock, so that the part cannot expire concurrently
+        synchronized (parts)
+        {
+            part = parts.get(oortURL);
+            if (part == null || !part.epoch.equals(epoch))
+            {
+                // A new node, or a node that restarted: its whole map is needed
+                part = new Part<>(epoch, false);
+                Part<V> existing = parts.put(oortURL, part);
+                if (existing != null)
+                    existing.cancelExpiration();
+            }
+            request = part.connect(getFactory());
+        }
+        if (request)
+            requestChunk(oortURL, part);
+        else
+            logger.debug("Ignored offer from {}, map already synchronized", oortURL);
+    }
+
+    private void requestChunk(String oortURL, Part<V> part)
+    {
+        Map<String, Object> request = new HashMap<>(6);
+        request.put(Info.OORT_URL_FIELD, getOort().getURL());
+        request.put(Info.NAME_FIELD, getName());
+        request.put(Info.TYPE_FIELD, TYPE_FIELD_REQUEST_VALUE);
+        request.put(EPOCH_FIELD, part.epoch);
+        part.cursor(request);
+        logger.debug("Requesting (to {}) map chunk {}", oortURL, request);
+        publish(oortURL, request);
+    }
+
+    private void onRequest(Map<String, Object> data)
+    {
+        String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+        // Requests for a previous incarnation of this node are answered by a new offer
+        if (!getOort().getId().equals(data.get(EPOCH_FIELD)))
+            return;
+
+        Info<ConcurrentMap<String, V>> local = getInfo(getOort().getURL());
+        if (local == null)
+            return;
+
+        // Read the version before the entries, so that the chunks contain all the changes up to it
+        long version = local.getId();
+        long since = ((Number)data.get(SINCE_FIELD)).longValue();
+        long cursorVersion = ((Number)data.get(CURSOR_VERSION_FIELD)).longValue();
+        String cursorKey = (String)data.get(CURSOR_KEY_FIELD);
+        Map<String, Object> chunk = versions.chunk(local.getObject(), since, cursorVersion, cursorKey, getChunkSize());
+        chunk.put(Info.VERSION_FIELD, version);
+        chunk.put(Info.OORT_URL_FIELD, getOort().getURL());
+        chunk.put(Info.NAME_FIELD, getName());
+        chunk.put(Info.TYPE_FIELD, TYPE_FIELD_CHUNK_VALUE);
+        chunk.put(EPOCH_FIELD, getOort().getId());
+        logger.debug("Sending (to {}) map chunk at version {} after {}/{}", oortURL, version, cursorVersion, cursorKey);
+        publish(oortURL, chunk);
+    }
+
+    private void onChunk(Map<String, Object> data)
+    {
+        String oortURL = (String)data.get(Info.OORT_URL_FIELD);
+        Part<V> part = parts.get(oortURL);
+        if (part == null || !part.epoch.equals(data.get(EPOCH_FIELD)))
+            return;
+
+        long version = ((Number)data.get(Info.VERSION_FIELD)).longValue();
+        boolean last = Boolean.TRUE.equals(data.get(LAST_FIELD));
+        MarkedReference<Info<ConcurrentMap<String, V>>> old;
+        Info<ConcurrentMap<String, V>> newInfo;
+        // Install the map while holding the part lock, so that concurrent
+        // changes are applied either to the pending map or to the new Info
+        synchronized (part)
+        {
+            if (!part.chunk(data))
+                return;
+
+            if (last)
+            {
+                Map<String, Object> object = new HashMap<>(4);
+                object.put(Info.VERSION_FIELD, Math.max(version, part.getLiveVersion()));
+                object.put(Info.OORT_URL_FIELD, oortURL);
+                object.put(Info.NAME_FIELD, getName());
+                object.put(Info.OBJECT_FIELD, part.complete());
+                newInfo = new Info<>(getOort().getURL(), object);
+                old = setInfo(newInfo, null);
+            }
+            else
+            {
+                old = null;
+                newInfo = null;
+            }
+        }
+
+        if (old == null)
+        {
+            requestChunk(oortURL, part);
+            return;
+        }
+
+        Info<ConcurrentMap<String, V>> oldInfo = old.getReference();
+        logger.debug("{} synchronization of {} with {}", old.isMarked() ? "Completed" : "Discarded", oldInfo, newInfo);
+
+        if (old.isMarked())
+            notifyUpdated(oldInfo, newInfo);
+
+        // Let the other node synchronize the local map too, if it has not done it already
+        if (oldInfo == null)
+            pushInfo(oortURL, null);
+    }
+
+    @Override
+    protected void notifyUpdated(Info<ConcurrentMap<String, V>> oldInfo, Info<ConcurrentMap<String, V>> newInfo)
+    {
+        indexer.onUpdated(oldInfo, newInfo);
+        super.notifyUpdated(oldInfo, newInfo);
+    }
+
+    @Override
+    protected void notifyRemoved(Info<ConcurrentMap<String, V>> info)
+    {
+        indexer.onRemoved(info);
+        super.notifyRemoved(info);
+    }
+
+    private void index(String key, String oortURL)
+    {
+        while (true)
+        {
+            String[] oortURLs = owners.get(key);
+            if (oortURLs == null)
+            {
+                if (owners.putIfAbsent(key, new String[]{oortURL}) == null)
+                    return;
+            }
+            else
+            {
+                if (Arrays.asList(oortURLs).contains(oortURL))
+                    return;
+                String[] newOortURLs = Arrays.copyOf(oortURLs, oortURLs.length + 1);
+                newOortURLs[oortURLs.length] = oortURL;
+                if (owners.replace(key, oortURLs, newOortURLs))
+                    return;
+            }
         }
     }
 
+    private void unindex(String key, String oortURL)
+    {
+        while (true)
+        {
+            String[] oortURLs = owners.get(key);
+            if (oortURLs == null)
+                return;
+            int index = Arrays.asList(oortURLs).indexOf(oortURL);
+            if (index < 0)
+                return;
+            if (oortURLs.length == 1)
+            {
+                if (owners.remove(key, oortURLs))
+                    return;
+            }
+            else
+            {
+                String[] newOortURLs = new String[oortURLs.length - 1];
+                System.arraycopy(oortURLs, 0, newOortURLs, 0, index);
+                System.arraycopy(oortURLs, index + 1, newOortURLs, index, newOortURLs.length - index);
+                if (owners.replace(key, oortURLs, newOortURLs))
+                    return;
+            }
+        }
+    }
+
+    private void publish(String oortURL, Map<String, Object> data)
+    {
+        OortComet oortComet = getOort().getComet(oortURL);
+        if (oortComet != null)
+            oortComet.getChannel(getChannelName()).publish(data);
+    }
+
     private void notifyEntryPut(Info<ConcurrentMap<String, V>> info, Entry<V> entry)
     {
         for (EntryListener<V> listener : listeners)
@@ -417,14 +848,14 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
                 V newValue = newMap.remove(key);
                 Entry<V> entry = new Entry<>(key, oldEntry.getValue(), newValue);
                 if (newValue == null)
-                    oortMap.notifyEntryRemoved(newInfo, entry);
+                    onEntryRemoved(newInfo, entry);
                 else
-                    oortMap.notifyEntryPut(newInfo, entry);
+                    onEntryPut(newInfo, entry);
             }
             for (Map.Entry<String, V> newEntry : newMap.entrySet())
             {
                 Entry<V> entry = new Entry<>(newEntry.getKey(), null, newEntry.getValue());
-                oortMap.notifyEntryPut(newInfo, entry);
+                onEntryPut(newInfo, entry);
             }
         }
 
@@ -433,8 +864,376 @@ public class OortMap<V> extends OortObject<ConcurrentMap<String, V>>
             for (Map.Entry<String, V> oldEntry : info.getObject().entrySet())
             {
                 Entry<V> entry = new Entry<>(oldEntry.getKey(), oldEntry.getValue(), null);
-                oortMap.notifyEntryRemoved(info, entry);
+                onEntryRemoved(info, entry);
+            }
+        }
+
+        /**
+         * Callback method invoked for each entry put by a whole map update.
+         * By default, notifies the {@link EntryListener}s of the oort map.
+         *
+         * @param info the {@link Info} that was changed by the update
+         * @param entry the entry put
+         */
+        protected void onEntryPut(Info<ConcurrentMap<String, V>> info, Entry<V> entry)
+        {
+            oortMap.notifyEntryPut(info, entry);
+        }
+
+        /**
+         * Callback method invoked for each entry removed by a whole map update.
+         * By default, notifies the {@link EntryListener}s of the oort map.
+         *
+         * @param info the {@link Info} that was changed by the update
+         * @param entry the entry removed
+         */
+        protected void onEntryRemoved(Info<ConcurrentMap<String, V>> info, Entry<V> entry)
+        {
+            oortMap.notifyEntryRemoved(info, entry);
+        }
+    }
+
+    /**
+     * Maintains the key index from the entry events of whole map updates.
+     */
+    private class KeyIndexer extends DeltaListener<V>
+    {
+        private KeyIndexer()
+        {
+            super(OortMap.this);
+        }
+
+        @Override
+        protected void onEntryPut(Info<ConcurrentMap<String, V>> info, Entry<V> entry)
+        {
+            index(entry.getKey(), info.getOortURL());
+        }
+
+        @Override
+        protected void onEntryRemoved(Info<ConcurrentMap<String, V>> info, Entry<V> entry)
+        {
+            unindex(entry.getKey(), info.getOortURL());
+        }
+    }
+
+    private static List<?> asList(Object object)
+    {
+        if (object instanceof Object[])
+            return Arrays.asList((Object[])object);
+        if (object instanceof List)
+            return (List<?>)object;
+        return Collections.emptyList();
+    }
+
+    /**
+     * The version of the last change to a key of the local entity map.
+     * Stamps are ordered by version and then by key, since all the keys of a map
+     * replaced as a whole have the same version.
+     */
+    private static class Stamp implements Comparable<Stamp>
+    {
+        private final long version;
+        private final String key;
+        private final boolean removed;
+
+        private Stamp(long version, String key, boolean removed)
+        {
+            this.version = version;
+            this.key = key;
+            this.removed = removed;
+        }
+
+        public int compareTo(Stamp that)
+        {
+            if (version != that.version)
+                return version < that.version ? -1 : 1;
+            // A null key sorts after all the keys with the same version
+            if (key == null)
+                return that.key == null ? 0 : 1;
+            if (that.key == null)
+                return -1;
+            return key.compareTo(that.key);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%d%s", key, version, removed ? "(removed)" : "");
+        }
+    }
+
+    /**
+     * The stamps of the keys of the local entity map, used to send to other nodes
+     * the entries changed after a given stamp, in version order.
+     */
+    private static class Versions
+    {
+        private final NavigableSet<Stamp> stamps = new TreeSet<>();
+        private final NavigableSet<Stamp> tombstones = new TreeSet<>();
+        private final Map<String, Stamp> keys = new HashMap<>();
+        // The version of the newest change that is not remembered anymore,
+        // and the version of the change that caused it to be forgotten
+        private long horizon;
+        private long horizonVersion;
+
+        private synchronized void put(String key, long version)
+        {
+            stamp(new Stamp(version, key, false));
+        }
+
+        private synchronized void remove(String key, long version, int maxTombstones)
+        {
+            stamp(new Stamp(version, key, true));
+            while (tombstones.size() > maxTombstones)
+            {
+                Stamp oldest = tombstones.pollFirst();
+                stamps.remove(oldest);
+                keys.remove(oldest.key);
+                horizon = oldest.version;
+                horizonVersion = version;
+            }
+        }
+
+        private void stamp(Stamp stamp)
+        {
+            Stamp old = keys.put(stamp.key, stamp);
+            if (old != null)
+            {
+                stamps.remove(old);
+                if (old.removed)
+                    tombstones.remove(old);
+            }
+            stamps.add(stamp);
+            if (stamp.removed)
+                tombstones.add(stamp);
+        }
+
+        private synchronized void reset(Collection<String> keys, long version)
+        {
+            clear();
+            horizon = version;
+            horizonVersion = version;
+            for (String key : keys)
+                stamp(new Stamp(version, key, false));
+        }
+
+        private synchronized void clear()
+        {
+            stamps.clear();
+            tombstones.clear();
+            keys.clear();
+            horizon = 0;
+            horizonVersion = 0;
+        }
+
+        /**
+         * @param map the local entity map
+         * @param since the version from which the requester has seen all the changes up to the cursor
+         * @param cursorVersion the version of the last stamp received by the requester
+         * @param cursorKey the key of the last stamp received by the requester
+         * @param size the max number of entries to return
+         * @return the chunk fields
+         */
+        private synchronized Map<String, Object> chunk(Map<String, ?> map, long since, long cursorVersion, String cursorKey, int size)
+        {
+            // A requester that has not seen changes that have been forgotten
+            // in the meantime must start again from the beginning
+            boolean reset = horizon > cursorVersion && horizonVersion > since;
+            Iterator<Stamp> iterator = reset ? stamps.iterator() : stamps.tailSet(new Stamp(cursorVersion, cursorKey, false), false).iterator();
+            List<Map<String, Object>> entries = new ArrayList<>();
+            Stamp last = null;
+            while (entries.size() < size && iterator.hasNext())
+            {
+                Stamp stamp = iterator.next();
+                last = stamp;
+                Map<String, Object> entry = new HashMap<>(3);
+                entry.put(KEY_FIELD, stamp.key);
+                entry.put(ENTRY_VERSION_FIELD, stamp.version);
+                if (!stamp.removed)
+                {
+                    Object value = map.get(stamp.key);
+                    // Removed concurrently, its tombstone will follow
+                    if (value == null)
+                        continue;
+                    entry.put(VALUE_FIELD, value);
+                }
+                entries.add(entry);
+            }
+
+            Map<String, Object> result = new HashMap<>(11);
+            result.put(ENTRIES_FIELD, entries);
+            result.put(RESET_FIELD, reset);
+            result.put(LAST_FIELD, !iterator.hasNext());
+            result.put(CURSOR_VERSION_FIELD, last == null ? cursorVersion : last.version);
+            result.put(CURSOR_KEY_FIELD, last == null ? cursorKey : last.key);
+            return result;
+        }
+    }
+
+    /**
+     * The synchronization state of the entity map of another node.
+     * While the map is synchronized, the entries received in chunks are applied to a pending map,
+     * along with the changes that are received in the meantime, which take precedence over older
+     * entries in the chunks; when the last chunk is received the pending map becomes the entity map
+     * of that node.
+     */
+    private static class Part<V>
+    {
+        private final String epoch;
+        // Guarded by this
+        private boolean connected;
+        private boolean syncing;
+        private ConcurrentMap<String, V> retained;
+        private ConcurrentMap<String, V> pending;
+        private Map<String, Long> liveVersions;
+        private long liveVersion = -1;
+        private long since = -1;
+        private long cursorVersion = -1;
+        private String cursorKey;
+        private Scheduler.Task expiration;
+
+        private Part(String epoch, boolean connected)
+        {
+            this.epoch = epoch;
+            this.connected = connected;
+        }
+
+        /**
+         * @return whether a synchronization must be requested
+         */
+        private synchronized boolean connect(Factory<ConcurrentMap<String, V>> factory)
+        {
+            if (connected)
+                return false;
+            connected = true;
+            cancelExpiration();
+            if (!syncing)
+            {
+                syncing = true;
+                pending = factory.newObject(null);
+                liveVersions = new HashMap<>();
+                liveVersion = -1;
+                if (retained != null)
+                {
+                    // Resume from the map retained when the node left
+                    pending.putAll(retained);
+                    retained = null;
+                }
+                else
+                {
+                    since = -1;
+                    cursorVersion = -1;
+                    cursorKey = null;
+                }
+            }
+            return true;
+        }
+
+        private synchronized void disconnect(Info<ConcurrentMap<String, V>> info)
+        {
+            connected = false;
+            if (!syncing && info != null)
+            {
+                retained = info.getObject();
+                since = info.getId();
+                cursorVersion = info.getId();
+                cursorKey = null;
+            }
+        }
+
+        private synchronized void expireAfter(Scheduler.Task task)
+        {
+            cancelExpiration();
+            // The node may have reconnected before the task was scheduled
+            if (connected)
+                task.cancel();
+            else
+                expiration = task;
+        }
+
+        private synchronized void cancelExpiration()
+        {
+            if (expiration != null)
+            {
+                expiration.cancel();
+                expiration = null;
+            }
+        }
+
+        private synchronized boolean isExpired()
+        {
+            return !connected;
+        }
+
+        private synchronized void cursor(Map<String, Object> request)
+        {
+            request.put(SINCE_FIELD, since);
+            request.put(CURSOR_VERSION_FIELD, cursorVersion);
+            request.put(CURSOR_KEY_FIELD, cursorKey);
+        }
+
+        private synchronized void live(String key, V value, long version)
+        {
+            if (!syncing)
+                return;
+            liveVersions.put(key, version);
+            liveVersion = Math.max(liveVersion, version);
+            if (value == null)
+                pending.remove(key);
+            else
+                pending.put(key, value);
+        }
+
+        private synchronized long getLiveVersion()
+        {
+            return liveVersion;
+        }
+
+        /**
+         * @return whether the chunk has been applied
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized boolean chunk(Map<String, Object> data)
+        {
+            if (!connected || !syncing)
+                return false;
+
+            if (Boolean.TRUE.equals(data.get(RESET_FIELD)))
+            {
+                // Only the changes received in the meantime are still valid
+                pending.keySet().retainAll(liveVersions.keySet());
+                since = ((Number)data.get(Info.VERSION_FIELD)).longValue();
             }
+
+            for (Object element : asList(data.get(ENTRIES_FIELD)))
+            {
+                Map<String, Object> entry = (Map<String, Object>)element;
+                String key = (String)entry.get(KEY_FIELD);
+                long version = ((Number)entry.get(ENTRY_VERSION_FIELD)).longValue();
+                Long liveVersion = liveVersions.get(key);
+                if (liveVersion != null && liveVersion >= version)
+                    continue;
+                V value = (V)entry.get(VALUE_FIELD);
+                if (value == null)
+                    pending.remove(key);
+                else
+                    pending.put(key, value);
+            }
+            cursorVersion = ((Number)data.get(CURSOR_VERSION_FIELD)).longValue();
+            cursorKey = (String)data.get(CURSOR_KEY_FIELD);
+            return true;
+        }
+
+        /**
+         * @return the synchronized map
+         */
+        private synchronized ConcurrentMap<String, V> complete()
+        {
+            ConcurrentMap<String, V> result = pending;
+            syncing = false;
+            pending = null;
+            liveVersions = null;
+            return result;
         }
     }
 }
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.cometd.bayeux.server.BayeuxServer;
@@ -36,7 +37,9 @@ import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.common.MarkedReference;
+import org.cometd.server.BayeuxServerImpl;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -106,6 +109,10 @@ import org.slf4j.LoggerFactory;
  * </pre>
  * When an entity is updated, either locally or remotely, an event is fired to registered {@link Listener}s.
  * <p/>
+ * Entities that change frequently, such as counters, may be shared with a {@link #setShareDelay(long) share delay}:
+ * the local value is updated immediately, but only the last value set within the share delay is broadcast
+ * to the other nodes, so that each node broadcasts at most one update every share delay.
+ * <p/>
  * Oort objects can only update the entity they own; in the example above, {@code node_1} can only update
  * the "local" value 13 to 17, but cannot modify the "remote" value 19, which is owned by {@code node_2}.
  * Only update messages from {@code node_1} can update the "remote" value on {@code node_2}.
@@ -138,6 +145,8 @@ public class OortObject<T> extends AbstractLifeCycle implements ConfigurableServ
     private final LocalSession sender;
     private final String channelName;
     private final ServerChannel.MessageListener messageListener;
+    private final Coalescer coalescer = new Coalescer();
+    private volatile long shareDelay;
 
     public OortObject(Oort oort, String name, Factory<T> factory)
     {
@@ -177,6 +186,7 @@ public class OortObject<T> extends AbstractLifeCycle implements ConfigurableServ
     @Override
     protected void doStop() throws Exception
     {
+        flush();
         oort.deobserveChannel(channelName);
         oort.getBayeuxServer().getChannel(channelName).removeListener(messageListener);
         oort.removeCometListener(this);
@@ -242,10 +252,36 @@ public class OortObject<T> extends AbstractLifeCycle implements ConfigurableServ
         return channelName;
     }
 
+    /**
+     * @return the max time, in milliseconds, that objects set via {@link #setAndShare(Object)}
+     * are held before being broadcast, or 0 if objects are broadcast immediately
+     */
+    public long getShareDelay()
+    {
+        return shareDelay;
+    }
+
+    /**
+     * Sets the max time, in milliseconds, that objects set via {@link #setAndShare(Object)}
+     * are held before being broadcast to other nodes.
+     * <p/>
+     * Objects set within the share delay are set immediately on this node, but only the last
+     * one is broadcast to other nodes when the share delay expires.
+     *
+     * @param shareDelay the share delay in milliseconds, or 0 to broadcast objects immediately
+     */
+    public void setShareDelay(long shareDelay)
+    {
+        this.shareDelay = shareDelay;
+    }
+
     /**
      * Sets the given new object on this oort object, and then broadcast the new object to all nodes in the cluster.
      * <p/>
      * Setting an object triggers notification of {@link Listener}s, both on this node and on remote nodes.
+     * <p/>
+     * If a {@link #getShareDelay() share delay} is configured, the object is set immediately on this node,
+     * but its broadcast is delayed and it is skipped if another object is set within the share delay.
      *
      * @param newObject the new object to set
      * @return the old object
@@ -261,13 +297,36 @@ public class OortObject<T> extends AbstractLifeCycle implements ConfigurableServ
         data.put(Info.NAME_FIELD, getName());
         data.put(Info.OBJECT_FIELD, newObject);
 
-        logger.debug("Sharing {}", data);
-        BayeuxServer bayeuxServer = oort.getBayeuxServer();
-        bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
+        long delay = shareDelay;
+        if (delay > 0)
+        {
+            logger.debug("Setting {}", data);
+            onObject(data);
+            coalescer.share(data, delay);
+        }
+        else
+        {
+            // Broadcast a previously held object first, to keep updates in order
+            flush();
+            logger.debug("Sharing {}", data);
+            BayeuxServer bayeuxServer = oort.getBayeuxServer();
+            bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
+        }
 
         return (T)data.getResult();
     }
 
+    /**
+     * Broadcasts immediately the object held because of the {@link #getShareDelay() share delay}, if any.
+     * <p/>
+     * Subclasses that broadcast partial updates of the object must call this method before broadcasting,
+     * so that other nodes receive the updates in order.
+     */
+    protected void flush()
+    {
+        coalescer.flush();
+    }
+
     protected Info<T> newInfo(T local)
     {
         if (local == null)
@@ -671,6 +730,64 @@ public class OortObject<T> extends AbstractLifeCycle implements ConfigurableServ
         }
     }
 
+    /**
+     * Holds the last object set within the share delay, and broadcasts it when the share delay expires.
+     */
+    private class Coalescer implements Runnable
+    {
+        private Map<String, Object> pending;
+        private Scheduler.Task task;
+
+        private void share(Map<String, Object> data, long delay)
+        {
+            boolean flush = false;
+            synchronized (this)
+            {
+                // Concurrent threads may arrive out of order, keep the most recent object
+                if (pending == null || version(pending) < version(data))
+                    pending = new HashMap<>(data);
+                if (task == null)
+                {
+                    BayeuxServer bayeuxServer = oort.getBayeuxServer();
+                    if (bayeuxServer instanceof BayeuxServerImpl)
+                        task = ((BayeuxServerImpl)bayeuxServer).getScheduler().schedule(this, delay, TimeUnit.MILLISECONDS);
+                    else
+                        flush = true;
+                }
+            }
+            if (flush)
+                flush();
+        }
+
+        private long version(Map<String, Object> data)
+        {
+            return ((Number)data.get(Info.VERSION_FIELD)).longValue();
+        }
+
+        public void run()
+        {
+            flush();
+        }
+
+        private synchronized void flush()
+        {
+            if (task != null)
+            {
+                task.cancel();
+                task = null;
+            }
+            Map<String, Object> data = pending;
+            if (data == null)
+                return;
+            pending = null;
+            // The object is already set on this node, so the local
+            // message listener will skip it because of its version
+            logger.debug("Sharing {}", data);
+            BayeuxServer bayeuxServer = oort.getBayeuxServer();
+            bayeuxServer.getChannel(getChannelName()).publish(getLocalSession(), data);
+        }
+    }
+
     private class MessageListener implements ServerChannel.MessageListener
     {
         @SuppressWarnings("unchecked")
@@ -16,10 +16,17 @@
 
 package org.cometd.oort;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -70,6 +77,28 @@ public class OortObjectFactories
         return new ConcurrentListFactory<E>(defaultValue);
     }
 
+    /**
+     * Returns a factory for concurrent lists that keep a hash index of their elements,
+     * so that {@link List#contains(Object)} is a constant time operation.
+     * <p />
+     * The index is updated incrementally when elements are added or removed, making
+     * these lists suitable for large {@link OortList}s where {@link OortList#contains(Object)}
+     * and {@link OortList#isPresent(Object)} are frequent, for example presence lists.
+     * Elements cannot be {@code null}.
+     *
+     * @param <E> the element type
+     * @return a factory for indexed concurrent lists
+     */
+    public static <E> OortObject.Factory<List<E>> forConcurrentIndexedList()
+    {
+        return forConcurrentIndexedList(new ArrayList<E>());
+    }
+
+    public static <E> OortObject.Factory<List<E>> forConcurrentIndexedList(List<E> defaultValue)
+    {
+        return new ConcurrentIndexedListFactory<E>(defaultValue);
+    }
+
     private static class BooleanFactory implements OortObject.Factory<Boolean>
     {
         private final boolean defaultValue;
@@ -178,4 +207,189 @@ public class OortObjectFactories
             throw new IllegalArgumentException();
         }
     }
+
+    private static class ConcurrentIndexedListFactory<E> implements OortObject.Factory<List<E>>
+    {
+        private final List<E> defaultValue;
+
+        public ConcurrentIndexedListFactory(List<E> defaultValue)
+        {
+            this.defaultValue = defaultValue;
+        }
+
+        @SuppressWarnings("unchecked")
+        public List<E> newObject(Object representation)
+        {
+            if (representation == null)
+                return new ConcurrentIndexedList<E>(defaultValue);
+            if (representation instanceof ConcurrentIndexedList)
+                return (List<E>)representation;
+            if (representation instanceof List)
+                return new ConcurrentIndexedList<E>((List<E>)representation);
+            if (representation instanceof Object[])
+                return new ConcurrentIndexedList<E>((List<E>)Arrays.asList((Object[])representation));
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * A list backed by a {@link CopyOnWriteArrayList}, with a hash index that counts the
+     * occurrences of each element.
+     * Reads are lock-free; modifications are serialized and update the index incrementally.
+     *
+     * @param <E> the element type
+     */
+    private static class ConcurrentIndexedList<E> extends AbstractList<E> implements RandomAccess
+    {
+        private final CopyOnWriteArrayList<E> list = new CopyOnWriteArrayList<>();
+        private final ConcurrentMap<Object, Integer> counts = new ConcurrentHashMap<>();
+
+        private ConcurrentIndexedList(Collection<? extends E> elements)
+        {
+            addAll(elements);
+        }
+
+        @Override
+        public E get(int index)
+        {
+            return list.get(index);
+        }
+
+        @Override
+        public int size()
+        {
+            return list.size();
+        }
+
+        @Override
+        public boolean contains(Object element)
+        {
+            return element != null && counts.containsKey(element);
+        }
+
+        @Override
+        public Iterator<E> iterator()
+        {
+            return list.iterator();
+        }
+
+        @Override
+        public Object[] toArray()
+        {
+            return list.toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] array)
+        {
+            return list.toArray(array);
+        }
+
+        @Override
+        public synchronized E set(int index, E element)
+        {
+            E result = list.set(index, nonNull(element));
+            increment(element);
+            decrement(result);
+            return result;
+        }
+
+        @Override
+        public synchronized void add(int index, E element)
+        {
+            list.add(index, nonNull(element));
+            increment(element);
+        }
+
+        @Override
+        public synchronized E remove(int index)
+        {
+            E result = list.remove(index);
+            decrement(result);
+            return result;
+        }
+
+        @Override
+        public synchronized boolean remove(Object element)
+        {
+            if (!contains(element))
+                return false;
+            list.remove(element);
+            decrement(element);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean addAll(Collection<? extends E> elements)
+        {
+            for (E element : elements)
+                nonNull(element);
+            boolean result = list.addAll(elements);
+            for (E element : elements)
+                increment(element);
+            return result;
+        }
+
+        @Override
+        public synchronized boolean removeAll(Collection<?> elements)
+        {
+            Set<Object> removals = new HashSet<>();
+            for (Object element : elements)
+            {
+                if (contains(element))
+                    removals.add(element);
+            }
+            if (removals.isEmpty())
+                return false;
+            // Removes all occurrences in a single pass, using the set for fast lookups
+            list.removeAll(removals);
+            for (Object element : removals)
+                counts.remove(element);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean retainAll(Collection<?> elements)
+        {
+            boolean result = list.retainAll(elements);
+            if (result)
+            {
+                counts.clear();
+                for (E element : list)
+                    increment(element);
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void clear()
+        {
+            list.clear();
+            counts.clear();
+        }
+
+        private E nonNull(E element)
+        {
+            if (element == null)
+                throw new NullPointerException();
+            return element;
+        }
+
+        private void increment(Object element)
+        {
+            Integer count = counts.get(element);
+            counts.put(element, count == null ? 1 : count + 1);
+        }
+
+        private void decrement(Object element)
+        {
+            Integer count = counts.get(element);
+            if (count == null)
+                return;
+            if (count == 1)
+                counts.remove(element);
+            else
+                counts.put(element, count - 1);
+        }
+    }
 }
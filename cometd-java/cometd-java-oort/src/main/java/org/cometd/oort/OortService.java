@@ -16,10 +16,14 @@
 
 package org.cometd.oort;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.cometd.bayeux.server.BayeuxServer;
@@ -27,7 +31,9 @@ import org.cometd.bayeux.server.LocalSession;
 import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
+import org.cometd.server.BayeuxServerImpl;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +88,12 @@ import org.slf4j.LoggerFactory;
  * </ol>
  * The steps above do not change if the <em>requesting node</em> and
  * the <em>owner node</em> are the same.
+ * <p />
+ * Applications that forward many actions to remote nodes may enable batching
+ * with {@link #setBatchDelay(long)}: actions forwarded to the same remote node
+ * are then held for up to the batch delay, or until {@link #getBatchSize() batch size}
+ * actions are held, and are forwarded together in one message; their results
+ * are returned together in one message as well.
  *
  * @param <R> the result type
  * @param <C> the opaque context type
@@ -93,15 +105,20 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
     private static final String OORT_URL_FIELD = "oort.service.url";
     private static final String RESULT_FIELD = "oort.service.result";
     private static final String FAILURE_FIELD = "oort.service.failure";
+    private static final String ACTIONS_FIELD = "oort.service.actions";
+    private static final String RESULTS_FIELD = "oort.service.results";
 
     private final AtomicLong actions = new AtomicLong();
     private final ConcurrentMap<Long, C> callbacks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
     private final Oort oort;
     private final String name;
     private final String forwardChannelName;
     private final String resultChannelName;
     private final LocalSession session;
     protected final Logger logger;
+    private volatile long batchDelay;
+    private volatile int batchSize = 64;
 
     /**
      * Creates an {@link OortService} with the given name.
@@ -148,6 +165,40 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
         return session;
     }
 
+    /**
+     * @return the max time, in milliseconds, that actions forwarded to remote nodes are held
+     * to be forwarded together, or 0 if actions are forwarded immediately
+     */
+    public long getBatchDelay()
+    {
+        return batchDelay;
+    }
+
+    /**
+     * @param batchDelay the max time, in milliseconds, that actions forwarded to remote nodes
+     * are held to be forwarded together, or 0 to forward actions immediately
+     */
+    public void setBatchDelay(long batchDelay)
+    {
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * @return the max number of actions forwarded together to a remote node
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the max number of actions forwarded together to a remote node
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -163,6 +214,9 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
     @Override
     protected void doStop() throws Exception
     {
+        for (Batch batch : batches.values())
+            batch.flush();
+        batches.clear();
         BayeuxServer bayeuxServer = oort.getBayeuxServer();
         bayeuxServer.getChannel(resultChannelName).removeListener(this);
         bayeuxServer.getChannel(forwardChannelName).removeListener(this);
@@ -204,6 +258,13 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
                 OortComet comet = getOort().getComet(targetOortURL);
                 if (comet != null)
                 {
+                    if (batchDelay > 0)
+                    {
+                        data.remove(OORT_URL_FIELD);
+                        logger.debug("Batching action from {} to {}: {}", localOortURL, targetOortURL, data);
+                        batch(targetOortURL, data);
+                        return true;
+                    }
                     logger.debug("Forwarding action from {} to {}: {}", localOortURL, targetOortURL, data);
                     comet.getChannel(forwardChannelName).publish(data);
                     return true;
@@ -214,31 +275,45 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
         }
     }
 
+    private void batch(String targetOortURL, Map<String, Object> action)
+    {
+        Batch batch = batches.get(targetOortURL);
+        if (batch == null)
+        {
+            batch = new Batch(targetOortURL);
+            Batch existing = batches.putIfAbsent(targetOortURL, batch);
+            if (existing != null)
+                batch = existing;
+        }
+        batch.add(action);
+    }
+
     public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
     {
         if (forwardChannelName.equals(message.getChannel()))
         {
             logger.debug("Received forwarded action {}", message);
             Map<String, Object> data = message.getDataAsMap();
-            Map<String, Object> resultData = new HashMap<>(3);
-            resultData.put(ID_FIELD, data.get(ID_FIELD));
-            resultData.put(OORT_URL_FIELD, getOort().getURL());
-            try
+            Map<String, Object> resultData;
+            Object batch = data.get(ACTIONS_FIELD);
+            if (batch != null)
             {
-                R result = onForward(data.get(ACTION_FIELD));
-                resultData.put(RESULT_FIELD, result);
-            }
-            catch (ServiceException x)
-            {
-                resultData.put(FAILURE_FIELD, x.getFailure());
+                List<?> actionList = asList(batch);
+                List<Map<String, Object>> results = new ArrayList<>(actionList.size());
+                for (Object action : actionList)
+                {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> actionData = (Map<String, Object>)action;
+                    results.add(perform(actionData));
+                }
+                resultData = new HashMap<>(2);
+                resultData.put(RESULTS_FIELD, results);
             }
-            catch (Exception x)
+            else
             {
-                String failure = x.getMessage();
-                if (failure == null || failure.length() == 0)
-                    failure = x.getClass().getName();
-                resultData.put(FAILURE_FIELD, failure);
+                resultData = perform(data);
             }
+            resultData.put(OORT_URL_FIELD, getOort().getURL());
 
             String oortURL = (String)data.get(OORT_URL_FIELD);
             if (getOort().getURL().equals(oortURL))
@@ -266,26 +341,75 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
         {
             logger.debug("Received forwarded action result {}", message);
             Map<String, Object> data = message.getDataAsMap();
-            long actionId = ((Number)data.get(ID_FIELD)).longValue();
-            C context = callbacks.remove(actionId);
-            if (context != null)
+            Object results = data.get(RESULTS_FIELD);
+            if (results != null)
             {
-                Object failure = data.get(FAILURE_FIELD);
-                if (failure != null)
-                {
-                    onForwardFailed(failure, context);
-                }
-                else
+                for (Object result : asList(results))
                 {
                     @SuppressWarnings("unchecked")
-                    R result = (R)data.get(RESULT_FIELD);
-                    onForwardSucceeded(result, context);
+                    Map<String, Object> resultData = (Map<String, Object>)result;
+                    complete(resultData);
                 }
             }
+            else
+            {
+                complete(data);
+            }
         }
         return true;
     }
 
+    private Map<String, Object> perform(Map<String, Object> data)
+    {
+        Map<String, Object> resultData = new HashMap<>(3);
+        resultData.put(ID_FIELD, data.get(ID_FIELD));
+        try
+        {
+            R result = onForward(data.get(ACTION_FIELD));
+            resultData.put(RESULT_FIELD, result);
+        }
+        catch (ServiceException x)
+        {
+            resultData.put(FAILURE_FIELD, x.getFailure());
+        }
+        catch (Exception x)
+        {
+            String failure = x.getMessage();
+            if (failure == null || failure.length() == 0)
+                failure = x.getClass().getName();
+            resultData.put(FAILURE_FIELD, failure);
+        }
+        return resultData;
+    }
+
+    private void complete(Map<String, Object> data)
+    {
+        long actionId = ((Number)data.get(ID_FIELD)).longValue();
+        C context = callbacks.remove(actionId);
+        if (context != null)
+        {
+            Object failure = data.get(FAILURE_FIELD);
+            if (failure != null)
+            {
+                onForwardFailed(failure, context);
+            }
+            else
+            {
+                @SuppressWarnings("unchecked")
+                R result = (R)data.get(RESULT_FIELD);
+                onForwardSucceeded(result, context);
+            }
+        }
+    }
+
+    private static List<?> asList(Object value)
+    {
+        // Depending on the JSON library, lists are received as arrays
+        if (value instanceof Object[])
+            return Arrays.asList((Object[])value);
+        return (List<?>)value;
+    }
+
     /**
      * Subclasses must implement this method, that runs on the <em>owner node</em>,
      * to implement the action functionality.
@@ -319,6 +443,84 @@ public abstract class OortService<R, C> extends AbstractLifeCycle implements Ser
         return String.format("%s[%s]@%s", getClass().getSimpleName(), getName(), getOort().getURL());
     }
 
+    /**
+     * <p>The actions held to be forwarded together to a remote node.</p>
+     */
+    private class Batch implements Runnable
+    {
+        private final String oortURL;
+        private List<Map<String, Object>> actions = new ArrayList<>();
+        private Scheduler.Task task;
+
+        private Batch(String oortURL)
+        {
+            this.oortURL = oortURL;
+        }
+
+        private void add(Map<String, Object> action)
+        {
+            boolean flush = false;
+            synchronized (this)
+            {
+                actions.add(action);
+                if (actions.size() >= batchSize)
+                {
+                    flush = true;
+                }
+                else if (task == null)
+                {
+                    BayeuxServer bayeuxServer = oort.getBayeuxServer();
+                    if (bayeuxServer instanceof BayeuxServerImpl)
+                        task = ((BayeuxServerImpl)bayeuxServer).getScheduler().schedule(this, batchDelay, TimeUnit.MILLISECONDS);
+                    else
+                        flush = true;
+                }
+            }
+            if (flush)
+                flush();
+        }
+
+        public void run()
+        {
+            flush();
+        }
+
+        private synchronized void flush()
+        {
+            if (task != null)
+            {
+                task.cancel();
+                task = null;
+            }
+            if (actions.isEmpty())
+                return;
+            List<Map<String, Object>> batch = actions;
+            actions = new ArrayList<>();
+
+            OortComet comet = getOort().getComet(oortURL);
+            if (comet != null)
+            {
+                Map<String, Object> data = new HashMap<>(2);
+                data.put(ACTIONS_FIELD, batch);
+                data.put(OORT_URL_FIELD, getOort().getURL());
+                logger.debug("Forwarding {} actions from {} to {}", batch.size(), getOort().getURL(), oortURL);
+                // Publishing while holding the lock keeps the batches in order
+                comet.getChannel(forwardChannelName).publish(data);
+            }
+            else
+            {
+                logger.debug("Could not forward {} actions from {} to {}", batch.size(), getOort().getURL(), oortURL);
+                for (Map<String, Object> action : batch)
+                {
+                    Map<String, Object> failure = new HashMap<>(2);
+                    failure.put(ID_FIELD, action.get(ID_FIELD));
+                    failure.put(FAILURE_FIELD, "Could not forward action to " + oortURL);
+                    complete(failure);
+                }
+            }
+        }
+    }
+
     /**
      * Subclasses may throw this exception from {@link #onForward(Object)} if they want
      * to produce a complex failure object that will be reported to {@link #onForwardFailed(Object, Object)}.
@@ -16,15 +16,20 @@
 
 package org.cometd.oort;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EventListener;
 import java.util.EventObject;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.cometd.bayeux.Message;
@@ -70,7 +75,7 @@ public class Seti extends AbstractLifeCycle
     public static final String SETI_ATTRIBUTE = Seti.class.getName();
     private static final String SETI_ALL_CHANNEL = "/seti/all";
 
-    private final Map<String, Set<Location>> _uid2Location = new HashMap<>();
+    private final Associations _uid2Location = new Associations();
     private final List<PresenceListener> _listeners = new CopyOnWriteArrayList<>();
     private final Logger _logger;
     private final Oort _oort;
@@ -227,18 +232,9 @@ public class Seti extends AbstractLifeCycle
 
     protected boolean associate(String userId, Location location)
     {
-        synchronized (_uid2Location)
-        {
-            Set<Location> locations = _uid2Location.get(userId);
-            if (locations == null)
-            {
-                locations = new HashSet<>();
-                _uid2Location.put(userId, locations);
-            }
-            boolean result = locations.add(location);
-            debug("Associations {}", _uid2Location);
-            return result;
-        }
+        boolean result = _uid2Location.add(userId, location);
+        debug("Associations {}", _uid2Location);
+        return result;
     }
 
     /**
@@ -251,18 +247,15 @@ public class Seti extends AbstractLifeCycle
     @ManagedOperation(value = "Whether the given userId is associated locally", impact = "INFO")
     public boolean isAssociated(@Name(value = "userId", description = "The userId to test for local association") String userId)
     {
-        synchronized (_uid2Location)
-        {
-            Set<Location> locations = _uid2Location.get(userId);
-            if (locations == null)
-                return false;
-            for (Location location : locations)
-            {
-                if (location instanceof LocalLocation)
-                    return true;
-            }
+        Location[] locations = _uid2Location.get(userId);
+        if (locations == null)
             return false;
+        for (Location location : locations)
+        {
+            if (location instanceof LocalLocation)
+                return true;
         }
+        return false;
     }
 
     /**
@@ -274,19 +267,16 @@ public class Seti extends AbstractLifeCycle
     @ManagedOperation(value = "The number of local associations for the given userId", impact = "INFO")
     public int getAssociationCount(@Name(value = "userId", description = "The userId to test for local association count") String userId)
     {
-        synchronized (_uid2Location)
+        Location[] locations = _uid2Location.get(userId);
+        if (locations == null)
+            return 0;
+        int result = 0;
+        for (Location location : locations)
         {
-            Set<Location> locations = _uid2Location.get(userId);
-            if (locations == null)
-                return 0;
-            int result = 0;
-            for (Location location : locations)
-            {
-                if (location instanceof LocalLocation)
-                    ++result;
-            }
-            return result;
+            if (location instanceof LocalLocation)
+                ++result;
         }
+        return result;
     }
 
     /**
@@ -299,11 +289,7 @@ public class Seti extends AbstractLifeCycle
     @ManagedOperation(value = "Whether the given userId is present in the cloud", impact = "INFO")
     public boolean isPresent(@Name(value = "userId", description = "The userId to test for presence in the cloud") String userId)
     {
-        synchronized (_uid2Location)
-        {
-            Set<Location> locations = _uid2Location.get(userId);
-            return locations != null;
-        }
+        return _uid2Location.get(userId) != null;
     }
 
     /**
@@ -315,11 +301,8 @@ public class Seti extends AbstractLifeCycle
     @ManagedOperation(value = "The number of local and remote associations for the given userId", impact = "INFO")
     public int getPresenceCount(@Name(value = "userId", description = "The userId to test for presence count") String userId)
     {
-        synchronized (_uid2Location)
-        {
-            Set<Location> locations = _uid2Location.get(userId);
-            return locations == null ? 0 : locations.size();
-        }
+        Location[] locations = _uid2Location.get(userId);
+        return locations == null ? 0 : locations.length;
     }
 
     /**
@@ -361,19 +344,9 @@ public class Seti extends AbstractLifeCycle
 
     protected boolean disassociate(String userId, Location location)
     {
-        synchronized (_uid2Location)
-        {
-            boolean result = false;
-            Set<Location> locations = _uid2Location.get(userId);
-            if (locations != null)
-            {
-                result = locations.remove(location);
-                if (locations.isEmpty())
-                    _uid2Location.remove(userId);
-            }
-            debug("Associations {}", _uid2Location);
-            return result;
-        }
+        boolean result = _uid2Location.remove(userId, location);
+        debug("Associations {}", _uid2Location);
+        return result;
     }
 
     /**
@@ -382,10 +355,7 @@ public class Seti extends AbstractLifeCycle
     @ManagedAttribute(value = "The set of userIds known to this Seti", readonly = true)
     public Set<String> getUserIds()
     {
-        synchronized (_uid2Location)
-        {
-            return new HashSet<>(_uid2Location.keySet());
-        }
+        return _uid2Location.getUserIds();
     }
 
     /**
@@ -403,6 +373,9 @@ public class Seti extends AbstractLifeCycle
 
     /**
      * <p>Sends a message to multiple userIds in the Oort cloud.</p>
+     * <p>Users associated with the same remote comet are reached with a single message
+     * that carries the list of recipients, and that the remote comet delivers to each
+     * of them.</p>
      *
      * @param toUserIds the userIds to send the message to
      * @param toChannel the channel to send the message to
@@ -410,21 +383,53 @@ public class Seti extends AbstractLifeCycle
      */
     public void sendMessage(final Collection<String> toUserIds, final String toChannel, final Object data)
     {
-        for (String toUserId : toUserIds)
+        // Resolve all the users first, then send: the locations are immutable
+        // snapshots, so resolving them requires neither locking nor copying
+        String[] userIds = toUserIds.toArray(new String[toUserIds.size()]);
+        Location[][] locations = new Location[userIds.length][];
+        for (int i = 0; i < userIds.length; ++i)
         {
-            Set<Location> copy = new HashSet<>();
-            synchronized (_uid2Location)
+            Location[] userLocations = _uid2Location.get(userIds[i]);
+            if (userLocations == null)
+                userLocations = new Location[]{new SetiLocation(userIds[i], SETI_ALL_CHANNEL)};
+            locations[i] = userLocations;
+        }
+
+        // Group the users by the remote Seti they are associated with,
+        // so that each remote Seti receives only one message
+        Map<String, List<String>> remotes = new LinkedHashMap<>();
+        for (int i = 0; i < userIds.length; ++i)
+        {
+            String toUserId = userIds[i];
+            debug("Sending message to locations {}", Arrays.asList(locations[i]));
+            for (Location location : locations[i])
             {
-                Set<Location> locations = _uid2Location.get(toUserId);
-                if (locations == null)
-                    copy.add(new SetiLocation(toUserId, SETI_ALL_CHANNEL));
+                if (location instanceof SetiLocation)
+                {
+                    String setiChannel = ((SetiLocation)location)._setiId;
+                    List<String> users = remotes.get(setiChannel);
+                    if (users == null)
+                    {
+                        users = new ArrayList<>();
+                        remotes.put(setiChannel, users);
+                    }
+                    users.add(toUserId);
+                }
                 else
-                    copy.addAll(locations);
+                {
+                    location.send(toUserId, toChannel, data);
+                }
             }
+        }
 
-            debug("Sending message to locations {}", copy);
-            for (Location location : copy)
-                location.send(toUserId, toChannel, data);
+        for (Map.Entry<String, List<String>> entry : remotes.entrySet())
+        {
+            List<String> users = entry.getValue();
+            debug("Sending message to {} users via {}", users.size(), entry.getKey());
+            SetiMessage message = users.size() == 1 ?
+                    new SetiMessage(users.get(0), toChannel, data) :
+                    new SetiMessage(users, toChannel, data);
+            _session.getChannel(entry.getKey()).publish(message);
         }
     }
 
@@ -544,33 +549,50 @@ public class Seti extends AbstractLifeCycle
     protected void receiveMessage(Message message)
     {
         Map<String, Object> messageData = message.getDataAsMap();
-        String userId = (String)messageData.get(SetiMessage.USER_ID_FIELD);
         String channel = (String)messageData.get(SetiMessage.CHANNEL_FIELD);
         Object data = messageData.get(SetiMessage.DATA_FIELD);
 
-        Set<Location> copy = new HashSet<>();
-        synchronized (_uid2Location)
+        // Messages sent to multiple users of this comet carry the list of users
+        Object userIds = messageData.get(SetiMessage.USER_IDS_FIELD);
+        if (userIds instanceof Object[])
+        {
+            for (Object userId : (Object[])userIds)
+                receiveMessage(message, (String)userId, channel, data);
+        }
+        else if (userIds instanceof Collection)
         {
-            Set<Location> locations = _uid2Location.get(userId);
-            if (locations != null)
+            for (Object userId : (Collection<?>)userIds)
+                receiveMessage(message, (String)userId, channel, data);
+        }
+        else
+        {
+            String userId = (String)messageData.get(SetiMessage.USER_ID_FIELD);
+            receiveMessage(message, userId, channel, data);
+        }
+    }
+
+    private void receiveMessage(Message message, String userId, String channel, Object data)
+    {
+        List<Location> copy = new ArrayList<>(1);
+        Location[] locations = _uid2Location.get(userId);
+        if (locations != null)
+        {
+            // Consider cometA, cometB and cometC and a user that is associated
+            // in both cometA and cometB. When cometC sends a message to the user,
+            // it knows that the user is in both cometA and cometB (thanks to presence
+            // messages) and will send a message to both cometA and cometB.
+            // But cometA also knows from presence messages that the user is also in
+            // cometB and should not forward the message arriving from cometC to cometB
+            // since cometC will take care of sending to cometB.
+            // Hence, we forward the message only locally
+            for (Location location : locations)
             {
-                // Consider cometA, cometB and cometC and a user that is associated
-                // in both cometA and cometB. When cometC sends a message to the user,
-                // it knows that the user is in both cometA and cometB (thanks to presence
-                // messages) and will send a message to both cometA and cometB.
-                // But cometA also knows from presence messages that the user is also in
-                // cometB and should not forward the message arriving from cometC to cometB
-                // since cometC will take care of sending to cometB.
-                // Hence, we forward the message only locally
-                for (Location location : locations)
-                {
-                    if (location instanceof LocalLocation)
-                        copy.add(location);
-                }
+                if (location instanceof LocalLocation)
+                    copy.add(location);
             }
         }
 
-        debug("Received message {} for locations {}", message, copy);
+        debug("Received message {} for user {} at locations {}", message, userId, copy);
         for (Location location : copy)
             location.receive(userId, channel, data);
     }
@@ -581,6 +603,118 @@ public class Seti extends AbstractLifeCycle
         return String.format("%s[%s]", getClass().getName(), getId());
     }
 
+    /**
+     * <p>The index from userId to the locations of that user.</p>
+     * <p>The locations of each user are stored as an immutable array that is replaced
+     * on every change, so that lookups only read the current array without locking.
+     * Changes are serialized by a lock per shard of userIds, so that associations and
+     * disassociations of different users rarely contend.</p>
+     */
+    private static class Associations
+    {
+        private final Shard[] _shards;
+
+        private Associations()
+        {
+            int shards = 1;
+            while (shards < 4 * Runtime.getRuntime().availableProcessors())
+                shards <<= 1;
+            _shards = new Shard[shards];
+            for (int i = 0; i < shards; ++i)
+                _shards[i] = new Shard();
+        }
+
+        private Shard shard(String userId)
+        {
+            int hash = userId.hashCode();
+            hash ^= hash >>> 16;
+            return _shards[hash & (_shards.length - 1)];
+        }
+
+        private Location[] get(String userId)
+        {
+            return shard(userId)._map.get(userId);
+        }
+
+        private boolean add(String userId, Location location)
+        {
+            Shard shard = shard(userId);
+            synchronized (shard)
+            {
+                Location[] locations = shard._map.get(userId);
+                if (locations == null)
+                {
+                    shard._map.put(userId, new Location[]{location});
+                    return true;
+                }
+                for (Location existing : locations)
+                {
+                    if (existing.equals(location))
+                        return false;
+                }
+                Location[] result = Arrays.copyOf(locations, locations.length + 1);
+                result[locations.length] = location;
+                shard._map.put(userId, result);
+                return true;
+            }
+        }
+
+        private boolean remove(String userId, Location location)
+        {
+            Shard shard = shard(userId);
+            synchronized (shard)
+            {
+                Location[] locations = shard._map.get(userId);
+                if (locations == null)
+                    return false;
+                for (int i = 0; i < locations.length; ++i)
+                {
+                    if (locations[i].equals(location))
+                    {
+                        if (locations.length == 1)
+                        {
+                            shard._map.remove(userId);
+                        }
+                        else
+                        {
+                            Location[] result = new Location[locations.length - 1];
+                            System.arraycopy(locations, 0, result, 0, i);
+                            System.arraycopy(locations, i + 1, result, i, result.length - i);
+                            shard._map.put(userId, result);
+                        }
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+
+        private Set<String> getUserIds()
+        {
+            Set<String> result = new HashSet<>();
+            for (Shard shard : _shards)
+                result.addAll(shard._map.keySet());
+            return result;
+        }
+
+        @Override
+        public String toString()
+        {
+            Map<String, List<Location>> result = new HashMap<>();
+            for (Shard shard : _shards)
+            {
+                for (Map.Entry<String, Location[]> entry : shard._map.entrySet())
+                    result.put(entry.getKey(), Arrays.asList(entry.getValue()));
+            }
+            return result.toString();
+        }
+
+        private static class Shard
+        {
+            private final ConcurrentMap<String, Location[]> _map = new ConcurrentHashMap<>();
+        }
+    }
+
     /**
      * <p>The representation of where a user is.</p>
      */
@@ -704,6 +838,7 @@ public class Seti extends AbstractLifeCycle
     private class SetiMessage extends HashMap<String, Object>
     {
         private static final String USER_ID_FIELD = "userId";
+        private static final String USER_IDS_FIELD = "userIds";
         private static final String CHANNEL_FIELD = "channel";
         private static final String SETI_ID_FIELD = "setiId";
         private static final String DATA_FIELD = "data";
@@ -716,6 +851,15 @@ public class Seti extends AbstractLifeCycle
             put(SETI_ID_FIELD, _setiId);
             put(DATA_FIELD, data);
         }
+
+        private SetiMessage(List<String> toUsers, String toChannel, Object data)
+        {
+            super(4);
+            put(USER_IDS_FIELD, toUsers);
+            put(CHANNEL_FIELD, toChannel);
+            put(SETI_ID_FIELD, _setiId);
+            put(DATA_FIELD, data);
+        }
     }
 
     private class SetiPresence extends HashMap<String, Object>
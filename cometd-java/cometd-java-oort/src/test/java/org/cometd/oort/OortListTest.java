@@ -95,6 +95,51 @@ public class OortListTest extends AbstractOortObjectTest
         Assert.assertTrue(removeLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testIndexedListContainsAndIsPresent() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<List<String>> factory = OortObjectFactories.forConcurrentIndexedList();
+        OortList<String> oortList1 = new OortList<String>(oort1, name, factory);
+        OortList<String> oortList2 = new OortList<String>(oort2, name, factory);
+        startOortObjects(oortList1, oortList2);
+
+        final CountDownLatch addLatch = new CountDownLatch(1);
+        final CountDownLatch removeLatch = new CountDownLatch(1);
+        oortList2.addElementListener(new OortList.ElementListener.Adapter<String>()
+        {
+            @Override
+            public void onAdded(OortObject.Info<List<String>> info, List<String> elements)
+            {
+                addLatch.countDown();
+            }
+
+            @Override
+            public void onRemoved(OortObject.Info<List<String>> info, List<String> elements)
+            {
+                removeLatch.countDown();
+            }
+        });
+
+        String element1 = "1";
+        String element2 = "2";
+        Assert.assertTrue(oortList1.addAndShare(element1, element2));
+        Assert.assertTrue(addLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertTrue(oortList1.contains(element1));
+        Assert.assertFalse(oortList2.contains(element1));
+        Assert.assertTrue(oortList2.isPresent(element1));
+        Assert.assertTrue(oortList2.isPresent(element2));
+        Assert.assertFalse(oortList2.isPresent("3"));
+
+        Assert.assertTrue(oortList1.removeAndShare(element2));
+        Assert.assertTrue(removeLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertFalse(oortList1.contains(element2));
+        Assert.assertFalse(oortList2.isPresent(element2));
+        Assert.assertTrue(oortList2.isPresent(element1));
+    }
+
     @Test
     public void testDeltaListener() throws Exception
     {
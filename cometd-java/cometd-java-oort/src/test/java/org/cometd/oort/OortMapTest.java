@@ -18,11 +18,17 @@ package org.cometd.oort;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerSession;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -241,4 +247,256 @@ public class OortMapTest extends AbstractOortObjectTest
         oortMap2.removeEntryListener(putListener);
         oortMap1.removeEntryListener(putListener);
     }
+
+    @Test
+    public void testConcurrentPutAndRemoveKeepIndexConsistent() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<ConcurrentMap<String, String>> factory = OortObjectFactories.forConcurrentMap();
+        final OortMap<String> oortMap1 = new OortMap<String>(oort1, name, factory);
+        OortMap<String> oortMap2 = new OortMap<String>(oort2, name, factory);
+        startOortObjects(oortMap1, oortMap2);
+
+        final int keys = 4;
+        int threads = 8;
+        final int iterations = 500;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i)
+        {
+            final boolean putter = i % 2 == 0;
+            Thread worker = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        for (int j = 0; j < iterations; ++j)
+                        {
+                            String key = "key" + (j % keys);
+                            if (putter)
+                                oortMap1.putAndShare(key, "value" + j);
+                            else
+                                oortMap1.removeAndShare(key);
+                        }
+                    }
+                    catch (Throwable x)
+                    {
+                        failure.compareAndSet(null, x);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+
+        // Every key present in the map must be found through the index
+        for (int i = 0; i < keys; ++i)
+        {
+            String key = "key" + i;
+            Assert.assertEquals(oortMap1.get(key), oortMap1.find(key));
+        }
+    }
+
+    @Test
+    public void testFindAfterRemovalsAndWholeMapUpdates() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<ConcurrentMap<String, String>> factory = OortObjectFactories.forConcurrentMap();
+        OortMap<String> oortMap1 = new OortMap<String>(oort1, name, factory);
+        OortMap<String> oortMap2 = new OortMap<String>(oort2, name, factory);
+        startOortObjects(oortMap1, oortMap2);
+
+        final String key1 = "key1";
+        final String key2 = "key2";
+        final String key3 = "key3";
+        final String value = "value";
+        ConcurrentMap<String, String> map = factory.newObject(null);
+        map.put(key1, value);
+        map.put(key2, value);
+        final CountDownLatch setLatch1 = new CountDownLatch(1);
+        OortObject.Listener.Adapter<ConcurrentMap<String, String>> setListener1 = new OortObject.Listener.Adapter<ConcurrentMap<String, String>>()
+        {
+            @Override
+            public void onUpdated(OortObject.Info<ConcurrentMap<String, String>> oldInfo, OortObject.Info<ConcurrentMap<String, String>> newInfo)
+            {
+                setLatch1.countDown();
+            }
+        };
+        oortMap2.addListener(setListener1);
+        oortMap1.setAndShare(map);
+        Assert.assertTrue(setLatch1.await(5, TimeUnit.SECONDS));
+        oortMap2.removeListener(setListener1);
+
+        Assert.assertEquals(value, oortMap2.find(key1));
+        Assert.assertEquals(oort1.getURL(), oortMap2.findInfo(key2).getOortURL());
+
+        final CountDownLatch removeLatch = new CountDownLatch(1);
+        oortMap2.addEntryListener(new OortMap.EntryListener.Adapter<String>()
+        {
+            @Override
+            public void onRemoved(OortObject.Info<ConcurrentMap<String, String>> info, OortMap.Entry<String> entry)
+            {
+                removeLatch.countDown();
+            }
+        });
+        oortMap1.removeAndShare(key1);
+        Assert.assertTrue(removeLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertNull(oortMap2.find(key1));
+        Assert.assertNull(oortMap2.findInfo(key1));
+        Assert.assertEquals(value, oortMap2.find(key2));
+
+        map = factory.newObject(null);
+        map.put(key3, value);
+        final CountDownLatch setLatch2 = new CountDownLatch(1);
+        oortMap2.addListener(new OortObject.Listener.Adapter<ConcurrentMap<String, String>>()
+        {
+            @Override
+            public void onUpdated(OortObject.Info<ConcurrentMap<String, String>> oldInfo, OortObject.Info<ConcurrentMap<String, String>> newInfo)
+            {
+                setLatch2.countDown();
+            }
+        });
+        oortMap1.setAndShare(map);
+        Assert.assertTrue(setLatch2.await(5, TimeUnit.SECONDS));
+
+        // Keys of the replaced map are no longer found
+        Assert.assertNull(oortMap2.find(key2));
+        Assert.assertEquals(value, oortMap2.find(key3));
+        Assert.assertEquals(value, oortMap1.find(key3));
+    }
+
+    @Test
+    public void testReconnectTransfersOnlyMissedEntries() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<ConcurrentMap<String, String>> factory = OortObjectFactories.forConcurrentMap();
+        OortMap<String> oortMap1 = new OortMap<String>(oort1, name, factory);
+        OortMap<String> oortMap2 = new OortMap<String>(oort2, name, factory);
+        oortMap1.setChunkSize(2);
+        startOortObjects(oortMap1, oortMap2);
+
+        final CountDownLatch putLatch = new CountDownLatch(4);
+        oortMap2.addEntryListener(new OortMap.EntryListener.Adapter<String>()
+        {
+            @Override
+            public void onPut(OortObject.Info<ConcurrentMap<String, String>> info, OortMap.Entry<String> entry)
+            {
+                putLatch.countDown();
+            }
+        });
+        for (int i = 0; i < 4; ++i)
+            oortMap1.putAndShare("key" + i, "value" + i);
+        Assert.assertTrue(putLatch.await(5, TimeUnit.SECONDS));
+
+        // Node1 leaves, and changes its map while it is away
+        oortMap2.cometLeft(new Oort.CometListener.Event(oort2, oort1.getURL()));
+        Assert.assertNull(oortMap2.getInfo(oort1.getURL()));
+        oortMap1.removeAndShare("key0");
+        oortMap1.putAndShare("key1", "value1b");
+        oortMap1.putAndShare("key4", "value4");
+
+        final AtomicInteger entries = new AtomicInteger();
+        oort2.getBayeuxServer().getChannel(oortMap2.getChannelName()).addListener(new ServerChannel.MessageListener()
+        {
+            public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
+            {
+                Map<String, Object> data = message.getDataAsMap();
+                if ("oort.map.chunk".equals(data.get(OortObject.Info.TYPE_FIELD)))
+                {
+                    Object chunk = data.get("oort.map.entries");
+                    entries.addAndGet(chunk instanceof Object[] ? ((Object[])chunk).length : ((List<?>)chunk).size());
+                }
+                return true;
+            }
+        });
+        final CountDownLatch syncLatch = new CountDownLatch(1);
+        oortMap2.addListener(new OortObject.Listener.Adapter<ConcurrentMap<String, String>>()
+        {
+            @Override
+            public void onUpdated(OortObject.Info<ConcurrentMap<String, String>> oldInfo, OortObject.Info<ConcurrentMap<String, String>> newInfo)
+            {
+                if (oldInfo == null)
+                    syncLatch.countDown();
+            }
+        });
+
+        // Node1 comes back
+        oortMap1.cometJoined(new Oort.CometListener.Event(oort1, oort2.getURL()));
+        Assert.assertTrue(syncLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(oortMap1.getInfo(oort1.getURL()).getObject(), oortMap2.getInfo(oort1.getURL()).getObject());
+        // Only the removal and the two puts have been transferred
+        Assert.assertEquals(3, entries.get());
+    }
+
+    @Test
+    public void testReconnectAfterRetentionTimeTransfersWholeMap() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<ConcurrentMap<String, String>> factory = OortObjectFactories.forConcurrentMap();
+        OortMap<String> oortMap1 = new OortMap<String>(oort1, name, factory);
+        OortMap<String> oortMap2 = new OortMap<String>(oort2, name, factory);
+        long retentionTime = 500;
+        oortMap2.setRetentionTime(retentionTime);
+        startOortObjects(oortMap1, oortMap2);
+
+        final CountDownLatch putLatch = new CountDownLatch(4);
+        oortMap2.addEntryListener(new OortMap.EntryListener.Adapter<String>()
+        {
+            @Override
+            public void onPut(OortObject.Info<ConcurrentMap<String, String>> info, OortMap.Entry<String> entry)
+            {
+                putLatch.countDown();
+            }
+        });
+        for (int i = 0; i < 4; ++i)
+            oortMap1.putAndShare("key" + i, "value" + i);
+        Assert.assertTrue(putLatch.await(5, TimeUnit.SECONDS));
+
+        // Node1 leaves, changes its map, and stays away longer than the retention time
+        oortMap2.cometLeft(new Oort.CometListener.Event(oort2, oort1.getURL()));
+        oortMap1.putAndShare("key4", "value4");
+        Thread.sleep(2 * retentionTime);
+
+        final AtomicInteger entries = new AtomicInteger();
+        oort2.getBayeuxServer().getChannel(oortMap2.getChannelName()).addListener(new ServerChannel.MessageListener()
+        {
+            public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
+            {
+                Map<String, Object> data = message.getDataAsMap();
+                if ("oort.map.chunk".equals(data.get(OortObject.Info.TYPE_FIELD)))
+                {
+                    Object chunk = data.get("oort.map.entries");
+                    entries.addAndGet(chunk instanceof Object[] ? ((Object[])chunk).length : ((List<?>)chunk).size());
+                }
+                return true;
+            }
+        });
+        final CountDownLatch syncLatch = new CountDownLatch(1);
+        oortMap2.addListener(new OortObject.Listener.Adapter<ConcurrentMap<String, String>>()
+        {
+            @Override
+            public void onUpdated(OortObject.Info<ConcurrentMap<String, String>> oldInfo, OortObject.Info<ConcurrentMap<String, String>> newInfo)
+            {
+                if (oldInfo == null)
+                    syncLatch.countDown();
+            }
+        });
+
+        // Node1 comes back
+        oortMap1.cometJoined(new Oort.CometListener.Event(oort1, oort2.getURL()));
+        Assert.assertTrue(syncLatch.await(5, TimeUnit.SECONDS));
+
+        Assert.assertEquals(oortMap1.getInfo(oort1.getURL()).getObject(), oortMap2.getInfo(oort1.getURL()).getObject());
+        // The retained map has expired, so the whole map has been transferred
+        Assert.assertEquals(5, entries.get());
+    }
 }
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.cometd.bayeux.server.BayeuxServer;
 import org.cometd.bayeux.server.ServerChannel;
@@ -92,6 +93,42 @@ public class OortObjectTest extends AbstractOortObjectTest
         Assert.assertEquals(object1, objectAtOort2);
     }
 
+    @Test
+    public void testShareDelayCoalescesUpdates() throws Exception
+    {
+        String name = "test";
+        OortObject.Factory<Long> factory = OortObjectFactories.forLong(0);
+        OortObject<Long> oortObject1 = new OortObject<>(oort1, name, factory);
+        OortObject<Long> oortObject2 = new OortObject<>(oort2, name, factory);
+        startOortObjects(oortObject1, oortObject2);
+        oortObject1.setShareDelay(1000);
+
+        final long updates = 100;
+        final AtomicInteger remoteUpdates = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        oortObject2.addListener(new OortObject.Listener.Adapter<Long>()
+        {
+            @Override
+            public void onUpdated(OortObject.Info<Long> oldInfo, OortObject.Info<Long> newInfo)
+            {
+                remoteUpdates.incrementAndGet();
+                if (newInfo.getObject() == updates)
+                    latch.countDown();
+            }
+        });
+
+        for (long i = 1; i <= updates; ++i)
+        {
+            oortObject1.setAndShare(i);
+            // The local value is updated immediately
+            Assert.assertEquals(i, (long)oortObject1.getInfo(oort1.getURL()).getObject());
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, remoteUpdates.get());
+        Assert.assertEquals(updates, (long)oortObject2.getInfo(oort1.getURL()).getObject());
+    }
+
     @Test
     public void testLocalObjectIsPushedWhenNodeJoins() throws Exception
     {
@@ -18,7 +18,11 @@ package org.cometd.oort;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerSession;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -125,6 +129,40 @@ public class OortServiceTest extends AbstractOortObjectTest
         service1.stop();
     }
 
+    @Test
+    public void testActionsAreForwardedInBatches() throws Exception
+    {
+        int count = 10;
+        CountDownLatch latch1 = new CountDownLatch(count);
+        Service service1 = new Service(oort1, latch1);
+        service1.setBatchDelay(1000);
+        service1.setBatchSize(count);
+        service1.start();
+        Service service2 = new Service(oort2, new CountDownLatch(0));
+        service2.start();
+
+        final AtomicInteger forwards = new AtomicInteger();
+        oort2.getBayeuxServer().getChannel("/service/oort/service/test").addListener(new ServerChannel.MessageListener()
+        {
+            public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
+            {
+                forwards.incrementAndGet();
+                return true;
+            }
+        });
+
+        // The batch is forwarded as soon as it is full, well before the batch delay
+        for (int i = 0; i < count; ++i)
+            service1.perform(oort2.getURL(), "context");
+        Assert.assertTrue(latch1.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(service1.result);
+        Assert.assertNull(service1.failure);
+        Assert.assertEquals(1, forwards.get());
+
+        service2.stop();
+        service1.stop();
+    }
+
     private static class Service extends OortService<Boolean, String>
     {
         private final CountDownLatch latch;
@@ -17,16 +17,20 @@
 package org.cometd.oort;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.client.ClientSessionChannel;
+import org.cometd.bayeux.server.LocalSession;
+import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.bayeux.server.ServerTransport;
@@ -129,6 +133,64 @@ public class SetiTest extends OortTest
         Assert.assertTrue(messageLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testSendMessageToMultipleUsersOnSameComet() throws Exception
+    {
+        Server server1 = startServer(0);
+        Oort oort1 = startOort(server1);
+        Server server2 = startServer(0);
+        Oort oort2 = startOort(server2);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        oort2.addCometListener(new CometJoinedListener(latch));
+        OortComet oortComet12 = oort1.observeComet(oort2.getURL());
+        Assert.assertTrue(oortComet12.waitFor(5000, BayeuxClient.State.CONNECTED));
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        OortComet oortComet21 = oort2.findComet(oort1.getURL());
+        Assert.assertTrue(oortComet21.waitFor(5000, BayeuxClient.State.CONNECTED));
+
+        Seti seti1 = startSeti(oort1);
+        Seti seti2 = startSeti(oort2);
+
+        CountDownLatch presenceLatch = new CountDownLatch(2);
+        seti1.addPresenceListener(new UserPresentListener(presenceLatch));
+
+        new SetiService(seti2);
+
+        BayeuxClient client2 = startClient(oort2, null);
+        BayeuxClient client3 = startClient(oort2, null);
+
+        Map<String, Object> login2 = new HashMap<>();
+        login2.put("user", "user2");
+        client2.getChannel("/service/login").publish(login2);
+        Map<String, Object> login3 = new HashMap<>();
+        login3.put("user", "user3");
+        client3.getChannel("/service/login").publish(login3);
+
+        Assert.assertTrue(presenceLatch.await(5, TimeUnit.SECONDS));
+
+        final AtomicInteger setiMessages = new AtomicInteger();
+        oort2.getBayeuxServer().getChannel("/seti/" + seti2.getId()).addListener(new ServerChannel.MessageListener()
+        {
+            public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
+            {
+                setiMessages.incrementAndGet();
+                return true;
+            }
+        });
+
+        String channel = "/group";
+        LatchListener messageLatch = new LatchListener(2);
+        client2.getChannel(channel).addListener(messageLatch);
+        client3.getChannel(channel).addListener(messageLatch);
+
+        seti1.sendMessage(Arrays.asList("user2", "user3"), channel, "data");
+
+        Assert.assertTrue(messageLatch.await(5, TimeUnit.SECONDS));
+        // Both users must have been reached with a single message to the remote comet
+        Assert.assertEquals(1, setiMessages.get());
+    }
+
     @Test
     public void testDisassociate() throws Exception
     {
@@ -494,6 +556,113 @@ public class SetiTest extends OortTest
         seti2.removePresenceListener(listener);
     }
 
+    @Test
+    public void testConcurrentAssociateDisassociate() throws Exception
+    {
+        Server server = startServer(0);
+        Oort oort = startOort(server);
+        final Seti seti = startSeti(oort);
+
+        final String userId = "user";
+        int threads = 8;
+        final int iterations = 1000;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i)
+        {
+            LocalSession session = oort.getBayeuxServer().newLocalSession("seti_test_" + i);
+            session.handshake();
+            final ServerSession serverSession = session.getServerSession();
+            Thread worker = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        for (int j = 0; j < iterations; ++j)
+                        {
+                            // Other threads may remove the last association concurrently,
+                            // but this thread's own association must always be visible
+                            Assert.assertTrue(seti.associate(userId, serverSession));
+                            Assert.assertTrue(seti.isPresent(userId));
+                            Assert.assertTrue(seti.isAssociated(userId));
+                            Assert.assertTrue(seti.disassociate(userId, serverSession));
+                        }
+                    }
+                    catch (Throwable x)
+                    {
+                        failure.compareAndSet(null, x);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        Assert.assertFalse(seti.isPresent(userId));
+        Assert.assertEquals(0, seti.getAssociationCount(userId));
+        Assert.assertFalse(seti.getUserIds().contains(userId));
+    }
+
+    @Test
+    public void testConcurrentDuplicateAssociation() throws Exception
+    {
+        Server server = startServer(0);
+        Oort oort = startOort(server);
+        final Seti seti = startSeti(oort);
+
+        LocalSession session = oort.getBayeuxServer().newLocalSession("seti_test");
+        session.handshake();
+        final ServerSession serverSession = session.getServerSession();
+
+        final String userId = "user";
+        int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final AtomicInteger associated = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; ++i)
+        {
+            Thread worker = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        if (seti.associate(userId, serverSession))
+                            associated.incrementAndGet();
+                    }
+                    catch (Throwable x)
+                    {
+                        failure.compareAndSet(null, x);
+                    }
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+
+        Assert.assertNull(String.valueOf(failure.get()), failure.get());
+        // The same session is associated only once
+        Assert.assertEquals(1, associated.get());
+        Assert.assertEquals(1, seti.getAssociationCount(userId));
+        Assert.assertEquals(1, seti.getPresenceCount(userId));
+
+        Assert.assertTrue(seti.disassociate(userId, serverSession));
+        Assert.assertFalse(seti.isPresent(userId));
+        Assert.assertFalse(seti.disassociate(userId, serverSession));
+    }
+
     @Test
     public void testPresenceFiresEventLocally() throws Exception
     {
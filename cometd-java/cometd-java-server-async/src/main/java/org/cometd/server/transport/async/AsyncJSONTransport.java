@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server.transport.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerTransport;
+import org.cometd.server.AbstractServerTransport;
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ServerMessageImpl;
+import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.transport.JSONTransport;
+import org.cometd.server.transport.LongPollingTransport;
+import org.eclipse.jetty.util.thread.Scheduler.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A long-polling transport that uses the Servlet 3.1 asynchronous I/O API.</p>
+ * <p>Request bodies are read with a {@link ReadListener} as the bytes arrive, and
+ * responses are written with a {@link WriteListener}, so that no container thread
+ * is held while waiting for a slow client to send or receive data.</p>
+ * <p>When a held {@code /meta/connect} must be resumed because messages arrived for
+ * the session, the queue and the reply are written directly by the thread that
+ * resumes it, without dispatching the request to another container thread: the
+ * writes cannot block, so a slow client cannot delay the others.</p>
+ * <p>Messages are processed as in {@link LongPollingTransport}, but the replies are
+ * collected and written only after the whole batch has been processed.</p>
+ * <p>The request body is buffered until it is fully read, up to {@link #MAX_REQUEST_SIZE_OPTION}
+ * bytes; larger requests are rejected with status code 413.</p>
+ * <p>This transport requires a Servlet 3.1 container; it handles only requests
+ * with {@code application/json} content, and delegates other requests to the
+ * blocking implementation of {@link JSONTransport}.</p>
+ */
+public class AsyncJSONTransport extends JSONTransport
+{
+    public final static String MAX_REQUEST_SIZE_OPTION = "maxRequestSize";
+
+    private final Logger _logger = LoggerFactory.getLogger(getClass());
+    private int _maxRequestSize = 512 * 1024;
+
+    public AsyncJSONTransport(BayeuxServerImpl bayeux)
+    {
+        super(bayeux);
+    }
+
+    @Override
+    protected void init()
+    {
+        super.init();
+        _maxRequestSize = getOption(MAX_REQUEST_SIZE_OPTION, _maxRequestSize);
+    }
+
+    @Override
+    public void handle(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String contentType = request.getContentType();
+        boolean json = contentType == null || contentType.startsWith("application/json");
+        if (!json || request.getDispatcherType() == DispatcherType.ASYNC)
+        {
+            super.handle(request, response);
+            return;
+        }
+
+        if (request.getContentLength() > _maxRequestSize)
+        {
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+
+        String encoding = request.getCharacterEncoding();
+        if (encoding == null)
+            encoding = "UTF-8";
+
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // The timeout of held /meta/connect is handled by the BayeuxServer,
+        // and slow reads or writes are handled by the container idle timeout
+        asyncContext.setTimeout(0);
+
+        ServletInputStream input = request.getInputStream();
+        input.setReadListener(new Reader(request, response, asyncContext, encoding));
+    }
+
+    protected void process(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerMessage.Mutable[] messages) throws IOException
+    {
+        new AsyncMessageHandler(request, response, asyncContext).process(messages);
+    }
+
+    private void takeQueueForMetaConnect(ServerSessionImpl session, List<ServerMessage> output)
+    {
+        try
+        {
+            output.addAll(session.takeQueue());
+        }
+        finally
+        {
+            // Start the interval timeout before the connect reply is written,
+            // see LongPollingTransport for the details of why this is needed
+            if (session.isConnected())
+                session.startIntervalTimeout(getInterval());
+        }
+    }
+
+    protected void flush(HttpServletResponse response, AsyncContext asyncContext, List<ServerMessage> messages) throws IOException
+    {
+        if (messages.isEmpty())
+        {
+            asyncContext.complete();
+            return;
+        }
+        response.setContentType(getMimeType());
+        ServletOutputStream output = response.getOutputStream();
+        output.setWriteListener(new Writer(asyncContext, output, messages));
+    }
+
+    protected void error(HttpServletResponse response, AsyncContext asyncContext, int code)
+    {
+        try
+        {
+            response.sendError(code);
+        }
+        catch (Exception x)
+        {
+            _logger.trace("", x);
+        }
+        finally
+        {
+            asyncContext.complete();
+        }
+    }
+
+    private class Reader implements ReadListener
+    {
+        private final byte[] buffer = new byte[512];
+        private final ByteArrayOutputStream content = new ByteArrayOutputStream(buffer.length);
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final String encoding;
+        private boolean failed;
+
+        private Reader(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, String encoding)
+        {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException
+        {
+            ServletInputStream input = request.getInputStream();
+            while (!failed && input.isReady())
+            {
+                int read = input.read(buffer);
+                if (read < 0)
+                    break;
+                if (content.size() + read > _maxRequestSize)
+                {
+                    // The content length may be absent, so the size is checked while reading
+                    failed = true;
+                    _logger.debug("Request larger than {} bytes", _maxRequestSize);
+                    error(response, asyncContext, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                    break;
+                }
+                content.write(buffer, 0, read);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException
+        {
+            if (failed)
+                return;
+
+            String json = content.toString(encoding);
+            debug("Received {}", json);
+
+            getBayeux().setCurrentTransport(AsyncJSONTransport.this);
+            setCurrentRequest(request);
+            try
+            {
+                ServerMessage.Mutable[] messages = parseMessages(json);
+                process(request, response, asyncContext, messages);
+            }
+            catch (ParseException x)
+            {
+                // The body has already been logged at debug level
+                _logger.warn("Error parsing JSON request of " + content.size() + " bytes", x);
+                error(response, asyncContext, HttpServletResponse.SC_BAD_REQUEST);
+            }
+            finally
+            {
+                setCurrentRequest(null);
+                getBayeux().setCurrentTransport(null);
+            }
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            if (failed)
+                return;
+            failed = true;
+            _logger.debug("Failure reading request", failure);
+            error(response, asyncContext, HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+
+    private class Writer implements WriteListener
+    {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream output;
+        private final List<ServerMessage> messages;
+        private State state = State.BEGIN;
+        private int index;
+
+        private Writer(AsyncContext asyncContext, ServletOutputStream output, List<ServerMessage> messages)
+        {
+            this.asyncContext = asyncContext;
+            this.output = output;
+            this.messages = messages;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException
+        {
+            // Only one write is allowed for each call to isReady()
+            while (output.isReady())
+            {
+                switch (state)
+                {
+                    case BEGIN:
+                    {
+                        output.write('[');
+                        state = State.MESSAGE;
+                        break;
+                    }
+                    case COMMA:
+                    {
+                        output.write(',');
+                        state = State.MESSAGE;
+                        break;
+                    }
+                    case MESSAGE:
+                    {
+                        ServerMessage message = messages.get(index++);
+                        if (message instanceof ServerMessageImpl)
+                            ((ServerMessageImpl)message).writeJSONBytes(output);
+                        else
+                            output.write(message.getJSON().getBytes("UTF-8"));
+                        // The bytes have been copied, pooled replies can be reused
+                        getBayeux().recycle(message);
+                        state = index < messages.size() ? State.COMMA : State.END;
+                        break;
+                    }
+                    case END:
+                    {
+                        output.write(']');
+                        state = State.COMPLETE;
+                        break;
+                    }
+                    case COMPLETE:
+                    {
+                        asyncContext.complete();
+                        return;
+                    }
+                    default:
+                    {
+                        throw new IllegalStateException();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable failure)
+        {
+            _logger.debug("Failure writing response", failure);
+            asyncContext.complete();
+        }
+    }
+
+    private enum State
+    {
+        BEGIN, COMMA, MESSAGE, END, COMPLETE
+    }
+
+    private class AsyncMessageHandler extends MessageHandler
+    {
+        private final List<ServerMessage> _messages = new ArrayList<>();
+        private final HttpServletRequest _request;
+        private final HttpServletResponse _response;
+        private final AsyncContext _asyncContext;
+        private AsyncLongPollScheduler _scheduler;
+
+        private AsyncMessageHandler(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext)
+        {
+            super(request, response);
+            _request = request;
+            _response = response;
+            _asyncContext = asyncContext;
+        }
+
+        private void process(ServerMessage.Mutable[] messages) throws IOException
+        {
+            try
+            {
+                for (ServerMessage.Mutable message : messages)
+                    onMessage(message);
+            }
+            finally
+            {
+                endBatch();
+            }
+
+            if (_scheduler == null)
+                flush(_response, _asyncContext, _messages);
+            else
+                _scheduler.suspend();
+        }
+
+        @Override
+        protected void sendQueue(ServerSessionImpl session)
+        {
+            _messages.addAll(session.takeQueue());
+        }
+
+        @Override
+        protected void sendQueueForMetaConnect(ServerSessionImpl session)
+        {
+            takeQueueForMetaConnect(session, _messages);
+        }
+
+        @Override
+        protected void sendReply(ServerSessionImpl session, ServerMessage.Mutable reply)
+        {
+            // Pooled replies are recycled by the Writer once written
+            _messages.add(reply);
+        }
+
+        @Override
+        protected void suspend(ServerSessionImpl session, ServerMessage.Mutable reply, String browserId, long timeout)
+        {
+            // The scheduler is set on the session only after all
+            // the messages have been processed, so that it cannot
+            // be resumed while other replies are being added
+            _scheduler = new AsyncLongPollScheduler(_request, _response, _asyncContext, session, reply, browserId, timeout, _messages);
+        }
+    }
+
+    private class AsyncLongPollScheduler implements Runnable, AbstractServerTransport.OneTimeScheduler, AsyncListener
+    {
+        private final AtomicBoolean _done = new AtomicBoolean();
+        private volatile Task _task;
+        private final HttpServletRequest _request;
+        private final HttpServletResponse _response;
+        private final AsyncContext _asyncContext;
+        private final ServerSessionImpl _session;
+        private final ServerMessage.Mutable _reply;
+        private final String _browserId;
+        private final long _timeout;
+        private final List<ServerMessage> _output;
+
+        private AsyncLongPollScheduler(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, ServerMessage.Mutable reply, String browserId, long timeout, List<ServerMessage> output)
+        {
+            _request = request;
+            _response = response;
+            _asyncContext = asyncContext;
+            _session = session;
+            _reply = reply;
+            _browserId = browserId;
+            _timeout = timeout;
+            _output = output;
+        }
+
+        private void suspend()
+        {
+            _asyncContext.addListener(this);
+            _task = getBayeux().getScheduler().schedule(this, _timeout, TimeUnit.MILLISECONDS);
+            // Between the last time we checked for messages in the queue and now,
+            // messages may have been added to the queue; setting the scheduler
+            // decides atomically whether to resume immediately or not.
+            _session.setScheduler(this);
+        }
+
+        public void cancel()
+        {
+            if (_done.compareAndSet(false, true))
+            {
+                _logger.debug("Duplicate /meta/connect, canceling {}", _reply);
+                _task.cancel();
+                decBrowserId(_browserId);
+                error(_response, _asyncContext, HttpServletResponse.SC_REQUEST_TIMEOUT);
+            }
+        }
+
+        public void schedule()
+        {
+            if (_done.compareAndSet(false, true))
+            {
+                _task.cancel();
+                resume();
+            }
+        }
+
+        public void run()
+        {
+            if (_done.compareAndSet(false, true))
+            {
+                _session.setScheduler(null);
+                resume();
+            }
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            // The AsyncContext has no timeout, but the container may still expire
+            // it: reply to the /meta/connect as if the scheduler had expired
+            if (_done.compareAndSet(false, true))
+            {
+                _task.cancel();
+                _session.setScheduler(null);
+                resume();
+            }
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            // The client is gone, do not hold the /meta/connect any longer
+            if (_done.compareAndSet(false, true))
+            {
+                _logger.debug("Failure while holding " + _reply, event.getThrowable());
+                _task.cancel();
+                _session.setScheduler(null);
+                decBrowserId(_browserId);
+                _asyncContext.complete();
+            }
+        }
+
+        private void resume()
+        {
+            // Resuming may happen in a thread that is not handling a request,
+            // but extensions and listeners may need to access the transport
+            ServerTransport currentTransport = getBayeux().getCurrentTransport();
+            getBayeux().setCurrentTransport(AsyncJSONTransport.this);
+            try
+            {
+                decBrowserId(_browserId);
+                metaConnectResumed(_request, _session);
+
+                takeQueueForMetaConnect(_session, _output);
+
+                ServerMessage.Mutable reply = _reply;
+                Map<String, Object> advice = _session.takeAdvice();
+                if (advice != null)
+                    reply.put(Message.ADVICE_FIELD, advice);
+                if (_session.isDisconnected())
+                    reply.getAdvice(true).put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
+
+                reply = getBayeux().extendReply(_session, _session, reply);
+                if (reply != null)
+                {
+                    getBayeux().freeze(reply);
+                    _output.add(reply);
+                }
+
+                flush(_response, _asyncContext, _output);
+            }
+            catch (Exception x)
+            {
+                _logger.debug("Failure resuming " + _reply, x);
+                error(_response, _asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            finally
+            {
+                getBayeux().setCurrentTransport((AbstractServerTransport)currentTransport);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.transport.async;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerSession;
+import org.cometd.common.JSONContext;
+import org.cometd.common.JettyJSONContextClient;
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.CometDServlet;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.FutureResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <p>Needs a Servlet 3.1 container, run with {@code -Pservlet-3.1}.</p>
+ */
+public class AsyncJSONTransportTest
+{
+    private final long timeout = 2000;
+    private final int maxRequestSize = 1024;
+    private Server server;
+    private HttpClient httpClient;
+    private String cometdURL;
+    private BayeuxServerImpl bayeux;
+
+    @Before
+    public void prepare() throws Exception
+    {
+        server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        server.addConnector(connector);
+
+        ServletContextHandler context = new ServletContextHandler(server, "/cometd");
+        CometDServlet cometdServlet = new CometDServlet();
+        ServletHolder cometdServletHolder = new ServletHolder(cometdServlet);
+        cometdServletHolder.setInitParameter("transports", AsyncJSONTransport.class.getName());
+        cometdServletHolder.setInitParameter("timeout", String.valueOf(timeout));
+        cometdServletHolder.setInitParameter(AsyncJSONTransport.MAX_REQUEST_SIZE_OPTION, String.valueOf(maxRequestSize));
+        context.addServlet(cometdServletHolder, "/cometd/*");
+
+        server.start();
+        cometdURL = "http://localhost:" + connector.getLocalPort() + "/cometd/cometd";
+        bayeux = cometdServlet.getBayeux();
+
+        httpClient = new HttpClient();
+        httpClient.start();
+    }
+
+    @After
+    public void dispose() throws Exception
+    {
+        httpClient.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testHeldConnectIsResumedByPublish() throws Exception
+    {
+        final CountDownLatch connectLatch = new CountDownLatch(2);
+        bayeux.getChannel(Channel.META_CONNECT).addListener(new ServerChannel.MessageListener()
+        {
+            public boolean onMessage(ServerSession from, ServerChannel channel, ServerMessage.Mutable message)
+            {
+                connectLatch.countDown();
+                return true;
+            }
+        });
+
+        String clientId = handshake();
+        connect(clientId);
+
+        String channelName = "/foo";
+        ContentResponse response = newBayeuxRequest("[{" +
+                "\"channel\": \"/meta/subscribe\"," +
+                "\"clientId\": \"" + clientId + "\"," +
+                "\"subscription\": \"" + channelName + "\"" +
+                "}]").send();
+        Assert.assertEquals(200, response.getStatus());
+
+        Request connect = newConnectRequest(clientId);
+        FutureResponseListener futureResponse = new FutureResponseListener(connect);
+        connect.send(futureResponse);
+        Assert.assertTrue(connectLatch.await(5, TimeUnit.SECONDS));
+
+        bayeux.getChannel(channelName).publish(null, "data");
+
+        // The held connect must return before its timeout
+        response = futureResponse.get(timeout / 2, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(200, response.getStatus());
+
+        Message.Mutable[] messages = parse(response);
+        Assert.assertEquals(2, messages.length);
+        Assert.assertEquals(channelName, messages[0].getChannel());
+        Assert.assertEquals(Channel.META_CONNECT, messages[1].getChannel());
+    }
+
+    @Test
+    public void testHeldConnectExpires() throws Exception
+    {
+        String clientId = handshake();
+        connect(clientId);
+
+        long begin = System.nanoTime();
+        ContentResponse response = newConnectRequest(clientId).timeout(timeout * 2, TimeUnit.MILLISECONDS).send();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(elapsed >= timeout / 2);
+
+        Message.Mutable[] messages = parse(response);
+        Assert.assertEquals(1, messages.length);
+        Assert.assertTrue(messages[0].isSuccessful());
+    }
+
+    @Test
+    public void testBadJSON() throws Exception
+    {
+        ContentResponse response = newBayeuxRequest("[{\"channel\":").send();
+        Assert.assertEquals(400, response.getStatus());
+    }
+
+    @Test
+    public void testRequestTooLarge() throws Exception
+    {
+        StringBuilder data = new StringBuilder();
+        while (data.length() <= maxRequestSize)
+            data.append("0123456789");
+        ContentResponse response = newBayeuxRequest("[{" +
+                "\"channel\": \"/foo\"," +
+                "\"data\": \"" + data + "\"" +
+                "}]").send();
+        Assert.assertEquals(413, response.getStatus());
+    }
+
+    private String handshake() throws Exception
+    {
+        ContentResponse response = newBayeuxRequest("[{" +
+                "\"channel\": \"/meta/handshake\"," +
+                "\"version\": \"1.0\"," +
+                "\"minimumVersion\": \"1.0\"," +
+                "\"supportedConnectionTypes\": [\"long-polling\"]" +
+                "}]").send();
+        Assert.assertEquals(200, response.getStatus());
+
+        Matcher matcher = Pattern.compile("\"clientId\"\\s*:\\s*\"([^\"]*)\"").matcher(response.getContentAsString());
+        Assert.assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+
+    private void connect(String clientId) throws Exception
+    {
+        ContentResponse response = newConnectRequest(clientId).send();
+        Assert.assertEquals(200, response.getStatus());
+    }
+
+    private Request newConnectRequest(String clientId)
+    {
+        return newBayeuxRequest("[{" +
+                "\"channel\": \"/meta/connect\"," +
+                "\"clientId\": \"" + clientId + "\"," +
+                "\"connectionType\": \"long-polling\"" +
+                "}]");
+    }
+
+    private Request newBayeuxRequest(String requestBody)
+    {
+        return httpClient.newRequest(cometdURL)
+                .timeout(5, TimeUnit.SECONDS)
+                .method(HttpMethod.POST)
+                .header(HttpHeader.CONTENT_TYPE.asString(), "application/json;charset=UTF-8")
+                .content(new StringContentProvider(requestBody, "UTF-8"));
+    }
+
+    private Message.Mutable[] parse(ContentResponse response) throws Exception
+    {
+        JSONContext.Client jsonContext = new JettyJSONContextClient();
+        return jsonContext.parse(response.getContentAsString());
+    }
+}
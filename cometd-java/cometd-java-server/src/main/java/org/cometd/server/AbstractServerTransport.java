@@ -154,11 +154,47 @@ public abstract class AbstractServerTransport extends AbstractTransport implemen
             return jsonContext.parse(reader);
     }
 
+    /**
+     * <p>Parses the messages from the given reader in streaming mode, notifying the
+     * given listener with each message as soon as it has been parsed.</p>
+     * <p>If the configured {@link JSONContext.Server} is not a {@link JSONContext.StreamingParser},
+     * the whole batch is parsed before the listener is notified.</p>
+     *
+     * @param reader the reader to parse the messages from
+     * @param listener the listener notified of each message
+     * @see JSONContext.StreamingParser#parse(java.io.Reader, JSONContext.MessageListener)
+     */
+    @SuppressWarnings("unchecked")
+    protected void parseMessages(BufferedReader reader, JSONContext.MessageListener<ServerMessage.Mutable> listener) throws ParseException, IOException
+    {
+        if (jsonContext instanceof JSONContext.StreamingParser)
+        {
+            ((JSONContext.StreamingParser<ServerMessage.Mutable>)jsonContext).parse(reader, listener);
+        }
+        else
+        {
+            ServerMessage.Mutable[] messages = jsonContext.parse(reader);
+            if (messages != null)
+            {
+                for (ServerMessage.Mutable message : messages)
+                    listener.onMessage(message);
+            }
+        }
+    }
+
     protected ServerMessage.Mutable[] parseMessages(String json) throws ParseException
     {
         return jsonContext.parse(json);
     }
 
+    /**
+     * @return the JSON context configured in the {@link BayeuxServerImpl}, available after {@link #init()}
+     */
+    protected JSONContext.Server getJSONContextServer()
+    {
+        return jsonContext;
+    }
+
     /**
      * Get the bayeux.
      *
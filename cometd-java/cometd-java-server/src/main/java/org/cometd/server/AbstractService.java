@@ -16,9 +16,15 @@
 
 package org.cometd.server;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.Session;
@@ -63,6 +69,7 @@ public abstract class AbstractService
 {
     protected final Logger _logger = LoggerFactory.getLogger(getClass());
     private final Map<String, Invoker> invokers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Method, Invoker> unmappedInvokers = new ConcurrentHashMap<>();
     private final String _name;
     private final BayeuxServerImpl _bayeux;
     private final LocalSession _session;
@@ -274,10 +281,14 @@ public abstract class AbstractService
         ServerChannel channel = _bayeux.getChannel(channelName);
         if (channel != null)
         {
-            for (Invoker invoker : invokers.values())
+            for (Iterator<Invoker> iterator = invokers.values().iterator(); iterator.hasNext();)
             {
+                Invoker invoker = iterator.next();
                 if (invoker.channelName.equals(channelName))
+                {
+                    iterator.remove();
                     channel.removeListener(invoker);
+                }
             }
         }
     }
@@ -347,54 +358,98 @@ public abstract class AbstractService
         {
             try
             {
-                Class<?>[] parameterTypes = method.getParameterTypes();
-                int messageParameterIndex = parameterTypes.length == 4 ? 2 : 1;
-                Object messageArgument = data;
-                if (Message.class.isAssignableFrom(parameterTypes[messageParameterIndex]))
-                    messageArgument = msg;
-
-                boolean accessible = method.isAccessible();
-                Object reply = null;
+                // The method is normally resolved once when it is mapped, but
+                // subclasses may call this method with methods that are not mapped
+                Invoker invoker = invokers.get(method.getName());
+                if (invoker == null || !invoker.method.equals(method))
+                    invoker = getUnmappedInvoker(channel, method);
+
+                Object messageArgument = invoker.message ? msg : data;
+                Object reply;
                 try
                 {
-                    method.setAccessible(true);
-                    switch (method.getParameterTypes().length)
-                    {
-                        case 2:
-                            reply = method.invoke(this, fromClient, messageArgument);
-                            break;
-                        case 3:
-                            reply = method.invoke(this, fromClient, messageArgument, id);
-                            break;
-                        case 4:
-                            reply = method.invoke(this, fromClient, channel, messageArgument, id);
-                            break;
-                    }
+                    reply = invoker.handle.invokeExact((Object)fromClient, (Object)channel, messageArgument, (Object)id);
                 }
-                finally
+                catch (Throwable x)
                 {
-                    method.setAccessible(accessible);
+                    // Report the failure wrapped, like Method.invoke() does
+                    throw new InvocationTargetException(x);
                 }
 
                 if (reply != null)
                     send(fromClient, channel, reply, id);
             }
-            catch (Throwable e)
+            catch (Exception e)
             {
                 exception(method.toString(), fromClient, _session, msg, e);
             }
         }
     }
 
+    private Invoker getUnmappedInvoker(String channelName, Method method)
+    {
+        Invoker invoker = unmappedInvokers.get(method);
+        if (invoker == null)
+        {
+            invoker = new Invoker(channelName, method);
+            Invoker existing = unmappedInvokers.putIfAbsent(method, invoker);
+            if (existing != null)
+                invoker = existing;
+        }
+        return invoker;
+    }
+
+    /**
+     * <p>Invokes a mapped method via a {@link MethodHandle} bound to this service,
+     * whose arguments are always {@code (from, channel, data, id)}: the arguments
+     * not declared by the method are dropped, so that the method can be invoked
+     * without reflection and without checking its signature for every message.</p>
+     */
     private class Invoker implements ServerChannel.MessageListener
     {
         private final String channelName;
         private final Method method;
+        private final MethodHandle handle;
+        private final boolean message;
 
         public Invoker(String channelName, Method method)
         {
             this.channelName = channelName;
             this.method = method;
+
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            int messageParameterIndex = parameterTypes.length == 4 ? 2 : 1;
+            this.message = Message.class.isAssignableFrom(parameterTypes[messageParameterIndex]);
+
+            // Access is checked only when the method handle is created
+            boolean accessible = method.isAccessible();
+            try
+            {
+                method.setAccessible(true);
+                MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(AbstractService.this);
+                handle = handle.asType(MethodType.genericMethodType(parameterTypes.length));
+                switch (parameterTypes.length)
+                {
+                    case 2:
+                        // (from, data) -> (from, channel, data, id)
+                        handle = MethodHandles.dropArguments(handle, 1, Object.class);
+                        handle = MethodHandles.dropArguments(handle, 3, Object.class);
+                        break;
+                    case 3:
+                        // (from, data, id) -> (from, channel, data, id)
+                        handle = MethodHandles.dropArguments(handle, 1, Object.class);
+                        break;
+                }
+                this.handle = handle;
+            }
+            catch (IllegalAccessException x)
+            {
+                throw new IllegalArgumentException(x);
+            }
+            finally
+            {
+                method.setAccessible(accessible);
+            }
         }
 
         public boolean onMessage(ServerSession from, ServerChannel channel, Mutable message)
@@ -20,17 +20,15 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.ChannelId;
@@ -57,6 +55,7 @@ import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.annotation.Name;
 import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,9 +63,15 @@ import org.slf4j.LoggerFactory;
 /**
  * Options to configure the server are: <dl>
  * <tt>tickIntervalMs</tt><td>The time in milliseconds between ticks to check for timeouts etc</td>
+ * <tt>schedulerThreads</tt><td>The number of threads that tick to check for timeouts</td>
  * <tt>sweepIntervalMs</tt><td>The time in milliseconds between sweeps of channels to remove
  * invalid subscribers and non-persistent channels</td>
+ * <tt>sweepShards</tt><td>The number of ticks each sweep is spread across</td>
+ * <tt>channelStatistics</tt><td>Comma separated channel patterns, such as {@code /chat/**},
+ * of the channels for which {@link ChannelStatistics statistics} are collected</td>
  * </dl>
+ * <p>The tick options are only used when no {@link #setScheduler(Scheduler) scheduler}
+ * has been explicitly set, in which case a {@link TimingWheelScheduler} is created.</p>
  */
 @ManagedObject("The CometD server")
 public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
@@ -77,6 +82,8 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
     public static final int INFO_LOG_LEVEL = 2;
     public static final int DEBUG_LOG_LEVEL = 3;
     public static final String JSON_CONTEXT = "jsonContext";
+    public static final String CHANNEL_STATISTICS = "channelStatistics";
+    public static final String META_REPLY_POOL_SIZE = "metaReplyPoolSize";
 
     private final Logger _logger = LoggerFactory.getLogger(getClass().getName() + "." + Integer.toHexString(System.identityHashCode(this)));
     private final SecureRandom _random = new SecureRandom();
@@ -84,15 +91,21 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
     private final List<Extension> _extensions = new CopyOnWriteArrayList<>();
     private final ConcurrentMap<String, ServerSessionImpl> _sessions = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, ServerChannelImpl> _channels = new ConcurrentHashMap<>();
+    private final SubscriptionTrie _wildChannels = new SubscriptionTrie();
     private final ConcurrentMap<String, ServerTransport> _transports = new ConcurrentHashMap<>();
     private final List<String> _allowedTransports = new CopyOnWriteArrayList<>();
     private final ThreadLocal<AbstractServerTransport> _currentTransport = new ThreadLocal<>();
     private final Map<String, Object> _options = new TreeMap<>();
-    private final Timeout _timeout = new Timeout();
+    private final List<ChannelId> _statisticsPatterns = new CopyOnWriteArrayList<>();
     private SecurityPolicy _policy = new DefaultSecurityPolicy();
     private int _logLevel = OFF_LOG_LEVEL;
     private JSONContext.Server _jsonContext;
-    private Timer _timer;
+    private Scheduler _scheduler;
+    private boolean _ownScheduler;
+    private final Sweeper _sweeper = new Sweeper(this);
+    private volatile Scheduler.Task _sweepTask;
+    private final ConcurrentMap<Timeout.Task, TimeoutTask> _timeouts = new ConcurrentHashMap<>();
+    private volatile ServerMessagePool _replyPool;
 
     public BayeuxServerImpl()
     {
@@ -137,6 +150,8 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
                 _logger.info("{}={}", entry.getKey(), entry.getValue());
         }
 
+        initializeChannelStatistics();
+
         initializeMetaChannels();
 
         initializeJSONContext();
@@ -154,31 +169,34 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
                 ((AbstractServerTransport)allowedTransport).init();
         }
 
-        _timer = new Timer("BayeuxServer@" + hashCode(), true);
-        long tick_interval = getOption("tickIntervalMs", 97);
-        if (tick_interval > 0)
-        {
-            _timer.schedule(new TimerTask()
-            {
-                @Override
-                public void run()
-                {
-                    _timeout.tick(System.currentTimeMillis());
-                }
-            }, tick_interval, tick_interval);
-        }
+        initializeScheduler();
+
+        int replyPoolSize = (int)getOption(META_REPLY_POOL_SIZE, 0);
+        _replyPool = replyPoolSize > 0 ? new ServerMessagePool(replyPoolSize) : null;
 
         long sweep_interval = getOption("sweepIntervalMs", 997);
         if (sweep_interval > 0)
         {
-            _timer.schedule(new TimerTask()
+            // Spread each sweep across shards, so that every tick sweeps only a
+            // part of the channels and sessions, while a whole sweep still takes
+            // (about) the configured sweep interval
+            final int shards = (int)Math.max(1, Math.min(getOption("sweepShards", 4), sweep_interval));
+            final long tick_interval = sweep_interval / shards;
+            _sweepTask = _scheduler.schedule(new Runnable()
             {
-                @Override
                 public void run()
                 {
-                    sweep();
+                    try
+                    {
+                        _sweeper.tick(shards, _sessions.values());
+                    }
+                    finally
+                    {
+                        if (isRunning())
+                            _sweepTask = _scheduler.schedule(this, tick_interval, TimeUnit.MILLISECONDS);
+                    }
                 }
-            }, sweep_interval, sweep_interval);
+            }, tick_interval, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -198,10 +216,50 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         _extensions.clear();
         _sessions.clear();
         _channels.clear();
+        _wildChannels.clear();
         _transports.clear();
         _allowedTransports.clear();
         _options.clear();
-        _timer.cancel();
+
+        Scheduler.Task sweepTask = _sweepTask;
+        if (sweepTask != null)
+            sweepTask.cancel();
+        _sweepTask = null;
+        _sweeper.clear();
+        _replyPool = null;
+        if (_ownScheduler)
+        {
+            _scheduler.stop();
+            _scheduler = null;
+            _ownScheduler = false;
+        }
+    }
+
+    protected void initializeScheduler() throws Exception
+    {
+        if (_scheduler == null)
+        {
+            long tickInterval = getOption("tickIntervalMs", 97);
+            int threads = (int)getOption("schedulerThreads", 1);
+            _scheduler = new TimingWheelScheduler("BayeuxServer@" + hashCode(), tickInterval > 0 ? tickInterval : 97, 512, threads);
+            _ownScheduler = true;
+        }
+        if (!_scheduler.isRunning())
+            _scheduler.start();
+    }
+
+    protected void initializeChannelStatistics()
+    {
+        Object option = getOption(CHANNEL_STATISTICS);
+        if (option != null)
+        {
+            for (String pattern : String.valueOf(option).split(","))
+            {
+                pattern = pattern.trim();
+                if (pattern.length() > 0)
+                    enableChannelStatistics(pattern);
+            }
+        }
     }
 
     protected void initializeMetaChannels()
@@ -261,13 +319,55 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         debug("Allowed Transports: {}", _allowedTransports);
     }
 
+    /**
+     * @return the scheduler used to expire timeouts such as those of lazy messages
+     */
+    public Scheduler getScheduler()
+    {
+        return _scheduler;
+    }
+
+    /**
+     * <p>Sets the scheduler used to expire timeouts.</p>
+     * <p>A scheduler set explicitly is started, if necessary, but not stopped when this
+     * instance is stopped; if no scheduler is set, a {@link TimingWheelScheduler}
+     * is created and managed by this instance.</p>
+     *
+     * @param scheduler the scheduler to use
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        if (isStarted())
+            throw new IllegalStateException();
+        _scheduler = scheduler;
+    }
+
+    /**
+     * @param task the task to expire after the given interval
+     * @param interval the interval in milliseconds
+     * @deprecated use {@link #getScheduler()} to schedule tasks
+     */
+    @Deprecated
     public void startTimeout(Timeout.Task task, long interval)
     {
-        _timeout.schedule(task, interval);
+        TimeoutTask timeoutTask = new TimeoutTask(task);
+        // Rescheduling a task replaces the previous schedule
+        TimeoutTask existing = _timeouts.put(task, timeoutTask);
+        if (existing != null)
+            existing.cancel();
+        timeoutTask._scheduled = _scheduler.schedule(timeoutTask, interval, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * @param task the task to cancel
+     * @deprecated use the {@link Scheduler.Task} returned by {@link #getScheduler()} to cancel tasks
+     */
+    @Deprecated
     public void cancelTimeout(Timeout.Task task)
     {
+        TimeoutTask timeoutTask = _timeouts.remove(task);
+        if (timeoutTask != null)
+            timeoutTask.cancel();
         task.cancel();
     }
 
@@ -388,6 +488,9 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
                 // My candidate channel was added to the map, so I'd better initialize it
 
                 channel = candidate;
+                _wildChannels.add(channel);
+                if (!_statisticsPatterns.isEmpty())
+                    channel.setStatisticsEnabled(isStatisticsEnabled(channelId));
                 debug("Added channel {}", channel);
 
                 try
@@ -421,8 +524,11 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
             // Double check if the sweeper removed this channel between the check at the top and here.
             // This is not 100% fool proof (e.g. this thread is preempted long enough for the sweeper
             // to remove the channel, but the alternative is to have a global lock)
-            _channels.putIfAbsent(channelName, channel);
-
+            if (_channels.putIfAbsent(channelName, channel) == null)
+            {
+                _wildChannels.add(channel);
+                markForSweep(channel);
+            }
         }
         // Another thread may add this channel concurrently, so wait until it is initialized
         channel.waitForInitialized();
@@ -780,29 +886,23 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         if (to.isLazy())
             mutable.setLazy(true);
 
-        final List<String> wildChannelNames = to.getChannelId().getWilds();
-        final ServerChannelImpl[] wildChannels = new ServerChannelImpl[wildChannelNames.size()];
-        for (int i = wildChannelNames.size(); i-- > 0; )
-            wildChannels[i] = _channels.get(wildChannelNames.get(i));
+        final ServerChannelImpl[] wildChannels = _wildChannels.match(to.getChannelId());
 
-        // Call the wild listeners
-        for (final ServerChannelImpl wildChannel : wildChannels)
+        // Statistics are null unless enabled for this channel
+        ChannelStatistics statistics = to.getStatistics();
+        long begin = statistics == null ? 0 : System.nanoTime();
+
+        boolean proceed = notifyListeners(from, to, wildChannels, mutable);
+
+        if (statistics != null)
         {
-            if (wildChannel == null)
-                continue;
-            if (wildChannel.isLazy())
-                mutable.setLazy(true);
-            for (ServerChannelListener listener : wildChannel.getListeners())
-                if (listener instanceof MessageListener)
-                    if (!notifyOnMessage((MessageListener)listener, from, to, mutable))
-                        return;
+            long now = System.nanoTime();
+            statistics.onPublish(now - begin);
+            begin = now;
         }
 
-        // Call the leaf listeners
-        for (ServerChannelListener listener : to.getListeners())
-            if (listener instanceof MessageListener)
-                if (!notifyOnMessage((MessageListener)listener, from, to, mutable))
-                    return;
+        if (!proceed)
+            return;
 
         // Exactly at this point, we convert the message to JSON and therefore
         // any further modification will be lost.
@@ -820,19 +920,27 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         // We need a special treatment in case of subscription to /**, otherwise
         // we will deliver meta messages and service messages as if it could be
         // possible to subscribe to meta channels and service channels.
-        Set<String> wildSubscribers = null;
+        // A session subscribed to more than one of the matching channels gets
+        // the message only once: it is skipped if it is also subscribed to a
+        // wild channel that has already been visited.
+        int deliveries = 0;
+        int wilds = 0;
         if (ChannelId.isBroadcast(mutable.getChannel()))
         {
-            for (final ServerChannelImpl wildChannel : wildChannels)
+            wilds = wildChannels.length;
+            for (int i = 0; i < wilds; ++i)
             {
+                ServerChannelImpl wildChannel = wildChannels[i];
                 if (wildChannel == null)
                     continue;
                 for (ServerSession session : wildChannel.getSubscribers())
                 {
-                    if (wildSubscribers == null)
-                        wildSubscribers = new HashSet<>();
-                    if (wildSubscribers.add(session.getId()))
-                        ((ServerSessionImpl)session).doDeliver(from, mutable);
+                    ServerSessionImpl subscriber = (ServerSessionImpl)session;
+                    if (!isSubscribedToAny(subscriber, wildChannels, i))
+                    {
+                        subscriber.doDeliver(from, mutable);
+                        ++deliveries;
+                    }
                 }
             }
         }
@@ -840,8 +948,18 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         // Call the leaf subscribers
         for (ServerSession session : to.getSubscribers())
         {
-            if (wildSubscribers == null || !wildSubscribers.contains(session.getId()))
-                ((ServerSessionImpl)session).doDeliver(from, mutable);
+            ServerSessionImpl subscriber = (ServerSessionImpl)session;
+            if (!isSubscribedToAny(subscriber, wildChannels, wilds))
+            {
+                subscriber.doDeliver(from, mutable);
+                ++deliveries;
+            }
+        }
+
+        if (statistics != null && deliveries > 0)
+        {
+            long bytes = ((ServerMessageImpl)mutable).getJSONBytes().remaining();
+            statistics.onDeliver(deliveries, bytes, System.nanoTime() - begin);
         }
 
         // Meta handlers
@@ -853,6 +971,41 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         }
     }
 
+    private boolean notifyListeners(ServerSessionImpl from, ServerChannelImpl to, ServerChannelImpl[] wildChannels, Mutable mutable)
+    {
+        // Call the wild listeners
+        for (ServerChannelImpl wildChannel : wildChannels)
+        {
+            if (wildChannel == null)
+                continue;
+            if (wildChannel.isLazy())
+                mutable.setLazy(true);
+            for (ServerChannelListener listener : wildChannel.getListeners())
+                if (listener instanceof MessageListener)
+                    if (!notifyOnMessage((MessageListener)listener, from, to, mutable))
+                        return false;
+        }
+
+        // Call the leaf listeners
+        for (ServerChannelListener listener : to.getListeners())
+            if (listener instanceof MessageListener)
+                if (!notifyOnMessage((MessageListener)listener, from, to, mutable))
+                    return false;
+
+        return true;
+    }
+
+    private boolean isSubscribedToAny(ServerSessionImpl session, ServerChannelImpl[] channels, int length)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            ServerChannelImpl channel = channels[i];
+            if (channel != null && session.isSubscribedTo(channel))
+                return true;
+        }
+        return false;
+    }
+
     public void freeze(Mutable mutable)
     {
         ServerMessageImpl message = (ServerMessageImpl)mutable;
@@ -1018,6 +1171,7 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
     {
         if (_channels.remove(channel.getId(), channel))
         {
+            _wildChannels.remove(channel);
             debug("Removed channel {}", channel);
             for (BayeuxServerListener listener : _listeners)
             {
@@ -1121,7 +1275,7 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
 
     protected ServerMessage.Mutable createReply(ServerMessage.Mutable message)
     {
-        ServerMessage.Mutable reply = newMessage();
+        ServerMessage.Mutable reply = message.isMeta() ? newMetaReply() : newMessage();
         message.setAssociated(reply);
         reply.setAssociated(message);
 
@@ -1132,21 +1286,182 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
         return reply;
     }
 
+    private ServerMessage.Mutable newMetaReply()
+    {
+        ServerMessagePool pool = _replyPool;
+        if (pool == null)
+            return newMessage();
+        ServerMessageImpl reply = pool.acquire();
+        if (reply == null)
+            reply = new ServerMessageImpl();
+        reply.setPooled(true);
+        return reply;
+    }
+
+    /**
+     * <p>Returns a meta reply to the pool of meta replies, so that it can be reused
+     * for the reply of a later meta message.</p>
+     * <p>Meta replies are recycled only if the {@value #META_REPLY_POOL_SIZE} option
+     * is greater than zero; otherwise, and for messages that are not pooled meta replies,
+     * this method does nothing.</p>
+     * <p>The reply returned by {@link #handle(ServerSessionImpl, ServerMessage.Mutable)}
+     * is owned by the transport that called it: once the transport has written the reply,
+     * it may recycle it, and after that it must not use the reply anymore.
+     * When recycling is enabled, extensions and listeners must not retain meta replies
+     * (nor their advice maps) beyond the invocation they receive them in.</p>
+     *
+     * @param message the message to recycle
+     */
+    public void recycle(ServerMessage message)
+    {
+        ServerMessagePool pool = _replyPool;
+        if (pool != null && message instanceof ServerMessageImpl)
+        {
+            ServerMessageImpl reply = (ServerMessageImpl)message;
+            if (reply.isPooled())
+            {
+                reply.recycle();
+                pool.release(reply);
+            }
+        }
+    }
+
+    /**
+     * @return the capacity of the pool of meta replies, or 0 if meta replies are not recycled
+     */
+    @ManagedAttribute(value = "The capacity of the pool of meta replies", readonly = true)
+    public int getMetaReplyPoolCapacity()
+    {
+        ServerMessagePool pool = _replyPool;
+        return pool == null ? 0 : pool.getCapacity();
+    }
+
+    /**
+     * <p>Enables the collection of {@link ChannelStatistics statistics} for the channels
+     * that match the given pattern, for example {@code /chat/**}.</p>
+     *
+     * @param channelPattern the channel pattern
+     * @see ServerChannelImpl#getStatistics()
+     */
+    @ManagedOperation(value = "Enables the collection of statistics for the channels matching the given pattern", impact = "ACTION")
+    public void enableChannelStatistics(@Name("channelPattern") String channelPattern)
+    {
+        ChannelId pattern = new ChannelId(channelPattern);
+        if (!_statisticsPatterns.contains(pattern))
+            _statisticsPatterns.add(pattern);
+        updateChannelStatistics();
+    }
+
+    /**
+     * <p>Disables the collection of statistics for the channels that match the given pattern,
+     * and that do not match any other pattern.</p>
+     *
+     * @param channelPattern the channel pattern previously passed to {@link #enableChannelStatistics(String)}
+     */
+    @ManagedOperation(value = "Disables the collection of statistics for the channels matching the given pattern", impact = "ACTION")
+    public void disableChannelStatistics(@Name("channelPattern") String channelPattern)
+    {
+        _statisticsPatterns.remove(new ChannelId(channelPattern));
+        updateChannelStatistics();
+    }
+
+    @ManagedAttribute(value = "The channel patterns for which statistics are collected", readonly = true)
+    public List<String> getChannelStatisticsPatterns()
+    {
+        List<String> result = new ArrayList<>();
+        for (ChannelId pattern : _statisticsPatterns)
+            result.add(pattern.toString());
+        return result;
+    }
+
+    private void updateChannelStatistics()
+    {
+        for (ServerChannelImpl channel : _channels.values())
+            channel.setStatisticsEnabled(isStatisticsEnabled(channel.getChannelId()));
+    }
+
+    private boolean isStatisticsEnabled(ChannelId channelId)
+    {
+        for (ChannelId pattern : _statisticsPatterns)
+        {
+            if (pattern.matches(channelId))
+                return true;
+        }
+        return false;
+    }
+
     @ManagedOperation(value = "Sweeps channels and sessions of this BayeuxServer", impact = "ACTION")
     public void sweep()
     {
-        for (ServerChannelImpl channel : _channels.values())
-            channel.sweep();
+        _sweeper.sweep(_sessions.values());
+    }
 
+    void sweepTransports()
+    {
         for (ServerTransport transport : _transports.values())
         {
             if (transport instanceof AbstractServerTransport)
                 ((AbstractServerTransport)transport).sweep();
         }
+    }
+
+    /**
+     * <p>Marks the given channel to be visited by the next sweep, because it may
+     * have become eligible for removal.</p>
+     *
+     * @param channel the channel to sweep
+     */
+    void markForSweep(ServerChannelImpl channel)
+    {
+        _sweeper.mark(channel);
+    }
+
+    @ManagedAttribute(value = "The number of completed sweeps", readonly = true)
+    public long getSweeps()
+    {
+        return _sweeper.getPasses();
+    }
+
+    @ManagedAttribute(value = "The duration of the last complete sweep, in ms", readonly = true)
+    public long getLastSweepDuration()
+    {
+        return _sweeper.getLastPassDuration();
+    }
+
+    @ManagedAttribute(value = "The duration of the last sweep tick, in microseconds", readonly = true)
+    public long getLastSweepTickDuration()
+    {
+        return _sweeper.getLastTickDuration();
+    }
+
+    @ManagedAttribute(value = "The maximum duration of a sweep tick, in microseconds", readonly = true)
+    public long getMaxSweepTickDuration()
+    {
+        return _sweeper.getMaxTickDuration();
+    }
+
+    @ManagedAttribute(value = "The number of channels visited by the last complete sweep", readonly = true)
+    public int getLastSweepChannels()
+    {
+        return _sweeper.getLastPassChannels();
+    }
+
+    @ManagedAttribute(value = "The number of sessions visited by the last complete sweep", readonly = true)
+    public int getLastSweepSessions()
+    {
+        return _sweeper.getLastPassSessions();
+    }
+
+    @ManagedAttribute(value = "The number of channels waiting for the next sweep", readonly = true)
+    public int getChannelsToSweep()
+    {
+        return _sweeper.getMarkedChannels();
+    }
 
-        long now = System.currentTimeMillis();
-        for (ServerSessionImpl session : _sessions.values())
-            session.sweep(now);
+    @ManagedOperation(value = "Resets the maximum sweep tick duration", impact = "ACTION")
+    public void resetSweepStatistics()
+    {
+        _sweeper.reset();
     }
 
     @ManagedOperation(value = "Dumps the BayeuxServer state", impact = "INFO")
@@ -1437,4 +1752,32 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer
             reply.setSuccessful(true);
         }
     }
+
+    /**
+     * Adapts a {@link Timeout.Task} scheduled via the deprecated {@link #startTimeout(Timeout.Task, long)}.
+     */
+    private class TimeoutTask implements Runnable
+    {
+        private final Timeout.Task _task;
+        private volatile Scheduler.Task _scheduled;
+
+        private TimeoutTask(Timeout.Task task)
+        {
+            _task = task;
+        }
+
+        public void run()
+        {
+            // Only expire if not cancelled nor rescheduled in the meantime
+            if (_timeouts.remove(_task, this))
+                _task.expired();
+        }
+
+        private void cancel()
+        {
+            Scheduler.Task scheduled = _scheduled;
+            if (scheduled != null)
+                scheduled.cancel();
+        }
+    }
 }
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Publish and delivery statistics of a {@link ServerChannelImpl}.</p>
+ * <p>Statistics are only collected for channels that match one of the patterns
+ * configured in {@link BayeuxServerImpl#enableChannelStatistics(String)};
+ * channels that do not match have no statistics object, so that collection
+ * costs nothing for them.</p>
+ * <p>Counters and histograms are striped by thread, so that threads publishing
+ * concurrently to the same channel do not contend on the same memory.</p>
+ */
+public class ChannelStatistics
+{
+    private static final int STRIPES = stripes();
+    private final Counter _publishes = new Counter();
+    private final Counter _deliveries = new Counter();
+    private final Counter _bytes = new Counter();
+    private final Counter _queueFull = new Counter();
+    private final Histogram _listenerTime = new Histogram();
+    private final Histogram _deliveryTime = new Histogram();
+
+    private static int stripes()
+    {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors())
+            stripes <<= 1;
+        return stripes;
+    }
+
+    private static int stripe()
+    {
+        return (int)(Thread.currentThread().getId() & (STRIPES - 1));
+    }
+
+    void onPublish(long listenerNanos)
+    {
+        _publishes.add(1);
+        _listenerTime.record(listenerNanos);
+    }
+
+    void onDeliver(int deliveries, long bytes, long deliveryNanos)
+    {
+        _deliveries.add(deliveries);
+        _bytes.add(bytes * deliveries);
+        _deliveryTime.record(deliveryNanos);
+    }
+
+    void onQueueFull()
+    {
+        _queueFull.add(1);
+    }
+
+    /**
+     * @return the number of messages published to the channel
+     */
+    public long getPublishes()
+    {
+        return _publishes.get();
+    }
+
+    /**
+     * @return the number of messages delivered to the channel subscribers
+     */
+    public long getDeliveries()
+    {
+        return _deliveries.get();
+    }
+
+    /**
+     * @return the number of JSON bytes delivered to the channel subscribers
+     */
+    public long getBytes()
+    {
+        return _bytes.get();
+    }
+
+    /**
+     * @return the number of messages rejected because a subscriber queue was full
+     */
+    public long getQueueFull()
+    {
+        return _queueFull.get();
+    }
+
+    /**
+     * @return the time spent in the channel listeners, in microseconds
+     */
+    public long getListenerTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_listenerTime.getTotal());
+    }
+
+    /**
+     * @return the time spent delivering messages to subscribers, in microseconds
+     */
+    public long getDeliveryTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_deliveryTime.getTotal());
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the listener time at the given percentile, in microseconds
+     */
+    public long getListenerTimePercentile(double percentile)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_listenerTime.getPercentile(percentile));
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the delivery time at the given percentile, in microseconds
+     */
+    public long getDeliveryTimePercentile(double percentile)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_deliveryTime.getPercentile(percentile));
+    }
+
+    /**
+     * @param metric the metric name, one of the keys of {@link #toMap()}
+     * @return the value of the given metric
+     * @throws IllegalArgumentException if the metric is not known
+     */
+    public long getMetric(String metric)
+    {
+        Long value = toMap().get(metric);
+        if (value == null)
+            throw new IllegalArgumentException("Unknown metric " + metric);
+        return value;
+    }
+
+    /**
+     * @return a snapshot of the statistics, by metric name
+     */
+    public Map<String, Long> toMap()
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("publishes", getPublishes());
+        result.put("deliveries", getDeliveries());
+        result.put("bytes", getBytes());
+        result.put("queueFull", getQueueFull());
+        result.put("listenerTime", getListenerTime());
+        result.put("listenerTime50", getListenerTimePercentile(50));
+        result.put("listenerTime99", getListenerTimePercentile(99));
+        result.put("deliveryTime", getDeliveryTime());
+        result.put("deliveryTime50", getDeliveryTimePercentile(50));
+        result.put("deliveryTime99", getDeliveryTimePercentile(99));
+        return result;
+    }
+
+    public void reset()
+    {
+        _publishes.reset();
+        _deliveries.reset();
+        _bytes.reset();
+        _queueFull.reset();
+        _listenerTime.reset();
+        _deliveryTime.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), toMap());
+    }
+
+    /**
+     * <p>A counter striped by thread; each stripe is padded to its own cache line.</p>
+     */
+    private static class Counter
+    {
+        private static final int PADDING = 8;
+        private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * PADDING);
+
+        private void add(long delta)
+        {
+            _cells.addAndGet(stripe() * PADDING, delta);
+        }
+
+        private long get()
+        {
+            long result = 0;
+            for (int i = 0; i < STRIPES; ++i)
+                result += _cells.get(i * PADDING);
+            return result;
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < STRIPES; ++i)
+                _cells.set(i * PADDING, 0);
+        }
+    }
+
+    /**
+     * <p>A histogram of durations with power of two buckets, striped by thread.</p>
+     * <p>Bucket {@code i} counts the durations between {@code 2^(i-1)} (inclusive) and
+     * {@code 2^i} (exclusive) nanoseconds; the last slot of each stripe holds the total.</p>
+     */
+    private static class Histogram
+    {
+        private static final int BUCKETS = 64;
+        private static final int ROW = BUCKETS + 1;
+        private final AtomicLongArray _cells = new AtomicLongArray(STRIPES * ROW);
+
+        private void record(long nanos)
+        {
+            if (nanos < 0)
+                nanos = 0;
+            int row = stripe() * ROW;
+            int bucket = BUCKETS - Long.numberOfLeadingZeros(nanos);
+            _cells.incrementAndGet(row + Math.min(bucket, BUCKETS - 1));
+            _cells.addAndGet(row + BUCKETS, nanos);
+        }
+
+        private long getTotal()
+        {
+            long result = 0;
+            for (int i = 0; i < STRIPES; ++i)
+                result += _cells.get(i * ROW + BUCKETS);
+            return result;
+        }
+
+        /**
+         * @return the upper bound of the bucket containing the given percentile
+         */
+        private long getPercentile(double percentile)
+        {
+            long[] buckets = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < STRIPES; ++i)
+            {
+                for (int j = 0; j < BUCKETS; ++j)
+                {
+                    long value = _cells.get(i * ROW + j);
+                    buckets[j] += value;
+                    count += value;
+                }
+            }
+            if (count == 0)
+                return 0;
+            long rank = (long)Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int j = 0; j < BUCKETS; ++j)
+            {
+                seen += buckets[j];
+                if (seen >= rank)
+                    return j == 0 ? 0 : j >= 63 ? Long.MAX_VALUE : (1L << j) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < _cells.length(); ++i)
+                _cells.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+/**
+ * <p>A multi-producer, single-consumer queue of messages for a {@link ServerSessionImpl}.</p>
+ * <p>Messages are pushed onto an immutable linked stack with a single compare-and-set,
+ * so that publishers never block each other nor the consumer.
+ * Each node of the stack carries the size and the number of non-lazy messages of the
+ * stack below it, so that {@link #size()} and {@link #hasNonLazyMessages()} are
+ * consistent snapshots that do not require to walk the stack.</p>
+ * <p>The consumer {@link #drain() drains} the queue by swapping the stack head
+ * with {@code null}; the drained messages are returned in insertion order.</p>
+ * <p>Other {@link java.util.Queue} operations that remove messages, such as
+ * {@link #poll()} or {@link #remove(Object)}, copy the stack and are therefore
+ * linear in the size of the queue: they are meant for the occasional use,
+ * for example by tests or management tools.</p>
+ */
+class ConcurrentMessageQueue extends AbstractQueue<ServerMessage>
+{
+    private final AtomicReference<Node> _head = new AtomicReference<>();
+
+    @Override
+    public boolean offer(ServerMessage message)
+    {
+        if (message == null)
+            throw new NullPointerException();
+        Node node = new Node(message);
+        while (true)
+        {
+            Node head = _head.get();
+            node.link(head);
+            if (_head.compareAndSet(head, node))
+                return true;
+        }
+    }
+
+    @Override
+    public ServerMessage poll()
+    {
+        while (true)
+        {
+            Node head = _head.get();
+            if (head == null)
+                return null;
+            List<ServerMessage> messages = toList(head);
+            ServerMessage result = messages.remove(0);
+            if (_head.compareAndSet(head, toStack(messages)))
+                return result;
+        }
+    }
+
+    @Override
+    public ServerMessage peek()
+    {
+        Node node = _head.get();
+        if (node == null)
+            return null;
+        while (node._next != null)
+            node = node._next;
+        return node._message;
+    }
+
+    @Override
+    public boolean remove(Object message)
+    {
+        while (true)
+        {
+            Node head = _head.get();
+            List<ServerMessage> messages = toList(head);
+            if (!messages.remove(message))
+                return false;
+            if (_head.compareAndSet(head, toStack(messages)))
+                return true;
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        _head.set(null);
+    }
+
+    @Override
+    public int size()
+    {
+        Node head = _head.get();
+        return head == null ? 0 : head._size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return _head.get() == null;
+    }
+
+    /**
+     * @return whether this queue contains at least one non-lazy message
+     */
+    public boolean hasNonLazyMessages()
+    {
+        Node head = _head.get();
+        return head != null && head._nonLazy > 0;
+    }
+
+    /**
+     * <p>Atomically removes all the messages from this queue.</p>
+     *
+     * @return the messages removed, in insertion order
+     */
+    public List<ServerMessage> drain()
+    {
+        return toList(_head.getAndSet(null));
+    }
+
+    /**
+     * <p>Atomically replaces the content of this queue with the given messages.</p>
+     * <p>Messages in this queue that are not among the given messages, for example
+     * because they have been offered concurrently with this method, are retained
+     * after the given messages, so that they are not lost.</p>
+     *
+     * @param messages the new content of this queue
+     */
+    public void replace(Collection<? extends ServerMessage> messages)
+    {
+        Set<ServerMessage> replacement = Collections.newSetFromMap(new IdentityHashMap<ServerMessage, Boolean>());
+        replacement.addAll(messages);
+        while (true)
+        {
+            Node head = _head.get();
+            List<ServerMessage> content = new ArrayList<>(messages);
+            for (ServerMessage message : toList(head))
+            {
+                if (!replacement.contains(message))
+                    content.add(message);
+            }
+            if (_head.compareAndSet(head, toStack(content)))
+                return;
+        }
+    }
+
+    @Override
+    public Iterator<ServerMessage> iterator()
+    {
+        final Node head = _head.get();
+        final Iterator<ServerMessage> iterator = toList(head).iterator();
+        return new Iterator<ServerMessage>()
+        {
+            private ServerMessage _last;
+
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            public ServerMessage next()
+            {
+                return _last = iterator.next();
+            }
+
+            public void remove()
+            {
+                if (_last == null)
+                    throw new IllegalStateException();
+                ConcurrentMessageQueue.this.remove(_last);
+                _last = null;
+            }
+        };
+    }
+
+    private static List<ServerMessage> toList(Node head)
+    {
+        if (head == null)
+            return Collections.emptyList();
+        int size = head._size;
+        ServerMessage[] messages = new ServerMessage[size];
+        for (Node node = head; node != null; node = node._next)
+            messages[--size] = node._message;
+        List<ServerMessage> result = new ArrayList<>(messages.length);
+        Collections.addAll(result, messages);
+        return result;
+    }
+
+    private static Node toStack(Collection<? extends ServerMessage> messages)
+    {
+        Node head = null;
+        for (ServerMessage message : messages)
+        {
+            Node node = new Node(message);
+            node.link(head);
+            head = node;
+        }
+        return head;
+    }
+
+    private static class Node
+    {
+        private final ServerMessage _message;
+        // Written before the node is published via compare-and-set
+        private Node _next;
+        private int _size;
+        private int _nonLazy;
+
+        private Node(ServerMessage message)
+        {
+            _message = message;
+        }
+
+        private void link(Node next)
+        {
+            _next = next;
+            int lazy = _message.isLazy() ? 0 : 1;
+            if (next == null)
+            {
+                _size = 1;
+                _nonLazy = lazy;
+            }
+            else
+            {
+                _size = next._size + 1;
+                _nonLazy = next._nonLazy + lazy;
+            }
+        }
+    }
+}
@@ -54,6 +54,7 @@ public class ServerChannelImpl implements ServerChannel
     private boolean _lazy;
     private long _lazyTimeout = -1;
     private boolean _persistent;
+    private volatile ChannelStatistics _statistics;
 
     protected ServerChannelImpl(BayeuxServerImpl bayeux, ChannelId id, ServerChannelImpl parent)
     {
@@ -92,6 +93,7 @@ public class ServerChannelImpl implements ServerChannel
     {
         resetSweeperPasses();
         _initialized.countDown();
+        markForSweep();
     }
 
     void resetSweeperPasses()
@@ -99,6 +101,18 @@ public class ServerChannelImpl implements ServerChannel
         _sweeperPasses.set(0);
     }
 
+    /**
+     * Marks this channel to be visited by the next sweep, because it may
+     * have become eligible for removal.
+     */
+    private void markForSweep()
+    {
+        // Channels that are not yet initialized may never be
+        // registered; they are marked when they are initialized
+        if (_initialized.getCount() == 0)
+            _bayeux.markForSweep(this);
+    }
+
     public boolean subscribe(ServerSession session)
     {
         if (!session.isHandshook())
@@ -119,6 +133,10 @@ public class ServerChannelImpl implements ServerChannel
         resetSweeperPasses();
         if (_subscribers.add(session))
         {
+            // The session may have been removed concurrently, let the sweep
+            // remove it from the subscribers if it was missed by the removal
+            if (!session.isHandshook())
+                markForSweep();
             session.subscribedTo(this);
             for (ServerChannelListener listener : _listeners)
                 if (listener instanceof SubscriptionListener)
@@ -173,6 +191,8 @@ public class ServerChannelImpl implements ServerChannel
     {
         if (_subscribers.remove(session))
         {
+            if (_subscribers.isEmpty())
+                markForSweep();
             session.unsubscribedFrom(this);
             for (ServerChannelListener listener : _listeners)
                 if (listener instanceof SubscriptionListener)
@@ -260,6 +280,8 @@ public class ServerChannelImpl implements ServerChannel
     {
         resetSweeperPasses();
         _persistent = persistent;
+        if (!persistent)
+            markForSweep();
     }
 
     public void addListener(ServerChannelListener listener)
@@ -270,7 +292,8 @@ public class ServerChannelImpl implements ServerChannel
 
     public void removeListener(ServerChannelListener listener)
     {
-        _listeners.remove(listener);
+        if (_listeners.remove(listener))
+            markForSweep();
     }
 
     public List<ServerChannelListener> getListeners()
@@ -283,6 +306,23 @@ public class ServerChannelImpl implements ServerChannel
         return _id;
     }
 
+    /**
+     * @return the statistics of this channel, or null if statistics are not collected for this channel
+     * @see BayeuxServerImpl#enableChannelStatistics(String)
+     */
+    public ChannelStatistics getStatistics()
+    {
+        return _statistics;
+    }
+
+    void setStatisticsEnabled(boolean enabled)
+    {
+        if (!enabled)
+            _statistics = null;
+        else if (_statistics == null)
+            _statistics = new ChannelStatistics();
+    }
+
     public String getId()
     {
         return _id.toString();
@@ -360,7 +400,11 @@ public class ServerChannelImpl implements ServerChannel
                 return;
 
         if (_sweeperPasses.incrementAndGet() < 3)
+        {
+            // Still a candidate for removal, visit again in the next sweep
+            markForSweep();
             return;
+        }
 
         remove();
     }
@@ -412,7 +456,8 @@ public class ServerChannelImpl implements ServerChannel
 
     private void removeChild(ServerChannelImpl child)
     {
-        _children.remove(child);
+        if (_children.remove(child) && _children.isEmpty())
+            markForSweep();
     }
 
     protected void dump(StringBuilder b, String indent)
@@ -458,7 +503,8 @@ public class ServerChannelImpl implements ServerChannel
 
     public void removeAuthorizer(Authorizer authorizer)
     {
-        _authorizers.remove(authorizer);
+        if (_authorizers.remove(authorizer))
+            markForSweep();
     }
 
     public List<Authorizer> getAuthorizers()
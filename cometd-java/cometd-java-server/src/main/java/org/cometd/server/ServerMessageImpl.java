@@ -16,8 +16,13 @@
 
 package org.cometd.server;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.AbstractSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -29,10 +34,14 @@ import org.cometd.common.JSONContext;
 public class ServerMessageImpl extends HashMapMessage implements ServerMessage.Mutable
 {
     private static final long serialVersionUID = 6412048662640296067L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     private volatile transient ServerMessage.Mutable _associated;
     private volatile boolean _lazy = false;
     private volatile String _json;
+    private volatile transient ByteBuffer _jsonBytes;
+    private volatile transient boolean _pooled;
+    private transient Map<String, Object> _advice;
 
     public ServerMessage.Mutable getAssociated()
     {
@@ -73,6 +82,96 @@ public class ServerMessageImpl extends HashMapMessage implements ServerMessage.M
         return _json;
     }
 
+    /**
+     * <p>Returns the UTF-8 bytes of the JSON representation of this message.</p>
+     * <p>When this message is frozen, the bytes are encoded only once and shared
+     * by all callers, so that writing the same message to many recipients does
+     * not encode it once per recipient.</p>
+     *
+     * @return a read-only buffer containing the UTF-8 bytes of the JSON representation of this message
+     * @see #writeJSONBytes(OutputStream)
+     */
+    public ByteBuffer getJSONBytes()
+    {
+        return jsonBytes().asReadOnlyBuffer();
+    }
+
+    /**
+     * <p>Writes the UTF-8 bytes of the JSON representation of this message to the given stream.</p>
+     *
+     * @param output the stream to write to
+     * @throws IOException if the write fails
+     * @see #getJSONBytes()
+     */
+    public void writeJSONBytes(OutputStream output) throws IOException
+    {
+        ByteBuffer bytes = jsonBytes();
+        output.write(bytes.array(), bytes.arrayOffset(), bytes.remaining());
+    }
+
+    private ByteBuffer jsonBytes()
+    {
+        ByteBuffer bytes = _jsonBytes;
+        if (bytes == null)
+        {
+            bytes = ByteBuffer.wrap(getJSON().getBytes(UTF_8));
+            // Concurrent threads may encode the message more than once,
+            // but they will produce the same bytes, so it is safe.
+            if (isFrozen())
+                _jsonBytes = bytes;
+        }
+        return bytes;
+    }
+
+    @Override
+    public Map<String, Object> getAdvice(boolean create)
+    {
+        Map<String, Object> advice = getAdvice();
+        if (create && advice == null)
+        {
+            // Remember the advice map, so that it can be reused if this message is recycled
+            advice = _advice;
+            if (advice == null)
+                advice = _advice = new HashMap<>(4);
+            put(ADVICE_FIELD, advice);
+        }
+        return advice;
+    }
+
+    boolean isPooled()
+    {
+        return _pooled;
+    }
+
+    void setPooled(boolean pooled)
+    {
+        _pooled = pooled;
+    }
+
+    /**
+     * <p>Clears this message so that it can be reused.</p>
+     * <p>The advice map created by {@link #getAdvice(boolean)} is cleared and kept for reuse
+     * only if it is still the advice of this message; other maps are left untouched,
+     * since they may be referenced elsewhere.</p>
+     */
+    void recycle()
+    {
+        Map<String, Object> advice = _advice;
+        if (advice != null)
+        {
+            if (get(ADVICE_FIELD) == advice)
+                advice.clear();
+            else
+                _advice = null;
+        }
+        clear();
+        _associated = null;
+        _lazy = false;
+        _json = null;
+        _jsonBytes = null;
+        _pooled = false;
+    }
+
     @Override
     public Object getData()
     {
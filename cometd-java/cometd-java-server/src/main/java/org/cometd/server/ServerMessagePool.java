@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>A bounded pool of {@link ServerMessageImpl} instances, used to recycle meta replies.</p>
+ * <p>The pool is an array of slots: acquiring and releasing probe a few slots, starting
+ * from one that depends on the current thread, and swap them atomically, so that neither
+ * operation locks nor allocates. When the probed slots are all empty (or all full),
+ * acquiring returns {@code null} (or releasing drops the message to the garbage collector).</p>
+ */
+class ServerMessagePool
+{
+    private static final int PROBES = 4;
+    private final AtomicReferenceArray<ServerMessageImpl> _slots;
+    private final int _mask;
+
+    ServerMessagePool(int capacity)
+    {
+        int size = PROBES;
+        while (size < capacity)
+            size <<= 1;
+        _slots = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+    }
+
+    int getCapacity()
+    {
+        return _slots.length();
+    }
+
+    /**
+     * @return a recycled message, or null if none is available
+     */
+    ServerMessageImpl acquire()
+    {
+        int start = start();
+        for (int i = 0; i < PROBES; ++i)
+        {
+            int index = (start + i) & _mask;
+            ServerMessageImpl message = _slots.get(index);
+            if (message != null && _slots.compareAndSet(index, message, null))
+                return message;
+        }
+        return null;
+    }
+
+    /**
+     * @param message the recycled message to return to the pool
+     * @return whether the message has been pooled
+     */
+    boolean release(ServerMessageImpl message)
+    {
+        int start = start();
+        for (int i = 0; i < PROBES; ++i)
+        {
+            int index = (start + i) & _mask;
+            if (_slots.get(index) == null && _slots.compareAndSet(index, null, message))
+                return true;
+        }
+        return false;
+    }
+
+    private int start()
+    {
+        // Threads with consecutive ids probe disjoint slots
+        return (int)Thread.currentThread().getId() * PROBES & _mask;
+    }
+}
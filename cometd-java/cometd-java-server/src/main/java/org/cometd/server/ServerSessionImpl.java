@@ -16,6 +16,7 @@
 
 package org.cometd.server;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,8 +26,11 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
@@ -41,10 +45,8 @@ import org.cometd.common.HashMapMessage;
 import org.cometd.server.AbstractServerTransport.OneTimeScheduler;
 import org.cometd.server.AbstractServerTransport.Scheduler;
 import org.cometd.server.transport.HttpTransport;
-import org.eclipse.jetty.util.ArrayQueue;
 import org.eclipse.jetty.util.AttributesMap;
-import org.eclipse.jetty.util.thread.Timeout;
-import org.eclipse.jetty.util.thread.Timeout.Task;
+import org.eclipse.jetty.util.thread.Scheduler.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,15 +59,18 @@ public class ServerSessionImpl implements ServerSession
     private final String _id;
     private final List<ServerSessionListener> _listeners = new CopyOnWriteArrayList<>();
     private final List<Extension> _extensions = new CopyOnWriteArrayList<>();
-    private final ArrayQueue<ServerMessage> _queue = new ArrayQueue<>(8, 16, this);
+    private final ConcurrentMessageQueue _queue = new ConcurrentMessageQueue();
+    private final Object _lock = new Object();
     private final LocalSessionImpl _localSession;
     private final AttributesMap _attributes = new AttributesMap();
     private final AtomicBoolean _connected = new AtomicBoolean();
     private final AtomicBoolean _disconnected = new AtomicBoolean();
     private final AtomicBoolean _handshook = new AtomicBoolean();
     private final Map<ServerChannelImpl, Boolean> _subscribedTo = new ConcurrentHashMap<>();
-    private final Task _lazyTask;
-    private AbstractServerTransport.Scheduler _scheduler;
+    private final Runnable _lazyTask;
+    private final AtomicReference<Task> _lazyTimeout = new AtomicReference<>();
+    private final AtomicReference<Scheduler> _scheduler = new AtomicReference<>();
+    private final AtomicInteger _batch = new AtomicInteger();
     private ServerTransport _advisedTransport;
     private int _maxQueue = -1;
     private long _transientTimeout = -1;
@@ -77,11 +82,10 @@ public class ServerSessionImpl implements ServerSession
     private boolean _randomizeLazy = false;
     private long _maxLazy = -1;
     private boolean _metaConnectDelivery;
-    private int _batch;
     private String _userAgent;
     private long _connectTimestamp = -1;
     private long _intervalTimestamp;
-    private boolean _nonLazyMessages;
+    private long _lazyTimestamp;
 
     protected ServerSessionImpl(BayeuxServerImpl bayeux)
     {
@@ -117,10 +121,9 @@ public class ServerSessionImpl implements ServerSession
         if (transport != null)
             _intervalTimestamp = System.currentTimeMillis() + transport.getMaxInterval();
 
-        _lazyTask = new Timeout.Task()
+        _lazyTask = new Runnable()
         {
-            @Override
-            public void expired()
+            public void run()
             {
                 flush();
             }
@@ -156,7 +159,7 @@ public class ServerSessionImpl implements ServerSession
 
         boolean remove = false;
         Scheduler scheduler = null;
-        synchronized (_queue)
+        synchronized (_lock)
         {
             if (_intervalTimestamp == 0)
             {
@@ -175,7 +178,7 @@ public class ServerSessionImpl implements ServerSession
                 }
             }
             if (remove)
-                scheduler = _scheduler;
+                scheduler = _scheduler.get();
         }
         if (remove)
         {
@@ -266,7 +269,10 @@ public class ServerSessionImpl implements ServerSession
             if (maxQueueSize > 0 && queueSize > maxQueueSize && listener instanceof MaxQueueListener)
             {
                 if (!notifyQueueMaxed((MaxQueueListener)listener, from, message))
+                {
+                    queueFull(message);
                     return;
+                }
             }
             if (listener instanceof MessageListener)
             {
@@ -275,14 +281,11 @@ public class ServerSessionImpl implements ServerSession
             }
         }
 
-        boolean wakeup;
-        synchronized (_queue)
-        {
-            addMessage(message);
-            wakeup = _batch == 0;
-        }
+        // Append without locking; the batch must be read after
+        // the message is added, see endBatch() for the other side.
+        addMessage(message);
 
-        if (wakeup)
+        if (_batch.get() == 0)
         {
             if (message.isLazy())
                 flushLazy(message);
@@ -291,6 +294,17 @@ public class ServerSessionImpl implements ServerSession
         }
     }
 
+    private void queueFull(ServerMessage message)
+    {
+        ServerChannelImpl channel = (ServerChannelImpl)_bayeux.getChannel(message.getChannel());
+        if (channel != null)
+        {
+            ChannelStatistics statistics = channel.getStatistics();
+            if (statistics != null)
+                statistics.onQueueFull();
+        }
+    }
+
     private boolean notifyQueueMaxed(MaxQueueListener listener, ServerSession from, ServerMessage message)
     {
         try
@@ -353,13 +367,10 @@ public class ServerSessionImpl implements ServerSession
 
     public boolean endBatch()
     {
-        synchronized (_queue)
+        if (_batch.decrementAndGet() == 0 && !_queue.isEmpty())
         {
-            if (--_batch == 0 && _queue.size() > 0)
-            {
-                flush();
-                return true;
-            }
+            flush();
+            return true;
         }
         return false;
     }
@@ -376,10 +387,7 @@ public class ServerSessionImpl implements ServerSession
 
     public void startBatch()
     {
-        synchronized (_queue)
-        {
-            ++_batch;
-        }
+        _batch.incrementAndGet();
     }
 
     public void addListener(ServerSessionListener listener)
@@ -394,7 +402,7 @@ public class ServerSessionImpl implements ServerSession
 
     public Object getLock()
     {
-        return _queue;
+        return _lock;
     }
 
     public Queue<ServerMessage> getQueue()
@@ -404,73 +412,50 @@ public class ServerSessionImpl implements ServerSession
 
     public boolean isQueueEmpty()
     {
-        synchronized (_queue)
-        {
-            return _queue.size() == 0;
-        }
+        return _queue.isEmpty();
     }
 
     public boolean hasNonLazyMessages()
     {
-        synchronized (_queue)
-        {
-            return _nonLazyMessages;
-        }
+        return _queue.hasNonLazyMessages();
     }
 
     public void replaceQueue(List<ServerMessage> queue)
     {
-        synchronized (_queue)
-        {
-            // Calling clear() + addAll() works because we never queue meta responses.
-            // If we queue meta responses, then we would need to retain them, removing all
-            // messages that are in both queues, and adding all messages from the new queue.
-            clearQueue();
-            for (ServerMessage message : queue)
-                addMessage(message);
-        }
-    }
-
-    private void clearQueue()
-    {
-        _queue.clear();
-        _nonLazyMessages = false;
+        // Replacing the whole content works because we never queue meta responses.
+        // If we queue meta responses, then we would need to retain them, removing all
+        // messages that are in both queues, and adding all messages from the new queue.
+        _queue.replace(queue);
     }
 
     protected void addMessage(ServerMessage message)
     {
-        synchronized (_queue)
-        {
-            _queue.add(message);
-            _nonLazyMessages |= !message.isLazy();
-        }
+        _queue.offer(message);
     }
 
     public List<ServerMessage> takeQueue()
     {
-        List<ServerMessage> copy = Collections.emptyList();
-        synchronized (_queue)
+        // Drain the queue in one swap; messages published concurrently
+        // with the drain will be taken by the next call to this method.
+        List<ServerMessage> messages = _queue.drain();
+        if (messages.isEmpty())
+            return messages;
+
+        Queue<ServerMessage> queue = null;
+        for (ServerSessionListener listener : _listeners)
         {
-            int size = _queue.size();
-            if (size > 0)
+            if (listener instanceof DeQueueListener)
             {
-                for (ServerSessionListener listener : _listeners)
-                {
-                    if (listener instanceof DeQueueListener)
-                        notifyDeQueue((DeQueueListener)listener, this, _queue);
-                }
-
-                // The queue may have changed by the listeners, re-read the size
-                size = _queue.size();
-                if (size > 0)
-                {
-                    copy = new ArrayList<ServerMessage>(size);
-                    copy.addAll(_queue);
-                    clearQueue();
-                }
+                if (queue == null)
+                    queue = new ArrayDeque<>(messages);
+                notifyDeQueue((DeQueueListener)listener, this, queue);
             }
         }
-        return copy;
+
+        // The queue may have been changed by the listeners
+        if (queue != null)
+            messages = queue.isEmpty() ? Collections.<ServerMessage>emptyList() : new ArrayList<ServerMessage>(queue);
+        return messages;
     }
 
     private void notifyDeQueue(DeQueueListener listener, ServerSession serverSession, Queue<ServerMessage> queue)
@@ -494,30 +479,22 @@ public class ServerSessionImpl implements ServerSession
     {
         if (newScheduler == null)
         {
-            Scheduler oldScheduler;
-            synchronized (_queue)
-            {
-                oldScheduler = _scheduler;
-                if (oldScheduler != null)
-                    _scheduler = null;
-            }
-            if (oldScheduler != null)
-                oldScheduler.cancel();
+            cancelSchedule();
         }
         else
         {
-            Scheduler oldScheduler;
+            // The scheduler must be set before checking the queue, while publishers
+            // add to the queue before reading the scheduler in flush(), so that at
+            // least one of the two sides sees the other and the messages are delivered.
+            Scheduler oldScheduler = _scheduler.getAndSet(newScheduler);
             boolean schedule = false;
-            synchronized (_queue)
+            if (hasNonLazyMessages() && _batch.get() == 0)
             {
-                oldScheduler = _scheduler;
-                _scheduler = newScheduler;
-                if (hasNonLazyMessages() && _batch == 0)
-                {
+                // A concurrent flush() may have already consumed a one time scheduler
+                if (newScheduler instanceof OneTimeScheduler)
+                    schedule = _scheduler.compareAndSet(newScheduler, null);
+                else
                     schedule = true;
-                    if (newScheduler instanceof OneTimeScheduler)
-                        _scheduler = null;
-                }
             }
             if (oldScheduler != null && oldScheduler != newScheduler)
                 oldScheduler.cancel();
@@ -528,19 +505,17 @@ public class ServerSessionImpl implements ServerSession
 
     public void flush()
     {
+        Task lazyTimeout = _lazyTimeout.getAndSet(null);
+        if (lazyTimeout != null)
+            lazyTimeout.cancel();
+
         Scheduler scheduler;
-        synchronized (_queue)
+        while (true)
         {
-            if (_lazyTask.getTimestamp() > 0)
-                _bayeux.cancelTimeout(_lazyTask);
-
-            scheduler = _scheduler;
-
-            if (scheduler != null)
-            {
-                if (_scheduler instanceof OneTimeScheduler)
-                    _scheduler = null;
-            }
+            scheduler = _scheduler.get();
+            // A one time scheduler must be consumed by only one flush()
+            if (!(scheduler instanceof OneTimeScheduler) || _scheduler.compareAndSet(scheduler, null))
+                break;
         }
         if (scheduler != null)
         {
@@ -560,7 +535,7 @@ public class ServerSessionImpl implements ServerSession
 
     private void flushLazy(ServerMessage message)
     {
-        synchronized (_queue)
+        synchronized (_lock)
         {
             ServerChannel channel = _bayeux.getChannel(message.getChannel());
             long lazyTimeout = -1;
@@ -577,22 +552,21 @@ public class ServerSessionImpl implements ServerSession
             {
                 long delay = _randomizeLazy ? _connectTimestamp % lazyTimeout : lazyTimeout;
                 long execution = System.currentTimeMillis() + delay;
-                long taskExecution = _lazyTask.getTimestamp();
-                if (taskExecution == 0 || execution < taskExecution)
-                    _bayeux.startTimeout(_lazyTask, delay);
+                if (_lazyTimeout.get() == null || execution < _lazyTimestamp)
+                {
+                    Task task = _bayeux.getScheduler().schedule(_lazyTask, delay, TimeUnit.MILLISECONDS);
+                    _lazyTimestamp = execution;
+                    Task oldTask = _lazyTimeout.getAndSet(task);
+                    if (oldTask != null)
+                        oldTask.cancel();
+                }
             }
         }
     }
 
     public void cancelSchedule()
     {
-        Scheduler scheduler;
-        synchronized (_queue)
-        {
-            scheduler = _scheduler;
-            if (scheduler != null)
-                _scheduler = null;
-        }
+        Scheduler scheduler = _scheduler.getAndSet(null);
         if (scheduler != null)
             scheduler.cancel();
     }
@@ -600,7 +574,7 @@ public class ServerSessionImpl implements ServerSession
     public void cancelIntervalTimeout()
     {
         long now = System.currentTimeMillis();
-        synchronized (_queue)
+        synchronized (_lock)
         {
             _connectTimestamp = now;
             _intervalTimestamp = 0;
@@ -611,7 +585,7 @@ public class ServerSessionImpl implements ServerSession
     {
         long interval = calculateInterval(defaultInterval);
         long now = System.currentTimeMillis();
-        synchronized (_queue)
+        synchronized (_lock)
         {
             _intervalTimestamp = now + interval + _maxInterval;
         }
@@ -870,6 +844,11 @@ public class ServerSessionImpl implements ServerSession
         _subscribedTo.remove(channel);
     }
 
+    boolean isSubscribedTo(ServerChannelImpl channel)
+    {
+        return _subscribedTo.containsKey(channel);
+    }
+
     protected void dump(StringBuilder b, String indent)
     {
         b.append(toString());
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.cometd.bayeux.ChannelId;
+
+/**
+ * <p>A trie of wildcard channels, indexed by channel segments.</p>
+ * <p>Each node of the trie represents a channel prefix such as {@code /foo/bar}
+ * and holds references to the {@code /foo/bar/*} and {@code /foo/bar/**} channels,
+ * if they exist.</p>
+ * <p>Matching a non-wild channel such as {@code /foo/bar/baz} walks the trie once,
+ * following the channel segments, and collects the wildcard channels that match it,
+ * without creating intermediate channel names or performing one map lookup for
+ * each wildcard name.</p>
+ * <p>Modifications are rare (channel creation and removal) and are serialized,
+ * while {@link #match(ChannelId)} is lock-free.</p>
+ */
+class SubscriptionTrie
+{
+    private final Node _root = new Node();
+
+    /**
+     * @param channel the channel to add to this trie; non-wild channels are ignored
+     */
+    void add(ServerChannelImpl channel)
+    {
+        ChannelId channelId = channel.getChannelId();
+        if (!channelId.isWild())
+            return;
+
+        synchronized (_root)
+        {
+            Node node = _root;
+            for (int i = 0; i < channelId.depth() - 1; ++i)
+            {
+                String segment = channelId.getSegment(i);
+                Node child = node._children.get(segment);
+                if (child == null)
+                {
+                    child = new Node();
+                    node._children.put(segment, child);
+                }
+                node = child;
+            }
+            if (channelId.isDeepWild())
+                node._deepWild = channel;
+            else
+                node._wild = channel;
+        }
+    }
+
+    /**
+     * @param channel the channel to remove from this trie; non-wild channels are ignored
+     */
+    void remove(ServerChannelImpl channel)
+    {
+        ChannelId channelId = channel.getChannelId();
+        if (!channelId.isWild())
+            return;
+
+        synchronized (_root)
+        {
+            int depth = channelId.depth() - 1;
+            Node[] path = new Node[depth + 1];
+            Node node = _root;
+            path[0] = node;
+            for (int i = 0; i < depth; ++i)
+            {
+                node = node._children.get(channelId.getSegment(i));
+                if (node == null)
+                    return;
+                path[i + 1] = node;
+            }
+
+            if (channelId.isDeepWild())
+            {
+                if (node._deepWild == channel)
+                    node._deepWild = null;
+            }
+            else
+            {
+                if (node._wild == channel)
+                    node._wild = null;
+            }
+
+            // Prune the nodes that became empty
+            for (int i = depth; i > 0; --i)
+            {
+                if (!path[i].isEmpty())
+                    break;
+                path[i - 1]._children.remove(channelId.getSegment(i - 1), path[i]);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the wildcard channels that match the given non-wild channel.</p>
+     * <p>The returned array has length {@code channelId.depth() + 1} and it is ordered
+     * like {@link ChannelId#getWilds()}: the first element is the {@code /*} channel
+     * that is the sibling of the given channel, followed by the {@code /**} channels
+     * from the most specific to the least specific.
+     * Elements for wildcard channels that do not exist are {@code null}.</p>
+     *
+     * @param channelId the non-wild channel to match
+     * @return the wildcard channels matching the given channel
+     */
+    ServerChannelImpl[] match(ChannelId channelId)
+    {
+        int depth = channelId.depth();
+        ServerChannelImpl[] result = new ServerChannelImpl[depth + 1];
+        Node node = _root;
+        for (int i = 0; node != null && i < depth; ++i)
+        {
+            result[depth - i] = node._deepWild;
+            if (i == depth - 1)
+                result[0] = node._wild;
+            else
+                node = node._children.get(channelId.getSegment(i));
+        }
+        return result;
+    }
+
+    void clear()
+    {
+        synchronized (_root)
+        {
+            _root._children.clear();
+            _root._wild = null;
+            _root._deepWild = null;
+        }
+    }
+
+    private static class Node
+    {
+        private final ConcurrentMap<String, Node> _children = new ConcurrentHashMap<>();
+        private volatile ServerChannelImpl _wild;
+        private volatile ServerChannelImpl _deepWild;
+
+        private boolean isEmpty()
+        {
+            return _wild == null && _deepWild == null && _children.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.ConcurrentHashSet;
+
+/**
+ * <p>Incremental sweeper of channels and sessions.</p>
+ * <p>Channels are not scanned: they {@link #mark(ServerChannelImpl) mark} themselves when
+ * they may have become removable (for example when their last subscriber unsubscribes,
+ * or when they stop being persistent), and only marked channels are visited.
+ * Channels that are still removal candidates after a visit mark themselves again,
+ * so that they are visited by the next pass.</p>
+ * <p>A pass visits the channels marked before it started and all the sessions, and it is
+ * spread across a number of ticks (the shards): each tick visits only its share of the
+ * channels and sessions, to avoid latency spikes on servers with many sessions.</p>
+ */
+class Sweeper
+{
+    private final Set<ServerChannelImpl> _marked = new ConcurrentHashSet<>();
+    private final AtomicLong _passes = new AtomicLong();
+    private final BayeuxServerImpl _bayeux;
+    // Guarded by this
+    private final Queue<ServerChannelImpl> _channels = new ArrayDeque<>();
+    private Iterator<ServerSessionImpl> _sessions;
+    private int _channelsPerTick;
+    private int _sessionsPerTick;
+    private long _passNanos;
+    private int _passChannels;
+    private int _passSessions;
+    // Statistics
+    private volatile long _lastPassNanos;
+    private volatile long _lastTickNanos;
+    private volatile long _maxTickNanos;
+    private volatile int _lastPassChannels;
+    private volatile int _lastPassSessions;
+
+    Sweeper(BayeuxServerImpl bayeux)
+    {
+        _bayeux = bayeux;
+    }
+
+    void mark(ServerChannelImpl channel)
+    {
+        _marked.add(channel);
+    }
+
+    /**
+     * <p>Performs one tick of the current pass, starting a new pass if necessary.</p>
+     *
+     * @param shards the number of ticks a pass is spread across
+     * @param sessions the sessions to sweep, used when a new pass starts
+     * @return whether the pass has been completed by this tick
+     */
+    synchronized boolean tick(int shards, Collection<ServerSessionImpl> sessions)
+    {
+        long begin = System.nanoTime();
+
+        if (_sessions == null)
+            startPass(Math.max(shards, 1), sessions);
+
+        int channels = sweepChannels(_channelsPerTick);
+        int swept = sweepSessions(_sessionsPerTick);
+
+        long elapsed = System.nanoTime() - begin;
+        _passNanos += elapsed;
+        _passChannels += channels;
+        _passSessions += swept;
+        _lastTickNanos = elapsed;
+        if (elapsed > _maxTickNanos)
+            _maxTickNanos = elapsed;
+
+        if (_channels.isEmpty() && !_sessions.hasNext())
+        {
+            endPass();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * <p>Completes the current pass, or performs a whole new pass if none is in progress.</p>
+     *
+     * @param sessions the sessions to sweep, used when a new pass starts
+     */
+    synchronized void sweep(Collection<ServerSessionImpl> sessions)
+    {
+        if (_sessions == null)
+            startPass(1, sessions);
+        _channelsPerTick = Integer.MAX_VALUE;
+        _sessionsPerTick = Integer.MAX_VALUE;
+        tick(1, sessions);
+    }
+
+    private void startPass(int shards, Collection<ServerSessionImpl> sessions)
+    {
+        for (Iterator<ServerChannelImpl> iterator = _marked.iterator(); iterator.hasNext();)
+        {
+            _channels.offer(iterator.next());
+            iterator.remove();
+        }
+        _sessions = sessions.iterator();
+        _channelsPerTick = perTick(_channels.size(), shards);
+        _sessionsPerTick = perTick(sessions.size(), shards);
+        _passNanos = 0;
+        _passChannels = 0;
+        _passSessions = 0;
+
+        // Transports are few, sweep them once per pass
+        _bayeux.sweepTransports();
+    }
+
+    private int perTick(int size, int shards)
+    {
+        return Math.max((size + shards - 1) / shards, 1);
+    }
+
+    private int sweepChannels(int max)
+    {
+        int count = 0;
+        while (count < max)
+        {
+            ServerChannelImpl channel = _channels.poll();
+            if (channel == null)
+                break;
+            // Skip channels that have been removed in the meantime
+            if (_bayeux.getChannel(channel.getId()) == channel)
+                channel.sweep();
+            ++count;
+        }
+        return count;
+    }
+
+    private int sweepSessions(int max)
+    {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        while (count < max && _sessions.hasNext())
+        {
+            _sessions.next().sweep(now);
+            ++count;
+        }
+        return count;
+    }
+
+    private void endPass()
+    {
+        _sessions = null;
+        _lastPassNanos = _passNanos;
+        _lastPassChannels = _passChannels;
+        _lastPassSessions = _passSessions;
+        _passes.incrementAndGet();
+    }
+
+    long getPasses()
+    {
+        return _passes.get();
+    }
+
+    int getMarkedChannels()
+    {
+        return _marked.size();
+    }
+
+    long getLastPassDuration()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(_lastPassNanos);
+    }
+
+    long getLastTickDuration()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_lastTickNanos);
+    }
+
+    long getMaxTickDuration()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_maxTickNanos);
+    }
+
+    int getLastPassChannels()
+    {
+        return _lastPassChannels;
+    }
+
+    int getLastPassSessions()
+    {
+        return _lastPassSessions;
+    }
+
+    void reset()
+    {
+        _maxTickNanos = 0;
+    }
+
+    synchronized void clear()
+    {
+        _marked.clear();
+        _channels.clear();
+        _sessions = null;
+    }
+}
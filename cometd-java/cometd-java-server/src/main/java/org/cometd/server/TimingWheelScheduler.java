@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link Scheduler} implemented with hashed timing wheels.</p>
+ * <p>Each wheel is an array of buckets, and each bucket is a doubly linked list of tasks;
+ * a task is placed in the bucket corresponding to its expiration tick, along with the number
+ * of wheel revolutions that must pass before it expires.
+ * Scheduling and cancelling a task are O(1) operations: the former enqueues the task in a
+ * concurrent queue that the tick thread drains, while the latter atomically marks the task
+ * as cancelled and lets the tick thread unlink it from its bucket.</p>
+ * <p>Every wheel is driven by its own tick thread; tasks are distributed among the wheels
+ * in round robin, and are executed by the tick thread of their wheel, so they must not block.</p>
+ * <p>Tasks expire with the granularity of the tick: a task may expire up to one tick late.</p>
+ */
+public class TimingWheelScheduler extends AbstractLifeCycle implements Scheduler
+{
+    private static final Logger _logger = LoggerFactory.getLogger(TimingWheelScheduler.class);
+    private final AtomicInteger _index = new AtomicInteger();
+    private final String _name;
+    private final long _tickMillis;
+    private final int _wheelSize;
+    private final int _threads;
+    private volatile Wheel[] _wheels;
+
+    public TimingWheelScheduler()
+    {
+        this(null, 100, 512, 1);
+    }
+
+    /**
+     * @param name the name prefix of the tick threads
+     * @param tickMillis the duration of a tick, in milliseconds
+     * @param wheelSize the number of buckets of each wheel, rounded up to a power of 2
+     * @param threads the number of wheels, each driven by its own tick thread
+     */
+    public TimingWheelScheduler(String name, long tickMillis, int wheelSize, int threads)
+    {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Invalid tick " + tickMillis);
+        if (wheelSize <= 0)
+            throw new IllegalArgumentException("Invalid wheel size " + wheelSize);
+        if (threads <= 0)
+            throw new IllegalArgumentException("Invalid threads " + threads);
+        _name = name == null ? "TimingWheelScheduler@" + hashCode() : name;
+        _tickMillis = tickMillis;
+        int size = 1;
+        while (size < wheelSize)
+            size <<= 1;
+        _wheelSize = size;
+        _threads = threads;
+    }
+
+    public long getTickMillis()
+    {
+        return _tickMillis;
+    }
+
+    public int getWheelSize()
+    {
+        return _wheelSize;
+    }
+
+    public int getThreads()
+    {
+        return _threads;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        Wheel[] wheels = new Wheel[_threads];
+        for (int i = 0; i < wheels.length; ++i)
+        {
+            Wheel wheel = new Wheel();
+            Thread thread = new Thread(wheel, _name + "-" + i);
+            thread.setDaemon(true);
+            wheel._thread = thread;
+            wheels[i] = wheel;
+        }
+        for (Wheel wheel : wheels)
+            wheel._thread.start();
+        _wheels = wheels;
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        Wheel[] wheels = _wheels;
+        _wheels = null;
+        if (wheels != null)
+        {
+            for (Wheel wheel : wheels)
+            {
+                wheel._running = false;
+                wheel._thread.interrupt();
+            }
+            for (Wheel wheel : wheels)
+                wheel._thread.join();
+        }
+    }
+
+    public Task schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        Wheel[] wheels = _wheels;
+        if (wheels == null)
+            throw new RejectedExecutionException(this + " is not started");
+        Wheel wheel = wheels[(_index.getAndIncrement() & Integer.MAX_VALUE) % wheels.length];
+        return wheel.schedule(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[tick=%dms,size=%d,threads=%d]", _name, _tickMillis, _wheelSize, _threads);
+    }
+
+    private class Wheel implements Runnable
+    {
+        private final Queue<Entry> _pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Entry> _cancelled = new ConcurrentLinkedQueue<>();
+        private final Entry[] _buckets = new Entry[_wheelSize];
+        private final long _tickNanos = TimeUnit.MILLISECONDS.toNanos(_tickMillis);
+        private final long _start = System.nanoTime();
+        private volatile boolean _running = true;
+        private Thread _thread;
+        // Accessed only by the tick thread
+        private long _ticks;
+
+        private Wheel()
+        {
+            for (int i = 0; i < _buckets.length; ++i)
+                _buckets[i] = new Entry(this, null, 0);
+        }
+
+        private Entry schedule(Runnable task, long deadline)
+        {
+            Entry entry = new Entry(this, task, deadline);
+            _pending.offer(entry);
+            return entry;
+        }
+
+        public void run()
+        {
+            while (_running)
+            {
+                long tick = _ticks + 1;
+                long wait = _start + tick * _tickNanos - System.nanoTime();
+                if (wait > 0)
+                {
+                    // Sleeps may be rounded, re-check the time after sleeping
+                    try
+                    {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    catch (InterruptedException x)
+                    {
+                        // Stopping, or spurious: check whether we're still running
+                    }
+                    continue;
+                }
+                unlinkCancelled();
+                linkPending(tick);
+                expire(_buckets[(int)(tick & (_buckets.length - 1))]);
+                _ticks = tick;
+            }
+        }
+
+        private void unlinkCancelled()
+        {
+            while (true)
+            {
+                Entry entry = _cancelled.poll();
+                if (entry == null)
+                    break;
+                entry.unlink();
+            }
+        }
+
+        private void linkPending(long tick)
+        {
+            while (true)
+            {
+                Entry entry = _pending.poll();
+                if (entry == null)
+                    break;
+                if (entry.isDone())
+                    continue;
+                long elapsed = entry._deadline - _start;
+                long target = elapsed <= 0 ? tick : (elapsed + _tickNanos - 1) / _tickNanos;
+                if (target < tick)
+                    target = tick;
+                entry._rounds = (target - tick) / _buckets.length;
+                entry.linkBefore(_buckets[(int)(target & (_buckets.length - 1))]);
+            }
+        }
+
+        private void expire(Entry bucket)
+        {
+            Entry entry = bucket._next;
+            while (entry != bucket)
+            {
+                Entry next = entry._next;
+                if (entry.isDone())
+                {
+                    entry.unlink();
+                }
+                else if (entry._rounds > 0)
+                {
+                    --entry._rounds;
+                }
+                else
+                {
+                    entry.unlink();
+                    entry.expire();
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private static class Entry implements Task
+    {
+        private final AtomicBoolean _done = new AtomicBoolean();
+        private final Wheel _wheel;
+        private final Runnable _task;
+        private final long _deadline;
+        // Accessed only by the tick thread
+        private Entry _prev;
+        private Entry _next;
+        private long _rounds;
+
+        private Entry(Wheel wheel, Runnable task, long deadline)
+        {
+            _wheel = wheel;
+            _task = task;
+            _deadline = deadline;
+            if (task == null)
+            {
+                // Bucket sentinel
+                _prev = this;
+                _next = this;
+            }
+        }
+
+        private boolean isDone()
+        {
+            return _done.get();
+        }
+
+        private void linkBefore(Entry sentinel)
+        {
+            _next = sentinel;
+            _prev = sentinel._prev;
+            _prev._next = this;
+            sentinel._prev = this;
+        }
+
+        private void unlink()
+        {
+            if (_prev != null)
+            {
+                _prev._next = _next;
+                _next._prev = _prev;
+                _prev = null;
+                _next = null;
+            }
+        }
+
+        private void expire()
+        {
+            if (_done.compareAndSet(false, true))
+            {
+                try
+                {
+                    _task.run();
+                }
+                catch (Throwable x)
+                {
+                    _logger.info("Exception while running task " + _task, x);
+                }
+            }
+        }
+
+        public boolean cancel()
+        {
+            if (_done.compareAndSet(false, true))
+            {
+                _wheel._cancelled.offer(this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _task);
+        }
+    }
+}
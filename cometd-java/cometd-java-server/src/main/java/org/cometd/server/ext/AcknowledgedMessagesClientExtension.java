@@ -17,7 +17,6 @@
 package org.cometd.server.ext;
 
 import java.util.Map;
-import java.util.Queue;
 
 import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
@@ -34,25 +33,42 @@ import org.slf4j.LoggerFactory;
  *
  * Tracks the batch id of messages sent to a client.
  *
+ * Unacknowledged messages are kept in an {@link UnackedStore}, by default in memory.
  */
 public class AcknowledgedMessagesClientExtension implements Extension
 {
     private final Logger _logger = LoggerFactory.getLogger(getClass().getName());
     private final ServerSessionImpl _session;
     private final Object _lock;
-    private final ArrayIdQueue<ServerMessage> _unackedQueue;
+    private final UnackedStore _unackedStore;
+    private int _batch = 1;
     private long _lastAck;
 
     public AcknowledgedMessagesClientExtension(ServerSession session)
+    {
+        this(session, new MemoryUnackedStore());
+    }
+
+    public AcknowledgedMessagesClientExtension(ServerSession session, UnackedStore unackedStore)
     {
         _session = (ServerSessionImpl)session;
         _lock = _session.getLock();
-        synchronized (_lock)
+        _unackedStore = unackedStore;
+        _session.addListener(new ServerSession.RemoveListener()
         {
-            Queue<ServerMessage> queue = _session.getQueue();
-            _unackedQueue = new ArrayIdQueue<>(16, 32, queue);
-            _unackedQueue.setCurrentId(1);
-        }
+            public void removed(ServerSession session, boolean timeout)
+            {
+                synchronized (_lock)
+                {
+                    _unackedStore.close();
+                }
+            }
+        });
+    }
+
+    public UnackedStore getUnackedStore()
+    {
+        return _unackedStore;
     }
 
     public boolean rcv(ServerSession from, Mutable message)
@@ -78,7 +94,7 @@ public class AcknowledgedMessagesClientExtension implements Extension
                         long acked = ackValue.longValue();
                         if (acked <=_lastAck)
                         {
-                            _session.replaceQueue(_unackedQueue);
+                            _session.replaceQueue(_unackedStore.getMessages());
                         }
                         else
                         {
@@ -86,29 +102,7 @@ public class AcknowledgedMessagesClientExtension implements Extension
 
                             // We have received an ack ID, so delete the acked
                             // messages.
-                            final int s = _unackedQueue.size();
-                            if (s > 0)
-                            {
-                                if (_unackedQueue.getAssociatedIdUnsafe(s - 1) <= acked)
-                                {
-                                    // we can just clear the queue
-                                    _unackedQueue.clear();
-                                }
-                                else
-                                {
-                                    // we need to remove elements until we see unacked
-                                    for (int i = 0; i < s; ++i)
-                                    {
-                                        final long a = _unackedQueue.getAssociatedIdUnsafe(0);
-                                        if (a <= acked)
-                                        {
-                                            _unackedQueue.remove();
-                                            continue;
-                                        }
-                                        break;
-                                    }
-                                }
-                            }
+                            _unackedStore.acknowledge((int)acked);
                         }
                     }
                 }
@@ -124,7 +118,7 @@ public class AcknowledgedMessagesClientExtension implements Extension
         {
             synchronized (_lock)
             {
-                _unackedQueue.add(message);
+                _unackedStore.add(message, _batch);
             }
         }
         return message;
@@ -137,12 +131,10 @@ public class AcknowledgedMessagesClientExtension implements Extension
             synchronized (_lock)
             {
                 Map<String,Object> ext = message.getExt(true);
-                ext.put("ack", _unackedQueue.getCurrentId());
-                _unackedQueue.incrementCurrentId();
+                ext.put("ack", _batch);
+                ++_batch;
             }
         }
         return true;
     }
 }
-
-
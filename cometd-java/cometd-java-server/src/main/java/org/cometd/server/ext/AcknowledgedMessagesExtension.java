@@ -16,6 +16,7 @@
 
 package org.cometd.server.ext;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,6 +42,9 @@ public class AcknowledgedMessagesExtension extends Extension.Adapter
 {
     private final Logger _logger = LoggerFactory.getLogger(getClass().getName());
     private final Map<String, Object> _replyExt;
+    private volatile Path _spillDirectory;
+    private volatile int _maxUnackedMessages = 1024;
+    private volatile int _segmentSize = 64 * 1024;
 
     public AcknowledgedMessagesExtension()
     {
@@ -48,6 +52,67 @@ public class AcknowledgedMessagesExtension extends Extension.Adapter
         _replyExt.put("ack", true);
     }
 
+    /**
+     * @return the directory where unacknowledged messages are spilled, or null if they are kept in memory
+     */
+    public Path getSpillDirectory()
+    {
+        return _spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the directory where unacknowledged messages are spilled, or null to keep them in memory
+     * @see SpillingUnackedStore
+     */
+    public void setSpillDirectory(Path spillDirectory)
+    {
+        _spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the max number of unacknowledged messages kept in memory for each session when spilling
+     */
+    public int getMaxUnackedMessages()
+    {
+        return _maxUnackedMessages;
+    }
+
+    public void setMaxUnackedMessages(int maxUnackedMessages)
+    {
+        _maxUnackedMessages = maxUnackedMessages;
+    }
+
+    /**
+     * @return the initial size of the segment file of each session when spilling
+     */
+    public int getSegmentSize()
+    {
+        return _segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize)
+    {
+        _segmentSize = segmentSize;
+    }
+
+    /**
+     * <p>Creates the store of the unacknowledged messages of the given session.</p>
+     * <p>This implementation returns a {@link SpillingUnackedStore} when a
+     * {@link #setSpillDirectory(Path) spill directory} is configured, or a
+     * {@link MemoryUnackedStore} otherwise.</p>
+     *
+     * @param session the session that enabled message acknowledgement
+     * @return the store of the unacknowledged messages of the session
+     */
+    protected UnackedStore newUnackedStore(ServerSession session)
+    {
+        Path spillDirectory = _spillDirectory;
+        if (spillDirectory == null)
+            return new MemoryUnackedStore();
+        Path file = spillDirectory.resolve("unacked-" + session.getId() + ".seg");
+        return new SpillingUnackedStore(file, _maxUnackedMessages, _segmentSize);
+    }
+
     @Override
     public boolean sendMeta(ServerSession to, Mutable message)
     {
@@ -65,7 +130,7 @@ public class AcknowledgedMessagesExtension extends Extension.Adapter
             if (clientRequestedAcks && to != null)
             {
                 _logger.debug("Enabled message acknowledgement for client {}", to);
-                to.addExtension(new AcknowledgedMessagesClientExtension(to));
+                to.addExtension(new AcknowledgedMessagesClientExtension(to, newUnackedStore(to)));
                 ((ServerSessionImpl)to).setMetaConnectDeliveryOnly(true);
             }
 
@@ -16,6 +16,8 @@
 
 package org.cometd.server.ext;
 
+import java.util.Arrays;
+
 import org.eclipse.jetty.util.ArrayQueue;
 
 public class ArrayIdQueue<E> extends ArrayQueue<E>
@@ -75,31 +77,39 @@ public class ArrayIdQueue<E> extends ArrayQueue<E>
     {
         synchronized (_lock)
         {
-            final int nextSlot = _nextSlot;
             boolean result = super.add(e);
-            _ids[nextSlot] = _currentId;
+            setLastAssociatedId();
             return result;
         }
     }
 
     public void addUnsafe(E e)
     {
-        int nextSlot = _nextSlot;
         super.addUnsafe(e);
-        _ids[nextSlot] = _currentId;
+        setLastAssociatedId();
     }
 
     public boolean offer(E e)
     {
         synchronized (_lock)
         {
-            final int nextSlot = _nextSlot;
             boolean result = super.offer(e);
-            _ids[nextSlot] = _currentId;
+            if (result)
+                setLastAssociatedId();
             return result;
         }
     }
 
+    private void setLastAssociatedId()
+    {
+        // The slot of the last element is computed after adding it,
+        // since adding may have grown the arrays and moved the elements
+        int i = _nextSlot - 1;
+        if (i < 0)
+            i += _ids.length;
+        _ids[i] = _currentId;
+    }
+
     public int getAssociatedId(int index)
     {
         synchronized (_lock)
@@ -112,10 +122,64 @@ public class ArrayIdQueue<E> extends ArrayQueue<E>
 
     public int getAssociatedIdUnsafe(int index)
     {
-        int i = (_nextE + index) % _ids.length;
+        int i = _nextE + index;
+        if (i >= _ids.length)
+            i -= _ids.length;
         return _ids[i];
     }
 
+    /**
+     * <p>Removes the elements at the head of this queue whose associated id is
+     * less than or equal to the given id.</p>
+     * <p>Associated ids do not decrease from head to tail when elements are appended
+     * with {@link #add(Object)} or {@link #offer(Object)}, so the elements to remove
+     * are found with a binary search over the ids, and removed by advancing the head
+     * of the ring buffer, without shifting the arrays.</p>
+     *
+     * @param id the max associated id of the elements to remove
+     * @return the number of removed elements
+     */
+    public int removeUpTo(int id)
+    {
+        synchronized (_lock)
+        {
+            int count = countUpTo(id);
+            if (count == 0)
+                return 0;
+
+            int capacity = _elements.length;
+            int end = _nextE + count;
+            if (end <= capacity)
+            {
+                Arrays.fill(_elements, _nextE, end, null);
+            }
+            else
+            {
+                Arrays.fill(_elements, _nextE, capacity, null);
+                Arrays.fill(_elements, 0, end - capacity, null);
+                end -= capacity;
+            }
+            _nextE = end == capacity ? 0 : end;
+            _size -= count;
+            return count;
+        }
+    }
+
+    private int countUpTo(int id)
+    {
+        int low = 0;
+        int high = _size;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (getAssociatedIdUnsafe(middle) <= id)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
     public E remove(int index)
     {
         synchronized (_lock)
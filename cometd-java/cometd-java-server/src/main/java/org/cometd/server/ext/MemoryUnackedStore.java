@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.ext;
+
+import java.util.List;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+/**
+ * <p>An {@link UnackedStore} that keeps all the unacknowledged messages in memory.</p>
+ */
+public class MemoryUnackedStore implements UnackedStore
+{
+    private final ArrayIdQueue<ServerMessage> _queue = new ArrayIdQueue<>(16, 32);
+
+    public void add(ServerMessage message, int batch)
+    {
+        if (_queue.getCurrentId() != batch)
+            _queue.setCurrentId(batch);
+        _queue.add(message);
+    }
+
+    public void acknowledge(int batch)
+    {
+        _queue.removeUpTo(batch);
+    }
+
+    public List<ServerMessage> getMessages()
+    {
+        return _queue;
+    }
+
+    public int size()
+    {
+        return _queue.size();
+    }
+
+    public void close()
+    {
+        _queue.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d]", getClass().getSimpleName(), hashCode(), size());
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.ext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.common.JSONContext;
+import org.cometd.server.JettyJSONContextServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>An {@link UnackedStore} that keeps in memory only the most recent unacknowledged
+ * messages, and spills the older ones to an append-only memory-mapped segment file.</p>
+ * <p>Each spilled message is a record made of the batch id, the length of the JSON
+ * representation of the message, and its UTF-8 bytes.
+ * Records are appended in batch order, so that acknowledging a batch id only advances
+ * the offset of the first unacknowledged record; when all the spilled messages have
+ * been acknowledged, the segment file is truncated.
+ * When the acknowledged records take more than half of the segment, the unacknowledged
+ * records are moved to the start of the segment, so that a client that keeps acknowledging
+ * while staying behind does not grow the segment file forever.
+ * The segment cannot grow beyond 2 GiB: when it is full, messages are kept in memory.</p>
+ * <p>Spilled messages are read back and parsed when the client reconnects and the
+ * unacknowledged messages are sent again.</p>
+ */
+public class SpillingUnackedStore implements UnackedStore
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HEADER_LENGTH = 8;
+
+    private final Logger _logger = LoggerFactory.getLogger(getClass().getName());
+    private final ArrayIdQueue<ServerMessage> _tail = new ArrayIdQueue<>(16, 32);
+    private final JSONContext.Server _jsonContext;
+    private final Path _file;
+    private final int _maxMessages;
+    private final int _segmentSize;
+    private FileChannel _channel;
+    private MappedByteBuffer _segment;
+    private int _head;
+    private int _end;
+    private int _spilled;
+
+    /**
+     * @param file the segment file
+     * @param maxMessages the max number of unacknowledged messages kept in memory
+     * @param segmentSize the initial size of the memory mapped segment, doubled when it is full
+     */
+    public SpillingUnackedStore(Path file, int maxMessages, int segmentSize)
+    {
+        this(file, maxMessages, segmentSize, new JettyJSONContextServer());
+    }
+
+    public SpillingUnackedStore(Path file, int maxMessages, int segmentSize, JSONContext.Server jsonContext)
+    {
+        _file = file;
+        _maxMessages = maxMessages;
+        _segmentSize = segmentSize;
+        _jsonContext = jsonContext;
+    }
+
+    public void add(ServerMessage message, int batch)
+    {
+        if (_tail.getCurrentId() != batch)
+            _tail.setCurrentId(batch);
+        _tail.add(message);
+
+        while (_tail.size() > _maxMessages)
+        {
+            try
+            {
+                spill(_tail.getAssociatedIdUnsafe(0), _tail.get(0));
+                _tail.remove();
+            }
+            catch (IOException x)
+            {
+                // Keep the messages in memory rather than losing them
+                _logger.warn("Could not spill unacknowledged message to " + _file, x);
+                break;
+            }
+        }
+    }
+
+    private void spill(int batch, ServerMessage message) throws IOException
+    {
+        byte[] json = message.getJSON().getBytes(UTF_8);
+        int length = HEADER_LENGTH + json.length;
+        ensureCapacity(length);
+        _segment.putInt(_end, batch);
+        _segment.putInt(_end + 4, json.length);
+        ByteBuffer slice = _segment.duplicate();
+        slice.position(_end + HEADER_LENGTH);
+        slice.put(json);
+        _end += length;
+        ++_spilled;
+    }
+
+    private void ensureCapacity(int length) throws IOException
+    {
+        if (_channel == null)
+            _channel = FileChannel.open(_file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long capacity = _segment == null ? 0 : _segment.capacity();
+        if ((long)_end + length <= capacity)
+            return;
+
+        // Reuse the space of the acknowledged records before growing
+        compact();
+        long required = (long)_end + length;
+        if (required <= capacity)
+            return;
+        if (required > Integer.MAX_VALUE)
+            throw new IOException("Segment full: " + _end + " + " + length + " bytes");
+
+        if (capacity == 0)
+            capacity = _segmentSize;
+        while (capacity < required)
+            capacity <<= 1;
+        capacity = Math.min(capacity, Integer.MAX_VALUE);
+        // Mapping a larger region grows the file
+        _segment = _channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void compact()
+    {
+        if (_head == 0)
+            return;
+        ByteBuffer records = _segment.duplicate();
+        records.limit(_end);
+        records.position(_head);
+        records.compact();
+        _end -= _head;
+        _head = 0;
+    }
+
+    public void acknowledge(int batch)
+    {
+        while (_spilled > 0)
+        {
+            if (_segment.getInt(_head) > batch)
+                break;
+            _head += HEADER_LENGTH + _segment.getInt(_head + 4);
+            --_spilled;
+        }
+        if (_spilled == 0)
+        {
+            if (_end > 0)
+                truncate();
+        }
+        else if (_head > _segment.capacity() / 2)
+        {
+            compact();
+        }
+
+        _tail.removeUpTo(batch);
+    }
+
+    private void truncate()
+    {
+        // Drop the mapping before truncating, since accessing
+        // a mapped region beyond the end of the file is an error
+        _segment = null;
+        _head = 0;
+        _end = 0;
+        try
+        {
+            _channel.truncate(0);
+        }
+        catch (IOException x)
+        {
+            _logger.debug("Could not truncate " + _file, x);
+        }
+    }
+
+    public List<ServerMessage> getMessages()
+    {
+        if (_spilled == 0)
+            return _tail;
+
+        List<ServerMessage> result = new ArrayList<>(_spilled + _tail.size());
+        int offset = _head;
+        for (int i = 0; i < _spilled; ++i)
+        {
+            int length = _segment.getInt(offset + 4);
+            byte[] json = new byte[length];
+            ByteBuffer slice = _segment.duplicate();
+            slice.position(offset + HEADER_LENGTH);
+            slice.get(json);
+            offset += HEADER_LENGTH + length;
+            try
+            {
+                Collections.addAll(result, _jsonContext.parse(new String(json, UTF_8)));
+            }
+            catch (ParseException x)
+            {
+                _logger.warn("Could not read back unacknowledged message from " + _file, x);
+            }
+        }
+        result.addAll(_tail);
+        return result;
+    }
+
+    public int size()
+    {
+        return _spilled + _tail.size();
+    }
+
+    /**
+     * @return the number of unacknowledged messages spilled to the segment file
+     */
+    public int getSpilledSize()
+    {
+        return _spilled;
+    }
+
+    public void close()
+    {
+        _tail.clear();
+        _segment = null;
+        _spilled = 0;
+        _head = 0;
+        _end = 0;
+        try
+        {
+            if (_channel != null)
+                _channel.close();
+            _channel = null;
+            Files.deleteIfExists(_file);
+        }
+        catch (IOException x)
+        {
+            _logger.debug("Could not delete " + _file, x);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[size=%d,spilled=%d,file=%s]", getClass().getSimpleName(), hashCode(), size(), _spilled, _file);
+    }
+}
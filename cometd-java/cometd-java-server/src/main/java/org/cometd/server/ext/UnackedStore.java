@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.ext;
+
+import java.util.List;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+/**
+ * <p>Stores the messages sent to a session until the client acknowledges them.</p>
+ * <p>Messages are stored together with the id of the batch they are sent in;
+ * when the client acknowledges a batch id, the messages of that batch and of
+ * the previous batches are removed from the store.</p>
+ * <p>Implementations are invoked while holding the session lock, so they need not
+ * be thread safe.</p>
+ *
+ * @see AcknowledgedMessagesExtension#newUnackedStore(org.cometd.bayeux.server.ServerSession)
+ */
+public interface UnackedStore
+{
+    /**
+     * @param message the message sent to the session
+     * @param batch the id of the batch the message is sent in
+     */
+    public void add(ServerMessage message, int batch);
+
+    /**
+     * <p>Removes the messages sent in batches with id less than or equal to the given batch id.</p>
+     *
+     * @param batch the batch id acknowledged by the client
+     */
+    public void acknowledge(int batch);
+
+    /**
+     * @return the unacknowledged messages, in the order they were added, to be sent again to the client
+     */
+    public List<ServerMessage> getMessages();
+
+    /**
+     * @return the number of unacknowledged messages
+     */
+    public int size();
+
+    /**
+     * <p>Releases the resources of this store, when the session is removed.</p>
+     */
+    public void close();
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.filter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerSession;
+
+/**
+ * <p>A {@link DataFilter} that applies a chain of {@link JSONDataFilter}s with a single walk
+ * of the data tree.</p>
+ * <p>Each {@link JSONDataFilter} transforms the leaves of the tree independently, so applying
+ * the chain to each leaf gives the same result as applying each filter to the whole tree,
+ * without walking the tree once per filter.
+ * Only the filters that do not override the tree walk itself (the {@code filter()},
+ * {@code filterMap()} and {@code filterArray()} methods) can be compiled, see
+ * {@link #isCompilable(DataFilter)}.</p>
+ * <p>The {@link JSONDataFilter#getStringPattern() string patterns} of the filters are joined
+ * into a single pattern, so that strings that no filter would change are recognized with a
+ * single scan and returned untouched.
+ * Maps, lists and arrays are modified in place, and only where a value changes, so that
+ * filtering data that needs no change does not allocate.</p>
+ */
+public class CompiledDataFilter implements DataFilter
+{
+    private final ThreadLocal<Matcher> _matchers = new ThreadLocal<>();
+    private final JSONDataFilter[] _filters;
+    private final JSONDataFilter[] _stringFilters;
+    private final JSONDataFilter[] _numberFilters;
+    private final JSONDataFilter[] _booleanFilters;
+    private final JSONDataFilter[] _objectFilters;
+    private final Pattern _stringPattern;
+
+    public CompiledDataFilter(JSONDataFilter... filters)
+    {
+        List<JSONDataFilter> stringFilters = new ArrayList<>();
+        List<JSONDataFilter> numberFilters = new ArrayList<>();
+        List<JSONDataFilter> booleanFilters = new ArrayList<>();
+        List<JSONDataFilter> objectFilters = new ArrayList<>();
+        StringBuilder stringPattern = new StringBuilder();
+        boolean patterns = true;
+        for (JSONDataFilter filter : filters)
+        {
+            if (!isCompilable(filter))
+                throw new IllegalArgumentException("Filter " + filter + " overrides the data walk and cannot be compiled");
+
+            Class<?> type = filter.getClass();
+            Class<?> stringClass = declaringClass(type, "filterString", String.class);
+            if (stringClass != JSONDataFilter.class)
+            {
+                stringFilters.add(filter);
+                Pattern pattern = null;
+                // The pattern must come from the class that defines the string filtering
+                if (stringClass.isAssignableFrom(declaringClass(type, "getStringPattern")))
+                    pattern = filter.getStringPattern();
+                if (pattern == null)
+                {
+                    patterns = false;
+                }
+                else
+                {
+                    if (stringPattern.length() > 0)
+                        stringPattern.append('|');
+                    stringPattern.append("(?:").append(pattern.pattern()).append(")");
+                }
+            }
+            if (declaringClass(type, "filterNumber", Number.class) != JSONDataFilter.class)
+                numberFilters.add(filter);
+            if (declaringClass(type, "filterBoolean", Boolean.class) != JSONDataFilter.class)
+                booleanFilters.add(filter);
+            if (declaringClass(type, "filterObject", ServerSession.class, ServerChannel.class, Object.class) != JSONDataFilter.class)
+                objectFilters.add(filter);
+        }
+        _filters = filters.clone();
+        _stringFilters = stringFilters.toArray(new JSONDataFilter[stringFilters.size()]);
+        _numberFilters = numberFilters.toArray(new JSONDataFilter[numberFilters.size()]);
+        _booleanFilters = booleanFilters.toArray(new JSONDataFilter[booleanFilters.size()]);
+        _objectFilters = objectFilters.toArray(new JSONDataFilter[objectFilters.size()]);
+        _stringPattern = patterns ? compile(stringPattern.toString()) : null;
+    }
+
+    /**
+     * @param filter the filter to test
+     * @return whether the given filter is a {@link JSONDataFilter} that does not override the data walk
+     */
+    public static boolean isCompilable(DataFilter filter)
+    {
+        if (!(filter instanceof JSONDataFilter))
+            return false;
+        Class<?> type = filter.getClass();
+        return declaringClass(type, "filter", ServerSession.class, ServerChannel.class, Object.class) == JSONDataFilter.class &&
+                declaringClass(type, "filterMap", ServerSession.class, ServerChannel.class, Map.class) == JSONDataFilter.class &&
+                declaringClass(type, "filterArray", ServerSession.class, ServerChannel.class, Object.class) == JSONDataFilter.class;
+    }
+
+    private static Class<?> declaringClass(Class<?> type, String name, Class<?>... parameters)
+    {
+        for (Class<?> c = type; c != null; c = c.getSuperclass())
+        {
+            try
+            {
+                Method method = c.getDeclaredMethod(name, parameters);
+                return method.getDeclaringClass();
+            }
+            catch (NoSuchMethodException x)
+            {
+                // Look in the superclass
+            }
+        }
+        throw new IllegalArgumentException("No method " + name + " in " + type);
+    }
+
+    private static Pattern compile(String pattern)
+    {
+        try
+        {
+            return Pattern.compile(pattern);
+        }
+        catch (PatternSyntaxException x)
+        {
+            // The patterns cannot be joined, strings will always be filtered
+            return null;
+        }
+    }
+
+    public Object filter(ServerSession from, ServerChannel channel, Object data)
+    {
+        if (data == null)
+            return null;
+        return filterValue(from, channel, data);
+    }
+
+    private Object filterValue(ServerSession from, ServerChannel channel, Object value)
+    {
+        if (value == null)
+            return null;
+        if (value instanceof String)
+            return filterString(from, channel, (String)value);
+        if (value instanceof Map)
+            return filterMap(from, channel, (Map<String, Object>)value);
+        if (value instanceof List)
+            return filterList(from, channel, (List<Object>)value);
+        if (value instanceof Collection)
+            return filterCollection(from, channel, (Collection<Object>)value);
+        if (value instanceof Object[])
+            return filterArray(from, channel, (Object[])value);
+        if (value.getClass().isArray())
+            return filterPrimitiveArray(from, channel, value);
+        if (value instanceof Number)
+            return filterLeaf(from, channel, _numberFilters, value);
+        if (value instanceof Boolean)
+            return filterLeaf(from, channel, _booleanFilters, value);
+        return filterLeaf(from, channel, _objectFilters, value);
+    }
+
+    private Object filterString(ServerSession from, ServerChannel channel, String string)
+    {
+        if (_stringFilters.length == 0)
+            return string;
+
+        Pattern pattern = _stringPattern;
+        if (pattern != null)
+        {
+            Matcher matcher = _matchers.get();
+            if (matcher == null)
+            {
+                matcher = pattern.matcher(string);
+                _matchers.set(matcher);
+            }
+            else
+            {
+                matcher.reset(string);
+            }
+            boolean found = matcher.find();
+            // Do not retain the string
+            matcher.reset("");
+            if (!found)
+                return string;
+        }
+
+        return filterLeaf(from, channel, _stringFilters, string);
+    }
+
+    private Object filterLeaf(ServerSession from, ServerChannel channel, JSONDataFilter[] filters, Object value)
+    {
+        Class<?> type = value.getClass();
+        for (JSONDataFilter filter : filters)
+        {
+            if (value instanceof String)
+                value = filter.filterString((String)value);
+            else if (value instanceof Number)
+                value = filter.filterNumber((Number)value);
+            else if (value instanceof Boolean)
+                value = filter.filterBoolean((Boolean)value);
+            else
+                value = filter.filterObject(from, channel, value);
+
+            if (value == null)
+                return null;
+            if (!type.isInstance(value))
+                // A filter changed the kind of the value, let the remaining filters walk it
+                return filterTail(from, channel, filter, value);
+        }
+        return value;
+    }
+
+    private Object filterTail(ServerSession from, ServerChannel channel, JSONDataFilter last, Object value)
+    {
+        int index = 0;
+        while (_filters[index] != last)
+            ++index;
+        for (int i = index + 1; i < _filters.length && value != null; ++i)
+            value = _filters[i].filter(from, channel, value);
+        return value;
+    }
+
+    private Object filterMap(ServerSession from, ServerChannel channel, Map<String, Object> map)
+    {
+        for (Map.Entry<String, Object> entry : map.entrySet())
+        {
+            Object value = entry.getValue();
+            Object result = filterValue(from, channel, value);
+            if (result != value)
+                entry.setValue(result);
+        }
+        return map;
+    }
+
+    private Object filterList(ServerSession from, ServerChannel channel, List<Object> list)
+    {
+        List<Object> result = list;
+        int index = 0;
+        for (Object value : list)
+        {
+            Object filtered = filterValue(from, channel, value);
+            if (filtered != value)
+            {
+                // The list may not be modifiable, filter a copy of it
+                if (result == list)
+                    result = new ArrayList<>(list);
+                result.set(index, filtered);
+            }
+            ++index;
+        }
+        return result;
+    }
+
+    private Object filterCollection(ServerSession from, ServerChannel channel, Collection<Object> collection)
+    {
+        int index = 0;
+        for (Object value : collection)
+        {
+            Object result = filterValue(from, channel, value);
+            if (result != value)
+            {
+                // Collections cannot be modified by position, copy them as JSONDataFilter does
+                Object[] array = collection.toArray();
+                array[index] = result;
+                for (int i = index + 1; i < array.length; ++i)
+                    array[i] = filterValue(from, channel, array[i]);
+                return array;
+            }
+            ++index;
+        }
+        return collection;
+    }
+
+    private Object filterArray(ServerSession from, ServerChannel channel, Object[] array)
+    {
+        for (int i = 0; i < array.length; ++i)
+        {
+            Object value = array[i];
+            Object result = filterValue(from, channel, value);
+            if (result != value)
+                array[i] = result;
+        }
+        return array;
+    }
+
+    private Object filterPrimitiveArray(ServerSession from, ServerChannel channel, Object array)
+    {
+        if (_numberFilters.length == 0 && _booleanFilters.length == 0 && _objectFilters.length == 0)
+            return array;
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; ++i)
+            Array.set(array, i, filterValue(from, channel, Array.get(array, i)));
+        return array;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[strings=%d,pattern=%s]", getClass().getSimpleName(), hashCode(), _stringFilters.length, _stringPattern);
+    }
+}
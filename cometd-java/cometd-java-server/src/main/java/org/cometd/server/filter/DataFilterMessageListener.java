@@ -16,7 +16,7 @@
 
 package org.cometd.server.filter;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.cometd.bayeux.server.BayeuxServer;
@@ -41,7 +41,41 @@ public class DataFilterMessageListener implements ServerChannel.MessageListener
 
     public DataFilterMessageListener(BayeuxServer bayeux, DataFilter... filters)
     {
-        _filters = Arrays.asList(filters);
+        _filters = compile(filters);
+    }
+
+    /**
+     * <p>Replaces each run of consecutive {@link CompiledDataFilter#isCompilable(DataFilter) compilable}
+     * filters with a {@link CompiledDataFilter}, so that the data is walked once per run rather
+     * than once per filter.</p>
+     */
+    private List<DataFilter> compile(DataFilter[] filters)
+    {
+        List<DataFilter> result = new ArrayList<>();
+        List<JSONDataFilter> run = new ArrayList<>();
+        for (DataFilter filter : filters)
+        {
+            if (CompiledDataFilter.isCompilable(filter))
+            {
+                run.add((JSONDataFilter)filter);
+            }
+            else
+            {
+                compile(run, result);
+                result.add(filter);
+            }
+        }
+        compile(run, result);
+        return result;
+    }
+
+    private void compile(List<JSONDataFilter> run, List<DataFilter> result)
+    {
+        if (!run.isEmpty())
+        {
+            result.add(new CompiledDataFilter(run.toArray(new JSONDataFilter[run.size()])));
+            run.clear();
+        }
     }
 
     public boolean onMessage(ServerSession from, ServerChannel channel, Mutable message)
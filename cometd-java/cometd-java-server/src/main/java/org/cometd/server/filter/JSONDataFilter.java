@@ -20,6 +20,7 @@ import java.lang.reflect.Array;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerSession;
@@ -66,6 +67,19 @@ public class JSONDataFilter implements DataFilter
         return string;
     }
 
+    /**
+     * <p>Returns a pattern that is found in every string that {@link #filterString(String)}
+     * may change or reject, or null if no such pattern is known.</p>
+     * <p>{@link CompiledDataFilter} uses the patterns of the filters it is compiled from
+     * to skip, with a single scan, the strings that none of the filters would change.</p>
+     *
+     * @return a pattern found in the strings that this filter may change, or null
+     */
+    protected Pattern getStringPattern()
+    {
+        return null;
+    }
+
     protected Object filterBoolean(Boolean bool)
     {
         return bool;
@@ -81,6 +95,14 @@ public class JSONDataFilter implements DataFilter
         if (array == null)
             return null;
 
+        if (array instanceof Object[])
+        {
+            Object[] objects=(Object[])array;
+            for (int i=0; i < objects.length; i++)
+                objects[i]=filter(from,to,objects[i]);
+            return objects;
+        }
+
         int length=Array.getLength(array);
 
         for (int i=0; i < length; i++)
@@ -20,14 +20,42 @@ import java.util.regex.Pattern;
 
 public class NoMarkupFilter extends JSONDataFilter
 {
-    private static Pattern __open=Pattern.compile("<");
-    private static Pattern __close=Pattern.compile(">");
+    private static Pattern __markup=Pattern.compile("[<>]");
 
     @Override
     protected Object filterString(String string)
     {
-        string=__open.matcher(string).replaceAll("&lt;");
-        string=__close.matcher(string).replaceAll("&gt;");
-        return string;
+        int length=string.length();
+        int index=0;
+        while (index < length)
+        {
+            char c=string.charAt(index);
+            if (c == '<' || c == '>')
+                break;
+            ++index;
+        }
+        // Most strings have no markup, return them untouched
+        if (index == length)
+            return string;
+
+        StringBuilder builder=new StringBuilder(length + 8);
+        builder.append(string,0,index);
+        for (; index < length; ++index)
+        {
+            char c=string.charAt(index);
+            if (c == '<')
+                builder.append("&lt;");
+            else if (c == '>')
+                builder.append("&gt;");
+            else
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    protected Pattern getStringPattern()
+    {
+        return __markup;
     }
 }
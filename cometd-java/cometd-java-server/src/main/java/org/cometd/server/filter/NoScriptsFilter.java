@@ -33,4 +33,10 @@ public class NoScriptsFilter extends JSONDataFilter
             string=StringUtil.replace(string,"script","span");
         return string;
     }
+
+    @Override
+    protected Pattern getStringPattern()
+    {
+        return __script;
+    }
 }
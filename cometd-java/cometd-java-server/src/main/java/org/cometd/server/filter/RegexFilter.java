@@ -18,9 +18,12 @@ package org.cometd.server.filter;
 
 import java.lang.reflect.Array;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class RegexFilter extends JSONDataFilter
 {
+    private static final Pattern __backReference=Pattern.compile("\\\\(\\d|k<)");
+
     protected String[] _templates;
     protected String[] _replaces;
     protected transient Pattern[] _patterns;
@@ -77,4 +80,36 @@ public class RegexFilter extends JSONDataFilter
         }
         return string;
     }
+
+    /**
+     * @return the alternation of all the templates, or null if the templates
+     * cannot be joined because they use back references
+     */
+    @Override
+    protected Pattern getStringPattern()
+    {
+        String[] templates=_templates;
+        if (templates == null)
+            return null;
+
+        StringBuilder builder=new StringBuilder();
+        for (String template : templates)
+        {
+            // Joined templates would renumber the groups that back references refer to
+            if (__backReference.matcher(template).find())
+                return null;
+            if (builder.length() > 0)
+                builder.append('|');
+            builder.append("(?:").append(template).append(")");
+        }
+
+        try
+        {
+            return Pattern.compile(builder.toString());
+        }
+        catch (PatternSyntaxException x)
+        {
+            return null;
+        }
+    }
 }
@@ -16,14 +16,23 @@
 
 package org.cometd.server.jmx;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ChannelStatistics;
+import org.cometd.server.ServerChannelImpl;
 import org.eclipse.jetty.jmx.ObjectMBean;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.annotation.Name;
 
 @ManagedObject
 public class BayeuxServerImplMBean extends ObjectMBean
@@ -64,4 +73,68 @@ public class BayeuxServerImplMBean extends ObjectMBean
     {
         return new TreeSet<>(bayeux.getOptionNames());
     }
+
+    @ManagedOperation(value = "The statistics of the given channel", impact = "INFO")
+    public Map<String, Long> channelStatistics(@Name("channel") String channelName)
+    {
+        ChannelStatistics statistics = statisticsOf(bayeux.getChannel(channelName));
+        return statistics == null ? null : statistics.toMap();
+    }
+
+    @ManagedOperation(value = "The top N channels by the given statistics metric (publishes, deliveries, bytes, queueFull, listenerTime, deliveryTime, ...)", impact = "INFO")
+    public List<String> topChannels(@Name("metric") final String metric, @Name("count") int count)
+    {
+        class Entry
+        {
+            private final String channel;
+            private final long value;
+
+            private Entry(String channel, long value)
+            {
+                this.channel = channel;
+                this.value = value;
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (ServerChannel channel : bayeux.getChannels())
+        {
+            ChannelStatistics statistics = statisticsOf(channel);
+            if (statistics != null)
+                entries.add(new Entry(channel.getId(), statistics.getMetric(metric)));
+        }
+        Collections.sort(entries, new Comparator<Entry>()
+        {
+            public int compare(Entry e1, Entry e2)
+            {
+                return Long.compare(e2.value, e1.value);
+            }
+        });
+
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, entries.size()); ++i)
+        {
+            Entry entry = entries.get(i);
+            result.add(entry.channel + "=" + entry.value);
+        }
+        return result;
+    }
+
+    @ManagedOperation(value = "Resets the statistics of all channels", impact = "ACTION")
+    public void resetChannelStatistics()
+    {
+        for (ServerChannel channel : bayeux.getChannels())
+        {
+            ChannelStatistics statistics = statisticsOf(channel);
+            if (statistics != null)
+                statistics.reset();
+        }
+    }
+
+    private ChannelStatistics statisticsOf(ServerChannel channel)
+    {
+        if (channel instanceof ServerChannelImpl)
+            return ((ServerChannelImpl)channel).getStatistics();
+        return null;
+    }
 }
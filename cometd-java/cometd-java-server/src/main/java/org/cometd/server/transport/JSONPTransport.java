@@ -17,8 +17,8 @@
 package org.cometd.server.transport;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.ParseException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -82,27 +82,29 @@ public class JSONPTransport extends LongPollingTransport
     }
 
     @Override
-    protected PrintWriter writeMessage(HttpServletRequest request, HttpServletResponse response, PrintWriter writer, ServerSessionImpl session, ServerMessage message) throws IOException
+    protected ServletOutputStream writeMessage(HttpServletRequest request, HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException
     {
-        if (writer == null)
+        if (output == null)
         {
             response.setContentType(_mimeType);
 
             String callback = request.getParameter(_callbackParam);
-            writer = response.getWriter();
-            writer.append(callback);
-            writer.append("([");
+            output = response.getOutputStream();
+            output.write(callback.getBytes("UTF-8"));
+            output.write('(');
+            output.write('[');
         }
         else
-            writer.append(',');
-        writer.append(message.getJSON());
-        return writer;
+            output.write(',');
+        writeJSON(output, message);
+        return output;
     }
 
     @Override
-    protected void finishWrite(PrintWriter writer, ServerSessionImpl session) throws IOException
+    protected void finishWrite(ServletOutputStream output, ServerSessionImpl session) throws IOException
     {
-        writer.append("])");
-        writer.close();
+        output.write(']');
+        output.write(')');
+        output.close();
     }
 }
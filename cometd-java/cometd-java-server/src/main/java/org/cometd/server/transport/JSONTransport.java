@@ -17,12 +17,13 @@
 package org.cometd.server.transport;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.ParseException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.common.JSONContext;
 import org.cometd.server.BayeuxServerImpl;
 import org.cometd.server.ServerSessionImpl;
 
@@ -31,8 +32,10 @@ public class JSONTransport extends LongPollingTransport
     public final static String PREFIX = "long-polling.json";
     public final static String NAME = "long-polling";
     public final static String MIME_TYPE_OPTION = "mimeType";
+    public final static String STREAMING_PARSE_OPTION = "streamingParse";
 
     private boolean _jsonDebug = false;
+    private boolean _streamingParse = false;
     private String _mimeType = "application/json;charset=UTF-8";
 
     public JSONTransport(BayeuxServerImpl bayeux)
@@ -53,6 +56,12 @@ public class JSONTransport extends LongPollingTransport
         super.init();
         _jsonDebug = getOption(JSON_DEBUG_OPTION, _jsonDebug);
         _mimeType = getOption(MIME_TYPE_OPTION, _mimeType);
+        _streamingParse = getOption(STREAMING_PARSE_OPTION, _streamingParse);
+    }
+
+    protected String getMimeType()
+    {
+        return _mimeType;
     }
 
     @Override
@@ -76,27 +85,50 @@ public class JSONTransport extends LongPollingTransport
             throw new IOException("Invalid Content-Type " + contentType);
     }
 
+    /**
+     * <p>When the {@code streamingParse} option is enabled, JSON request bodies are parsed
+     * in streaming mode: each message is processed as soon as it has been parsed, so that
+     * large batches are not buffered in full before the first message is processed.</p>
+     */
+    @Override
+    protected void parseMessages(HttpServletRequest request, JSONContext.MessageListener<ServerMessage.Mutable> listener) throws IOException, ParseException
+    {
+        if (_streamingParse && !_jsonDebug)
+        {
+            String charset = request.getCharacterEncoding();
+            if (charset == null)
+                request.setCharacterEncoding("UTF-8");
+            String contentType = request.getContentType();
+            if (contentType == null || contentType.startsWith("application/json"))
+            {
+                parseMessages(request.getReader(), listener);
+                return;
+            }
+        }
+        super.parseMessages(request, listener);
+    }
+
     @Override
-    protected PrintWriter writeMessage(HttpServletRequest request, HttpServletResponse response, PrintWriter writer, ServerSessionImpl session, ServerMessage message) throws IOException
+    protected ServletOutputStream writeMessage(HttpServletRequest request, HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException
     {
-        if (writer == null)
+        if (output == null)
         {
             response.setContentType(_mimeType);
-            writer = response.getWriter();
-            writer.append('[');
+            output = response.getOutputStream();
+            output.write('[');
         }
         else
         {
-            writer.append(',');
+            output.write(',');
         }
-        writer.append(message.getJSON());
-        return writer;
+        writeJSON(output, message);
+        return output;
     }
 
     @Override
-    protected void finishWrite(PrintWriter writer, ServerSessionImpl session) throws IOException
+    protected void finishWrite(ServletOutputStream output, ServerSessionImpl session) throws IOException
     {
-        writer.append("]");
-        writer.close();
+        output.write(']');
+        output.close();
     }
 }
@@ -17,7 +17,6 @@
 package org.cometd.server.transport;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -29,6 +28,7 @@ import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
@@ -38,8 +38,10 @@ import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
+import org.cometd.common.JSONContext;
 import org.cometd.server.AbstractServerTransport;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ServerMessageImpl;
 import org.cometd.server.ServerSessionImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -178,201 +180,31 @@ public abstract class LongPollingTransport extends HttpTransport
         if (scheduler == null)
         {
             // No - process messages
-
-            // Remember if we start a batch
-            boolean batch = false;
-
-            // Don't know the session until first message or handshake response.
-            ServerSessionImpl session = null;
-            boolean connect = false;
-
+            MessageHandler handler = new MessageHandler(request, response);
             try
             {
-                ServerMessage.Mutable[] messages = parseMessages(request);
-                if (messages == null)
-                    return;
-
-                PrintWriter writer = null;
-                for (ServerMessage.Mutable message : messages)
-                {
-                    // Is this a connect?
-                    connect = Channel.META_CONNECT.equals(message.getChannel());
-
-                    // Get the session from the message
-                    String client_id = message.getClientId();
-                    if (session == null || client_id != null && !client_id.equals(session.getId()))
-                    {
-                        session = (ServerSessionImpl)getBayeux().getSession(client_id);
-                        if (_autoBatch && !batch && session != null && !connect && !message.isMeta())
-                        {
-                            // start a batch to group all resulting messages into a single response.
-                            batch = true;
-                            session.startBatch();
-                        }
-                    }
-                    else if (!session.isHandshook())
-                    {
-                        batch = false;
-                        session = null;
-                    }
-
-                    if (connect && session != null)
-                    {
-                        // cancel previous scheduler to cancel any prior waiting long poll
-                        // this should also dec the browser ID
-                        session.setScheduler(null);
-                    }
-
-                    boolean wasConnected = session != null && session.isConnected();
-
-                    // Forward handling of the message.
-                    // The actual reply is return from the call, but other messages may
-                    // also be queued on the session.
-                    ServerMessage.Mutable reply = bayeuxServerHandle(session, message);
-
-                    // Do we have a reply ?
-                    if (reply != null)
-                    {
-                        if (session == null)
-                        {
-                            // This must be a handshake, extract a session from the reply
-                            session = (ServerSessionImpl)getBayeux().getSession(reply.getClientId());
-
-                            // Get the user agent while we are at it, and add the browser ID cookie
-                            if (session != null)
-                            {
-                                String userAgent = request.getHeader("User-Agent");
-                                session.setUserAgent(userAgent);
-
-                                String browserId = findBrowserId(request);
-                                if (browserId == null)
-                                    setBrowserId(request, response);
-                            }
-                        }
-                        else
-                        {
-                            // Special handling for connect
-                            if (connect)
-                            {
-                                try
-                                {
-                                    if (!session.hasNonLazyMessages() && reply.isSuccessful())
-                                    {
-                                        // Detect if we have multiple sessions from the same browser
-                                        // Note that CORS requests do not send cookies, so we need to handle them specially
-                                        // CORS requests always have the Origin header
-
-                                        String browserId = findBrowserId(request);
-                                        boolean allowSuspendConnect;
-                                        if (browserId != null)
-                                            allowSuspendConnect = incBrowserId(browserId);
-                                        else
-                                            allowSuspendConnect = _allowMultiSessionsNoBrowser || request.getHeader("Origin") != null;
-
-                                        if (allowSuspendConnect)
-                                        {
-                                            long timeout = session.calculateTimeout(getTimeout());
-
-                                            // Support old clients that do not send advice:{timeout:0} on the first connect
-                                            if (timeout > 0 && wasConnected && session.isConnected())
-                                            {
-                                                // Between the last time we checked for messages in the queue
-                                                // (which was false, otherwise we would not be in this branch)
-                                                // and now, messages may have been added to the queue.
-                                                // We will suspend anyway, but setting the scheduler on the
-                                                // session will decide atomically if we need to resume or not.
-
-                                                // Suspend and wait for messages
-                                                AsyncContext asyncContext = request.startAsync();
-                                                asyncContext.setTimeout(timeout);
-                                                scheduler = new LongPollScheduler(session, asyncContext, reply, browserId);
-                                                request.setAttribute(LongPollScheduler.ATTRIBUTE, scheduler);
-                                                session.setScheduler(scheduler);
-                                                reply = null;
-                                                metaConnectSuspended(request, session, timeout);
-                                            }
-                                            else
-                                            {
-                                                decBrowserId(browserId);
-                                            }
-                                        }
-                                        else
-                                        {
-                                            // There are multiple sessions from the same browser
-                                            Map<String, Object> advice = reply.getAdvice(true);
-
-                                            if (browserId != null)
-                                                advice.put("multiple-clients", true);
-
-                                            if (_multiSessionInterval > 0)
-                                            {
-                                                advice.put(Message.RECONNECT_FIELD, Message.RECONNECT_RETRY_VALUE);
-                                                advice.put(Message.INTERVAL_FIELD, _multiSessionInterval);
-                                            }
-                                            else
-                                            {
-                                                advice.put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
-                                                reply.setSuccessful(false);
-                                            }
-                                            session.reAdvise();
-                                        }
-                                    }
-                                }
-                                finally
-                                {
-                                    if (reply != null)
-                                        writer = writeQueueForMetaConnect(request, response, session, writer);
-                                }
-                            }
-                            else
-                            {
-                                if (!isMetaConnectDeliveryOnly() && !session.isMetaConnectDeliveryOnly())
-                                {
-                                    writer = writeQueue(request, response, session, writer);
-                                }
-                            }
-                        }
-
-                        // If the reply has not been otherwise handled, send it
-                        if (reply != null)
-                        {
-                            if (connect && session != null && session.isDisconnected())
-                                reply.getAdvice(true).put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
-
-                            reply = getBayeux().extendReply(session, session, reply);
-
-                            if (reply != null)
-                            {
-                                getBayeux().freeze(reply);
-                                writer = writeMessage(request, response, writer, session, reply);
-                            }
-                        }
-                    }
-
-                    // Disassociate the reply
-                    message.setAssociated(null);
-                }
-                if (writer != null)
-                    finishWrite(writer, session);
+                parseMessages(request, handler);
+                if (handler._output != null)
+                    finishWrite(handler._output, handler._session);
             }
             catch (ParseException x)
             {
-                handleJSONParseException(request, response, x.getMessage(), x.getCause());
-            }
-            finally
-            {
-                // If we started a batch, end it now
-                if (batch)
+                if (handler._output == null)
                 {
-                    // Flush session if not done by the batch, since some browser order <script> requests
-                    if (!session.endBatch() && isAlwaysFlushingAfterHandle())
-                        session.flush();
+                    handleJSONParseException(request, response, x.getMessage(), x.getCause());
                 }
-                else if (session != null && !connect && isAlwaysFlushingAfterHandle())
+                else
                 {
-                    session.flush();
+                    // Parsing in streaming mode, the messages that preceded the
+                    // malformed one have been processed and their replies written
+                    _logger.warn("Error parsing JSON: " + x.getMessage(), x.getCause());
+                    finishWrite(handler._output, handler._session);
                 }
             }
+            finally
+            {
+                handler.endBatch();
+            }
         }
         else
         {
@@ -380,7 +212,7 @@ public abstract class LongPollingTransport extends HttpTransport
             ServerSessionImpl session = scheduler.getSession();
             metaConnectResumed(request, session);
 
-            PrintWriter writer = writeQueueForMetaConnect(request, response, session, null);
+            ServletOutputStream output = writeQueueForMetaConnect(request, response, session, null);
 
             // Send the connect reply
             ServerMessage.Mutable reply = scheduler.getReply();
@@ -393,18 +225,20 @@ public abstract class LongPollingTransport extends HttpTransport
             if (reply != null)
             {
                 getBayeux().freeze(reply);
-                writer = writeMessage(request, response, writer, session, reply);
+                output = writeMessage(request, response, output, session, reply);
+                // The reply has been written, it can be reused
+                getBayeux().recycle(reply);
             }
 
-            finishWrite(writer, session);
+            finishWrite(output, session);
         }
     }
 
-    private PrintWriter writeQueueForMetaConnect(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, PrintWriter writer) throws IOException
+    private ServletOutputStream writeQueueForMetaConnect(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, ServletOutputStream output) throws IOException
     {
         try
         {
-            return writeQueue(request, response, session, writer);
+            return writeQueue(request, response, session, output);
         }
         finally
         {
@@ -474,13 +308,13 @@ public abstract class LongPollingTransport extends HttpTransport
         _lastSweep = now;
     }
 
-    private PrintWriter writeQueue(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, PrintWriter writer)
+    private ServletOutputStream writeQueue(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, ServletOutputStream output)
             throws IOException
     {
         List<ServerMessage> queue = session.takeQueue();
         for (ServerMessage m : queue)
-            writer = writeMessage(request, response, writer, session, m);
-        return writer;
+            output = writeMessage(request, response, output, session, m);
+        return output;
     }
 
     protected ServerMessage.Mutable[] parseMessages(String[] requestParameters) throws IOException, ParseException
@@ -503,14 +337,49 @@ public abstract class LongPollingTransport extends HttpTransport
 
     protected abstract ServerMessage.Mutable[] parseMessages(HttpServletRequest request) throws IOException, ParseException;
 
+    /**
+     * <p>Parses the messages of the given request, notifying the given listener with each message.</p>
+     * <p>This implementation parses the whole batch with {@link #parseMessages(HttpServletRequest)}
+     * before notifying the listener; subclasses may override it to parse in streaming mode.</p>
+     *
+     * @param request the request to parse the messages from
+     * @param listener the listener notified of each message
+     */
+    protected void parseMessages(HttpServletRequest request, JSONContext.MessageListener<ServerMessage.Mutable> listener) throws IOException, ParseException
+    {
+        ServerMessage.Mutable[] messages = parseMessages(request);
+        if (messages != null)
+        {
+            for (ServerMessage.Mutable message : messages)
+                listener.onMessage(message);
+        }
+    }
+
     /**
      * @return true if the transport always flushes at the end of a call to {@link #handle(HttpServletRequest, HttpServletResponse)}.
      */
     protected abstract boolean isAlwaysFlushingAfterHandle();
 
-    protected abstract PrintWriter writeMessage(HttpServletRequest request, HttpServletResponse response, PrintWriter writer, ServerSessionImpl session, ServerMessage message) throws IOException;
+    /**
+     * <p>Writes the UTF-8 bytes of the JSON representation of the given message.</p>
+     * <p>Frozen messages share their encoded bytes among all recipients,
+     * so that they are not encoded again for each recipient.</p>
+     *
+     * @param output the stream to write to
+     * @param message the message to write
+     * @throws IOException if the write fails
+     */
+    protected void writeJSON(ServletOutputStream output, ServerMessage message) throws IOException
+    {
+        if (message instanceof ServerMessageImpl)
+            ((ServerMessageImpl)message).writeJSONBytes(output);
+        else
+            output.write(message.getJSON().getBytes("UTF-8"));
+    }
+
+    protected abstract ServletOutputStream writeMessage(HttpServletRequest request, HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException;
 
-    protected abstract void finishWrite(PrintWriter writer, ServerSessionImpl session) throws IOException;
+    protected abstract void finishWrite(ServletOutputStream output, ServerSessionImpl session) throws IOException;
 
     private class LongPollScheduler implements AbstractServerTransport.OneTimeScheduler, AsyncListener
     {
@@ -604,9 +473,9 @@ public abstract class LongPollingTransport extends HttpTransport
             // be delaying the other 9 clients.
             // By always calling dispatch() we allow each write to be on its own thread, and it may block without
             // affecting other writes.
-            // Only with Servlet 3.1 and standard asynchronous I/O we would be able to do write() + complete()
-            // without blocking, and it will be much more efficient because there is no thread dispatching and
-            // there will be more mechanical sympathy.
+            // Only with Servlet 3.1 and standard asynchronous I/O we are able to do write() + complete()
+            // without blocking, and it is much more efficient because there is no thread dispatching and
+            // there is more mechanical sympathy: see AsyncJSONTransport.
             _asyncContext.dispatch();
         }
 
@@ -621,4 +490,264 @@ public abstract class LongPollingTransport extends HttpTransport
             _browserId = null;
         }
     }
+
+    /**
+     * <p>Processes the messages of a request one by one, possibly as soon as each one
+     * has been parsed, remembering the state that spans the whole batch.</p>
+     * <p>This implementation writes the replies with blocking I/O and suspends
+     * {@code /meta/connect} requests via {@link AsyncContext}; subclasses may override
+     * the {@code send*()} and {@link #suspend(ServerSessionImpl, ServerMessage.Mutable, String, long)}
+     * methods to deliver the replies differently.</p>
+     */
+    protected class MessageHandler implements JSONContext.MessageListener<ServerMessage.Mutable>
+    {
+        private final HttpServletRequest _request;
+        private final HttpServletResponse _response;
+        // Remember if we start a batch
+        private boolean _batch;
+        // Don't know the session until first message or handshake response.
+        private ServerSessionImpl _session;
+        private boolean _connect;
+        private ServletOutputStream _output;
+
+        protected MessageHandler(HttpServletRequest request, HttpServletResponse response)
+        {
+            _request = request;
+            _response = response;
+        }
+
+        public void onMessage(ServerMessage.Mutable message) throws IOException
+        {
+            // Is this a connect?
+            _connect = Channel.META_CONNECT.equals(message.getChannel());
+
+            // Get the session from the message
+            String client_id = message.getClientId();
+            if (_session == null || client_id != null && !client_id.equals(_session.getId()))
+            {
+                _session = (ServerSessionImpl)getBayeux().getSession(client_id);
+                if (_autoBatch && !_batch && _session != null && !_connect && !message.isMeta())
+                {
+                    // start a batch to group all resulting messages into a single response.
+                    _batch = true;
+                    _session.startBatch();
+                }
+            }
+            else if (!_session.isHandshook())
+            {
+                _batch = false;
+                _session = null;
+            }
+
+            if (_connect && _session != null)
+            {
+                // cancel previous scheduler to cancel any prior waiting long poll
+                // this should also dec the browser ID
+                _session.setScheduler(null);
+            }
+
+            boolean wasConnected = _session != null && _session.isConnected();
+
+            // Forward handling of the message.
+            // The actual reply is return from the call, but other messages may
+            // also be queued on the session.
+            ServerMessage.Mutable reply = bayeuxServerHandle(_session, message);
+
+            // Do we have a reply ?
+            if (reply != null)
+            {
+                if (_session == null)
+                {
+                    // This must be a handshake, extract a session from the reply
+                    _session = (ServerSessionImpl)getBayeux().getSession(reply.getClientId());
+
+                    // Get the user agent while we are at it, and add the browser ID cookie
+                    if (_session != null)
+                    {
+                        String userAgent = _request.getHeader("User-Agent");
+                        _session.setUserAgent(userAgent);
+
+                        String browserId = findBrowserId(_request);
+                        if (browserId == null)
+                            setBrowserId(_request, _response);
+                    }
+                }
+                else
+                {
+                    // Special handling for connect
+                    if (_connect)
+                    {
+                        try
+                        {
+                            if (!_session.hasNonLazyMessages() && reply.isSuccessful())
+                            {
+                                // Detect if we have multiple sessions from the same browser
+                                // Note that CORS requests do not send cookies, so we need to handle them specially
+                                // CORS requests always have the Origin header
+
+                                String browserId = findBrowserId(_request);
+                                boolean allowSuspendConnect;
+                                if (browserId != null)
+                                    allowSuspendConnect = incBrowserId(browserId);
+                                else
+                                    allowSuspendConnect = _allowMultiSessionsNoBrowser || _request.getHeader("Origin") != null;
+
+                                if (allowSuspendConnect)
+                                {
+                                    long timeout = _session.calculateTimeout(getTimeout());
+
+                                    // Support old clients that do not send advice:{timeout:0} on the first connect
+                                    if (timeout > 0 && wasConnected && _session.isConnected())
+                                    {
+                                        // Between the last time we checked for messages in the queue
+                                        // (which was false, otherwise we would not be in this branch)
+                                        // and now, messages may have been added to the queue.
+                                        // We will suspend anyway, but setting the scheduler on the
+                                        // session will decide atomically if we need to resume or not.
+
+                                        // Suspend and wait for messages
+                                        suspend(_session, reply, browserId, timeout);
+                                        reply = null;
+                                        metaConnectSuspended(_request, _session, timeout);
+                                    }
+                                    else
+                                    {
+                                        decBrowserId(browserId);
+                                    }
+                                }
+                                else
+                                {
+                                    // There are multiple sessions from the same browser
+                                    Map<String, Object> advice = reply.getAdvice(true);
+
+                                    if (browserId != null)
+                                        advice.put("multiple-clients", true);
+
+                                    if (_multiSessionInterval > 0)
+                                    {
+                                        advice.put(Message.RECONNECT_FIELD, Message.RECONNECT_RETRY_VALUE);
+                                        advice.put(Message.INTERVAL_FIELD, _multiSessionInterval);
+                                    }
+                                    else
+                                    {
+                                        advice.put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
+                                        reply.setSuccessful(false);
+                                    }
+                                    _session.reAdvise();
+                                }
+                            }
+                        }
+                        finally
+                        {
+                            if (reply != null)
+                                sendQueueForMetaConnect(_session);
+                        }
+                    }
+                    else
+                    {
+                        if (!isMetaConnectDeliveryOnly() && !_session.isMetaConnectDeliveryOnly())
+                        {
+                            sendQueue(_session);
+                        }
+                    }
+                }
+
+                // If the reply has not been otherwise handled, send it
+                if (reply != null)
+                {
+                    if (_connect && _session != null && _session.isDisconnected())
+                        reply.getAdvice(true).put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
+
+                    reply = getBayeux().extendReply(_session, _session, reply);
+
+                    if (reply != null)
+                    {
+                        getBayeux().freeze(reply);
+                        sendReply(_session, reply);
+                    }
+                }
+            }
+
+            // Disassociate the reply
+            message.setAssociated(null);
+        }
+
+        /**
+         * <p>Ends the batch started while processing the messages, if any,
+         * flushing the session if the transport requires it.</p>
+         */
+        protected void endBatch()
+        {
+            // If we started a batch, end it now
+            if (_batch)
+            {
+                // Flush session if not done by the batch, since some browser order <script> requests
+                if (!_session.endBatch() && isAlwaysFlushingAfterHandle())
+                    _session.flush();
+            }
+            else if (_session != null && !_connect && isAlwaysFlushingAfterHandle())
+            {
+                _session.flush();
+            }
+        }
+
+        /**
+         * <p>Sends the messages queued for the given session along with a reply that is not
+         * a {@code /meta/connect} reply.</p>
+         *
+         * @param session the session whose queue is sent
+         * @throws IOException if the messages cannot be sent
+         */
+        protected void sendQueue(ServerSessionImpl session) throws IOException
+        {
+            _output = writeQueue(_request, _response, session, _output);
+        }
+
+        /**
+         * <p>Sends the messages queued for the given session before the {@code /meta/connect} reply,
+         * starting the interval timeout of the session.</p>
+         *
+         * @param session the session whose queue is sent
+         * @throws IOException if the messages cannot be sent
+         */
+        protected void sendQueueForMetaConnect(ServerSessionImpl session) throws IOException
+        {
+            _output = writeQueueForMetaConnect(_request, _response, session, _output);
+        }
+
+        /**
+         * <p>Sends the given frozen reply.</p>
+         *
+         * @param session the session the reply is sent to
+         * @param reply the reply to send
+         * @throws IOException if the reply cannot be sent
+         */
+        protected void sendReply(ServerSessionImpl session, ServerMessage.Mutable reply) throws IOException
+        {
+            _output = writeMessage(_request, _response, _output, session, reply);
+            // The reply has been written, it can be reused
+            getBayeux().recycle(reply);
+        }
+
+        /**
+         * <p>Suspends the {@code /meta/connect} request until messages arrive for the session
+         * or the given timeout expires.</p>
+         * <p>Implementations must set a scheduler on the session, since between the last time
+         * the queue was checked and now messages may have been added to the queue: setting
+         * the scheduler decides atomically whether to resume immediately or not.</p>
+         *
+         * @param session the session whose {@code /meta/connect} is suspended
+         * @param reply the {@code /meta/connect} reply, to be sent when resumed
+         * @param browserId the browser ID, or null
+         * @param timeout the suspension timeout, in milliseconds
+         */
+        protected void suspend(ServerSessionImpl session, ServerMessage.Mutable reply, String browserId, long timeout)
+        {
+            AsyncContext asyncContext = _request.startAsync();
+            asyncContext.setTimeout(timeout);
+            LongPollScheduler scheduler = new LongPollScheduler(session, asyncContext, reply, browserId);
+            _request.setAttribute(LongPollScheduler.ATTRIBUTE, scheduler);
+            session.setScheduler(scheduler);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.List;
+
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.Session;
+import org.cometd.bayeux.server.ServerSession;
+import org.cometd.server.jmx.BayeuxServerImplMBean;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelStatisticsTest
+{
+    private final BayeuxServerImpl _bayeux = new BayeuxServerImpl();
+
+    @Before
+    public void init() throws Exception
+    {
+        _bayeux.setOption(BayeuxServerImpl.CHANNEL_STATISTICS, "/stats/**");
+        _bayeux.start();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        _bayeux.stop();
+    }
+
+    private ServerSessionImpl newServerSession()
+    {
+        ServerSessionImpl session = _bayeux.newServerSession();
+        _bayeux.addServerSession(session);
+        session.handshake();
+        session.connected();
+        return session;
+    }
+
+    private ServerChannelImpl channel(String name)
+    {
+        _bayeux.createIfAbsent(name);
+        return (ServerChannelImpl)_bayeux.getChannel(name);
+    }
+
+    @Test
+    public void testStatisticsOnlyForMatchingChannels() throws Exception
+    {
+        Assert.assertNotNull(channel("/stats/foo").getStatistics());
+        Assert.assertNull(channel("/other").getStatistics());
+
+        _bayeux.disableChannelStatistics("/stats/**");
+        Assert.assertNull(channel("/stats/foo").getStatistics());
+        Assert.assertNull(channel("/stats/bar").getStatistics());
+
+        _bayeux.enableChannelStatistics("/other");
+        Assert.assertNotNull(channel("/other").getStatistics());
+    }
+
+    @Test
+    public void testPublishAndDelivery() throws Exception
+    {
+        ServerChannelImpl channel = channel("/stats/foo");
+        channel.subscribe(newServerSession());
+        channel.subscribe(newServerSession());
+
+        int publishes = 3;
+        for (int i = 0; i < publishes; ++i)
+            channel.publish(null, "data");
+
+        ChannelStatistics statistics = channel.getStatistics();
+        Assert.assertEquals(publishes, statistics.getPublishes());
+        Assert.assertEquals(2 * publishes, statistics.getDeliveries());
+        Assert.assertTrue(statistics.getBytes() > 0);
+        Assert.assertEquals(0, statistics.getQueueFull());
+    }
+
+    @Test
+    public void testQueueFull() throws Exception
+    {
+        // The max queue is configured by the transport when the session handshakes
+        _bayeux.setOption(AbstractServerTransport.MAX_QUEUE_OPTION, 1);
+        _bayeux.setCurrentTransport((AbstractServerTransport)_bayeux.getTransport("long-polling"));
+
+        ServerChannelImpl channel = channel("/stats/foo");
+        ServerSessionImpl session = newServerSession();
+        _bayeux.setCurrentTransport(null);
+        session.addListener(new ServerSession.MaxQueueListener()
+        {
+            public boolean queueMaxed(ServerSession session, Session sender, Message message)
+            {
+                return false;
+            }
+        });
+        channel.subscribe(session);
+
+        for (int i = 0; i < 3; ++i)
+            channel.publish(null, "data");
+
+        Assert.assertEquals(1, channel.getStatistics().getQueueFull());
+    }
+
+    @Test
+    public void testTopChannels() throws Exception
+    {
+        ServerChannelImpl foo = channel("/stats/foo");
+        ServerChannelImpl bar = channel("/stats/bar");
+        foo.subscribe(newServerSession());
+        bar.subscribe(newServerSession());
+
+        foo.publish(null, "data");
+        bar.publish(null, "data");
+        bar.publish(null, "data");
+
+        BayeuxServerImplMBean mbean = new BayeuxServerImplMBean(_bayeux);
+        List<String> top = mbean.topChannels("publishes", 1);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("/stats/bar=2", top.get(0));
+    }
+}
@@ -1,9 +1,18 @@
 package org.cometd.server;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.client.ClientSessionChannel;
+import org.cometd.bayeux.server.LocalSession;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.eclipse.jetty.client.api.ContentResponse;
@@ -115,4 +124,155 @@ public class CometDServiceTest extends AbstractBayeuxClientServerTest
         response = disconnect.send();
         Assert.assertEquals(200, response.getStatus());
     }
+
+    @Test
+    public void testServiceMethodShapes() throws Exception
+    {
+        final AtomicReference<ServerMessage> threeMessage = new AtomicReference<>();
+        final AtomicReference<String> threeId = new AtomicReference<>();
+        final CountDownLatch threeLatch = new CountDownLatch(1);
+        new AbstractService(bayeux, "test_shapes")
+        {
+            {
+                addService("/two", "two");
+                addService("/three", "three");
+                addService("/four", "four");
+            }
+
+            public Object two(ServerSession remote, Object data)
+            {
+                // Non-void methods reply with their return value
+                return data;
+            }
+
+            public void three(ServerSession remote, ServerMessage message, String id)
+            {
+                threeMessage.set(message);
+                threeId.set(id);
+                threeLatch.countDown();
+            }
+
+            public Map<String, Object> four(ServerSession remote, String channel, Map<String, Object> data, String id)
+            {
+                Map<String, Object> reply = new HashMap<>(data);
+                reply.put("channel", channel);
+                reply.put("id", id);
+                return reply;
+            }
+        };
+
+        LocalSession remote = bayeux.newLocalSession("remote");
+        remote.handshake();
+        final BlockingQueue<Message> replies = new LinkedBlockingQueue<>();
+        ClientSessionChannel.MessageListener listener = new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                replies.offer(message);
+            }
+        };
+        remote.getChannel("/two").addListener(listener);
+        remote.getChannel("/three").addListener(listener);
+        remote.getChannel("/four").addListener(listener);
+
+        handle(remote, "/two", "2");
+        Message reply = replies.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(reply);
+        Assert.assertEquals("/two", reply.getChannel());
+        Assert.assertEquals("2", reply.getId());
+        Assert.assertEquals("bar", reply.getDataAsMap().get("foo"));
+
+        handle(remote, "/three", "3");
+        Assert.assertTrue(threeLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals("/three", threeMessage.get().getChannel());
+        Assert.assertEquals("3", threeId.get());
+
+        handle(remote, "/four", "4");
+        reply = replies.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(reply);
+        Map<String, Object> data = reply.getDataAsMap();
+        Assert.assertEquals("bar", data.get("foo"));
+        Assert.assertEquals("/four", data.get("channel"));
+        Assert.assertEquals("4", data.get("id"));
+
+        // Void methods do not reply
+        Assert.assertNull(replies.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testServiceMethodException() throws Exception
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch exceptionLatch = new CountDownLatch(1);
+        new AbstractService(bayeux, "test_exception")
+        {
+            {
+                addService("/fail", "fail");
+            }
+
+            public Object fail(ServerSession remote, Object data)
+            {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            protected void exception(String method, ServerSession fromClient, LocalSession toClient, ServerMessage msg, Throwable x)
+            {
+                failure.set(x);
+                exceptionLatch.countDown();
+            }
+        };
+
+        LocalSession remote = bayeux.newLocalSession("remote");
+        remote.handshake();
+        handle(remote, "/fail", "1");
+
+        Assert.assertTrue(exceptionLatch.await(5, TimeUnit.SECONDS));
+        // Exceptions thrown by mapped methods are reported wrapped, as with reflection
+        Assert.assertTrue(failure.get() instanceof InvocationTargetException);
+        Assert.assertTrue(failure.get().getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testServiceMethodError() throws Exception
+    {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch exceptionLatch = new CountDownLatch(1);
+        new AbstractService(bayeux, "test_error")
+        {
+            {
+                addService("/error", "error");
+            }
+
+            public Object error(ServerSession remote, Object data)
+            {
+                throw new AssertionError();
+            }
+
+            @Override
+            protected void exception(String method, ServerSession fromClient, LocalSession toClient, ServerMessage msg, Throwable x)
+            {
+                failure.set(x);
+                exceptionLatch.countDown();
+            }
+        };
+
+        LocalSession remote = bayeux.newLocalSession("remote");
+        remote.handshake();
+        handle(remote, "/error", "1");
+
+        Assert.assertTrue(exceptionLatch.await(5, TimeUnit.SECONDS));
+        // Errors are reported like exceptions, as with reflection
+        Assert.assertTrue(failure.get() instanceof InvocationTargetException);
+        Assert.assertTrue(failure.get().getCause() instanceof AssertionError);
+    }
+
+    private void handle(LocalSession remote, String channel, String id)
+    {
+        ServerMessage.Mutable message = bayeux.newMessage();
+        message.setChannel(channel);
+        message.setId(id);
+        message.setData(Collections.<String, Object>singletonMap("foo", "bar"));
+        bayeux.handle((ServerSessionImpl)remote.getServerSession(), message);
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentMessageQueueTest
+{
+    private ServerMessage message(Object data, boolean lazy)
+    {
+        ServerMessageImpl message = new ServerMessageImpl();
+        message.setChannel("/foo");
+        message.setData(data);
+        message.setLazy(lazy);
+        return message;
+    }
+
+    @Test
+    public void testOrderAndSize() throws Exception
+    {
+        ConcurrentMessageQueue queue = new ConcurrentMessageQueue();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+
+        ServerMessage m1 = message(1, true);
+        ServerMessage m2 = message(2, true);
+        ServerMessage m3 = message(3, true);
+        queue.add(m1);
+        queue.add(m2);
+        queue.add(m3);
+
+        Assert.assertEquals(3, queue.size());
+        Assert.assertFalse(queue.hasNonLazyMessages());
+        Assert.assertSame(m1, queue.peek());
+        Assert.assertEquals(Arrays.asList(m1, m2, m3), new ArrayList<>(queue));
+
+        Assert.assertSame(m1, queue.poll());
+        Assert.assertTrue(queue.remove(m3));
+        Assert.assertEquals(1, queue.size());
+
+        queue.add(message(4, false));
+        Assert.assertTrue(queue.hasNonLazyMessages());
+
+        List<ServerMessage> drained = queue.drain();
+        Assert.assertEquals(2, drained.size());
+        Assert.assertSame(m2, drained.get(0));
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertFalse(queue.hasNonLazyMessages());
+
+        queue.replace(Arrays.asList(m1, m2));
+        Assert.assertEquals(Arrays.asList(m1, m2), queue.drain());
+    }
+
+    @Test
+    public void testConcurrentProducersSingleConsumer() throws Exception
+    {
+        final ConcurrentMessageQueue queue = new ConcurrentMessageQueue();
+        final int producers = 4;
+        final int count = 10000;
+        final CyclicBarrier barrier = new CyclicBarrier(producers);
+        final CountDownLatch latch = new CountDownLatch(producers);
+        for (int i = 0; i < producers; ++i)
+        {
+            final int producer = i;
+            new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        barrier.await();
+                        for (int j = 0; j < count; ++j)
+                            queue.offer(message(new int[]{producer, j}, false));
+                    }
+                    catch (Exception x)
+                    {
+                        x.printStackTrace();
+                    }
+                    finally
+                    {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        int[] next = new int[producers];
+        boolean ordered = true;
+        int received = 0;
+        while (received < producers * count)
+        {
+            for (ServerMessage message : queue.drain())
+            {
+                int[] data = (int[])message.getData();
+                // Messages from the same producer must be in order
+                if (next[data[0]]++ != data[1])
+                    ordered = false;
+                ++received;
+            }
+        }
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(ordered);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOfferDuringReplaceIsNotLost() throws Exception
+    {
+        final ConcurrentMessageQueue queue = new ConcurrentMessageQueue();
+        final List<ServerMessage> replacement = Arrays.asList(message(-1, false), message(-2, false));
+        final int count = 10000;
+        final CountDownLatch latch = new CountDownLatch(1);
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < count; ++i)
+                        queue.offer(message(i, false));
+                }
+                finally
+                {
+                    latch.countDown();
+                }
+            }
+        }.start();
+
+        do
+        {
+            queue.replace(replacement);
+        }
+        while (latch.getCount() > 0);
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        List<ServerMessage> messages = queue.drain();
+        Assert.assertEquals(replacement, messages.subList(0, replacement.size()));
+        List<ServerMessage> offered = messages.subList(replacement.size(), messages.size());
+        Assert.assertEquals(count, offered.size());
+        for (int i = 0; i < count; ++i)
+            Assert.assertEquals(i, offered.get(i).getData());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.server.ServerMessage;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetaReplyRecyclingTest
+{
+    private final BayeuxServerImpl _bayeux = new BayeuxServerImpl();
+
+    @Before
+    public void init() throws Exception
+    {
+        _bayeux.setOption(BayeuxServerImpl.META_REPLY_POOL_SIZE, 16);
+        _bayeux.start();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        _bayeux.stop();
+    }
+
+    private ServerSessionImpl newServerSession()
+    {
+        ServerSessionImpl session = _bayeux.newServerSession();
+        _bayeux.addServerSession(session);
+        session.handshake();
+        session.connected();
+        return session;
+    }
+
+    private ServerMessage.Mutable connect(ServerSessionImpl session)
+    {
+        ServerMessage.Mutable message = _bayeux.newMessage();
+        message.setChannel(Channel.META_CONNECT);
+        message.setClientId(session.getId());
+        return _bayeux.handle(session, message);
+    }
+
+    @Test
+    public void testRecycledReplyIsReused() throws Exception
+    {
+        ServerSessionImpl session = newServerSession();
+
+        ServerMessage.Mutable reply1 = connect(session);
+        Map<String, Object> advice = reply1.getAdvice(true);
+        advice.put(Message.RECONNECT_FIELD, Message.RECONNECT_NONE_VALUE);
+        _bayeux.freeze(reply1);
+        _bayeux.recycle(reply1);
+
+        ServerMessage.Mutable reply2 = connect(session);
+        Assert.assertSame(reply1, reply2);
+        Assert.assertEquals(Channel.META_CONNECT, reply2.getChannel());
+        Assert.assertTrue(reply2.isSuccessful());
+        Assert.assertNull(reply2.getAdvice());
+        // The advice map is reused, and it has been cleared
+        Assert.assertSame(advice, reply2.getAdvice(true));
+        Assert.assertTrue(advice.isEmpty());
+    }
+
+    @Test
+    public void testForeignAdviceIsNotCleared() throws Exception
+    {
+        ServerSessionImpl session = newServerSession();
+
+        ServerMessage.Mutable reply1 = connect(session);
+        Map<String, Object> advice = new HashMap<>();
+        advice.put(Message.INTERVAL_FIELD, 0L);
+        reply1.put(Message.ADVICE_FIELD, advice);
+        _bayeux.recycle(reply1);
+
+        Assert.assertEquals(1, advice.size());
+    }
+
+    @Test
+    public void testNonMetaRepliesAreNotRecycled() throws Exception
+    {
+        ServerSessionImpl session = newServerSession();
+
+        ServerMessage.Mutable message = _bayeux.newMessage();
+        message.setChannel("/foo");
+        message.setClientId(session.getId());
+        message.setData("data");
+        ServerMessage.Mutable reply = _bayeux.handle(session, message);
+        _bayeux.recycle(reply);
+
+        Assert.assertEquals("/foo", reply.getChannel());
+    }
+
+    @Test
+    public void testRecyclingTwiceIsHarmless() throws Exception
+    {
+        ServerSessionImpl session = newServerSession();
+
+        ServerMessage.Mutable reply = connect(session);
+        _bayeux.recycle(reply);
+        _bayeux.recycle(reply);
+
+        ServerMessage.Mutable reply1 = connect(session);
+        ServerMessage.Mutable reply2 = connect(session);
+        Assert.assertNotSame(reply1, reply2);
+    }
+}
@@ -20,6 +20,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.cometd.bayeux.Message;
@@ -242,4 +243,31 @@ public class ServerMessageImplTest
         assertTrue(data.containsKey("nullData"));
         assertEquals(2, data.size());
     }
+
+    @Test
+    public void testFrozenJSONBytes() throws Exception
+    {
+        ServerMessageImpl message = new ServerMessageImpl();
+        message.setChannel("/channel");
+        message.setData("caf\u00e9");
+
+        String json = new JettyJSONContextServer().generate(message);
+        message.freeze(json);
+
+        ByteBuffer bytes1 = message.getJSONBytes();
+        assertTrue(bytes1.isReadOnly());
+        byte[] expected = json.getBytes("UTF-8");
+        assertEquals(expected.length, bytes1.remaining());
+
+        // Consuming one buffer does not affect the others
+        byte[] actual = new byte[bytes1.remaining()];
+        bytes1.get(actual);
+        Assert.assertArrayEquals(expected, actual);
+        ByteBuffer bytes2 = message.getJSONBytes();
+        assertEquals(expected.length, bytes2.remaining());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        message.writeJSONBytes(output);
+        Assert.assertArrayEquals(expected, output.toByteArray());
+    }
 }
@@ -19,7 +19,6 @@ package org.cometd.server;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.URI;
 import java.util.EnumSet;
@@ -32,6 +31,7 @@ import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
@@ -197,7 +197,7 @@ public class SlowConnectionTest extends AbstractBayeuxClientServerTest
             }
 
             @Override
-            protected PrintWriter writeMessage(HttpServletRequest request, HttpServletResponse response, PrintWriter writer, ServerSessionImpl session, ServerMessage message) throws IOException
+            protected ServletOutputStream writeMessage(HttpServletRequest request, HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException
             {
                 try
                 {
@@ -206,7 +206,7 @@ public class SlowConnectionTest extends AbstractBayeuxClientServerTest
                         session.startIntervalTimeout(0);
                         TimeUnit.MILLISECONDS.sleep(2 * maxInterval);
                     }
-                    return super.writeMessage(request, response, writer, session, message);
+                    return super.writeMessage(request, response, output, session, message);
                 }
                 catch (InterruptedException x)
                 {
@@ -282,7 +282,7 @@ public class SlowConnectionTest extends AbstractBayeuxClientServerTest
             }
 
             @Override
-            protected PrintWriter writeMessage(HttpServletRequest request, HttpServletResponse response, PrintWriter writer, ServerSessionImpl session, ServerMessage message) throws IOException
+            protected ServletOutputStream writeMessage(HttpServletRequest request, HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException
             {
                 if (message.getData() != null)
                 {
@@ -291,7 +291,7 @@ public class SlowConnectionTest extends AbstractBayeuxClientServerTest
                     // Simulate that an exception is being thrown while writing
                     throw new EofException("test_exception");
                 }
-                return super.writeMessage(request, response, writer, session, message);
+                return super.writeMessage(request, response, output, session, message);
             }
         };
         bayeux.setTransports(transport);
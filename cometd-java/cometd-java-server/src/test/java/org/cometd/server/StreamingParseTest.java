@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.common.JSONContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingParseTest
+{
+    private final List<JSONContext.StreamingParser<ServerMessage.Mutable>> _jsonContexts = Arrays.<JSONContext.StreamingParser<ServerMessage.Mutable>>asList(
+            new JettyJSONContextServer(),
+            new Jackson1JSONContextServer(),
+            new Jackson2JSONContextServer());
+
+    @Test
+    public void testBatchIsNotifiedMessageByMessage() throws Exception
+    {
+        String json = "[" +
+                "{\"channel\":\"/foo\",\"id\":\"1\",\"data\":{\"a\":[1,2]}}, " +
+                "{\"channel\":\"/bar\",\"id\":\"2\",\"data\":\"]\"}" +
+                "]";
+        for (JSONContext.StreamingParser<ServerMessage.Mutable> jsonContext : _jsonContexts)
+        {
+            List<ServerMessage.Mutable> messages = parse(jsonContext, json);
+            Assert.assertEquals(jsonContext.toString(), 2, messages.size());
+            Assert.assertEquals("/foo", messages.get(0).getChannel());
+            Assert.assertEquals("1", messages.get(0).getId());
+            Assert.assertTrue(messages.get(0) instanceof ServerMessageImpl);
+            Assert.assertEquals("/bar", messages.get(1).getChannel());
+            Assert.assertEquals("]", messages.get(1).getData());
+        }
+    }
+
+    @Test
+    public void testSingleMessageAndEmptyBatch() throws Exception
+    {
+        for (JSONContext.StreamingParser<ServerMessage.Mutable> jsonContext : _jsonContexts)
+        {
+            Assert.assertEquals(1, parse(jsonContext, " {\"channel\":\"/foo\"} ").size());
+            Assert.assertEquals(0, parse(jsonContext, "[]").size());
+        }
+    }
+
+    @Test
+    public void testMessagesBeforeMalformedOneAreNotified() throws Exception
+    {
+        String json = "[{\"channel\":\"/foo\"},{\"channel\":";
+        for (JSONContext.StreamingParser<ServerMessage.Mutable> jsonContext : _jsonContexts)
+        {
+            final List<ServerMessage.Mutable> messages = new ArrayList<>();
+            try
+            {
+                jsonContext.parse(new StringReader(json), new JSONContext.MessageListener<ServerMessage.Mutable>()
+                {
+                    public void onMessage(ServerMessage.Mutable message)
+                    {
+                        messages.add(message);
+                    }
+                });
+                Assert.fail(jsonContext.toString());
+            }
+            catch (ParseException x)
+            {
+                Assert.assertEquals(1, messages.size());
+                Assert.assertEquals("/foo", messages.get(0).getChannel());
+            }
+        }
+    }
+
+    @Test
+    public void testListenerExceptionIsNotWrapped() throws Exception
+    {
+        for (JSONContext.StreamingParser<ServerMessage.Mutable> jsonContext : _jsonContexts)
+        {
+            final IOException failure = new IOException();
+            try
+            {
+                jsonContext.parse(new StringReader("[{\"channel\":\"/foo\"}]"), new JSONContext.MessageListener<ServerMessage.Mutable>()
+                {
+                    public void onMessage(ServerMessage.Mutable message) throws IOException
+                    {
+                        throw failure;
+                    }
+                });
+                Assert.fail(jsonContext.toString());
+            }
+            catch (IOException x)
+            {
+                Assert.assertSame(failure, x);
+            }
+        }
+    }
+
+    private List<ServerMessage.Mutable> parse(JSONContext.StreamingParser<ServerMessage.Mutable> jsonContext, String json) throws Exception
+    {
+        final List<ServerMessage.Mutable> messages = new ArrayList<>();
+        jsonContext.parse(new StringReader(json), new JSONContext.MessageListener<ServerMessage.Mutable>()
+        {
+            public void onMessage(ServerMessage.Mutable message)
+            {
+                messages.add(message);
+            }
+        });
+        return messages;
+    }
+}
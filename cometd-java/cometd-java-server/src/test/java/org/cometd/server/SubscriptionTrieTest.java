@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cometd.bayeux.ChannelId;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SubscriptionTrieTest
+{
+    private final BayeuxServerImpl _bayeux = new BayeuxServerImpl();
+
+    @Before
+    public void init() throws Exception
+    {
+        _bayeux.start();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        _bayeux.stop();
+    }
+
+    private ServerChannelImpl channel(String name)
+    {
+        _bayeux.createIfAbsent(name);
+        return (ServerChannelImpl)_bayeux.getChannel(name);
+    }
+
+    @Test
+    public void testMatch() throws Exception
+    {
+        SubscriptionTrie trie = new SubscriptionTrie();
+        ServerChannelImpl deepRoot = channel("/**");
+        ServerChannelImpl deepA = channel("/a/**");
+        ServerChannelImpl wildA = channel("/a/*");
+        ServerChannelImpl deepAB = channel("/a/b/**");
+        ServerChannelImpl wildAB = channel("/a/b/*");
+        ServerChannelImpl concrete = channel("/a/b/c");
+        trie.add(deepRoot);
+        trie.add(deepA);
+        trie.add(wildA);
+        trie.add(deepAB);
+        trie.add(wildAB);
+        trie.add(concrete);
+
+        ServerChannelImpl[] wilds = trie.match(new ChannelId("/a/b/c"));
+        Assert.assertArrayEquals(new ServerChannelImpl[]{wildAB, deepAB, deepA, deepRoot}, wilds);
+
+        wilds = trie.match(new ChannelId("/a/x"));
+        Assert.assertArrayEquals(new ServerChannelImpl[]{wildA, deepA, deepRoot}, wilds);
+
+        wilds = trie.match(new ChannelId("/x/y/z"));
+        Assert.assertArrayEquals(new ServerChannelImpl[]{null, null, null, deepRoot}, wilds);
+
+        trie.remove(deepA);
+        trie.remove(wildAB);
+        wilds = trie.match(new ChannelId("/a/b/c"));
+        Assert.assertArrayEquals(new ServerChannelImpl[]{null, deepAB, null, deepRoot}, wilds);
+
+        trie.remove(deepAB);
+        trie.remove(wildA);
+        wilds = trie.match(new ChannelId("/a/b/c"));
+        Assert.assertArrayEquals(new ServerChannelImpl[]{null, null, null, deepRoot}, wilds);
+    }
+
+    @Test
+    public void testMatchOrderIsSameAsWilds() throws Exception
+    {
+        ChannelId channelId = new ChannelId("/a/b/c/d");
+        SubscriptionTrie trie = new SubscriptionTrie();
+        for (String wild : channelId.getWilds())
+            trie.add(channel(wild));
+
+        ServerChannelImpl[] wilds = trie.match(channelId);
+        Assert.assertEquals(channelId.getWilds().size(), wilds.length);
+        for (int i = 0; i < wilds.length; ++i)
+            Assert.assertEquals(channelId.getWilds().get(i), wilds[i].getId());
+    }
+
+    @Test
+    public void testSessionSubscribedToManyWildsReceivesOnce() throws Exception
+    {
+        ServerSessionImpl session = _bayeux.newServerSession();
+        _bayeux.addServerSession(session);
+        session.handshake();
+        session.connected();
+
+        final AtomicInteger messages = new AtomicInteger();
+        session.addListener(new ServerSession.MessageListener()
+        {
+            public boolean onMessage(ServerSession to, ServerSession from, ServerMessage message)
+            {
+                messages.incrementAndGet();
+                return true;
+            }
+        });
+
+        channel("/**").subscribe(session);
+        channel("/a/**").subscribe(session);
+        channel("/a/b/*").subscribe(session);
+        ServerChannelImpl concrete = channel("/a/b/c");
+        concrete.subscribe(session);
+
+        concrete.publish(null, "data");
+        Assert.assertEquals(1, messages.get());
+
+        channel("/a/b/*").remove();
+        concrete.publish(null, "data");
+        Assert.assertEquals(2, messages.get());
+    }
+}
@@ -18,7 +18,9 @@ package org.cometd.server;
 
 import java.util.concurrent.TimeUnit;
 
+import org.cometd.bayeux.server.ConfigurableServerChannel;
 import org.cometd.bayeux.server.LocalSession;
+import org.cometd.bayeux.server.ServerChannel;
 import org.cometd.bayeux.server.ServerTransport;
 import org.junit.Assert;
 import org.junit.Test;
@@ -136,4 +138,42 @@ public class SweepTest
 
         localSession.disconnect();
     }
+
+    @Test
+    public void testOnlyChangedChannelsAreSwept() throws Exception
+    {
+        BayeuxServerImpl bayeuxServer = new BayeuxServerImpl();
+
+        int count = 100;
+        for (int i = 0; i < count; ++i)
+        {
+            bayeuxServer.createIfAbsent("/persistent/" + i, new ConfigurableServerChannel.Initializer()
+            {
+                public void configureChannel(ConfigurableServerChannel channel)
+                {
+                    channel.setPersistent(true);
+                }
+            });
+        }
+        // The parent channel is swept too
+        int total = count + 1;
+
+        // New channels are swept once, then forgotten since they cannot be removed
+        bayeuxServer.sweep();
+        Assert.assertEquals(total, bayeuxServer.getLastSweepChannels());
+        bayeuxServer.sweep();
+        Assert.assertEquals(0, bayeuxServer.getLastSweepChannels());
+
+        // A channel that changed is swept again until it is removed
+        ServerChannel channel = bayeuxServer.getChannel("/persistent/0");
+        channel.setPersistent(false);
+        for (int i = 0; i < 3; ++i)
+        {
+            bayeuxServer.sweep();
+            Assert.assertEquals(1, bayeuxServer.getLastSweepChannels());
+        }
+        Assert.assertNull(bayeuxServer.getChannel("/persistent/0"));
+        Assert.assertEquals(count, bayeuxServer.getChannels().size());
+        Assert.assertEquals(5, bayeuxServer.getSweeps());
+    }
 }
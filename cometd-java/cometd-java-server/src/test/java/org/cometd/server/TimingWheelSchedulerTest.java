@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cometd.server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimingWheelSchedulerTest
+{
+    private final TimingWheelScheduler _scheduler = new TimingWheelScheduler("test", 10, 8, 2);
+
+    @Before
+    public void init() throws Exception
+    {
+        _scheduler.start();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        _scheduler.stop();
+    }
+
+    @Test
+    public void testTaskExpires() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        _scheduler.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 100);
+    }
+
+    @Test
+    public void testTaskLongerThanWheelRevolutionExpires() throws Exception
+    {
+        // The wheel revolves every 8 * 10 ms
+        final CountDownLatch latch = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        _scheduler.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 250, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 250);
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotExpire() throws Exception
+    {
+        final AtomicInteger expired = new AtomicInteger();
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                expired.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 100; ++i)
+        {
+            Scheduler.Task scheduled = _scheduler.schedule(task, 50 + i, TimeUnit.MILLISECONDS);
+            if (i % 2 == 0)
+                Assert.assertTrue(scheduled.cancel());
+        }
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        Assert.assertEquals(50, expired.get());
+    }
+
+    @Test
+    public void testExpiredTaskCannotBeCancelled() throws Exception
+    {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Scheduler.Task scheduled = _scheduler.schedule(new Runnable()
+        {
+            public void run()
+            {
+                latch.countDown();
+            }
+        }, 0, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(scheduled.cancel());
+    }
+}
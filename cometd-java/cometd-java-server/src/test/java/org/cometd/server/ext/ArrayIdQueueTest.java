@@ -78,4 +78,57 @@ public class ArrayIdQueueTest
             id++;
         }
     }
+
+    @Test
+    public void testIdsSurviveGrowth() throws Exception
+    {
+        ArrayIdQueue<String> queue = new ArrayIdQueue<>(2, 2);
+        queue.offer("zero");
+        queue.poll();
+        // The ring buffer is wrapped when it grows
+        for (int i = 0; i < 5; ++i)
+        {
+            queue.setCurrentId(i);
+            queue.offer("e" + i);
+        }
+        for (int i = 0; i < 5; ++i)
+        {
+            Assert.assertEquals("e" + i, queue.get(i));
+            Assert.assertEquals(i, queue.getAssociatedId(i));
+        }
+    }
+
+    @Test
+    public void testRemoveUpTo() throws Exception
+    {
+        ArrayIdQueue<String> queue = new ArrayIdQueue<>(8, 8);
+        // Move the head, so that the elements wrap around the end of the arrays
+        for (int i = 0; i < 6; ++i)
+            queue.offer("x");
+        for (int i = 0; i < 6; ++i)
+            queue.poll();
+
+        for (int id = 1; id <= 3; ++id)
+        {
+            queue.setCurrentId(id);
+            queue.offer("a" + id);
+            queue.offer("b" + id);
+        }
+
+        Assert.assertEquals(0, queue.removeUpTo(0));
+        Assert.assertEquals(6, queue.size());
+
+        Assert.assertEquals(4, queue.removeUpTo(2));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals("a3", queue.get(0));
+        Assert.assertEquals(3, queue.getAssociatedId(0));
+
+        queue.setCurrentId(4);
+        queue.offer("a4");
+        Assert.assertEquals("[a3, b3, a4]", queue.toString());
+
+        Assert.assertEquals(3, queue.removeUpTo(10));
+        Assert.assertEquals(0, queue.size());
+        Assert.assertNull(queue.poll());
+    }
 }
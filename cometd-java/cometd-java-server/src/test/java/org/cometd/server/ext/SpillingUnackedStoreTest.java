@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.ext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.server.ServerMessageImpl;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillingUnackedStoreTest
+{
+    private Path _directory;
+    private Path _file;
+
+    @Before
+    public void init() throws Exception
+    {
+        _directory = Files.createTempDirectory("cometd-");
+        _file = _directory.resolve("unacked.seg");
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        Files.deleteIfExists(_file);
+        Files.delete(_directory);
+    }
+
+    @Test
+    public void testOlderMessagesSpillAndAreReadBack() throws Exception
+    {
+        SpillingUnackedStore store = new SpillingUnackedStore(_file, 2, 64);
+        // Batch 1 has 3 messages, batch 2 has 2 messages
+        for (int i = 0; i < 5; ++i)
+            store.add(newMessage(i), i < 3 ? 1 : 2);
+
+        Assert.assertEquals(5, store.size());
+        Assert.assertEquals(3, store.getSpilledSize());
+        Assert.assertTrue(Files.size(_file) > 0);
+
+        List<ServerMessage> messages = store.getMessages();
+        Assert.assertEquals(5, messages.size());
+        for (int i = 0; i < 5; ++i)
+            Assert.assertEquals("data" + i, messages.get(i).getData());
+
+        store.close();
+        Assert.assertFalse(Files.exists(_file));
+    }
+
+    @Test
+    public void testAcknowledgeTruncatesSegment() throws Exception
+    {
+        SpillingUnackedStore store = new SpillingUnackedStore(_file, 1, 64);
+        for (int i = 0; i < 6; ++i)
+            store.add(newMessage(i), i / 2 + 1);
+        Assert.assertEquals(5, store.getSpilledSize());
+
+        store.acknowledge(1);
+        Assert.assertEquals(4, store.size());
+        Assert.assertEquals(3, store.getSpilledSize());
+        Assert.assertEquals("data2", store.getMessages().get(0).getData());
+
+        store.acknowledge(2);
+        Assert.assertEquals(2, store.size());
+        Assert.assertEquals(1, store.getSpilledSize());
+
+        store.acknowledge(3);
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(0, Files.size(_file));
+
+        // The segment is mapped again after the truncation
+        store.add(newMessage(6), 4);
+        store.add(newMessage(7), 4);
+        Assert.assertEquals(1, store.getSpilledSize());
+        Assert.assertEquals("data6", store.getMessages().get(0).getData());
+
+        store.close();
+    }
+
+    @Test
+    public void testSegmentGrows() throws Exception
+    {
+        SpillingUnackedStore store = new SpillingUnackedStore(_file, 0, 16);
+        int count = 100;
+        for (int i = 0; i < count; ++i)
+            store.add(newMessage(i), i);
+        Assert.assertEquals(count, store.getSpilledSize());
+
+        List<ServerMessage> messages = store.getMessages();
+        Assert.assertEquals(count, messages.size());
+        Assert.assertEquals("data" + (count - 1), messages.get(count - 1).getData());
+
+        store.close();
+    }
+
+    @Test
+    public void testContinuousAcknowledgeBehindLimitDoesNotGrowSegment() throws Exception
+    {
+        int maxMessages = 4;
+        SpillingUnackedStore store = new SpillingUnackedStore(_file, maxMessages, 64);
+        int behind = 2 * maxMessages;
+        for (int i = 0; i < behind; ++i)
+            store.add(newMessage(i), i);
+
+        long size = 0;
+        for (int i = behind; i < 10000; ++i)
+        {
+            store.add(newMessage(i), i);
+            // The client acknowledges, but stays more than maxMessages behind
+            store.acknowledge(i - behind);
+            Assert.assertEquals(behind, store.size());
+            Assert.assertEquals(behind - maxMessages, store.getSpilledSize());
+            if (i == 1000)
+                size = Files.size(_file);
+        }
+        // The acknowledged records have been compacted away
+        Assert.assertTrue(size > 0);
+        Assert.assertEquals(size, Files.size(_file));
+
+        List<ServerMessage> messages = store.getMessages();
+        Assert.assertEquals(behind, messages.size());
+        Assert.assertEquals("data" + (10000 - behind), messages.get(0).getData());
+        Assert.assertEquals("data9999", messages.get(behind - 1).getData());
+
+        store.close();
+    }
+
+    private ServerMessage newMessage(int index)
+    {
+        ServerMessageImpl message = new ServerMessageImpl();
+        message.setChannel("/foo");
+        message.setData("data" + index);
+        return message;
+    }
+}
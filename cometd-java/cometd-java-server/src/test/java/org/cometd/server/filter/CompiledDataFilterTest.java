@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.server.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cometd.bayeux.server.ServerChannel;
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledDataFilterTest
+{
+    private RegexFilter newRegexFilter(String regex, String replacement)
+    {
+        RegexFilter filter = new RegexFilter();
+        filter.init(new Object[]{new Object[]{regex, replacement}});
+        return filter;
+    }
+
+    @Test
+    public void testCompiledChainFiltersLikeSequentialChain() throws Exception
+    {
+        JSONDataFilter[] filters = {new NoMarkupFilter(), newRegexFilter("damn", "d**n"), new NoScriptsFilter()};
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", "<b>damn</b>");
+        data.put("list", new ArrayList<Object>(Arrays.asList("a > b", 1, true, null)));
+        data.put("array", new Object[]{"damn", new HashMap<String, Object>()});
+        data.put("number", 42);
+
+        Map<String, Object> expected = new HashMap<>(data);
+        expected.put("list", new ArrayList<>((List<?>)data.get("list")));
+        expected.put("array", ((Object[])data.get("array")).clone());
+        Object sequential = expected;
+        for (JSONDataFilter filter : filters)
+            sequential = filter.filter(null, null, sequential);
+
+        Map<?, ?> compiled = (Map<?, ?>)new CompiledDataFilter(filters).filter(null, null, data);
+
+        Map<?, ?> result = (Map<?, ?>)sequential;
+        Assert.assertEquals("&lt;b&gt;d**n&lt;/b&gt;", compiled.get("text"));
+        Assert.assertEquals(result.get("text"), compiled.get("text"));
+        Assert.assertEquals(Arrays.asList((Object[])result.get("list")), compiled.get("list"));
+        Assert.assertArrayEquals((Object[])result.get("array"), (Object[])compiled.get("array"));
+        Assert.assertEquals(42, compiled.get("number"));
+    }
+
+    @Test
+    public void testUnchangedDataIsNotModified() throws Exception
+    {
+        CompiledDataFilter filter = new CompiledDataFilter(new NoMarkupFilter(), newRegexFilter("damn", "d**n"), new NoScriptsFilter());
+
+        String text = "hello";
+        List<Object> list = Arrays.<Object>asList("world", 1);
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", text);
+        data.put("list", list);
+
+        Assert.assertSame(data, filter.filter(null, null, data));
+        Assert.assertSame(text, data.get("text"));
+        Assert.assertSame(list, data.get("list"));
+        Assert.assertSame(text, filter.filter(null, null, text));
+    }
+
+    @Test
+    public void testRejectingPatternThrows() throws Exception
+    {
+        CompiledDataFilter filter = new CompiledDataFilter(new NoMarkupFilter(), newRegexFilter("forbidden", null));
+
+        Assert.assertEquals("allowed", filter.filter(null, null, "allowed"));
+        try
+        {
+            filter.filter(null, null, Arrays.<Object>asList("forbidden"));
+            Assert.fail();
+        }
+        catch (IllegalStateException x)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testUnmodifiableListIsFilteredIntoCopy() throws Exception
+    {
+        List<Object> list = Collections.unmodifiableList(Arrays.<Object>asList("<b>", 1, "plain"));
+        CompiledDataFilter filter = new CompiledDataFilter(new NoMarkupFilter());
+
+        Object result = filter.filter(null, null, list);
+
+        Assert.assertEquals(Arrays.<Object>asList("&lt;b&gt;", 1, "plain"), result);
+        Assert.assertEquals(Arrays.<Object>asList("<b>", 1, "plain"), list);
+    }
+
+    @Test
+    public void testFiltersWithoutPatternAreApplied() throws Exception
+    {
+        JSONDataFilter upperCase = new JSONDataFilter()
+        {
+            @Override
+            protected Object filterString(String string)
+            {
+                return string.toUpperCase();
+            }
+        };
+        CompiledDataFilter filter = new CompiledDataFilter(new NoMarkupFilter(), upperCase);
+
+        Assert.assertEquals("&LT;HELLO&GT;", filter.filter(null, null, "<hello>"));
+        Assert.assertEquals("WORLD", filter.filter(null, null, "world"));
+    }
+
+    @Test
+    public void testFiltersOverridingTheWalkAreNotCompilable() throws Exception
+    {
+        JSONDataFilter filter = new JSONDataFilter()
+        {
+            @Override
+            protected Object filterMap(ServerSession from, ServerChannel to, Map<String, Object> map)
+            {
+                return null;
+            }
+        };
+        Assert.assertFalse(CompiledDataFilter.isCompilable(filter));
+        Assert.assertTrue(CompiledDataFilter.isCompilable(new NoMarkupFilter()));
+
+        try
+        {
+            new CompiledDataFilter(filter);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException x)
+        {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.cometd.websocket.client;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+
+import org.cometd.common.DeflaterPool;
+import org.cometd.common.PerMessageDeflate;
+import org.eclipse.jetty.websocket.api.BadPayloadException;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.OpCode;
+import org.eclipse.jetty.websocket.common.WebSocketFrame;
+import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
+
+/**
+ * <p>Client side implementation of the {@code permessage-deflate} WebSocket extension.</p>
+ * <p>Extensions are created by the {@link WebSocketTransport} with its own settings,
+ * and the deflaters are pooled across all the connections of the transport.</p>
+ * <p>Messages smaller than the configured minimum size are sent uncompressed, since
+ * compressing them costs more CPU than the bandwidth it saves.</p>
+ */
+public class PerMessageDeflateExtension extends AbstractExtension
+{
+    private final Object _lock = new Object();
+    private final boolean _contextTakeover;
+    private final int _minSize;
+    private final DeflaterPool _pool;
+    private volatile PerMessageDeflate _deflate;
+    private boolean _incomingCompressed;
+    private boolean _outgoingCompressed;
+
+    /**
+     * @param contextTakeover whether the client keeps the compression context between messages
+     * @param minSize the min size of the messages that are compressed
+     * @param pool the pool of deflaters shared by the connections
+     */
+    public PerMessageDeflateExtension(boolean contextTakeover, int minSize, DeflaterPool pool)
+    {
+        _contextTakeover = contextTakeover;
+        _minSize = minSize;
+        _pool = pool;
+    }
+
+    @Override
+    public String getName()
+    {
+        return PerMessageDeflate.NAME;
+    }
+
+    @Override
+    public boolean isRsv1User()
+    {
+        return true;
+    }
+
+    /**
+     * @param contextTakeover whether the client keeps the compression context between messages
+     * @return the extension offer to send in the handshake request
+     */
+    static String offer(boolean contextTakeover)
+    {
+        String offer = PerMessageDeflate.NAME;
+        if (!contextTakeover)
+            offer += "; " + PerMessageDeflate.CLIENT_NO_CONTEXT_TAKEOVER;
+        return offer;
+    }
+
+    @Override
+    public void setConfig(ExtensionConfig response)
+    {
+        // The configuration is the one negotiated by the server
+        super.setConfig(response);
+        Set<String> parameters = response.getParameterKeys();
+        boolean clientContextTakeover = _contextTakeover && !parameters.contains(PerMessageDeflate.CLIENT_NO_CONTEXT_TAKEOVER);
+        boolean serverContextTakeover = !parameters.contains(PerMessageDeflate.SERVER_NO_CONTEXT_TAKEOVER);
+        _deflate = new PerMessageDeflate(_pool, clientContextTakeover, serverContextTakeover);
+    }
+
+    @Override
+    public void incomingFrame(Frame frame)
+    {
+        byte opCode = frame.getOpCode();
+        if (OpCode.isControlFrame(opCode))
+        {
+            nextIncomingFrame(frame);
+            return;
+        }
+
+        // Only the first frame of a message carries the RSV1 bit
+        if (opCode != OpCode.CONTINUATION)
+            _incomingCompressed = frame.isRsv1();
+        if (!_incomingCompressed)
+        {
+            nextIncomingFrame(frame);
+            return;
+        }
+
+        try
+        {
+            ByteBuffer payload = _deflate.inflate(frame.getPayload(), frame.isFin(), getPolicy().getMaxMessageSize());
+            WebSocketFrame inflated = new WebSocketFrame(opCode);
+            inflated.setFin(frame.isFin());
+            inflated.setPayload(payload);
+            nextIncomingFrame(inflated);
+        }
+        catch (DataFormatException x)
+        {
+            throw new BadPayloadException(x.getMessage());
+        }
+    }
+
+    @Override
+    public void outgoingFrame(Frame frame, WriteCallback callback)
+    {
+        byte opCode = frame.getOpCode();
+        if (OpCode.isControlFrame(opCode))
+        {
+            nextOutgoingFrame(frame, callback);
+            return;
+        }
+
+        // Frames are passed on while holding the lock, so that they
+        // are written in the same order they have been compressed
+        synchronized (_lock)
+        {
+            if (opCode != OpCode.CONTINUATION)
+            {
+                ByteBuffer payload = frame.getPayload();
+                int length = payload == null ? 0 : payload.remaining();
+                // The size of fragmented messages is not known upfront
+                _outgoingCompressed = !frame.isFin() || length >= _minSize;
+            }
+            if (!_outgoingCompressed)
+            {
+                nextOutgoingFrame(frame, callback);
+                return;
+            }
+
+            WebSocketFrame deflated = new WebSocketFrame(opCode);
+            deflated.setFin(frame.isFin());
+            deflated.setRsv1(opCode != OpCode.CONTINUATION);
+            deflated.setPayload(_deflate.deflate(frame.getPayload(), frame.isFin()));
+            nextOutgoingFrame(deflated, callback);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        PerMessageDeflate deflate = _deflate;
+        if (deflate != null)
+        {
+            synchronized (_lock)
+            {
+                deflate.close();
+            }
+        }
+        super.doStop();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _deflate);
+    }
+}
@@ -21,8 +21,10 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -34,6 +36,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.Deflater;
 
 import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
@@ -42,11 +45,23 @@ import org.cometd.client.transport.ClientTransport;
 import org.cometd.client.transport.HttpClientTransport;
 import org.cometd.client.transport.MessageClientTransport;
 import org.cometd.client.transport.TransportListener;
+import org.cometd.common.BinaryMessageCodec;
+import org.cometd.common.DeflaterPool;
+import org.cometd.common.HashMapMessage;
+import org.cometd.common.PerMessageDeflate;
 import org.cometd.common.TransportException;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.UpgradeException;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
+import org.eclipse.jetty.websocket.client.ClientUpgradeRequest;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +75,11 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
     public final static String CONNECT_TIMEOUT_OPTION = "connectTimeout";
     public final static String IDLE_TIMEOUT_OPTION = "idleTimeout";
     public final static String MAX_MESSAGE_SIZE_OPTION = "maxMessageSize";
+    public final static String PER_MESSAGE_DEFLATE_OPTION = "perMessageDeflate";
+    public final static String DEFLATE_CONTEXT_TAKEOVER_OPTION = "deflateContextTakeover";
+    public final static String DEFLATE_MIN_SIZE_OPTION = "deflateMinSize";
+    public final static String DEFLATER_POOL_SIZE_OPTION = "deflaterPoolSize";
+    public final static String BINARY_OPTION = "binary";
 
     public static WebSocketTransport create(Map<String, Object> options, WebSocketClient webSocketClient)
     {
@@ -84,8 +104,17 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
     }
 
     private final CometDWebSocket _websocket = new CometDWebSocket();
+    private final BinaryMessageCodec.Factory<Mutable> _messageFactory = new BinaryMessageCodec.Factory<Mutable>()
+    {
+        public Mutable newMessage()
+        {
+            return new HashMapMessage();
+        }
+    };
     private final Map<String, WebSocketExchange> _metaExchanges = new ConcurrentHashMap<>();
     private final WebSocketClient _webSocketClient;
+    private volatile WebSocketClient _deflateClient;
+    private volatile DeflaterPool _deflaterPool;
     private volatile ScheduledExecutorService _scheduler;
     private volatile boolean _shutdownScheduler;
     private volatile String _protocol = "cometd";
@@ -93,6 +122,10 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
     private volatile long _connectTimeout = 30000L;
     private volatile int _idleTimeout = 60000;
     private volatile long _maxMessageSize;
+    private volatile boolean _perMessageDeflate;
+    private volatile boolean _deflateContextTakeover = true;
+    private volatile boolean _binary;
+    private volatile BinaryMessageCodec _codec;
     private volatile boolean _connected;
     private volatile boolean _disconnected;
     private volatile boolean _aborted;
@@ -130,11 +163,18 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
         _connectTimeout = getOption(CONNECT_TIMEOUT_OPTION, _connectTimeout);
         _idleTimeout = getOption(IDLE_TIMEOUT_OPTION, _idleTimeout);
         _maxMessageSize = getOption(MAX_MESSAGE_SIZE_OPTION, _webSocketClient.getPolicy().getMaxMessageSize());
+        _perMessageDeflate = getOption(PER_MESSAGE_DEFLATE_OPTION, _perMessageDeflate);
+        _deflateContextTakeover = getOption(DEFLATE_CONTEXT_TAKEOVER_OPTION, _deflateContextTakeover);
+        _binary = getOption(BINARY_OPTION, _binary);
+
+        if (_perMessageDeflate && _deflateClient == null)
+            _deflateClient = newDeflateClient();
 
-        _webSocketClient.setConnectTimeout(_connectTimeout);
-        _webSocketClient.getPolicy().setIdleTimeout(_idleTimeout);
-        _webSocketClient.getPolicy().setMaxMessageSize(_maxMessageSize);
-        _webSocketClient.setCookieStore(getCookieStore());
+        WebSocketClient webSocketClient = getWebSocketClient();
+        webSocketClient.setConnectTimeout(_connectTimeout);
+        webSocketClient.getPolicy().setIdleTimeout(_idleTimeout);
+        webSocketClient.getPolicy().setMaxMessageSize(_maxMessageSize);
+        webSocketClient.setCookieStore(getCookieStore());
 
         if (_scheduler == null)
         {
@@ -146,6 +186,60 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
         }
     }
 
+    /**
+     * <p>Creates the {@link WebSocketClient} used when {@link #PER_MESSAGE_DEFLATE_OPTION per message deflate}
+     * is enabled.</p>
+     * <p>Jetty creates the extensions of a connection with the extension factory of the
+     * {@link WebSocketClient}, that may be shared with other transports, so this transport
+     * connects with its own client, that shares the executor of the given one, but creates
+     * {@link PerMessageDeflateExtension}s with the settings and the deflater pool of this transport.</p>
+     *
+     * @return a started client that creates deflate extensions with the settings of this transport
+     */
+    private WebSocketClient newDeflateClient()
+    {
+        final boolean contextTakeover = _deflateContextTakeover;
+        final int minSize = getOption(DEFLATE_MIN_SIZE_OPTION, 256);
+        int poolSize = getOption(DEFLATER_POOL_SIZE_OPTION, 64);
+        final DeflaterPool deflaterPool = new DeflaterPool(poolSize, Deflater.DEFAULT_COMPRESSION);
+        WebSocketClient client = new WebSocketClient(_webSocketClient.getSslContextFactory(), _webSocketClient.getExecutor())
+        {
+            private final ExtensionFactory extensionFactory = new DeflateExtensionFactory(getPolicy(), new MappedByteBufferPool(), contextTakeover, minSize, deflaterPool);
+
+            @Override
+            public ExtensionFactory getExtensionFactory()
+            {
+                return extensionFactory;
+            }
+        };
+        try
+        {
+            client.start();
+        }
+        catch (Exception x)
+        {
+            deflaterPool.close();
+            throw new RuntimeException(x);
+        }
+        _deflaterPool = deflaterPool;
+        return client;
+    }
+
+    private WebSocketClient getWebSocketClient()
+    {
+        WebSocketClient deflateClient = _deflateClient;
+        return deflateClient == null ? _webSocketClient : deflateClient;
+    }
+
+    /**
+     * @return whether the current connection encodes messages with {@link BinaryMessageCodec}
+     * @see #BINARY_OPTION
+     */
+    public boolean isBinary()
+    {
+        return _codec != null;
+    }
+
     private long getMaxNetworkDelay()
     {
         return _maxNetworkDelay;
@@ -181,6 +275,26 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
     {
         super.terminate();
         disconnect("Terminated");
+
+        WebSocketClient deflateClient = _deflateClient;
+        _deflateClient = null;
+        if (deflateClient != null)
+        {
+            try
+            {
+                deflateClient.stop();
+            }
+            catch (Exception x)
+            {
+                logger.trace("Could not stop " + deflateClient, x);
+            }
+        }
+
+        // Free the native memory of the pooled deflaters
+        DeflaterPool deflaterPool = _deflaterPool;
+        _deflaterPool = null;
+        if (deflaterPool != null)
+            deflaterPool.close();
     }
 
     protected void disconnect(String reason)
@@ -216,6 +330,20 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
             for (Message.Mutable message : messages)
                 registerMessage(message, listener);
 
+            BinaryMessageCodec codec = _codec;
+            if (codec != null)
+            {
+                debug("Sending binary messages {}", Arrays.asList(messages));
+                listener.onSending(messages);
+                // Frames must be written in the order they are encoded,
+                // because they may define strings referenced by later frames
+                synchronized (codec)
+                {
+                    session.getRemote().sendBytes(codec.encode(Arrays.asList(messages)));
+                }
+                return;
+            }
+
             String content = generateJSON(messages);
 
             // The onSending() callback must be invoked before the actual send
@@ -281,7 +409,12 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
     {
         try
         {
-            _webSocketClient.connect(_websocket, uri).get();
+            ClientUpgradeRequest request = new ClientUpgradeRequest();
+            if (_perMessageDeflate)
+                request.addExtensions(PerMessageDeflateExtension.offer(_deflateContextTakeover));
+            if (_binary)
+                request.setSubProtocols(BinaryMessageCodec.PROTOCOL);
+            getWebSocketClient().connect(_websocket, uri, request).get();
             // If the future succeeds, then we will have a non-null connection
             return _session;
         }
@@ -428,6 +561,9 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
         @Override
         public void onWebSocketConnect(Session session)
         {
+            // The binary encoding is used only if the server accepted it
+            boolean binary = BinaryMessageCodec.PROTOCOL.equals(session.getUpgradeResponse().getAcceptedSubProtocol());
+            _codec = binary ? new BinaryMessageCodec(getJSONContextClient()) : null;
             _session = session;
             debug("Opened websocket session {}", session);
         }
@@ -459,6 +595,20 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
         @Override
         public void onWebSocketBinary(byte[] payload, int offset, int len)
         {
+            BinaryMessageCodec codec = _codec;
+            if (codec == null)
+                return;
+            try
+            {
+                List<Mutable> messages = codec.decode(ByteBuffer.wrap(payload, offset, len), _messageFactory);
+                debug("Received binary messages {}", messages);
+                onMessages(messages);
+            }
+            catch (ParseException x)
+            {
+                failMessages(x);
+                disconnect("Exception");
+            }
         }
 
         @Override
@@ -487,4 +637,40 @@ public class WebSocketTransport extends HttpClientTransport implements MessageCl
             return getClass().getSimpleName() + " " + message;
         }
     }
+
+    /**
+     * <p>Creates {@link PerMessageDeflateExtension}s with the settings of this transport,
+     * and the other extensions as the default Jetty factory does.</p>
+     */
+    private static class DeflateExtensionFactory extends WebSocketExtensionFactory
+    {
+        private final WebSocketPolicy _policy;
+        private final ByteBufferPool _bufferPool;
+        private final boolean _contextTakeover;
+        private final int _minSize;
+        private final DeflaterPool _deflaterPool;
+
+        private DeflateExtensionFactory(WebSocketPolicy policy, ByteBufferPool bufferPool, boolean contextTakeover, int minSize, DeflaterPool deflaterPool)
+        {
+            super(policy, bufferPool);
+            _policy = policy;
+            _bufferPool = bufferPool;
+            _contextTakeover = contextTakeover;
+            _minSize = minSize;
+            _deflaterPool = deflaterPool;
+            register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
+        }
+
+        @Override
+        public Extension newInstance(ExtensionConfig config)
+        {
+            if (config == null || !PerMessageDeflate.NAME.equals(config.getName()))
+                return super.newInstance(config);
+            PerMessageDeflateExtension extension = new PerMessageDeflateExtension(_contextTakeover, _minSize, _deflaterPool);
+            extension.setPolicy(_policy);
+            extension.setBufferPool(_bufferPool);
+            extension.setConfig(config);
+            return extension;
+        }
+    }
 }
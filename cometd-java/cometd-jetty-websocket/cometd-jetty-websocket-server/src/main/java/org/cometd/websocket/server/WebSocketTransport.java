@@ -19,12 +19,21 @@ package org.cometd.websocket.server;
 import java.io.IOException;
 import java.net.HttpCookie;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.Charset;
 import java.security.Principal;
 import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,6 +41,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -42,26 +53,44 @@ import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.server.BayeuxContext;
 import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.common.BinaryMessageCodec;
+import org.cometd.common.DeflaterPool;
+import org.cometd.common.PerMessageDeflate;
 import org.cometd.server.AbstractServerTransport;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ServerMessageImpl;
 import org.cometd.server.ServerSessionImpl;
 import org.cometd.server.transport.HttpTransport;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.UpgradeRequest;
 import org.eclipse.jetty.websocket.api.UpgradeResponse;
 import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
 import org.eclipse.jetty.websocket.common.WebSocketSession;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
 import org.eclipse.jetty.websocket.server.ServletWebSocketRequest;
 import org.eclipse.jetty.websocket.server.WebSocketServerFactory;
 import org.eclipse.jetty.websocket.servlet.WebSocketCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@ManagedObject("The CometD WebSocket transport")
 public class WebSocketTransport extends HttpTransport
 {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     public static final String PREFIX = "ws";
     public static final String NAME = "websocket";
     public static final String PROTOCOL_OPTION = "protocol";
@@ -70,13 +99,41 @@ public class WebSocketTransport extends HttpTransport
     public static final String MAX_MESSAGE_SIZE_OPTION = "maxMessageSize";
     public static final String IDLE_TIMEOUT_OPTION = "idleTimeout";
     public static final String THREAD_POOL_MAX_SIZE = "threadPoolMaxSize";
+    public static final String MAX_OUTBOUND_FRAMES_OPTION = "maxOutboundFrames";
+    public static final String BACKPRESSURE_INTERVAL_OPTION = "backpressureInterval";
+    public static final String PER_MESSAGE_DEFLATE_OPTION = "perMessageDeflate";
+    public static final String DEFLATE_CONTEXT_TAKEOVER_OPTION = "deflateContextTakeover";
+    public static final String DEFLATE_MIN_SIZE_OPTION = "deflateMinSize";
+    public static final String DEFLATER_POOL_SIZE_OPTION = "deflaterPoolSize";
+    public static final String COALESCE_DELAY_OPTION = "coalesceDelay";
+    public static final String COALESCE_BYTES_OPTION = "coalesceBytes";
+    public static final String BINARY_OPTION = "binary";
 
     private WebSocketServerFactory _factory;
+    private DeflaterPool _deflaterPool;
     private final ThreadLocal<WebSocketContext> _handshake = new ThreadLocal<>();
     private String _protocol;
     private Executor _executor;
     private ScheduledExecutorService _scheduler;
     private int _messagesPerFrame = 1;
+    private int _maxOutboundFrames = 64;
+    private long _backpressureInterval = 10;
+    private long _coalesceDelay = 0;
+    private int _coalesceBytes = 16 * 1024;
+    private boolean _binary = true;
+    private final ConcurrentMap<Session, OutboundQueue> _outbounds = new ConcurrentHashMap<>();
+    private final AtomicLong _framesSent = new AtomicLong();
+    private final AtomicLong _messagesSent = new AtomicLong();
+    private final AtomicLong _coalesces = new AtomicLong();
+    private final AtomicLong _coalesceNanos = new AtomicLong();
+    private final AtomicLong _maxCoalesceNanos = new AtomicLong();
+    private final BinaryMessageCodec.Factory<ServerMessage.Mutable> _messageFactory = new BinaryMessageCodec.Factory<ServerMessage.Mutable>()
+    {
+        public ServerMessage.Mutable newMessage()
+        {
+            return getBayeux().newMessage();
+        }
+    };
 
     public WebSocketTransport(BayeuxServerImpl bayeux)
     {
@@ -92,6 +149,11 @@ public class WebSocketTransport extends HttpTransport
         WebSocketPolicy policy = new WebSocketPolicy(WebSocketBehavior.SERVER);
         _protocol = getOption(PROTOCOL_OPTION, _protocol);
         _messagesPerFrame = getOption(MESSAGES_PER_FRAME_OPTION, _messagesPerFrame);
+        _maxOutboundFrames = getOption(MAX_OUTBOUND_FRAMES_OPTION, _maxOutboundFrames);
+        _backpressureInterval = getOption(BACKPRESSURE_INTERVAL_OPTION, _backpressureInterval);
+        _coalesceDelay = getOption(COALESCE_DELAY_OPTION, _coalesceDelay);
+        _coalesceBytes = getOption(COALESCE_BYTES_OPTION, _coalesceBytes);
+        _binary = getOption(BINARY_OPTION, _binary);
         int bufferSize = getOption(BUFFER_SIZE_OPTION, policy.getInputBufferSize());
         policy.setInputBufferSize(bufferSize);
         long maxMessageSize = getOption(MAX_MESSAGE_SIZE_OPTION, policy.getMaxMessageSize());
@@ -99,7 +161,27 @@ public class WebSocketTransport extends HttpTransport
         long idleTimeout = getOption(IDLE_TIMEOUT_OPTION, policy.getIdleTimeout());
         policy.setIdleTimeout((int)idleTimeout);
 
-        _factory = new WebSocketServerFactory(policy);
+        if (getOption(PER_MESSAGE_DEFLATE_OPTION, false))
+        {
+            boolean contextTakeover = getOption(DEFLATE_CONTEXT_TAKEOVER_OPTION, true);
+            int minSize = getOption(DEFLATE_MIN_SIZE_OPTION, 256);
+            int poolSize = getOption(DEFLATER_POOL_SIZE_OPTION, 64);
+            _deflaterPool = new DeflaterPool(poolSize, Deflater.DEFAULT_COMPRESSION);
+            ByteBufferPool bufferPool = new MappedByteBufferPool();
+            final ExtensionFactory extensionFactory = new DeflateExtensionFactory(policy, bufferPool, contextTakeover, minSize, _deflaterPool);
+            _factory = new WebSocketServerFactory(policy, bufferPool)
+            {
+                @Override
+                public ExtensionFactory getExtensionFactory()
+                {
+                    return extensionFactory;
+                }
+            };
+        }
+        else
+        {
+            _factory = new WebSocketServerFactory(policy);
+        }
         _factory.setCreator(new WebSocketCreator()
         {
             @Override
@@ -113,6 +195,9 @@ public class WebSocketTransport extends HttpTransport
                         origin = request.getHeader("Sec-WebSocket-Origin");
                     if (checkOrigin(serverRequest, origin))
                     {
+                        // Clients that support the binary encoding offer it as a sub-protocol
+                        if (_binary && request.getSubProtocols().contains(BinaryMessageCodec.PROTOCOL))
+                            response.setAcceptedSubProtocol(BinaryMessageCodec.PROTOCOL);
                         WebSocketContext handshake = new WebSocketContext((ServletWebSocketRequest)request);
                         return new WebSocketScheduler(handshake, request.getHeader("User-Agent"));
                     }
@@ -144,6 +229,14 @@ public class WebSocketTransport extends HttpTransport
             _logger.trace("", x);
         }
 
+        // Free the native memory of the pooled deflaters
+        DeflaterPool deflaterPool = _deflaterPool;
+        if (deflaterPool != null)
+        {
+            deflaterPool.close();
+            _deflaterPool = null;
+        }
+
         _scheduler.shutdown();
 
         Executor threadPool = _executor;
@@ -215,7 +308,46 @@ public class WebSocketTransport extends HttpTransport
         return _handshake.get();
     }
 
+    /**
+     * @deprecated use {@link #send(OutboundQueue, List)} instead
+     */
+    @Deprecated
     protected void send(Session session, List<ServerMessage> messages) throws IOException
+    {
+        send(getOutboundQueue(session), messages);
+    }
+
+    /**
+     * @deprecated use {@link #send(OutboundQueue, ServerMessage)} instead
+     */
+    @Deprecated
+    protected void send(Session session, ServerMessage message) throws IOException
+    {
+        send(getOutboundQueue(session), message);
+    }
+
+    /**
+     * @deprecated use {@link OutboundQueue#send(String)} instead
+     */
+    @Deprecated
+    protected void send(Session session, String data) throws IOException
+    {
+        getOutboundQueue(session).send(data);
+    }
+
+    /**
+     * @param session the WebSocket session
+     * @return the queue of the connection of the given session, so that frames sent
+     * to it count for {@code maxOutboundFrames} and are failed when it is closed,
+     * or a new queue if the session is not connected to this transport
+     */
+    private OutboundQueue getOutboundQueue(Session session)
+    {
+        OutboundQueue outbound = _outbounds.get(session);
+        return outbound != null ? outbound : new OutboundQueue(session);
+    }
+
+    protected void send(OutboundQueue outbound, List<ServerMessage> messages)
     {
         if (messages.isEmpty())
             return;
@@ -226,6 +358,15 @@ public class WebSocketTransport extends HttpTransport
 
         int count = messages.size();
         int batchSize = _messagesPerFrame > 0 ? Math.min(_messagesPerFrame, count) : count;
+
+        if (outbound.isBinary())
+        {
+            for (int index = 0; index < count; index += batchSize)
+                outbound.send(messages.subList(index, Math.min(index + batchSize, count)));
+            _messagesSent.addAndGet(count);
+            return;
+        }
+
         // Assume 4 fields of 32 chars per message
         int capacity = batchSize * 4 * 32;
         StringBuilder builder = new StringBuilder(capacity);
@@ -245,24 +386,116 @@ public class WebSocketTransport extends HttpTransport
             }
             builder.append("]");
             index += batch;
-            send(session, builder.toString());
+            outbound.send(builder.toString());
         }
+        _messagesSent.addAndGet(count);
     }
 
-    protected void send(Session session, ServerMessage message) throws IOException
+    protected void send(OutboundQueue outbound, ServerMessage message)
     {
+        if (outbound.isBinary())
+        {
+            outbound.send(Collections.singletonList(message));
+            _messagesSent.incrementAndGet();
+            return;
+        }
+
         StringBuilder builder = new StringBuilder(message.size() * 32);
         builder.append("[").append(message.getJSON()).append("]");
-        send(session, builder.toString());
+        outbound.send(builder.toString());
+        _messagesSent.incrementAndGet();
     }
 
-    protected void send(Session session, String data) throws IOException
+    /**
+     * @return the average number of frames sent per message; values lower than 1 mean
+     * that messages are batched together in frames
+     * @see #COALESCE_DELAY_OPTION
+     */
+    @ManagedAttribute(value = "The average number of frames sent per message", readonly = true)
+    public double getFramesPerMessage()
     {
-        debug("Sending {}", data);
-        // Blocking write.
-        // We trade - for now - a blocked thread with the frame queue growing
-        // and consequent increased message latency (messages sit in the queue).
-        session.getRemote().sendString(data);
+        long messages = _messagesSent.get();
+        return messages == 0 ? 0 : (double)_framesSent.get() / messages;
+    }
+
+    /**
+     * @return the number of times a flush has been held to coalesce messages
+     */
+    @ManagedAttribute(value = "The number of flushes held to coalesce messages", readonly = true)
+    public long getCoalesceCount()
+    {
+        return _coalesces.get();
+    }
+
+    /**
+     * @return the average latency added by holding flushes to coalesce messages, in microseconds
+     */
+    @ManagedAttribute(value = "The average latency added by coalescing, in microseconds", readonly = true)
+    public long getAverageCoalesceLatency()
+    {
+        long coalesces = _coalesces.get();
+        return coalesces == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(_coalesceNanos.get() / coalesces);
+    }
+
+    /**
+     * @return the max latency added by holding a flush to coalesce messages, in microseconds
+     */
+    @ManagedAttribute(value = "The max latency added by coalescing, in microseconds", readonly = true)
+    public long getMaxCoalesceLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(_maxCoalesceNanos.get());
+    }
+
+    @ManagedOperation(value = "Resets the frame and coalescing statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _framesSent.set(0);
+        _messagesSent.set(0);
+        _coalesces.set(0);
+        _coalesceNanos.set(0);
+        _maxCoalesceNanos.set(0);
+    }
+
+    private static int jsonBytes(ServerMessage message)
+    {
+        // The bytes of frozen messages are encoded once and cached
+        if (message instanceof ServerMessageImpl)
+            return ((ServerMessageImpl)message).getJSONBytes().remaining();
+        return message.getJSON().getBytes(UTF_8).length;
+    }
+
+    private void onCoalesced(long nanos)
+    {
+        _coalesces.incrementAndGet();
+        _coalesceNanos.addAndGet(nanos);
+        while (true)
+        {
+            long max = _maxCoalesceNanos.get();
+            if (nanos <= max || _maxCoalesceNanos.compareAndSet(max, nanos))
+                break;
+        }
+    }
+
+    /**
+     * <p>Callback method invoked when a frame has been written to the network.</p>
+     *
+     * @param session the WebSocket session the frame has been written to
+     * @param data the frame text, or null for binary frames
+     */
+    protected void onWriteSuccess(Session session, String data)
+    {
+    }
+
+    /**
+     * <p>Callback method invoked when a frame could not be written to the network.</p>
+     *
+     * @param session the WebSocket session the frame was written to
+     * @param data the frame text, or null for binary frames
+     * @param failure the cause of the failure
+     */
+    protected void onWriteFailure(Session session, String data, Throwable failure)
+    {
+        handleException(session, failure);
     }
 
     protected void onClose(int code, String message)
@@ -273,12 +506,22 @@ public class WebSocketTransport extends HttpTransport
     {
         private final Logger _logger = LoggerFactory.getLogger(getClass().getName() + "." + Integer.toHexString(System.identityHashCode(this)));
         private final AtomicBoolean _scheduling = new AtomicBoolean();
+        private final AtomicBoolean _resuming = new AtomicBoolean();
         private final WebSocketContext _context;
         private final String _userAgent;
         private volatile ServerSessionImpl _session;
         private volatile Session _wsSession;
+        private volatile OutboundQueue _outbound;
+        private volatile BinaryMessageCodec _codec;
         private ServerMessage.Mutable _connectReply;
         private ScheduledFuture<?> _connectTask;
+        // Coalescing state, accessed only by the thread that flushes
+        private volatile long _holdStart;
+        private volatile boolean _holding;
+        private volatile boolean _holdExpired;
+        private volatile long _lastFlush;
+        private volatile boolean _flushed;
+        private volatile int _messageBytes = 128;
 
         public WebSocketScheduler(WebSocketContext context, String userAgent)
         {
@@ -289,6 +532,11 @@ public class WebSocketTransport extends HttpTransport
         public void onWebSocketConnect(Session session)
         {
             _wsSession = session;
+            // The binary encoding is used only if it has been negotiated during the upgrade
+            if (BinaryMessageCodec.PROTOCOL.equals(session.getUpgradeResponse().getAcceptedSubProtocol()))
+                _codec = new BinaryMessageCodec(getJSONContextServer());
+            _outbound = new OutboundQueue(session, _codec);
+            _outbounds.put(session, _outbound);
         }
 
         public void onWebSocketClose(int code, String reason)
@@ -303,6 +551,12 @@ public class WebSocketTransport extends HttpTransport
                 session.startIntervalTimeout(getInterval());
                 cancelMetaConnectTask(session);
             }
+            Session wsSession = _wsSession;
+            if (wsSession != null)
+                _outbounds.remove(wsSession);
+            OutboundQueue outbound = _outbound;
+            if (outbound != null)
+                outbound.close();
             _logger.debug("Closing {}/{}", code, reason);
             WebSocketTransport.this.onClose(code, reason);
         }
@@ -332,6 +586,28 @@ public class WebSocketTransport extends HttpTransport
         @Override
         public void onWebSocketBinary(byte[] payload, int offset, int len)
         {
+            BinaryMessageCodec codec = _codec;
+            if (codec == null)
+                return;
+
+            _handshake.set(_context);
+            getBayeux().setCurrentTransport(WebSocketTransport.this);
+            try
+            {
+                List<ServerMessage.Mutable> messages = codec.decode(ByteBuffer.wrap(payload, offset, len), _messageFactory);
+                _logger.debug("Received binary messages {}", messages);
+                for (ServerMessage.Mutable message : messages)
+                    onMessage(message);
+            }
+            catch (Exception x)
+            {
+                handleException(_wsSession, x);
+            }
+            finally
+            {
+                _handshake.set(null);
+                getBayeux().setCurrentTransport(null);
+            }
         }
 
         public void onWebSocketText(String data)
@@ -455,7 +731,7 @@ public class WebSocketTransport extends HttpTransport
                     try
                     {
                         if (queue != null)
-                            send(_wsSession, queue);
+                            send(_outbound, queue);
                     }
                     finally
                     {
@@ -476,7 +752,7 @@ public class WebSocketTransport extends HttpTransport
                     if (reply != null)
                     {
                         getBayeux().freeze(reply);
-                        send(_wsSession, reply);
+                        send(_outbound, reply);
                     }
                 }
             }
@@ -515,6 +791,7 @@ public class WebSocketTransport extends HttpTransport
             // schedule() and by the timeout thread that replies to the meta connect.
 
             boolean reschedule = false;
+            boolean held = false;
             ServerSessionImpl session = _session;
             try
             {
@@ -526,6 +803,9 @@ public class WebSocketTransport extends HttpTransport
                 // and allow only one thread to reply to the meta connect
                 // otherwise we may have out of order delivery.
                 boolean metaConnectDelivery = isMetaConnectDeliveryOnly() || session.isMetaConnectDeliveryOnly();
+                // When too many frames are in flight, the network is slow: do not flush
+                // the queue, and reply to the meta connect only if it must be replied
+                boolean backpressure = _outbound.isFull();
                 boolean reply = false;
                 ServerMessage.Mutable connectReply;
                 synchronized (session.getLock())
@@ -552,7 +832,7 @@ public class WebSocketTransport extends HttpTransport
                     }
                     else
                     {
-                        if (timeout || metaConnectDelivery || !session.isConnected())
+                        if (timeout || !session.isConnected() || metaConnectDelivery && !backpressure)
                         {
                             // We will reply to the meta connect, so cancel the timeout task
                             cancelMetaConnectTask(session);
@@ -562,13 +842,28 @@ public class WebSocketTransport extends HttpTransport
                     }
                 }
 
+                if (backpressure && !reply)
+                {
+                    _logger.debug("Flushing delayed, {} frames in flight", _maxOutboundFrames);
+                    resumeLater();
+                    return;
+                }
+
+                if (!reply && !timeout && hold(session))
+                {
+                    held = true;
+                    _logger.debug("Flushing held to coalesce messages");
+                    return;
+                }
+
                 reschedule = true;
-                List<ServerMessage> queue = session.takeQueue();
+                List<ServerMessage> queue = backpressure ? Collections.<ServerMessage>emptyList() : session.takeQueue();
 
                 try
                 {
                     _logger.debug("Flushing {} timeout={} metaConnectDelivery={}, metaConnectReply={}, messages={}", session, timeout, metaConnectDelivery, reply, queue);
-                    send(_wsSession, queue);
+                    send(_outbound, queue);
+                    flushed(queue);
                 }
                 finally
                 {
@@ -591,7 +886,7 @@ public class WebSocketTransport extends HttpTransport
                     if (connectReply != null)
                     {
                         getBayeux().freeze(connectReply);
-                        send(_wsSession, connectReply);
+                        send(_outbound, connectReply);
                     }
                 }
             }
@@ -606,6 +901,88 @@ public class WebSocketTransport extends HttpTransport
 
                 if (reschedule && !session.isQueueEmpty())
                     schedule();
+
+                // The hold may have expired while this thread was holding
+                // the flush, and the expiration could not dispatch a flush
+                if (held && _holdExpired)
+                    schedule();
+            }
+        }
+
+        /**
+         * <p>Decides whether to hold the flush of the queue, so that messages published
+         * in a short time are sent together in fewer, larger frames.</p>
+         * <p>Only sessions that are flushing at a high rate hold the flush, so that messages
+         * published to idle sessions are not delayed. A held flush is performed when
+         * {@code coalesceDelay} microseconds have elapsed, or when the queued messages are
+         * estimated to be larger than {@code coalesceBytes}.</p>
+         *
+         * @param session the session whose queue is being flushed
+         * @return whether the flush is held
+         */
+        private boolean hold(ServerSessionImpl session)
+        {
+            if (_coalesceDelay <= 0)
+                return false;
+
+            long now = System.nanoTime();
+            boolean full = (long)session.getQueue().size() * _messageBytes >= _coalesceBytes;
+            if (!_holding)
+            {
+                boolean idle = !_flushed || now - _lastFlush >= TimeUnit.MICROSECONDS.toNanos(_coalesceDelay);
+                if (full || idle)
+                    return false;
+                _holding = true;
+                _holdExpired = false;
+                _holdStart = now;
+                _scheduler.schedule(new Runnable()
+                {
+                    public void run()
+                    {
+                        _holdExpired = true;
+                        schedule();
+                    }
+                }, _coalesceDelay, TimeUnit.MICROSECONDS);
+                return true;
+            }
+
+            if (!full && !_holdExpired)
+                return true;
+
+            _holding = false;
+            if (!session.isQueueEmpty())
+                onCoalesced(now - _holdStart);
+            return false;
+        }
+
+        private void flushed(List<ServerMessage> queue)
+        {
+            if (_coalesceDelay <= 0 || queue.isEmpty())
+                return;
+            _lastFlush = System.nanoTime();
+            _flushed = true;
+            // Keep a moving average of the message size, to estimate the size of the queue
+            long bytes = 0;
+            for (ServerMessage message : queue)
+                bytes += jsonBytes(message);
+            _messageBytes = (int)((7L * _messageBytes + bytes / queue.size()) / 8);
+        }
+
+        /**
+         * <p>Flushes again after a while, when the frames in flight may have been written.</p>
+         */
+        private void resumeLater()
+        {
+            if (_resuming.compareAndSet(false, true))
+            {
+                _scheduler.schedule(new Runnable()
+                {
+                    public void run()
+                    {
+                        _resuming.set(false);
+                        schedule();
+                    }
+                }, _backpressureInterval, TimeUnit.MILLISECONDS);
             }
         }
 
@@ -636,6 +1013,164 @@ public class WebSocketTransport extends HttpTransport
         }
     }
 
+    /**
+     * <p>The frames in flight of a WebSocket connection.</p>
+     * <p>Frames are written with the asynchronous {@link RemoteEndpoint} API, so that
+     * no thread blocks while the network is slow; the write callbacks
+     * {@link #onWriteSuccess(Session, String)} and {@link #onWriteFailure(Session, String, Throwable)}
+     * are invoked when each write completes. The frames still in flight when
+     * the connection is closed are failed.</p>
+     * <p>The queue is full when the number of frames in flight reaches the
+     * {@code maxOutboundFrames} option: the session queue is then not flushed
+     * (so that messages accumulate in the session queue, subject to its maximum size),
+     * and flushing is retried after the {@code backpressureInterval} option (in milliseconds).
+     * Frames are never rejected: the bound is checked before flushing the session queue,
+     * so it may be exceeded by the frames of one flush.</p>
+     */
+    protected class OutboundQueue
+    {
+        private final Queue<Frame> _frames = new ArrayDeque<>();
+        private final Session _session;
+        private final BinaryMessageCodec _codec;
+
+        protected OutboundQueue(Session session)
+        {
+            this(session, null);
+        }
+
+        protected OutboundQueue(Session session, BinaryMessageCodec codec)
+        {
+            _session = session;
+            _codec = codec;
+        }
+
+        /**
+         * @return whether messages are sent in binary frames encoded by {@link BinaryMessageCodec}
+         */
+        public boolean isBinary()
+        {
+            return _codec != null;
+        }
+
+        public void send(List<? extends ServerMessage> messages)
+        {
+            debug("Sending binary {}", messages);
+            Frame frame = new Frame(null);
+            synchronized (this)
+            {
+                _frames.offer(frame);
+                // Frames must be written in the order they are encoded,
+                // because they may define strings referenced by later frames
+                _session.getRemote().sendBytes(_codec.encode(messages), frame);
+            }
+            _framesSent.incrementAndGet();
+        }
+
+        public void send(String data)
+        {
+            debug("Sending {}", data);
+            Frame frame = new Frame(data);
+            synchronized (this)
+            {
+                _frames.offer(frame);
+                // Frames must be written in the order they are queued
+                _session.getRemote().sendString(data, frame);
+            }
+            _framesSent.incrementAndGet();
+        }
+
+        public boolean isFull()
+        {
+            synchronized (this)
+            {
+                return _frames.size() >= _maxOutboundFrames;
+            }
+        }
+
+        /**
+         * <p>Fails the frames still in flight, since their write callbacks
+         * may never be invoked once the connection is closed.</p>
+         */
+        public void close()
+        {
+            List<Frame> frames;
+            synchronized (this)
+            {
+                frames = new ArrayList<>(_frames);
+                _frames.clear();
+            }
+            for (Frame frame : frames)
+                onWriteFailure(_session, frame._data, new ClosedChannelException());
+        }
+
+        private boolean remove(Frame frame)
+        {
+            synchronized (this)
+            {
+                return _frames.remove(frame);
+            }
+        }
+
+        private class Frame implements WriteCallback
+        {
+            private final String _data;
+
+            private Frame(String data)
+            {
+                _data = data;
+            }
+
+            public void writeSuccess()
+            {
+                // Frames failed by close() are not notified again
+                if (remove(this))
+                    onWriteSuccess(_session, _data);
+            }
+
+            public void writeFailed(Throwable failure)
+            {
+                if (remove(this))
+                    onWriteFailure(_session, _data, failure);
+            }
+        }
+    }
+
+    /**
+     * <p>Creates {@link PerMessageDeflateExtension}s with the settings of this transport,
+     * and the other extensions as the default Jetty factory does.</p>
+     */
+    private static class DeflateExtensionFactory extends WebSocketExtensionFactory
+    {
+        private final WebSocketPolicy _policy;
+        private final ByteBufferPool _bufferPool;
+        private final boolean _contextTakeover;
+        private final int _minSize;
+        private final DeflaterPool _deflaterPool;
+
+        private DeflateExtensionFactory(WebSocketPolicy policy, ByteBufferPool bufferPool, boolean contextTakeover, int minSize, DeflaterPool deflaterPool)
+        {
+            super(policy, bufferPool);
+            _policy = policy;
+            _bufferPool = bufferPool;
+            _contextTakeover = contextTakeover;
+            _minSize = minSize;
+            _deflaterPool = deflaterPool;
+            register(PerMessageDeflate.NAME, PerMessageDeflateExtension.class);
+        }
+
+        @Override
+        public Extension newInstance(ExtensionConfig config)
+        {
+            if (config == null || !PerMessageDeflate.NAME.equals(config.getName()))
+                return super.newInstance(config);
+            PerMessageDeflateExtension extension = new PerMessageDeflateExtension(_contextTakeover, _minSize, _deflaterPool);
+            extension.setPolicy(_policy);
+            extension.setBufferPool(_bufferPool);
+            extension.setConfig(config);
+            return extension;
+        }
+    }
+
     protected class WebSocketContext implements BayeuxContext
     {
         private final Principal _principal;
@@ -967,6 +967,250 @@ public class BayeuxClientWebSocketTest extends ClientServerWebSocketTest
         Assert.assertTrue(closeLatch.await(5, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testWritesAreNotifiedAsynchronously() throws Exception
+    {
+        final CountDownLatch writeLatch = new CountDownLatch(1);
+        org.cometd.websocket.server.WebSocketTransport transport = new org.cometd.websocket.server.WebSocketTransport(bayeux)
+        {
+            @Override
+            protected void onWriteSuccess(org.eclipse.jetty.websocket.api.Session session, String data)
+            {
+                if (data.contains(Channel.META_HANDSHAKE))
+                    writeLatch.countDown();
+            }
+        };
+        transport.setOption(org.cometd.websocket.server.WebSocketTransport.MAX_OUTBOUND_FRAMES_OPTION, 1);
+        bayeux.setTransports(transport);
+        transport.init();
+
+        BayeuxClient client = newBayeuxClient();
+        client.handshake();
+        Assert.assertTrue(client.waitFor(5000, BayeuxClient.State.CONNECTED));
+
+        // The handshake reply completes before, or while, the connect reply is sent
+        Assert.assertTrue(writeLatch.await(5, TimeUnit.SECONDS));
+
+        // With only one frame in flight, messages are still delivered
+        final CountDownLatch messageLatch = new CountDownLatch(10);
+        client.getChannel("/foo").subscribe(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                messageLatch.countDown();
+            }
+        });
+        Thread.sleep(500);
+        for (int i = 0; i < 10; ++i)
+            bayeux.getChannel("/foo").publish(null, "data" + i);
+
+        Assert.assertTrue(messageLatch.await(5, TimeUnit.SECONDS));
+
+        disconnectBayeuxClient(client);
+    }
+
+    @Test
+    public void testPerMessageDeflate() throws Exception
+    {
+        stopServer();
+
+        Map<String, String> options = new HashMap<>();
+        options.put("ws." + org.cometd.websocket.server.WebSocketTransport.PER_MESSAGE_DEFLATE_OPTION, "true");
+        options.put("ws." + org.cometd.websocket.server.WebSocketTransport.DEFLATE_MIN_SIZE_OPTION, "0");
+        runServer(options);
+
+        Map<String, Object> clientOptions = new HashMap<>();
+        clientOptions.put(WebSocketTransport.PER_MESSAGE_DEFLATE_OPTION, true);
+        clientOptions.put(WebSocketTransport.DEFLATE_MIN_SIZE_OPTION, 0);
+        WebSocketTransport transport = WebSocketTransport.create(clientOptions, wsClient);
+        transport.setDebugEnabled(debugTests());
+        BayeuxClient client = new BayeuxClient(cometdURL, transport);
+        client.setDebugEnabled(debugTests());
+
+        final String channelName = "/deflate";
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1024; ++i)
+            builder.append("cometd");
+        final String data = builder.toString();
+        final CountDownLatch latch = new CountDownLatch(3);
+        client.getChannel(Channel.META_HANDSHAKE).addListener(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                if (message.isSuccessful())
+                {
+                    channel.getSession().getChannel(channelName).subscribe(new ClientSessionChannel.MessageListener()
+                    {
+                        public void onMessage(ClientSessionChannel channel, Message message)
+                        {
+                            if (data.equals(message.getData()))
+                                latch.countDown();
+                        }
+                    });
+                }
+            }
+        });
+        client.handshake();
+        Assert.assertTrue(client.waitFor(5000, BayeuxClient.State.CONNECTED));
+        Thread.sleep(500);
+
+        // Messages are compressed in both directions, and the compression
+        // context is carried over from one message to the next
+        for (int i = 0; i < 3; ++i)
+            client.getChannel(channelName).publish(data);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        disconnectBayeuxClient(client);
+    }
+
+    @Test
+    public void testFramesAreCoalesced() throws Exception
+    {
+        stopServer();
+
+        Map<String, String> options = new HashMap<>();
+        // Hold flushes for 100 ms
+        options.put("ws." + org.cometd.websocket.server.WebSocketTransport.COALESCE_DELAY_OPTION, "100000");
+        runServer(options);
+
+        BayeuxClient client = newBayeuxClient();
+        final String channelName = "/coalesce";
+        int count = 20;
+        final CountDownLatch latch = new CountDownLatch(count);
+        client.getChannel(Channel.META_HANDSHAKE).addListener(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                if (message.isSuccessful())
+                {
+                    channel.getSession().getChannel(channelName).subscribe(new ClientSessionChannel.MessageListener()
+                    {
+                        public void onMessage(ClientSessionChannel channel, Message message)
+                        {
+                            latch.countDown();
+                        }
+                    });
+                }
+            }
+        });
+        client.handshake();
+        Assert.assertTrue(client.waitFor(5000, BayeuxClient.State.CONNECTED));
+        Thread.sleep(500);
+
+        org.cometd.websocket.server.WebSocketTransport transport = (org.cometd.websocket.server.WebSocketTransport)bayeux.getTransport(org.cometd.websocket.server.WebSocketTransport.NAME);
+        transport.resetStatistics();
+
+        // The first message is flushed right away, the others arrive
+        // while the session is flushing at a high rate and are held
+        for (int i = 0; i < count; ++i)
+            bayeux.getChannel(channelName).publish(null, "data" + i);
+
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(transport.getCoalesceCount() > 0);
+        Assert.assertTrue(transport.getFramesPerMessage() < 1);
+        Assert.assertTrue(transport.getMaxCoalesceLatency() > 0);
+
+        disconnectBayeuxClient(client);
+    }
+
+    @Test
+    public void testBinaryMessages() throws Exception
+    {
+        Map<String, Object> options = new HashMap<>();
+        options.put(WebSocketTransport.BINARY_OPTION, true);
+        WebSocketTransport transport = WebSocketTransport.create(options, wsClient);
+        BayeuxClient client = new BayeuxClient(cometdURL, transport);
+        client.setDebugEnabled(debugTests());
+
+        client.handshake();
+        Assert.assertTrue(client.waitFor(5000, BayeuxClient.State.CONNECTED));
+        Assert.assertTrue(transport.isBinary());
+
+        final CountDownLatch subscribeLatch = new CountDownLatch(1);
+        client.getChannel(Channel.META_SUBSCRIBE).addListener(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                if (message.isSuccessful())
+                    subscribeLatch.countDown();
+            }
+        });
+        String channelName = "/binary";
+        final BlockingQueue<Message> messages = new BlockingArrayQueue<>();
+        client.getChannel(channelName).subscribe(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                messages.offer(message);
+            }
+        });
+        Assert.assertTrue(subscribeLatch.await(5, TimeUnit.SECONDS));
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("text", "hello");
+        data.put("number", 42);
+        data.put("list", Arrays.asList("a", "b"));
+        for (int i = 0; i < 2; ++i)
+        {
+            client.getChannel(channelName).publish(data);
+            Message message = messages.poll(5, TimeUnit.SECONDS);
+            Assert.assertNotNull(message);
+            Map<String, Object> received = message.getDataAsMap();
+            Assert.assertEquals("hello", received.get("text"));
+            Assert.assertEquals(42L, received.get("number"));
+            Assert.assertArrayEquals(new Object[]{"a", "b"}, (Object[])received.get("list"));
+        }
+
+        disconnectBayeuxClient(client);
+    }
+
+    @Test
+    public void testWriteOnIdleConnectionIsNotified() throws Exception
+    {
+        final String data = "idle";
+        final CountDownLatch writeLatch = new CountDownLatch(1);
+        org.cometd.websocket.server.WebSocketTransport transport = new org.cometd.websocket.server.WebSocketTransport(bayeux)
+        {
+            @Override
+            protected void onWriteSuccess(org.eclipse.jetty.websocket.api.Session session, String frame)
+            {
+                if (frame.contains(data))
+                    writeLatch.countDown();
+            }
+        };
+        bayeux.setTransports(transport);
+        transport.init();
+
+        BayeuxClient client = newBayeuxClient();
+        final CountDownLatch subscribeLatch = new CountDownLatch(1);
+        client.getChannel(Channel.META_SUBSCRIBE).addListener(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+                subscribeLatch.countDown();
+            }
+        });
+        client.getChannel("/foo").subscribe(new ClientSessionChannel.MessageListener()
+        {
+            public void onMessage(ClientSessionChannel channel, Message message)
+            {
+            }
+        });
+        client.handshake();
+        Assert.assertTrue(client.waitFor(5000, BayeuxClient.State.CONNECTED));
+        Assert.assertTrue(subscribeLatch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(500);
+
+        // No other frame is written after this one, since the next /meta/connect
+        // is held: the write must be notified without further use of the connection
+        bayeux.getChannel("/foo").publish(null, data);
+
+        Assert.assertTrue(writeLatch.await(5, TimeUnit.SECONDS));
+
+        disconnectBayeuxClient(client);
+    }
+
     @Test
     public void testWhenClientAbortsServerSessionIsSwept() throws Exception
     {